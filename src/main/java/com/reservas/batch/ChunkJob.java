@@ -0,0 +1,175 @@
+package com.reservas.batch;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Job por lotes ejecutado por {@link ChunkJobRunner}.
+ *
+ * Los elementos se leen por clave (keyset): cada lectura devuelve los siguientes
+ * después de la clave del último elemento del lote anterior, en orden de clave.
+ * Lectura y procesamiento de un lote comparten transacción, así que la lectura puede
+ * bloquear las filas que el lote va a modificar. Un job que llama a servicios externos
+ * por cada lote se declara {@link #sinTransaccion()}: lee sin bloquear y abre sus
+ * propias transacciones cortas para aplicar los cambios.
+ *
+ * @param <T> Elemento que se procesa (entidad, id...)
+ */
+public interface ChunkJob<T> {
+
+    /**
+     * Nombre único del job: identifica su cursor y sus métricas.
+     */
+    String nombre();
+
+    /**
+     * Siguientes elementos a procesar.
+     *
+     * @param despuesDe Clave del último elemento procesado; null en el primer lote
+     * @param corte     Momento de referencia de la ejecución
+     * @param limite    Máximo de elementos a devolver
+     */
+    List<T> leer(String despuesDe, LocalDateTime corte, int limite);
+
+    /**
+     * Lectura de un job incremental: además del corte recibe el de la última ejecución
+     * completada. Por defecto lo ignora y recorre todo.
+     *
+     * @param desde Corte de la última ejecución completada; null si nunca se completó
+     */
+    default List<T> leer(String despuesDe, LocalDateTime desde, LocalDateTime corte, int limite) {
+        return leer(despuesDe, corte, limite);
+    }
+
+    /**
+     * Clave del elemento, en el mismo orden que usa {@link #leer}.
+     */
+    String clave(T elemento);
+
+    /**
+     * Procesa un lote dentro de la transacción del lote.
+     *
+     * @return Elementos afectados (para logs y métricas)
+     */
+    int procesar(List<T> lote, LocalDateTime corte);
+
+    /**
+     * Si es false, {@link #leer} y {@link #procesar} se ejecutan fuera de la transacción
+     * del lote; el cursor avanza en una transacción aparte al terminar el lote. Si el
+     * proceso se corta antes, el lote se repite: procesar debe ser idempotente.
+     */
+    default boolean transaccional() {
+        return true;
+    }
+
+    /**
+     * El mismo job, con lectura y procesamiento fuera de la transacción del lote.
+     */
+    default ChunkJob<T> sinTransaccion() {
+        ChunkJob<T> job = this;
+        return new ChunkJob<>() {
+            @Override
+            public String nombre() {
+                return job.nombre();
+            }
+
+            @Override
+            public List<T> leer(String despuesDe, LocalDateTime corte, int limite) {
+                return job.leer(despuesDe, corte, limite);
+            }
+
+            @Override
+            public List<T> leer(String despuesDe, LocalDateTime desde, LocalDateTime corte, int limite) {
+                return job.leer(despuesDe, desde, corte, limite);
+            }
+
+            @Override
+            public String clave(T elemento) {
+                return job.clave(elemento);
+            }
+
+            @Override
+            public int procesar(List<T> lote, LocalDateTime corte) {
+                return job.procesar(lote, corte);
+            }
+
+            @Override
+            public boolean transaccional() {
+                return false;
+            }
+        };
+    }
+
+    static <T> ChunkJob<T> de(String nombre, Lector<T> lector, Function<T, String> clave, Procesador<T> procesador) {
+        return new ChunkJob<>() {
+            @Override
+            public String nombre() {
+                return nombre;
+            }
+
+            @Override
+            public List<T> leer(String despuesDe, LocalDateTime corte, int limite) {
+                return lector.leer(despuesDe, corte, limite);
+            }
+
+            @Override
+            public String clave(T elemento) {
+                return clave.apply(elemento);
+            }
+
+            @Override
+            public int procesar(List<T> lote, LocalDateTime corte) {
+                return procesador.procesar(lote, corte);
+            }
+        };
+    }
+
+    /**
+     * Job incremental: cada ejecución lee solo lo ocurrido desde la última completada.
+     */
+    static <T> ChunkJob<T> incremental(String nombre, LectorIncremental<T> lector, Function<T, String> clave,
+                                       Procesador<T> procesador) {
+        return new ChunkJob<>() {
+            @Override
+            public String nombre() {
+                return nombre;
+            }
+
+            @Override
+            public List<T> leer(String despuesDe, LocalDateTime corte, int limite) {
+                return lector.leer(despuesDe, null, corte, limite);
+            }
+
+            @Override
+            public List<T> leer(String despuesDe, LocalDateTime desde, LocalDateTime corte, int limite) {
+                return lector.leer(despuesDe, desde, corte, limite);
+            }
+
+            @Override
+            public String clave(T elemento) {
+                return clave.apply(elemento);
+            }
+
+            @Override
+            public int procesar(List<T> lote, LocalDateTime corte) {
+                return procesador.procesar(lote, corte);
+            }
+        };
+    }
+
+    @FunctionalInterface
+    interface Lector<T> {
+        List<T> leer(String despuesDe, LocalDateTime corte, int limite);
+    }
+
+    @FunctionalInterface
+    interface LectorIncremental<T> {
+        List<T> leer(String despuesDe, LocalDateTime desde, LocalDateTime corte, int limite);
+    }
+
+    @FunctionalInterface
+    interface Procesador<T> {
+        int procesar(List<T> lote, LocalDateTime corte);
+    }
+}
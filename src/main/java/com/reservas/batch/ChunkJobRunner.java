@@ -0,0 +1,253 @@
+package com.reservas.batch;
+
+import com.reservas.entity.BatchJobCursor;
+import com.reservas.repository.BatchJobCursorRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ejecuta jobs por lotes ({@link ChunkJob}) con un cursor persistido en tbl_batch_job_cursors.
+ *
+ * - Cada lote es una transacción: leer, procesar y avanzar el cursor se confirman
+ *   juntos, así que un lote nunca queda a medias ni se aplica dos veces. Los jobs
+ *   {@link ChunkJob#sinTransaccion()} solo usan la transacción para el cursor.
+ * - Un lote que falla se reintenta (batch.jobs.reintentos) y, si sigue fallando,
+ *   la ejecución se detiene con el cursor en el último lote confirmado.
+ * - La siguiente ejecución reanuda desde ese cursor, con el mismo corte, si la
+ *   interrumpida empezó hace menos de batch.jobs.reanudar-max; si no, empieza de cero.
+ * - Al completar, el corte queda como completado_hasta: los jobs incrementales
+ *   leen solo lo posterior a la última ejecución completada.
+ *
+ * Métricas por job: batch.job.duration, batch.job.chunk, batch.job.items y batch.job.errors.
+ */
+@Slf4j
+@Component
+public class ChunkJobRunner {
+
+    private final BatchJobCursorRepository cursorRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final int tamanoLote;
+    private final int reintentos;
+    private final Duration esperaReintento;
+    private final Duration reanudarMax;
+
+    public ChunkJobRunner(BatchJobCursorRepository cursorRepository,
+                          TransactionTemplate transactionTemplate,
+                          MeterRegistry meterRegistry,
+                          @Value("${batch.jobs.lote:500}") int tamanoLote,
+                          @Value("${batch.jobs.reintentos:2}") int reintentos,
+                          @Value("${batch.jobs.espera-reintento:PT1S}") Duration esperaReintento,
+                          @Value("${batch.jobs.reanudar-max:PT12H}") Duration reanudarMax) {
+        this.cursorRepository = cursorRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+        this.tamanoLote = tamanoLote;
+        this.reintentos = reintentos;
+        this.esperaReintento = esperaReintento;
+        this.reanudarMax = reanudarMax;
+    }
+
+    /**
+     * Resultado de una ejecución.
+     *
+     * @param procesados Elementos afectados en esta ejecución (sin contar los de una anterior reanudada)
+     * @param lotes      Lotes confirmados en esta ejecución
+     * @param completado false si se detuvo por un error; la siguiente ejecución la reanuda
+     */
+    public record Resultado(long procesados, int lotes, boolean completado) {
+    }
+
+    public <T> Resultado ejecutar(ChunkJob<T> job) {
+        return ejecutar(job, tamanoLote);
+    }
+
+    public <T> Resultado ejecutar(ChunkJob<T> job, int tamanoLote) {
+        String nombre = job.nombre();
+        long inicio = System.nanoTime();
+        long procesados = 0;
+        int lotes = 0;
+        boolean completado = false;
+        try {
+            transactionTemplate.executeWithoutResult(status -> iniciar(nombre, LocalDateTime.now()));
+
+            Avance avance;
+            do {
+                avance = ejecutarConReintentos(job, tamanoLote);
+                procesados += avance.afectados();
+                lotes += avance.leidos() > 0 ? 1 : 0;
+            } while (avance.continuar());
+            completado = true;
+        } catch (Exception e) {
+            Counter.builder("batch.job.errors")
+                    .description("Ejecuciones de jobs por lotes detenidas por un error")
+                    .tag("job", nombre)
+                    .register(meterRegistry)
+                    .increment();
+            log.error("[ChunkJob] {} detenido tras {} lotes: se reanuda en la siguiente ejecución", nombre, lotes, e);
+            registrarFallo(nombre, e);
+        } finally {
+            Timer.builder("batch.job.duration")
+                    .description("Duración de las ejecuciones de jobs por lotes")
+                    .tag("job", nombre)
+                    .tag("resultado", completado ? "ok" : "error")
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+        }
+
+        log.info("[ChunkJob] {} {}: {} elementos en {} lotes",
+                nombre, completado ? "completado" : "interrumpido", procesados, lotes);
+        return new Resultado(procesados, lotes, completado);
+    }
+
+    /**
+     * Prepara el cursor: reanuda una ejecución reciente sin terminar o empieza una nueva.
+     */
+    private void iniciar(String nombre, LocalDateTime ahora) {
+        BatchJobCursor cursor = cursorRepository.bloquear(nombre).orElse(null);
+        if (cursor == null) {
+            cursor = BatchJobCursor.builder().nombre(nombre).build();
+        } else if (cursor.getEstado() != BatchJobCursor.Estado.COMPLETADO
+                && cursor.getIniciadoEn().isAfter(ahora.minus(reanudarMax))) {
+            log.info("[ChunkJob] {} reanudado después de {} ({} elementos ya procesados)",
+                    nombre, cursor.getUltimaClave(), cursor.getProcesados());
+            cursor.setEstado(BatchJobCursor.Estado.EN_CURSO);
+            cursor.setActualizadoEn(ahora);
+            cursorRepository.save(cursor);
+            return;
+        }
+
+        cursor.setEstado(BatchJobCursor.Estado.EN_CURSO);
+        cursor.setUltimaClave(null);
+        cursor.setCorte(ahora);
+        cursor.setProcesados(0);
+        cursor.setLotes(0);
+        cursor.setIniciadoEn(ahora);
+        cursor.setActualizadoEn(ahora);
+        cursor.setUltimoError(null);
+        cursorRepository.save(cursor);
+    }
+
+    private <T> Avance ejecutarConReintentos(ChunkJob<T> job, int tamanoLote) {
+        for (int intento = 1; ; intento++) {
+            try {
+                return ejecutarLote(job, tamanoLote);
+            } catch (RuntimeException e) {
+                if (intento > reintentos) {
+                    throw e;
+                }
+                log.warn("[ChunkJob] {} lote fallido (intento {}/{}): {}",
+                        job.nombre(), intento, reintentos + 1, e.getMessage());
+                esperar(esperaReintento.multipliedBy(intento));
+            }
+        }
+    }
+
+    private <T> Avance ejecutarLote(ChunkJob<T> job, int tamanoLote) {
+        long inicio = System.nanoTime();
+        Avance avance = job.transaccional()
+                ? transactionTemplate.execute(status -> {
+                    BatchJobCursor cursor = cursorRepository.bloquear(job.nombre()).orElseThrow();
+                    if (cursor.getEstado() == BatchJobCursor.Estado.COMPLETADO) {
+                        // Otra ejecución simultánea terminó el recorrido
+                        return new Avance(0, 0, false);
+                    }
+                    List<T> lote = job.leer(cursor.getUltimaClave(), cursor.getCompletadoHasta(), cursor.getCorte(), tamanoLote);
+                    int afectados = lote.isEmpty() ? 0 : job.procesar(lote, cursor.getCorte());
+                    return avanzar(job, cursor, lote, afectados, tamanoLote);
+                })
+                : ejecutarLoteSinTransaccion(job, tamanoLote);
+
+        if (avance.leidos() > 0) {
+            Timer.builder("batch.job.chunk")
+                    .description("Duración de cada lote de un job por lotes")
+                    .tag("job", job.nombre())
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+            Counter.builder("batch.job.items")
+                    .description("Elementos afectados por los jobs por lotes")
+                    .tag("job", job.nombre())
+                    .register(meterRegistry)
+                    .increment(avance.afectados());
+        }
+        return avance;
+    }
+
+    /**
+     * Lote de un job {@link ChunkJob#sinTransaccion()}: el cursor se lee y se avanza en
+     * transacciones propias y el job no retiene ningún bloqueo mientras procesa.
+     */
+    private <T> Avance ejecutarLoteSinTransaccion(ChunkJob<T> job, int tamanoLote) {
+        BatchJobCursor inicial = transactionTemplate.execute(status ->
+                cursorRepository.bloquear(job.nombre()).orElseThrow());
+        if (inicial.getEstado() == BatchJobCursor.Estado.COMPLETADO) {
+            return new Avance(0, 0, false);
+        }
+
+        List<T> lote = job.leer(inicial.getUltimaClave(), inicial.getCompletadoHasta(), inicial.getCorte(), tamanoLote);
+        int afectados = lote.isEmpty() ? 0 : job.procesar(lote, inicial.getCorte());
+
+        return transactionTemplate.execute(status -> {
+            BatchJobCursor cursor = cursorRepository.bloquear(job.nombre()).orElseThrow();
+            if (cursor.getEstado() == BatchJobCursor.Estado.COMPLETADO) {
+                return new Avance(lote.size(), afectados, false);
+            }
+            return avanzar(job, cursor, lote, afectados, tamanoLote);
+        });
+    }
+
+    /**
+     * Deja el cursor después del lote y lo marca completado si el lote fue el último.
+     */
+    private <T> Avance avanzar(ChunkJob<T> job, BatchJobCursor cursor, List<T> lote, int afectados, int tamanoLote) {
+        if (!lote.isEmpty()) {
+            cursor.setUltimaClave(job.clave(lote.get(lote.size() - 1)));
+            cursor.setLotes(cursor.getLotes() + 1);
+            cursor.setProcesados(cursor.getProcesados() + afectados);
+        }
+        boolean continuar = lote.size() >= tamanoLote;
+        if (!continuar) {
+            cursor.setEstado(BatchJobCursor.Estado.COMPLETADO);
+            cursor.setCompletadoHasta(cursor.getCorte());
+        }
+        cursor.setActualizadoEn(LocalDateTime.now());
+        cursorRepository.save(cursor);
+        return new Avance(lote.size(), afectados, continuar);
+    }
+
+    private void registrarFallo(String nombre, Exception error) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> cursorRepository.bloquear(nombre).ifPresent(cursor -> {
+                cursor.setEstado(BatchJobCursor.Estado.FALLIDO);
+                cursor.setUltimoError(error.getClass().getSimpleName() + ": " + error.getMessage());
+                cursor.setActualizadoEn(LocalDateTime.now());
+                cursorRepository.save(cursor);
+            }));
+        } catch (Exception e) {
+            // El cursor queda EN_CURSO y también se reanuda
+            log.error("[ChunkJob] Error registrando el fallo de {}: {}", nombre, e.getMessage());
+        }
+    }
+
+    private static void esperar(Duration espera) {
+        try {
+            Thread.sleep(espera.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Job interrumpido", e);
+        }
+    }
+
+    private record Avance(int leidos, int afectados, boolean continuar) {
+    }
+}
@@ -0,0 +1,74 @@
+package com.reservas.config;
+
+import com.reservas.ratelimit.BucketStore;
+import com.reservas.ratelimit.LocalBucketStore;
+import com.reservas.ratelimit.RedisBucketStore;
+import io.github.bucket4j.distributed.ExpirationAfterWriteStrategy;
+import io.github.bucket4j.redis.lettuce.cas.LettuceBasedProxyManager;
+import io.lettuce.core.AbstractRedisClient;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import java.time.Duration;
+
+/**
+ * Configuración del almacén de buckets de rate limiting.
+ *
+ * rate.limit.store:
+ *   - local (por defecto): memoria de la instancia, acotada por rate.limit.local.max-keys
+ *   - redis: estado compartido entre instancias usando la conexión de spring.data.redis
+ *     (nodo único, sentinel o cluster)
+ */
+@Slf4j
+@Configuration
+public class RateLimitConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "rate.limit.store", havingValue = "local", matchIfMissing = true)
+    public BucketStore localBucketStore(
+            @Value("${rate.limit.local.max-keys:100000}") long maxKeys,
+            @Value("${rate.limit.local.idle-timeout:30m}") Duration idleTimeout) {
+        log.info("[RateLimitConfig] Rate limiting en memoria local (maxKeys={}, idleTimeout={})", maxKeys, idleTimeout);
+        return new LocalBucketStore(maxKeys, idleTimeout);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "rate.limit.store", havingValue = "redis")
+    public StatefulConnection<String, byte[]> rateLimitRedisConnection(LettuceConnectionFactory connectionFactory) {
+        RedisCodec<String, byte[]> codec = RedisCodec.of(StringCodec.UTF8, ByteArrayCodec.INSTANCE);
+        AbstractRedisClient client = connectionFactory.getRequiredNativeClient();
+        if (client instanceof RedisClusterClient clusterClient) {
+            return clusterClient.connect(codec);
+        }
+        if (client instanceof RedisClient redisClient) {
+            return redisClient.connect(codec);
+        }
+        throw new IllegalStateException("[RateLimitConfig] Cliente Redis no soportado: " + client.getClass().getName());
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "rate.limit.store", havingValue = "redis")
+    public BucketStore redisBucketStore(StatefulConnection<String, byte[]> rateLimitRedisConnection) {
+        log.info("[RateLimitConfig] Rate limiting distribuido en Redis");
+        LettuceBasedProxyManager.LettuceBasedProxyManagerBuilder<String> builder =
+                rateLimitRedisConnection instanceof StatefulRedisClusterConnection<String, byte[]> cluster
+                        ? LettuceBasedProxyManager.builderFor(cluster)
+                        : LettuceBasedProxyManager.builderFor((StatefulRedisConnection<String, byte[]>) rateLimitRedisConnection);
+        LettuceBasedProxyManager<String> proxyManager = builder
+                .withExpirationStrategy(ExpirationAfterWriteStrategy.basedOnTimeForRefillingBucketUpToMax(Duration.ofSeconds(10)))
+                .build();
+        return new RedisBucketStore(proxyManager);
+    }
+}
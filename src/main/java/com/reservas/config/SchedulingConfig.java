@@ -0,0 +1,42 @@
+package com.reservas.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+
+/**
+ * Pool de hilos para los métodos @Scheduled.
+ *
+ * Con el planificador por defecto (un solo hilo) un job nocturno largo detiene los
+ * sondeos del outbox de notificaciones, del inbox de webhooks de Stripe y del buffer
+ * de estados de entrega. scheduler.pool-size debe cubrir esos tres sondeos más los
+ * jobs que puedan coincidir en el tiempo.
+ */
+@Slf4j
+@Configuration
+public class SchedulingConfig implements SchedulingConfigurer {
+
+    @Value("${scheduler.pool-size:8}")
+    private int poolSize;
+
+    @Bean(destroyMethod = "shutdown")
+    public ThreadPoolTaskScheduler taskScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(poolSize);
+        scheduler.setThreadNamePrefix("scheduler-");
+        scheduler.setWaitForTasksToCompleteOnShutdown(true);
+        scheduler.setAwaitTerminationSeconds(30);
+        scheduler.setErrorHandler(e -> log.error("[SchedulingConfig] Error no controlado en tarea programada", e));
+        log.info("[SchedulingConfig] Pool de tareas programadas con {} hilos", poolSize);
+        return scheduler;
+    }
+
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+        taskRegistrar.setTaskScheduler(taskScheduler());
+    }
+}
@@ -3,6 +3,7 @@ package com.reservas.config;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.reservas.ratelimit.TenantRateLimitInterceptor;
 import com.reservas.security.SuscripcionInterceptor;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
@@ -12,13 +13,14 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 /**
  * Configuración de interceptores HTTP para la aplicación.
- * Registra el interceptor de validación de suscripciones.
+ * Registra el interceptor de validación de suscripciones y el de rate limiting por negocio.
  */
 @Configuration
 @RequiredArgsConstructor
 public class WebConfig implements WebMvcConfigurer {
 
     private final SuscripcionInterceptor suscripcionInterceptor;
+    private final TenantRateLimitInterceptor tenantRateLimitInterceptor;
 
     @Bean
     public ObjectMapper objectMapper() {
@@ -30,6 +32,11 @@ public class WebConfig implements WebMvcConfigurer {
 
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
+        // Solo actúa sobre handlers anotados con @RateLimited.
+        // Los patrones se evalúan sin el context-path (/api)
+        registry.addInterceptor(tenantRateLimitInterceptor)
+                .addPathPatterns("/**");
+
         registry.addInterceptor(suscripcionInterceptor)
                 .addPathPatterns("/api/**")                     // Interceptar todas las rutas /api
                 .excludePathPatterns(
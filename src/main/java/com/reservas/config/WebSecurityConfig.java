@@ -121,6 +121,9 @@ public class WebSecurityConfig {
                          .requestMatchers(HttpMethod.POST, "/auth/google").permitAll()
                          .requestMatchers(HttpMethod.POST, "/auth/verify-email").permitAll()
                          .requestMatchers(HttpMethod.POST, "/auth/resend-verification").permitAll()
+                         // Refresh/logout se autentican con la cookie refresh_token (el JWT puede haber expirado)
+                         .requestMatchers(HttpMethod.POST, "/auth/refresh").permitAll()
+                         .requestMatchers(HttpMethod.POST, "/auth/logout").permitAll()
                          .requestMatchers("/auth/test").permitAll();
 
                     // Swagger/OpenAPI UI — solo accesible si está habilitado (dev).
@@ -131,7 +134,7 @@ public class WebSecurityConfig {
 
                     // Stripe Webhooks (NO debe tener autenticación JWT)
                     authz.requestMatchers(HttpMethod.POST, "/webhooks/stripe").permitAll()
-                         // Twilio Webhooks (NO debe tener autenticación JWT)
+                         // Twilio Webhooks (sin JWT, protegido por X-Twilio-Signature en el controller)
                          .requestMatchers(HttpMethod.POST, "/webhooks/twilio/**").permitAll()
                          // Endpoint público para que el cliente final cargue datos del pago
                          .requestMatchers(HttpMethod.GET, "/v1/payments/public/**").permitAll()
@@ -1,5 +1,7 @@
 package com.reservas.controller;
 
+import com.reservas.service.LibroPagosService;
+import com.reservas.service.StripeReconciliacionService;
 import com.reservas.service.SuscripcionService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -20,6 +22,8 @@ import org.springframework.web.bind.annotation.*;
  * Uso:
  *   curl -H "X-Admin-Key: TU_CLAVE" https://api.qa.citaclick.com.mx/api/admin/scheduler/notificaciones
  *   curl -H "X-Admin-Key: TU_CLAVE" https://api.qa.citaclick.com.mx/api/admin/scheduler/verificar
+ *   curl -H "X-Admin-Key: TU_CLAVE" https://api.qa.citaclick.com.mx/api/admin/scheduler/reconciliar-stripe
+ *   curl -H "X-Admin-Key: TU_CLAVE" https://api.qa.citaclick.com.mx/api/admin/scheduler/backfill-libro-pagos
  */
 @Slf4j
 @RestController
@@ -28,6 +32,8 @@ import org.springframework.web.bind.annotation.*;
 public class AdminSchedulerController {
 
     private final SuscripcionService suscripcionService;
+    private final StripeReconciliacionService stripeReconciliacionService;
+    private final LibroPagosService libroPagosService;
 
     @Value("${app.admin.secret-key:}")
     private String adminSecretKey;
@@ -70,6 +76,44 @@ public class AdminSchedulerController {
         return ResponseEntity.ok(new MessageResponse("Verificación ejecutada manualmente"));
     }
 
+    /**
+     * Dispara manualmente la reconciliación con Stripe.
+     * Equivalente al scheduler que corre cada hora.
+     */
+    @GetMapping("/reconciliar-stripe")
+    public ResponseEntity<?> triggerReconciliarStripe(
+            @RequestHeader(value = "X-Admin-Key", required = false) String key) {
+
+        if (!claveValida(key)) {
+            log.warn("[AdminScheduler] Intento de acceso a /reconciliar-stripe con clave inválida");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new MessageResponse("Acceso denegado: clave inválida o no configurada"));
+        }
+
+        log.info("[AdminScheduler] Trigger manual: reconciliar()");
+        stripeReconciliacionService.reconciliar();
+        return ResponseEntity.ok(new MessageResponse("Reconciliación con Stripe ejecutada manualmente"));
+    }
+
+    /**
+     * Anota en el libro de pagos los pagos anteriores a su despliegue.
+     * Se puede relanzar: los movimientos ya anotados se saltan.
+     */
+    @GetMapping("/backfill-libro-pagos")
+    public ResponseEntity<?> triggerBackfillLibroPagos(
+            @RequestHeader(value = "X-Admin-Key", required = false) String key) {
+
+        if (!claveValida(key)) {
+            log.warn("[AdminScheduler] Intento de acceso a /backfill-libro-pagos con clave inválida");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new MessageResponse("Acceso denegado: clave inválida o no configurada"));
+        }
+
+        log.info("[AdminScheduler] Trigger manual: backfill()");
+        libroPagosService.backfill();
+        return ResponseEntity.ok(new MessageResponse("Backfill del libro de pagos ejecutado"));
+    }
+
     private boolean claveValida(String key) {
         if (adminSecretKey == null || adminSecretKey.isBlank()) {
             log.error("[AdminScheduler] app.admin.secret-key no configurada en este entorno");
@@ -7,11 +7,13 @@ import com.reservas.dto.request.RegisterRequest;
 import com.reservas.dto.request.ReenviarEmailRequest;
 import com.reservas.dto.request.VerificarEmailRequest;
 import com.reservas.dto.response.LoginResponse;
+import com.reservas.dto.response.SesionResponse;
 import com.reservas.dto.response.UserResponse;
 import com.reservas.dto.response.ApiResponse;
 import com.reservas.service.AuthService;
 import com.reservas.service.EmailVerificationService;
 import com.reservas.service.RateLimitService;
+import com.reservas.service.RefreshTokenService;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
@@ -22,9 +24,12 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseCookie;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
 
 @RestController
 @RequestMapping("/auth")
@@ -41,6 +46,9 @@ public class AuthController {
     @Autowired
     private EmailVerificationService emailVerificationService;
 
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
     @Value("${rate.limit.enabled:true}")
     private boolean rateLimitEnabled;
 
@@ -52,6 +60,20 @@ public class AuthController {
     @Value("${app.cookie.same-site:Strict}")
     private String cookieSameSite;
 
+    /** Vida del access token (cookie access_token) */
+    @Value("${jwt.expiration}")
+    private long jwtExpirationMs;
+
+    /** Vida del refresh token (cookie refresh_token) */
+    @Value("${jwt.refresh-expiration:2592000000}")
+    private long refreshExpirationMs;
+
+    /** La cookie refresh_token solo se envía a /api/auth */
+    @Value("${server.servlet.context-path:}")
+    private String contextPath;
+
+    private static final String REFRESH_COOKIE = "refresh_token";
+
     @PostMapping("/register")
     public ResponseEntity<ApiResponse<?>> register(
             @Valid @RequestBody RegisterRequest request,
@@ -72,6 +94,7 @@ public class AuthController {
         try {
             var response = authService.registrar(request, httpRequest);
             setAuthCookie(httpResponse, response.getToken());
+            iniciarSesion(httpRequest, httpResponse, response.getEmail());
             response.setToken(null); // No exponer el token en el body
             return ResponseEntity.status(HttpStatus.CREATED)
                     .body(ApiResponse.builder()
@@ -112,6 +135,7 @@ public class AuthController {
         try {
             LoginResponse response = authService.login(request);
             setAuthCookie(httpResponse, response.getToken());
+            iniciarSesion(httpRequest, httpResponse, response.getEmail());
             response.setToken(null); // No exponer el token en el body
             log.info("Login exitoso para usuario: {}", request.getEmail());
             return ResponseEntity.ok(ApiResponse.builder()
@@ -143,6 +167,7 @@ public class AuthController {
     /**
      * Establece la cookie httpOnly con el JWT.
      * SameSite=Strict previene CSRF sin necesidad de token adicional.
+     * Dura lo mismo que el access token; al expirar el frontend llama a /auth/refresh.
      */
     private void setAuthCookie(HttpServletResponse response, String token) {
         ResponseCookie cookie = ResponseCookie.from("access_token", token)
@@ -150,7 +175,30 @@ public class AuthController {
                 .secure(cookieSecure)
                 .sameSite(cookieSameSite)
                 .path("/")
-                .maxAge(Duration.ofDays(7))
+                .maxAge(Duration.ofMillis(jwtExpirationMs))
+                .build();
+        response.addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+    }
+
+    /**
+     * Emite el refresh token de la nueva sesión (dispositivo) y lo guarda en su cookie.
+     */
+    private void iniciarSesion(HttpServletRequest request, HttpServletResponse response, String email) {
+        String refreshToken = refreshTokenService.emitir(
+                email, request.getHeader(HttpHeaders.USER_AGENT), getClientIP(request));
+        setRefreshCookie(response, refreshToken, Duration.ofMillis(refreshExpirationMs));
+    }
+
+    /**
+     * Cookie httpOnly con el refresh token, restringida a las rutas de autenticación.
+     */
+    private void setRefreshCookie(HttpServletResponse response, String token, Duration maxAge) {
+        ResponseCookie cookie = ResponseCookie.from(REFRESH_COOKIE, token)
+                .httpOnly(true)
+                .secure(cookieSecure)
+                .sameSite(cookieSameSite)
+                .path(contextPath + "/auth")
+                .maxAge(maxAge)
                 .build();
         response.addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
     }
@@ -169,9 +217,89 @@ public class AuthController {
         response.addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
     }
 
+    /**
+     * Rota el refresh token y emite un nuevo access token.
+     * No requiere JWT (el access token normalmente ya expiró); se autentica con la cookie refresh_token.
+     */
+    @PostMapping("/refresh")
+    public ResponseEntity<ApiResponse<?>> refresh(
+            @CookieValue(value = REFRESH_COOKIE, required = false) String refreshToken,
+            HttpServletRequest httpRequest,
+            HttpServletResponse httpResponse) {
+
+        // Rate limiting por IP: más holgado que login (cada sesión abierta refresca periódicamente)
+        if (rateLimitEnabled) {
+            String clientIp = getClientIP(httpRequest);
+            if (!rateLimitService.tryConsume(clientIp + ":refresh", 30, Duration.ofMinutes(5))) {
+                log.warn("Rate limit excedido para IP: {} en endpoint /refresh", clientIp);
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                        .body(ApiResponse.builder().success(false)
+                                .message("Demasiados intentos. Por favor, intenta más tarde.").build());
+            }
+        }
+
+        try {
+            RefreshTokenService.Rotacion rotacion = refreshTokenService.rotar(
+                    refreshToken, httpRequest.getHeader(HttpHeaders.USER_AGENT), getClientIP(httpRequest));
+            setAuthCookie(httpResponse, rotacion.accessToken());
+            setRefreshCookie(httpResponse, rotacion.refreshToken(), Duration.ofMillis(refreshExpirationMs));
+            return ResponseEntity.ok(ApiResponse.builder()
+                    .success(true)
+                    .message("Sesión renovada")
+                    .build());
+        } catch (Exception e) {
+            log.warn("Refresh rechazado: {}", e.getMessage());
+            clearAuthCookie(httpResponse);
+            setRefreshCookie(httpResponse, "", Duration.ZERO);
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(ApiResponse.builder()
+                            .success(false)
+                            .message("Sesión expirada. Inicia sesión nuevamente.")
+                            .build());
+        }
+    }
+
     @PostMapping("/logout")
-    public ResponseEntity<ApiResponse<?>> logout(HttpServletResponse httpResponse) {
+    public ResponseEntity<ApiResponse<?>> logout(
+            @CookieValue(value = REFRESH_COOKIE, required = false) String refreshToken,
+            HttpServletResponse httpResponse) {
+        refreshTokenService.revocar(refreshToken);
         clearAuthCookie(httpResponse);
+        setRefreshCookie(httpResponse, "", Duration.ZERO);
+        return ResponseEntity.ok(ApiResponse.builder()
+                .success(true)
+                .message("Sesión cerrada exitosamente")
+                .build());
+    }
+
+    /**
+     * Sesiones activas (dispositivos) del usuario autenticado
+     */
+    @GetMapping("/sesiones")
+    public ResponseEntity<ApiResponse<List<SesionResponse>>> listarSesiones(Authentication auth) {
+        List<SesionResponse> sesiones = refreshTokenService.listarSesiones(auth.getName()).stream()
+                .map(SesionResponse::fromEntity)
+                .toList();
+        return ResponseEntity.ok(ApiResponse.<List<SesionResponse>>builder()
+                .success(true)
+                .message("Sesiones obtenidas exitosamente")
+                .data(sesiones)
+                .build());
+    }
+
+    /**
+     * Cierra la sesión de un dispositivo. Su access token sigue siendo válido hasta expirar
+     * (vida corta), pero ya no podrá renovarse.
+     */
+    @DeleteMapping("/sesiones/{id}")
+    public ResponseEntity<ApiResponse<?>> revocarSesion(@PathVariable UUID id, Authentication auth) {
+        if (!refreshTokenService.revocarSesion(auth.getName(), id)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(ApiResponse.builder()
+                            .success(false)
+                            .message("Sesión no encontrada")
+                            .build());
+        }
         return ResponseEntity.ok(ApiResponse.builder()
                 .success(true)
                 .message("Sesión cerrada exitosamente")
@@ -234,6 +362,7 @@ public class AuthController {
         try {
             LoginResponse response = authService.googleAuth(request, httpRequest);
             setAuthCookie(httpResponse, response.getToken());
+            iniciarSesion(httpRequest, httpResponse, response.getEmail());
             response.setToken(null); // No exponer el token en el body
             log.info("Autenticación con Google exitosa para: {}", response.getEmail());
             return ResponseEntity.ok(ApiResponse.builder()
@@ -7,6 +7,7 @@ import com.reservas.dto.response.ApiResponse;
 import com.reservas.dto.response.CitaResponse;
 import com.reservas.dto.response.CitaMultipleServiciosResponse;
 import com.reservas.dto.response.DisponibilidadResponse;
+import com.reservas.ratelimit.RateLimited;
 import com.reservas.service.CitaService;
 import com.reservas.service.CitaRecurrenteService;
 import com.reservas.service.DisponibilidadService;
@@ -82,6 +83,7 @@ public class CitaController {
     /**
      * Endpoint para obtener horarios disponibles según duración de servicio(s)
      */
+    @RateLimited("disponibilidad")
     @PostMapping("/disponibilidad")
     public ResponseEntity<ApiResponse<DisponibilidadResponse>> obtenerDisponibilidad(
             @Valid @RequestBody DisponibilidadRequest request, Authentication auth) {
@@ -168,6 +170,7 @@ public class CitaController {
         }
     }
 
+    @RateLimited("disponibilidad")
     @GetMapping("/disponibilidad")
     public ResponseEntity<ApiResponse<List<LocalDateTime>>> obtenerDisponibilidad(
             @RequestParam String servicioId,
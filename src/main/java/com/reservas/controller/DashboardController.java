@@ -2,6 +2,7 @@ package com.reservas.controller;
 
 import com.reservas.dto.response.ApiResponse;
 import com.reservas.dto.response.DashboardMetricasResponse;
+import com.reservas.ratelimit.RateLimited;
 import com.reservas.service.DashboardMetricasService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -21,6 +22,7 @@ public class DashboardController {
     @Autowired
     private DashboardMetricasService dashboardMetricasService;
 
+    @RateLimited(value = "dashboard", cost = 2)
     @GetMapping("/metricas")
     public ResponseEntity<ApiResponse<DashboardMetricasResponse>> obtenerMetricas(Authentication auth) {
         try {
@@ -1,11 +1,13 @@
 package com.reservas.controller;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.reservas.dto.response.ApiResponse;
 import com.reservas.entity.Payment;
 import com.reservas.exception.PaymentException;
 import com.reservas.payments.dto.CreatePaymentRequest;
 import com.reservas.payments.dto.RefundRequest;
 import com.reservas.payments.service.PaymentService;
+import com.reservas.service.IdempotencyService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -36,25 +38,34 @@ import java.util.Map;
 public class PaymentController {
 
     private final PaymentService paymentService;
+    private final IdempotencyService idempotencyService;
 
     /**
      * POST /api/v1/payments
-     * Crea un nuevo PaymentIntent para cobrar a un cliente
+     * Crea un nuevo PaymentIntent para cobrar a un cliente.
+     * Con la cabecera Idempotency-Key, los reintentos del cliente reciben el mismo pago.
      */
     @PostMapping
     @Operation(
         summary = "Crear pago",
-        description = "Crea un PaymentIntent de Stripe para cobrar a un cliente final por una cita o servicio"
+        description = "Crea un PaymentIntent de Stripe para cobrar a un cliente final por una cita o servicio. "
+                + "Admite la cabecera Idempotency-Key para reintentar sin duplicar el cobro."
     )
     public ResponseEntity<ApiResponse<Map<String, Object>>> crearPago(
             @Valid @RequestBody CreatePaymentRequest request,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
             Authentication authentication
     ) {
         log.info("[PaymentController] POST /api/v1/payments - Amount: {} {} - Usuario: {}",
                 request.getAmount(), request.getCurrency(), authentication.getName());
 
+        return idempotencyService.ejecutar(authentication.getName(), "payments.create", idempotencyKey, request,
+                new TypeReference<>() {}, claveStripe -> crearPago(request, claveStripe));
+    }
+
+    private ResponseEntity<ApiResponse<Map<String, Object>>> crearPago(CreatePaymentRequest request, String claveStripe) {
         try {
-            Payment payment = paymentService.createPayment(request);
+            Payment payment = paymentService.createPayment(request, claveStripe);
 
             Map<String, Object> response = new HashMap<>();
             response.put("paymentId", payment.getId().toString());
@@ -3,6 +3,7 @@ package com.reservas.controller;
 import com.reservas.dto.response.ApiResponse;
 import com.reservas.dto.response.ReporteResponse;
 import com.reservas.entity.Negocio;
+import com.reservas.ratelimit.RateLimited;
 import com.reservas.security.RequiresPlanFeature;
 import com.reservas.service.ExcelService;
 import com.reservas.service.PdfService;
@@ -38,6 +39,7 @@ public class ReporteController {
     @Autowired
     private SuscripcionInfoService suscripcionInfoService;
 
+    @RateLimited(value = "reportes", cost = 3)
     @GetMapping("/diario")
     @RequiresPlanFeature(value = "reportes_avanzados", message = "Los reportes avanzados solo están disponibles en el plan Premium. Actualice su plan para acceder a esta funcionalidad.")
     public ResponseEntity<ApiResponse<ReporteResponse>> reporteDiario(
@@ -54,6 +56,7 @@ public class ReporteController {
         }
     }
 
+    @RateLimited(value = "reportes", cost = 3)
     @GetMapping("/semanal")
     @RequiresPlanFeature(value = "reportes_avanzados", message = "Los reportes avanzados solo están disponibles en el plan Premium. Actualice su plan para acceder a esta funcionalidad.")
     public ResponseEntity<ApiResponse<ReporteResponse>> reporteSemanal(
@@ -69,6 +72,7 @@ public class ReporteController {
         }
     }
 
+    @RateLimited(value = "reportes", cost = 3)
     @GetMapping("/mensual")
     @RequiresPlanFeature(value = "reportes_avanzados", message = "Los reportes avanzados solo están disponibles en el plan Premium. Actualice su plan para acceder a esta funcionalidad.")
     public ResponseEntity<ApiResponse<ReporteResponse>> reporteMensual(
@@ -87,6 +91,7 @@ public class ReporteController {
 
     // ==================== ENDPOINTS DE EXPORTACIÓN PDF ====================
 
+    @RateLimited(value = "reportes", cost = 10)
     @GetMapping("/diario/pdf")
     @RequiresPlanFeature(value = "reportes_avanzados", message = "La exportación de reportes a PDF solo está disponible en el plan Premium. Actualice su plan para acceder a esta funcionalidad.")
     public ResponseEntity<byte[]> reporteDiarioPdf(
@@ -114,6 +119,7 @@ public class ReporteController {
         }
     }
 
+    @RateLimited(value = "reportes", cost = 10)
     @GetMapping("/semanal/pdf")
     @RequiresPlanFeature(value = "reportes_avanzados", message = "La exportación de reportes a PDF solo está disponible en el plan Premium. Actualice su plan para acceder a esta funcionalidad.")
     public ResponseEntity<byte[]> reporteSemanalPdf(
@@ -141,6 +147,7 @@ public class ReporteController {
         }
     }
 
+    @RateLimited(value = "reportes", cost = 10)
     @GetMapping("/mensual/pdf")
     @RequiresPlanFeature(value = "reportes_avanzados", message = "La exportación de reportes a PDF solo está disponible en el plan Premium. Actualice su plan para acceder a esta funcionalidad.")
     public ResponseEntity<byte[]> reporteMensualPdf(
@@ -171,6 +178,7 @@ public class ReporteController {
 
     // ==================== ENDPOINTS DE EXPORTACIÓN EXCEL ====================
 
+    @RateLimited(value = "reportes", cost = 10)
     @GetMapping("/diario/excel")
     @RequiresPlanFeature(value = "reportes_avanzados", message = "La exportación de reportes a Excel solo está disponible en el plan Premium. Actualice su plan para acceder a esta funcionalidad.")
     public ResponseEntity<byte[]> reporteDiarioExcel(
@@ -198,6 +206,7 @@ public class ReporteController {
         }
     }
 
+    @RateLimited(value = "reportes", cost = 10)
     @GetMapping("/semanal/excel")
     @RequiresPlanFeature(value = "reportes_avanzados", message = "La exportación de reportes a Excel solo está disponible en el plan Premium. Actualice su plan para acceder a esta funcionalidad.")
     public ResponseEntity<byte[]> reporteSemanalExcel(
@@ -225,6 +234,7 @@ public class ReporteController {
         }
     }
 
+    @RateLimited(value = "reportes", cost = 10)
     @GetMapping("/mensual/excel")
     @RequiresPlanFeature(value = "reportes_avanzados", message = "La exportación de reportes a Excel solo está disponible en el plan Premium. Actualice su plan para acceder a esta funcionalidad.")
     public ResponseEntity<byte[]> reporteMensualExcel(
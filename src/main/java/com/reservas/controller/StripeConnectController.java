@@ -4,6 +4,7 @@ import com.reservas.dto.response.ApiResponse;
 import com.reservas.entity.StripeConnectedAccount;
 import com.reservas.entity.Usuario;
 import com.reservas.exception.PaymentException;
+import com.reservas.payments.domain.EstadoCuentaConectada;
 import com.reservas.payments.domain.OnboardingLink;
 import com.reservas.payments.dto.CreateConnectedAccountRequest;
 import com.reservas.payments.service.ConnectAccountService;
@@ -171,9 +172,8 @@ public class StripeConnectController {
             Usuario usuario = usuarioRepository.findByEmail(authentication.getName())
                     .orElseThrow(() -> new PaymentException("Usuario no encontrado", "USER_NOT_FOUND"));
 
-            StripeConnectedAccount account = connectAccountService.getAccountByUsuarioId(
-                    usuario.getId().toString()
-            );
+            EstadoCuentaConectada account = connectAccountService.getEstadoCuenta(usuario.getId().toString())
+                    .orElse(null);
 
             if (account == null) {
                 return ResponseEntity.ok(ApiResponse.<Map<String, Object>>builder()
@@ -185,13 +185,13 @@ public class StripeConnectController {
 
             Map<String, Object> response = new HashMap<>();
             response.put("hasAccount", true);
-            response.put("accountId", account.getId().toString());
-            response.put("stripeAccountId", account.getStripeAccountId());
-            response.put("chargesEnabled", account.getChargesEnabled());
-            response.put("payoutsEnabled", account.getPayoutsEnabled());
-            response.put("onboardingCompleted", account.getOnboardingCompleted());
-            response.put("active", account.getActive());
-            response.put("readyForPayments", account.isReadyForPayments());
+            response.put("accountId", account.accountId());
+            response.put("stripeAccountId", account.stripeAccountId());
+            response.put("chargesEnabled", account.chargesEnabled());
+            response.put("payoutsEnabled", account.payoutsEnabled());
+            response.put("onboardingCompleted", account.onboardingCompleted());
+            response.put("active", account.active());
+            response.put("readyForPayments", account.readyForPayments());
 
             return ResponseEntity.ok(ApiResponse.<Map<String, Object>>builder()
                     .success(true)
@@ -274,24 +274,20 @@ public class StripeConnectController {
             Usuario usuario = usuarioRepository.findByEmail(authentication.getName())
                     .orElseThrow(() -> new PaymentException("Usuario no encontrado", "USER_NOT_FOUND"));
 
-            StripeConnectedAccount account = connectAccountService.getAccountByUsuarioId(
-                    usuario.getId().toString()
-            );
-
-            if (account == null) {
-                throw new PaymentException("No se encontró cuenta conectada", "ACCOUNT_NOT_FOUND");
-            }
+            String usuarioId = usuario.getId().toString();
+            EstadoCuentaConectada account = connectAccountService.getEstadoCuenta(usuarioId)
+                    .orElseThrow(() -> new PaymentException("No se encontró cuenta conectada", "ACCOUNT_NOT_FOUND"));
 
-            connectAccountService.syncAccount(account.getStripeAccountId());
+            connectAccountService.syncAccount(account.stripeAccountId());
 
-            // Volver a obtener la cuenta actualizada
-            account = connectAccountService.getAccountByUsuarioId(usuario.getId().toString());
+            // La sincronización deja el estado actualizado en caché
+            account = connectAccountService.getEstadoCuenta(usuarioId).orElseThrow();
 
             Map<String, Object> response = new HashMap<>();
-            response.put("chargesEnabled", account.getChargesEnabled());
-            response.put("payoutsEnabled", account.getPayoutsEnabled());
-            response.put("onboardingCompleted", account.getOnboardingCompleted());
-            response.put("readyForPayments", account.isReadyForPayments());
+            response.put("chargesEnabled", account.chargesEnabled());
+            response.put("payoutsEnabled", account.payoutsEnabled());
+            response.put("onboardingCompleted", account.onboardingCompleted());
+            response.put("readyForPayments", account.readyForPayments());
 
             return ResponseEntity.ok(ApiResponse.<Map<String, Object>>builder()
                     .success(true)
@@ -1,9 +1,13 @@
 package com.reservas.controller;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.reservas.dto.request.CheckoutRequest;
 import com.reservas.dto.response.ApiResponse;
 import com.reservas.dto.response.CheckoutResponse;
+import com.reservas.dto.response.MovimientoPagoResponse;
 import com.reservas.dto.response.PagoResponse;
+import com.reservas.service.IdempotencyService;
+import com.reservas.service.LibroPagosService;
 import com.reservas.service.StripeService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
@@ -31,28 +35,37 @@ import java.util.Map;
 public class StripeController {
 
     private final StripeService stripeService;
+    private final IdempotencyService idempotencyService;
+    private final LibroPagosService libroPagosService;
 
     /**
      * POST /api/pagos/checkout
-     * Crea una sesión de checkout de Stripe
+     * Crea una sesión de checkout de Stripe.
+     * Con la cabecera Idempotency-Key, los reintentos del cliente reciben la misma sesión.
      */
     @PostMapping("/checkout")
-    @Operation(summary = "Crear sesión de checkout", description = "Crea una sesión de pago con Stripe para un plan")
+    @Operation(summary = "Crear sesión de checkout", description = "Crea una sesión de pago con Stripe para un plan. "
+            + "Admite la cabecera Idempotency-Key para reintentar sin crear otra sesión.")
     public ResponseEntity<ApiResponse<CheckoutResponse>> crearCheckout(
             @Valid @RequestBody CheckoutRequest request,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
             Authentication authentication
     ) {
         log.info("[StripeController] POST /api/pagos/checkout - Plan: {} - Usuario: {}",
                 request.getPlan(), authentication.getName());
 
-        CheckoutResponse response = stripeService.crearCheckoutSession(request, authentication.getName());
-
-        return ResponseEntity.status(HttpStatus.CREATED)
-                .body(ApiResponse.<CheckoutResponse>builder()
-                        .success(true)
-                        .message("Sesión de checkout creada exitosamente")
-                        .data(response)
-                        .build());
+        return idempotencyService.ejecutar(authentication.getName(), "pagos.checkout", idempotencyKey, request,
+                new TypeReference<>() {}, claveStripe -> {
+                    CheckoutResponse response = stripeService.crearCheckoutSession(
+                            request, authentication.getName(), idempotencyKey != null ? claveStripe : null);
+
+                    return ResponseEntity.status(HttpStatus.CREATED)
+                            .body(ApiResponse.<CheckoutResponse>builder()
+                                    .success(true)
+                                    .message("Sesión de checkout creada exitosamente")
+                                    .data(response)
+                                    .build());
+                });
     }
 
     /**
@@ -95,6 +108,30 @@ public class StripeController {
                 .build());
     }
 
+    /**
+     * GET /api/pagos/movimientos?antesDe={id}&limite=50
+     * Libro de pagos del negocio (suscripción y Stripe Connect), del más reciente al más
+     * antiguo. Para la página siguiente se envía en antesDe el id del último movimiento.
+     */
+    @GetMapping("/movimientos")
+    @Operation(summary = "Movimientos de pagos", description = "Obtiene los cobros, fallos y reembolsos del negocio, paginados")
+    public ResponseEntity<ApiResponse<List<MovimientoPagoResponse>>> obtenerMovimientos(
+            @RequestParam(required = false) Long antesDe,
+            @RequestParam(defaultValue = "50") int limite,
+            Authentication authentication
+    ) {
+        log.info("[StripeController] GET /api/pagos/movimientos - Usuario: {}", authentication.getName());
+
+        List<MovimientoPagoResponse> movimientos =
+                libroPagosService.obtenerHistorial(authentication.getName(), antesDe, limite);
+
+        return ResponseEntity.ok(ApiResponse.<List<MovimientoPagoResponse>>builder()
+                .success(true)
+                .message("Movimientos obtenidos")
+                .data(movimientos)
+                .build());
+    }
+
     /**
      * GET /api/pagos/estadisticas
      * Obtiene estadísticas de pagos del negocio
@@ -1,9 +1,12 @@
 package com.reservas.controller;
 
-import com.reservas.notifications.service.NotificationService;
+import com.reservas.notifications.service.DeliveryStatusBuffer;
+import com.reservas.notifications.twilio.TwilioFirmaValidator;
 import io.swagger.v3.oas.annotations.Hidden;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -19,6 +22,14 @@ import java.util.Map;
  * - Mensaje entregado
  * - Mensaje leído
  * - Mensaje fallido
+ *
+ * Los estados no se escriben en la petición: se acumulan en DeliveryStatusBuffer y
+ * se aplican a NotificationLog en lotes, para aguantar las ráfagas de callbacks de
+ * las campañas grandes.
+ *
+ * Las rutas son públicas para Spring Security, pero cada petición debe traer una
+ * X-Twilio-Signature válida (TwilioFirmaValidator); si no, se responde 403 sin
+ * tocar el buffer.
  */
 @Slf4j
 @RestController
@@ -27,7 +38,10 @@ import java.util.Map;
 @Hidden
 public class TwilioWebhookController {
 
-    private final NotificationService notificationService;
+    private static final String TWIML_VACIO = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><Response></Response>";
+
+    private final DeliveryStatusBuffer deliveryStatusBuffer;
+    private final TwilioFirmaValidator firmaValidator;
 
     /**
      * POST /api/webhooks/twilio/whatsapp
@@ -36,28 +50,29 @@ public class TwilioWebhookController {
      * IMPORTANTE: Este endpoint debe estar en WebSecurityConfig.permitAll()
      */
     @PostMapping(value = "/whatsapp", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE)
-    public ResponseEntity<String> handleWhatsAppWebhook(@RequestParam Map<String, String> params) {
-        log.info("[Twilio Webhook] WhatsApp event recibido");
-
+    public ResponseEntity<String> handleWhatsAppWebhook(@RequestParam Map<String, String> params,
+                                                        HttpServletRequest request) {
+        if (!firmaValidator.esValida(request, params)) {
+            return rechazar(request);
+        }
         try {
             // Parámetros comunes de Twilio
             String messageSid = params.get("MessageSid");
             String messageStatus = params.get("MessageStatus");
             String from = params.get("From");
             String to = params.get("To");
-            String body = params.get("Body");
 
-            log.info("[Twilio Webhook] MessageSid: {} - Status: {} - From: {} - To: {}",
-                    messageSid, messageStatus, from, to, body);
+            log.debug("[Twilio Webhook] WhatsApp - MessageSid: {} - Status: {} - From: {} - To: {}",
+                    messageSid, messageStatus, from, to);
 
-            // Aquí puedes actualizar el estado de la notificación en tu base de datos
-            // Por ejemplo: notificationService.updateStatus(messageSid, messageStatus);
+            // Los mensajes entrantes no traen MessageStatus y se ignoran
+            registrarEstado(params);
 
-            return ResponseEntity.ok("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Response></Response>");
+            return ResponseEntity.ok(TWIML_VACIO);
 
         } catch (Exception e) {
             log.error("[Twilio Webhook] Error procesando webhook de WhatsApp", e);
-            return ResponseEntity.ok("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Response></Response>");
+            return ResponseEntity.ok(TWIML_VACIO);
         }
     }
 
@@ -66,23 +81,27 @@ public class TwilioWebhookController {
      * Recibe eventos de estado de mensajes SMS desde Twilio
      */
     @PostMapping(value = "/sms", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE)
-    public ResponseEntity<String> handleSmsWebhook(@RequestParam Map<String, String> params) {
-        log.info("[Twilio Webhook] SMS event recibido");
-
+    public ResponseEntity<String> handleSmsWebhook(@RequestParam Map<String, String> params,
+                                                   HttpServletRequest request) {
+        if (!firmaValidator.esValida(request, params)) {
+            return rechazar(request);
+        }
         try {
             String messageSid = params.get("MessageSid");
             String messageStatus = params.get("MessageStatus");
             String from = params.get("From");
             String to = params.get("To");
 
-            log.info("[Twilio Webhook] MessageSid: {} - Status: {} - From: {} - To: {}",
+            log.debug("[Twilio Webhook] SMS - MessageSid: {} - Status: {} - From: {} - To: {}",
                     messageSid, messageStatus, from, to);
 
-            return ResponseEntity.ok("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Response></Response>");
+            registrarEstado(params);
+
+            return ResponseEntity.ok(TWIML_VACIO);
 
         } catch (Exception e) {
             log.error("[Twilio Webhook] Error procesando webhook de SMS", e);
-            return ResponseEntity.ok("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Response></Response>");
+            return ResponseEntity.ok(TWIML_VACIO);
         }
     }
 
@@ -91,26 +110,41 @@ public class TwilioWebhookController {
      * Callback genérico para actualizaciones de estado de mensajes
      */
     @PostMapping(value = "/status", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE)
-    public ResponseEntity<String> handleStatusCallback(@RequestParam Map<String, String> params) {
-        log.info("[Twilio Webhook] Status callback recibido");
-
+    public ResponseEntity<String> handleStatusCallback(@RequestParam Map<String, String> params,
+                                                       HttpServletRequest request) {
+        if (!firmaValidator.esValida(request, params)) {
+            return rechazar(request);
+        }
         try {
             String messageSid = params.get("MessageSid");
             String messageStatus = params.get("MessageStatus");
             String errorCode = params.get("ErrorCode");
             String errorMessage = params.get("ErrorMessage");
 
-            log.info("[Twilio Webhook] MessageSid: {} - Status: {}", messageSid, messageStatus);
+            log.debug("[Twilio Webhook] MessageSid: {} - Status: {}", messageSid, messageStatus);
 
             if (errorCode != null) {
-                log.error("[Twilio Webhook] Error - Code: {} - Message: {}", errorCode, errorMessage);
+                log.warn("[Twilio Webhook] MessageSid: {} - Error - Code: {} - Message: {}",
+                        messageSid, errorCode, errorMessage);
             }
 
-            return ResponseEntity.ok("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Response></Response>");
+            registrarEstado(params);
+
+            return ResponseEntity.ok(TWIML_VACIO);
 
         } catch (Exception e) {
             log.error("[Twilio Webhook] Error procesando status callback", e);
-            return ResponseEntity.ok("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Response></Response>");
+            return ResponseEntity.ok(TWIML_VACIO);
         }
     }
+
+    private ResponseEntity<String> rechazar(HttpServletRequest request) {
+        log.warn("[Twilio Webhook] Firma inválida en {} desde {}", request.getRequestURI(), request.getRemoteAddr());
+        return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+    }
+
+    private void registrarEstado(Map<String, String> params) {
+        deliveryStatusBuffer.registrar(params.get("MessageSid"), params.get("MessageStatus"),
+                params.get("ErrorCode"), params.get("ErrorMessage"));
+    }
 }
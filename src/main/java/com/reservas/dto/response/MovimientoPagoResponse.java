@@ -0,0 +1,52 @@
+package com.reservas.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * DTO para un movimiento del libro de pagos
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovimientoPagoResponse {
+
+    private Long id;
+    private String origen;      // SUSCRIPCION, CONNECT
+    private String referencia;  // Id del Pago o del Payment
+    private String tipo;        // COBRO, FALLO, REEMBOLSO
+    private String moneda;
+    private BigDecimal monto;
+    private BigDecimal comision;
+    private BigDecimal neto;
+    private BigDecimal reembolsado;
+    private LocalDateTime fecha;
+
+    /**
+     * Convierte una entidad MovimientoPago a MovimientoPagoResponse
+     */
+    public static MovimientoPagoResponse fromEntity(com.reservas.entity.MovimientoPago movimiento) {
+        if (movimiento == null) {
+            return null;
+        }
+
+        return MovimientoPagoResponse.builder()
+                .id(movimiento.getId())
+                .origen(movimiento.getOrigen().name())
+                .referencia(movimiento.getReferencia())
+                .tipo(movimiento.getTipo().name())
+                .moneda(movimiento.getMoneda())
+                .monto(movimiento.getMonto())
+                .comision(movimiento.getComision())
+                .neto(movimiento.getNeto())
+                .reembolsado(movimiento.getReembolsado())
+                .fecha(movimiento.getFecha())
+                .build();
+    }
+}
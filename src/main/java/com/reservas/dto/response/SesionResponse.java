@@ -0,0 +1,35 @@
+package com.reservas.dto.response;
+
+import com.reservas.entity.RefreshToken;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Sesión activa de un usuario (un dispositivo con refresh token vigente).
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SesionResponse {
+    private UUID id; // Familia del refresh token: se usa para revocar la sesión
+    private String dispositivo;
+    private String ipAddress;
+    private LocalDateTime ultimoRefresh;
+    private LocalDateTime expiraEn;
+
+    public static SesionResponse fromEntity(RefreshToken token) {
+        return SesionResponse.builder()
+                .id(token.getFamilia())
+                .dispositivo(token.getDispositivo())
+                .ipAddress(token.getIpAddress())
+                .ultimoRefresh(token.getCreatedAt())
+                .expiraEn(token.getExpiraEn())
+                .build();
+    }
+}
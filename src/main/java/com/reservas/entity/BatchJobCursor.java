@@ -0,0 +1,74 @@
+package com.reservas.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Progreso de un job por lotes (ver ChunkJobRunner). Una fila por job.
+ *
+ * El cursor se guarda en la misma transacción que cada lote: si la ejecución se
+ * interrumpe, la siguiente continúa después del último lote confirmado, con el
+ * mismo corte, en lugar de empezar de cero.
+ */
+@Entity
+@Table(name = "tbl_batch_job_cursors")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BatchJobCursor {
+
+    @Id
+    @Column(name = "nombre", length = 100, updatable = false, nullable = false)
+    private String nombre; // Nombre del job
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "estado", nullable = false, length = 20)
+    private Estado estado;
+
+    /**
+     * Clave del último elemento del último lote confirmado. Null = desde el principio.
+     */
+    @Column(name = "ultima_clave", length = 255)
+    private String ultimaClave;
+
+    /**
+     * Momento de referencia de la ejecución (vencimientos, retención...). Se conserva
+     * al reanudar para que la ejecución completa use el mismo criterio.
+     */
+    @Column(name = "corte", nullable = false)
+    private LocalDateTime corte;
+
+    /**
+     * Corte de la última ejecución completada. Los jobs incrementales leen desde aquí
+     * (ver ChunkJob#leer con desde). Null = nunca se completó.
+     */
+    @Column(name = "completado_hasta")
+    private LocalDateTime completadoHasta;
+
+    @Column(name = "procesados", nullable = false)
+    private long procesados;
+
+    @Column(name = "lotes", nullable = false)
+    private int lotes;
+
+    @Column(name = "iniciado_en", nullable = false)
+    private LocalDateTime iniciadoEn;
+
+    @Column(name = "actualizado_en", nullable = false)
+    private LocalDateTime actualizadoEn;
+
+    @Column(name = "ultimo_error", columnDefinition = "TEXT")
+    private String ultimoError;
+
+    public enum Estado {
+        EN_CURSO,    // Ejecutándose o interrumpida: la siguiente ejecución la reanuda
+        FALLIDO,     // Un lote agotó sus reintentos: la siguiente ejecución la reanuda
+        COMPLETADO   // La siguiente ejecución empieza de cero
+    }
+}
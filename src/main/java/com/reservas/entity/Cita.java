@@ -14,7 +14,12 @@ import java.util.ArrayList;
 import java.util.List;
 @Data
 @Entity
-@Table(name = "tbl_citas")
+@Table(
+    name = "tbl_citas",
+    indexes = {
+        @Index(name = "idx_citas_negocio_fecha_hora", columnList = "negocio_id, fecha_hora")
+    }
+)
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
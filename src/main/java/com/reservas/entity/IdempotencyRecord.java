@@ -0,0 +1,91 @@
+package com.reservas.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Petición recibida con cabecera Idempotency-Key y su respuesta (ver IdempotencyService).
+ *
+ * IMPORTANTE:
+ * - (tenant, operacion, idempotency_key) es único: solo la primera petición con una
+ *   clave ejecuta la operación; las repeticiones reciben la respuesta guardada.
+ * - request_hash detecta que se reutiliza la clave con otro cuerpo.
+ * - Mientras está EN_CURSO, bloqueado_hasta acota cuánto espera una repetición a que
+ *   termine la original; si la instancia que la ejecutaba cae, otra puede retomarla.
+ */
+@Entity
+@Table(name = "tbl_idempotency_keys",
+    uniqueConstraints = {
+        @UniqueConstraint(name = "uk_idempotency_keys_clave", columnNames = {"tenant", "operacion", "idempotency_key"})
+    },
+    indexes = {
+        // Limpieza de claves caducadas
+        @Index(name = "idx_idempotency_keys_expira_en", columnList = "expira_en")
+    })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class IdempotencyRecord {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private String id;
+
+    /**
+     * Usuario autenticado que envía la petición (email).
+     */
+    @Column(name = "tenant", nullable = false, length = 255)
+    private String tenant;
+
+    /**
+     * Operación protegida (p. ej. payments.create).
+     */
+    @Column(name = "operacion", nullable = false, length = 100)
+    private String operacion;
+
+    @Column(name = "idempotency_key", nullable = false, length = 255)
+    private String idempotencyKey;
+
+    /**
+     * SHA-256 del cuerpo de la petición.
+     */
+    @Column(name = "request_hash", nullable = false, length = 64)
+    private String requestHash;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "estado", nullable = false, length = 20)
+    private Estado estado;
+
+    @Column(name = "http_status")
+    private Integer httpStatus;
+
+    /**
+     * Cuerpo JSON de la respuesta, tal como se devolvió.
+     */
+    @Column(name = "respuesta", columnDefinition = "TEXT")
+    private String respuesta;
+
+    @Column(name = "bloqueado_hasta")
+    private LocalDateTime bloqueadoHasta;
+
+    @Column(name = "expira_en", nullable = false)
+    private LocalDateTime expiraEn;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    public enum Estado {
+        /** La petición original se está ejecutando */
+        EN_CURSO,
+        /** Respuesta guardada */
+        COMPLETADO
+    }
+}
@@ -0,0 +1,98 @@
+package com.reservas.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Immutable;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Movimiento del libro de pagos: un hecho inmutable sobre un Pago (suscripción) o
+ * un Payment (Stripe Connect).
+ *
+ * La tabla solo admite inserciones (LibroPagosService): un cobro reembolsado no se
+ * modifica, se añade su REEMBOLSO con los importes en negativo. Cada origen,
+ * referencia y tipo aparece una sola vez, por lo que registrar el mismo hecho dos
+ * veces (webhook repetido, reconciliación, backfill) no duplica nada.
+ *
+ * El id es secuencial para paginar el historial en orden de inserción.
+ */
+@Data
+@Entity
+@Immutable
+@Table(name = "tbl_movimientos_pago",
+       uniqueConstraints = @UniqueConstraint(name = "uk_movimiento_pago_origen_referencia_tipo",
+               columnNames = {"origen", "referencia", "tipo"}),
+       indexes = @Index(name = "idx_movimientos_pago_negocio_id", columnList = "negocio_id, id"))
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder(toBuilder = true)
+public class MovimientoPago {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "negocio_id", nullable = false)
+    private UUID negocioId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Origen origen;
+
+    /** Id del Pago o del Payment */
+    @Column(nullable = false, length = 100)
+    private String referencia;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Tipo tipo;
+
+    @Column(nullable = false, length = 3)
+    private String moneda; // MXN, USD
+
+    /** Importe bruto; negativo en los reembolsos */
+    @Column(nullable = false, precision = 12, scale = 2)
+    private BigDecimal monto;
+
+    /** Comisión de la plataforma (solo Connect) */
+    @Column(nullable = false, precision = 12, scale = 2)
+    private BigDecimal comision;
+
+    /** Importe para el negocio (monto - comisión) */
+    @Column(nullable = false, precision = 12, scale = 2)
+    private BigDecimal neto;
+
+    /** Importe devuelto al cliente (solo en REEMBOLSO) */
+    @Column(nullable = false, precision = 12, scale = 2)
+    private BigDecimal reembolsado;
+
+    /** PaymentIntent, Charge o Refund de Stripe, si se conoce */
+    @Column(name = "referencia_stripe", length = 100)
+    private String referenciaStripe;
+
+    /** Momento del hecho (confirmación, fallo o reembolso) */
+    @Column(nullable = false)
+    private LocalDateTime fecha;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    public enum Origen {
+        /** Pago de plan (tbl_pagos) */
+        SUSCRIPCION,
+        /** Cobro a un cliente final en la cuenta conectada (tbl_payments) */
+        CONNECT
+    }
+
+    public enum Tipo {
+        COBRO,
+        FALLO,
+        REEMBOLSO
+    }
+}
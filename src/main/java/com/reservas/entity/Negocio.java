@@ -23,9 +23,12 @@ import java.util.UUID;
     indexes = {
         @Index(name = "idx_negocio_email", columnList = "email"),
         @Index(name = "idx_negocio_stripe_customer_id", columnList = "stripe_customer_id"),
+        @Index(name = "idx_negocio_stripe_subscription_id", columnList = "stripe_subscription_id"),
         @Index(name = "idx_negocio_estado_pago", columnList = "estado_pago"),
         @Index(name = "idx_negocio_plan", columnList = "plan"),
-        @Index(name = "idx_negocio_cuenta_activa", columnList = "cuenta_activa")
+        @Index(name = "idx_negocio_cuenta_activa", columnList = "cuenta_activa"),
+        @Index(name = "idx_negocio_fin_prueba", columnList = "en_periodo_prueba, fecha_fin_prueba"),
+        @Index(name = "idx_negocio_proximo_cobro", columnList = "estado_pago, fecha_proximo_cobro")
     },
     uniqueConstraints = {
         @UniqueConstraint(name = "uk_negocio_email", columnNames = "email"),
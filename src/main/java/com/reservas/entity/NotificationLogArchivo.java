@@ -0,0 +1,58 @@
+package com.reservas.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Bloque archivado de tbl_notification_logs.
+ *
+ * Cada fila guarda un lote de notificaciones antiguas como JSON Lines comprimido con
+ * gzip (ver NotificationRetentionService). Los lotes se archivan en orden de
+ * created_at, así que [desde, hasta] delimita las notificaciones que contiene y
+ * caducar el archivo es borrar unas pocas filas por hasta.
+ */
+@Entity
+@Table(name = "tbl_notification_logs_archivo", indexes = {
+    @Index(name = "idx_notification_logs_archivo_hasta", columnList = "hasta")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class NotificationLogArchivo {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private String id;
+
+    /**
+     * created_at de la primera notificación del bloque.
+     */
+    @Column(name = "desde", nullable = false)
+    private LocalDateTime desde;
+
+    /**
+     * created_at de la última notificación del bloque.
+     */
+    @Column(name = "hasta", nullable = false)
+    private LocalDateTime hasta;
+
+    @Column(name = "filas", nullable = false)
+    private int filas;
+
+    /**
+     * Notificaciones en JSON Lines (NotificationLogArchivado), comprimidas con gzip.
+     */
+    @Column(name = "contenido", nullable = false, columnDefinition = "BYTEA")
+    private byte[] contenido;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,136 @@
+package com.reservas.entity;
+
+import com.reservas.notifications.domain.NotificationChannel;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Notificación pendiente de envío (patrón outbox).
+ *
+ * Se inserta en la misma transacción que el cambio de negocio que la origina, así
+ * que solo existe si ese cambio se confirmó. Un dispatcher en segundo plano la
+ * envía al proveedor, reintenta con backoff exponencial y registra el resultado
+ * final en {@link NotificationLog}.
+ *
+ * IMPORTANTE:
+ * - idempotency_key es única: encolar dos veces la misma notificación no la duplica.
+ * - La misma clave viaja al proveedor (header Idempotency-Key de Resend), así que
+ *   un reintento tras un timeout no produce un segundo email.
+ */
+@Entity
+@Table(name = "tbl_notification_outbox",
+    uniqueConstraints = {
+        @UniqueConstraint(name = "uk_notification_outbox_idempotency_key", columnNames = "idempotency_key")
+    },
+    indexes = {
+        // Cola por próximo intento: el dispatcher solo lee filas pendientes vencidas
+        @Index(name = "idx_notification_outbox_pendientes", columnList = "status, next_attempt_at"),
+        // Purga de las filas ya resueltas (RetencionColasScheduler)
+        @Index(name = "idx_notification_outbox_purga", columnList = "status, created_at")
+    })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class NotificationOutbox {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private String id;
+
+    @Column(name = "idempotency_key", nullable = false, length = 200)
+    private String idempotencyKey;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "channel", nullable = false, length = 20)
+    private NotificationChannel channel;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "notification_type", length = 30)
+    private NotificationLog.NotificationType notificationType;
+
+    /**
+     * Usuario del SaaS que origina la notificación (null si es del sistema).
+     */
+    @Column(name = "usuario_id")
+    private UUID usuarioId;
+
+    @Column(name = "recipient", nullable = false, length = 255)
+    private String recipient;
+
+    @Column(name = "recipient_name", length = 255)
+    private String recipientName;
+
+    @Column(name = "subject", length = 500)
+    private String subject;
+
+    /**
+     * Contenido ya renderizado (HTML para emails).
+     */
+    @Column(name = "content", columnDefinition = "TEXT", nullable = false)
+    private String content;
+
+    /**
+     * El contenido lleva un secreto (contraseña temporal): se borra al resolverse la
+     * notificación y no se copia a NotificationLog.
+     */
+    @Column(name = "sensitive_content", nullable = false)
+    @Builder.Default
+    private boolean sensitiveContent = false;
+
+    @Column(name = "related_entity_id", length = 100)
+    private String relatedEntityId;
+
+    @Column(name = "related_entity_type", length = 50)
+    private String relatedEntityType;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    @Builder.Default
+    private OutboxStatus status = OutboxStatus.PENDING;
+
+    /**
+     * Intentos de envío realizados.
+     */
+    @Column(name = "attempts", nullable = false)
+    @Builder.Default
+    private Integer attempts = 0;
+
+    /**
+     * Momento a partir del cual el dispatcher puede (re)intentar el envío.
+     */
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    private String lastError;
+
+    /**
+     * Registro en tbl_notification_logs del resultado final.
+     */
+    @Column(name = "notification_log_id", length = 36)
+    private String notificationLogId;
+
+    @Column(name = "sent_at")
+    private LocalDateTime sentAt;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    public enum OutboxStatus {
+        /** Pendiente de envío o de reintento */
+        PENDING,
+        /** Aceptada por el proveedor */
+        SENT,
+        /** Agotó los reintentos o el proveedor no está configurado */
+        FAILED
+    }
+}
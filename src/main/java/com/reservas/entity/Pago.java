@@ -107,4 +107,8 @@ public class Pago {
     public boolean isFallido() {
         return "failed".equals(estado);
     }
+
+    public boolean isReembolsado() {
+        return "refunded".equals(estado);
+    }
 }
@@ -10,7 +10,13 @@ import org.hibernate.annotations.CreationTimestamp;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "tbl_recordatorios")
+@Table(
+    name = "tbl_recordatorios",
+    indexes = {
+        // Cola por momento de envío: el scheduler solo lee filas vencidas
+        @Index(name = "idx_recordatorios_pendientes_scheduled", columnList = "enviado, scheduled_at")
+    }
+)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -34,6 +40,13 @@ public class Recordatorio {
 
     private LocalDateTime fechaEnvio;
 
+    /**
+     * Momento en que debe enviarse (se calcula al crear el recordatorio).
+     * null = ya no está programado (cita cancelada o pasada).
+     */
+    @Column(name = "scheduled_at")
+    private LocalDateTime scheduledAt;
+
     @CreationTimestamp
     @Column(nullable = false, updatable = false)
     private LocalDateTime createdAt;
@@ -0,0 +1,72 @@
+package com.reservas.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Refresh token de una sesión (un registro por dispositivo y rotación).
+ *
+ * El valor del token nunca se guarda: solo su hash SHA-256. Cada uso rota el
+ * token (se revoca y se emite uno nuevo de la misma familia). Si llega un token
+ * ya revocado se revoca la familia completa, porque indica que fue robado.
+ */
+@Data
+@Entity
+@Table(
+    name = "tbl_refresh_tokens",
+    indexes = {
+        @Index(name = "idx_refresh_token_usuario", columnList = "usuario_id"),
+        @Index(name = "idx_refresh_token_familia", columnList = "familia"),
+        @Index(name = "idx_refresh_token_expira_en", columnList = "expira_en")
+    },
+    uniqueConstraints = {
+        @UniqueConstraint(name = "uk_refresh_token_hash", columnNames = "token_hash")
+    }
+)
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RefreshToken {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    @Column(name = "id", updatable = false, nullable = false)
+    private UUID id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "usuario_id", nullable = false, foreignKey = @ForeignKey(name = "fk_refresh_token_usuario"))
+    private Usuario usuario;
+
+    @Column(name = "token_hash", nullable = false, length = 64)
+    private String tokenHash; // SHA-256 en hexadecimal
+
+    @Column(name = "familia", nullable = false)
+    private UUID familia; // Sesión/dispositivo: se conserva en cada rotación
+
+    @Column(name = "dispositivo", length = 255)
+    private String dispositivo; // User-Agent del cliente
+
+    @Column(name = "ip_address", length = 45)
+    private String ipAddress;
+
+    @Column(name = "expira_en", nullable = false)
+    private LocalDateTime expiraEn;
+
+    @Column(name = "revocado_en")
+    private LocalDateTime revocadoEn;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+
+    public boolean isActivo(LocalDateTime ahora) {
+        return revocadoEn == null && expiraEn.isAfter(ahora);
+    }
+}
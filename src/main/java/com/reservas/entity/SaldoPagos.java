@@ -0,0 +1,79 @@
+package com.reservas.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Acumulado del libro de pagos por negocio, origen y moneda.
+ *
+ * Se actualiza con un UPDATE atómico (total = total + importe) en la misma
+ * transacción que inserta cada MovimientoPago, así que las estadísticas leen una
+ * fila en lugar de recorrer el historial.
+ */
+@Data
+@Entity
+@Table(name = "tbl_saldos_pago",
+       uniqueConstraints = @UniqueConstraint(name = "uk_saldo_pago_negocio_origen_moneda",
+               columnNames = {"negocio_id", "origen", "moneda"}))
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SaldoPagos {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(name = "negocio_id", nullable = false)
+    private UUID negocioId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private MovimientoPago.Origen origen;
+
+    @Column(nullable = false, length = 3)
+    private String moneda;
+
+    @Column(nullable = false)
+    @Builder.Default
+    private Long cobros = 0L;
+
+    @Column(nullable = false)
+    @Builder.Default
+    private Long fallos = 0L;
+
+    @Column(nullable = false)
+    @Builder.Default
+    private Long reembolsos = 0L;
+
+    @Column(nullable = false, precision = 14, scale = 2)
+    @Builder.Default
+    private BigDecimal monto = BigDecimal.ZERO;
+
+    @Column(nullable = false, precision = 14, scale = 2)
+    @Builder.Default
+    private BigDecimal comision = BigDecimal.ZERO;
+
+    @Column(nullable = false, precision = 14, scale = 2)
+    @Builder.Default
+    private BigDecimal neto = BigDecimal.ZERO;
+
+    @Column(nullable = false, precision = 14, scale = 2)
+    @Builder.Default
+    private BigDecimal reembolsado = BigDecimal.ZERO;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    /** Cobros que siguen vigentes (cada reembolso anula un cobro) */
+    public long getCobrosVigentes() {
+        return cobros - reembolsos;
+    }
+}
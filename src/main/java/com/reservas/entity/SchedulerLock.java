@@ -0,0 +1,32 @@
+package com.reservas.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Lease de un job programado. Una fila por job: la instancia que consigue mover
+ * bloqueado_hasta al futuro es la única que lo ejecuta en todo el clúster.
+ */
+@Data
+@Entity
+@Table(name = "tbl_scheduler_locks")
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SchedulerLock {
+
+    @Id
+    @Column(name = "nombre", length = 100, updatable = false, nullable = false)
+    private String nombre; // Nombre del job
+
+    @Column(name = "bloqueado_hasta", nullable = false)
+    private LocalDateTime bloqueadoHasta;
+
+    @Column(name = "bloqueado_en", nullable = false)
+    private LocalDateTime bloqueadoEn;
+
+    @Column(name = "bloqueado_por", nullable = false, length = 255)
+    private String bloqueadoPor; // Instancia que tiene o tuvo el lease
+}
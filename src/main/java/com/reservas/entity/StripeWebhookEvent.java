@@ -0,0 +1,108 @@
+package com.reservas.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Evento de Stripe recibido por webhook y pendiente de procesar (inbox).
+ *
+ * El controller solo verifica la firma y guarda el evento; un worker en segundo
+ * plano lo procesa después con reintentos y backoff.
+ *
+ * IMPORTANTE:
+ * - event_id es único: Stripe entrega cada evento al menos una vez y los
+ *   reenvíos del mismo evento no se insertan de nuevo.
+ * - object_id agrupa los eventos del mismo objeto (suscripción, payment intent...):
+ *   se procesan en el orden en que Stripe los generó, uno a la vez.
+ */
+@Entity
+@Table(name = "tbl_stripe_webhook_events",
+    uniqueConstraints = {
+        @UniqueConstraint(name = "uk_stripe_webhook_events_event_id", columnNames = "event_id")
+    },
+    indexes = {
+        // Cola por próximo intento: el worker solo lee eventos pendientes vencidos
+        @Index(name = "idx_stripe_webhook_events_pendientes", columnList = "status, next_attempt_at"),
+        // Orden por objeto: comprobar si hay un evento anterior del mismo objeto sin procesar
+        @Index(name = "idx_stripe_webhook_events_objeto", columnList = "object_id, status"),
+        // Purga de los eventos ya resueltos (RetencionColasScheduler)
+        @Index(name = "idx_stripe_webhook_events_purga", columnList = "status, created_at")
+    })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StripeWebhookEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private String id;
+
+    /**
+     * ID del evento en Stripe (evt_...).
+     */
+    @Column(name = "event_id", nullable = false, length = 255)
+    private String eventId;
+
+    @Column(name = "type", nullable = false, length = 100)
+    private String type;
+
+    /**
+     * Objeto al que pertenece el evento, para ordenar su procesamiento
+     * (sub_..., pi_..., cs_..., acct_...). Null si no se pudo determinar.
+     */
+    @Column(name = "object_id", length = 255)
+    private String objectId;
+
+    /**
+     * Cuerpo del webhook tal como lo envió Stripe.
+     */
+    @Column(name = "payload", columnDefinition = "TEXT", nullable = false)
+    private String payload;
+
+    /**
+     * Momento en que Stripe generó el evento (event.created).
+     */
+    @Column(name = "stripe_created_at", nullable = false)
+    private LocalDateTime stripeCreatedAt;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    @Builder.Default
+    private EventStatus status = EventStatus.PENDING;
+
+    @Column(name = "attempts", nullable = false)
+    @Builder.Default
+    private Integer attempts = 0;
+
+    /**
+     * Momento a partir del cual el worker puede (re)intentar procesarlo.
+     */
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    private String lastError;
+
+    @Column(name = "processed_at")
+    private LocalDateTime processedAt;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    public enum EventStatus {
+        /** Pendiente de procesar o de reintento */
+        PENDING,
+        /** Procesado correctamente */
+        PROCESSED,
+        /** Agotó los reintentos */
+        FAILED
+    }
+}
@@ -111,6 +111,17 @@ public class GlobalExceptionHandler {
                     .build());
   }
 
+  @ExceptionHandler(IdempotencyException.class)
+  public ResponseEntity<ApiResponse> handleIdempotencyException(
+          IdempotencyException ex, WebRequest request) {
+    log.warn("Idempotency-Key rechazada: {}", ex.getMessage());
+    return ResponseEntity.status(ex.getStatus())
+            .body(ApiResponse.builder()
+                    .success(false)
+                    .message(ex.getMessage())
+                    .build());
+  }
+
   @ExceptionHandler(IllegalArgumentException.class)
   public ResponseEntity<ApiResponse> handleIllegalArgumentException(
           IllegalArgumentException ex, WebRequest request) {
@@ -0,0 +1,21 @@
+package com.reservas.exception;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Petición con Idempotency-Key que no se puede atender: la clave se reutilizó con
+ * otro cuerpo (422) o la petición original sigue en curso (409).
+ */
+public class IdempotencyException extends RuntimeException {
+
+    private final HttpStatus status;
+
+    public IdempotencyException(String message, HttpStatus status) {
+        super(message);
+        this.status = status;
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+}
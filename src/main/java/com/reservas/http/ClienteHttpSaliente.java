@@ -0,0 +1,194 @@
+package com.reservas.http;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cliente HTTP compartido para llamadas a APIs externas (Resend y similares).
+ *
+ * Un único java.net.http.HttpClient para toda la aplicación: las conexiones quedan
+ * abiertas (keep-alive) y se reutilizan, así que no hay un handshake TLS por petición.
+ * Sobre él:
+ * - Timeouts de conexión y de respuesta (http.saliente.*).
+ * - Límite de conexiones simultáneas por host; si el límite sigue lleno tras
+ *   http.saliente.espera-max, la petición falla en lugar de acumularse. El hueco se
+ *   libera con el cuerpo de la respuesta ya leído, cuando la conexión vuelve al pool.
+ * - Métricas por host: latencia (histograma), peticiones en curso, espera por
+ *   un hueco y peticiones rechazadas por saturación.
+ *
+ * Los errores se reportan como en RestTemplate (RestClientException y subclases).
+ */
+@Component
+@Slf4j
+public class ClienteHttpSaliente {
+
+    /** Cabeceras que gestiona el propio HttpClient y no se pueden fijar a mano */
+    private static final Set<String> CABECERAS_RESTRINGIDAS = Set.of(
+            "connection", "content-length", "expect", "host", "upgrade");
+
+    private final MeterRegistry meterRegistry;
+    private final Duration readTimeout;
+    private final int maxPorHost;
+    private final Duration esperaMax;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpClient httpClient;
+    private final RestTemplate restTemplate;
+
+    /** Huecos libres por host */
+    private final Map<String, Semaphore> huecos = new ConcurrentHashMap<>();
+
+    public ClienteHttpSaliente(MeterRegistry meterRegistry,
+                               @Value("${http.saliente.connect-timeout:PT5S}") Duration connectTimeout,
+                               @Value("${http.saliente.read-timeout:PT20S}") Duration readTimeout,
+                               @Value("${http.saliente.max-por-host:20}") int maxPorHost,
+                               @Value("${http.saliente.espera-max:PT5S}") Duration esperaMax) {
+        this.meterRegistry = meterRegistry;
+        this.readTimeout = readTimeout;
+        this.maxPorHost = maxPorHost;
+        this.esperaMax = esperaMax;
+
+        // HTTP/1.1: una petición por conexión, así el límite por host es también
+        // el máximo de conexiones abiertas hacia ese host
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(connectTimeout)
+                .executor(executor)
+                .build();
+        this.restTemplate = new RestTemplate((uri, method) -> new PeticionHttpJdk(this, uri, method));
+
+        log.info("[ClienteHttpSaliente] Inicializado (connectTimeout={}, readTimeout={}, maxPorHost={})",
+                connectTimeout, readTimeout, maxPorHost);
+    }
+
+    /**
+     * RestTemplate compartido, con el pool, los timeouts y las métricas de este cliente.
+     */
+    public RestTemplate restTemplate() {
+        return restTemplate;
+    }
+
+    public <T> ResponseEntity<T> postForEntity(String url, HttpEntity<?> entity, Class<T> tipo) {
+        return restTemplate.postForEntity(url, entity, tipo);
+    }
+
+    /**
+     * POST asíncrono: se ejecuta en un hilo virtual y no bloquea al llamador.
+     * El future termina con la misma RestClientException que lanzaría la versión síncrona.
+     */
+    public <T> CompletableFuture<ResponseEntity<T>> postForEntityAsync(String url, HttpEntity<?> entity, Class<T> tipo) {
+        return CompletableFuture.supplyAsync(() -> restTemplate.postForEntity(url, entity, tipo), executor);
+    }
+
+    /**
+     * Ejecuta una petición respetando el límite por host y registra su latencia.
+     * La respuesta se lee completa (JSON pequeño) antes de liberar el hueco.
+     */
+    HttpResponse<byte[]> ejecutar(URI uri, HttpMethod method, HttpHeaders headers, byte[] body)
+            throws IOException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .timeout(readTimeout)
+                .method(method.name(), body.length > 0
+                        ? HttpRequest.BodyPublishers.ofByteArray(body)
+                        : HttpRequest.BodyPublishers.noBody());
+        headers.forEach((nombre, valores) -> {
+            if (!CABECERAS_RESTRINGIDAS.contains(nombre.toLowerCase())) {
+                valores.forEach(valor -> builder.header(nombre, valor));
+            }
+        });
+
+        String host = uri.getHost();
+        Semaphore semaforo = huecos.computeIfAbsent(host, this::crearSemaforo);
+        adquirir(semaforo, host);
+
+        String estado = "IO_ERROR";
+        long t0 = System.nanoTime();
+        try {
+            HttpResponse<byte[]> response = httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofByteArray());
+            estado = String.valueOf(response.statusCode());
+            return response;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrumpido esperando respuesta de " + host, e);
+        } finally {
+            semaforo.release();
+            Timer.builder("http.client.saliente")
+                    .description("Latencia de las llamadas HTTP salientes")
+                    .tag("host", host)
+                    .tag("metodo", method.name())
+                    .tag("estado", estado)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - t0, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void adquirir(Semaphore semaforo, String host) throws IOException {
+        long t0 = System.nanoTime();
+        boolean adquirido;
+        try {
+            adquirido = semaforo.tryAcquire(esperaMax.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrumpido esperando conexión con " + host, e);
+        }
+        Timer.builder("http.client.saliente.espera")
+                .description("Tiempo esperando un hueco libre hacia el host")
+                .tag("host", host)
+                .register(meterRegistry)
+                .record(System.nanoTime() - t0, TimeUnit.NANOSECONDS);
+
+        if (!adquirido) {
+            Counter.builder("http.client.saliente.saturado")
+                    .description("Peticiones rechazadas porque el límite por host siguió lleno")
+                    .tag("host", host)
+                    .register(meterRegistry)
+                    .increment();
+            log.warn("[ClienteHttpSaliente] Límite de {} peticiones simultáneas a {} lleno tras {}",
+                    maxPorHost, host, esperaMax);
+            throw new IOException("Límite de peticiones simultáneas a " + host + " alcanzado");
+        }
+    }
+
+    private Semaphore crearSemaforo(String host) {
+        Semaphore semaforo = new Semaphore(maxPorHost);
+        Gauge.builder("http.client.saliente.en-curso", semaforo, s -> maxPorHost - s.availablePermits())
+                .description("Peticiones en curso hacia el host")
+                .tag("host", host)
+                .register(meterRegistry);
+        return semaforo;
+    }
+
+    @PreDestroy
+    void cerrar() {
+        // Espera a las peticiones en curso y cierra las conexiones abiertas
+        httpClient.close();
+        executor.shutdownNow();
+    }
+}
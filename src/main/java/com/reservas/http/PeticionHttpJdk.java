@@ -0,0 +1,57 @@
+package com.reservas.http;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+
+/**
+ * Petición de RestTemplate que se ejecuta con el HttpClient de ClienteHttpSaliente.
+ *
+ * El cuerpo se acumula en memoria y se envía con longitud conocida: las APIs que
+ * usamos reciben JSON pequeño y así la conexión vuelve limpia al pool.
+ */
+class PeticionHttpJdk implements ClientHttpRequest {
+
+    private final ClienteHttpSaliente cliente;
+    private final URI uri;
+    private final HttpMethod method;
+    private final HttpHeaders headers = new HttpHeaders();
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream(1024);
+
+    PeticionHttpJdk(ClienteHttpSaliente cliente, URI uri, HttpMethod method) {
+        this.cliente = cliente;
+        this.uri = uri;
+        this.method = method;
+    }
+
+    @Override
+    public HttpMethod getMethod() {
+        return method;
+    }
+
+    @Override
+    public URI getURI() {
+        return uri;
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        return headers;
+    }
+
+    @Override
+    public OutputStream getBody() {
+        return body;
+    }
+
+    @Override
+    public ClientHttpResponse execute() throws IOException {
+        return new RespuestaHttpJdk(cliente.ejecutar(uri, method, headers, body.toByteArray()));
+    }
+}
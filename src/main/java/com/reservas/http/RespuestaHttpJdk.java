@@ -0,0 +1,59 @@
+package com.reservas.http;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+
+/**
+ * Adapta la respuesta del HttpClient del JDK a ClientHttpResponse.
+ * ClienteHttpSaliente ya leyó el cuerpo completo (la conexión ya volvió al pool),
+ * así que cerrarla no tiene nada que liberar.
+ */
+class RespuestaHttpJdk implements ClientHttpResponse {
+
+    private final HttpResponse<byte[]> response;
+    private final HttpHeaders headers = new HttpHeaders();
+    private final InputStream body;
+
+    RespuestaHttpJdk(HttpResponse<byte[]> response) {
+        this.response = response;
+        this.body = new ByteArrayInputStream(response.body());
+        response.headers().map().forEach((nombre, valores) -> {
+            // HTTP/2 devuelve pseudo-cabeceras (":status") que no son cabeceras reales
+            if (!nombre.startsWith(":")) {
+                headers.addAll(nombre, valores);
+            }
+        });
+    }
+
+    @Override
+    public HttpStatusCode getStatusCode() {
+        return HttpStatusCode.valueOf(response.statusCode());
+    }
+
+    @Override
+    public String getStatusText() {
+        HttpStatus status = HttpStatus.resolve(response.statusCode());
+        return status != null ? status.getReasonPhrase() : "";
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        return headers;
+    }
+
+    @Override
+    public InputStream getBody() {
+        return body;
+    }
+
+    @Override
+    public void close() {
+        // El cuerpo está en memoria
+    }
+}
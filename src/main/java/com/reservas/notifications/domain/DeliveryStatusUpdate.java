@@ -0,0 +1,49 @@
+package com.reservas.notifications.domain;
+
+import com.reservas.entity.NotificationLog;
+
+import java.time.LocalDateTime;
+
+/**
+ * Estado de entrega reportado por el proveedor (callback de Twilio) para un mensaje.
+ *
+ * @param status       Estado ya traducido a NotificationLog
+ * @param receivedAt   Momento en que llegó el callback
+ * @param errorCode    Código de error del proveedor (solo si falló)
+ * @param errorMessage Mensaje de error del proveedor (solo si falló)
+ */
+public record DeliveryStatusUpdate(NotificationLog.NotificationStatus status,
+                                   LocalDateTime receivedAt,
+                                   String errorCode,
+                                   String errorMessage) {
+
+    /**
+     * Orden del ciclo de vida de un mensaje. Los callbacks pueden llegar desordenados
+     * (un "sent" después del "delivered"): un estado solo reemplaza a otro de menor orden.
+     */
+    public static int orden(NotificationLog.NotificationStatus status) {
+        if (status == null) {
+            return -1;
+        }
+        return switch (status) {
+            case PENDING -> 0;
+            case QUEUED -> 1;
+            case SENT -> 2;
+            case FAILED, BOUNCED -> 3;
+            case DELIVERED -> 4;
+            case READ -> 5;
+            case CLICKED -> 6;
+            case UNSUBSCRIBED -> 7;
+        };
+    }
+
+    /**
+     * Combina dos actualizaciones del mismo mensaje quedándose con la más avanzada.
+     */
+    public DeliveryStatusUpdate combinar(DeliveryStatusUpdate otra) {
+        if (otra == null) {
+            return this;
+        }
+        return orden(otra.status) > orden(status) ? otra : this;
+    }
+}
@@ -0,0 +1,40 @@
+package com.reservas.notifications.domain;
+
+import com.reservas.entity.NotificationLog;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Copia plana de un NotificationLog para el archivo comprimido (una línea JSON por
+ * notificación). Lleva el id del usuario en lugar de la entidad para no cargarla.
+ */
+public record NotificationLogArchivado(String id,
+                                       UUID usuarioId,
+                                       NotificationChannel channel,
+                                       NotificationLog.NotificationProvider provider,
+                                       String providerMessageId,
+                                       String recipient,
+                                       String recipientName,
+                                       String subject,
+                                       String content,
+                                       String templateId,
+                                       String templateVariables,
+                                       NotificationLog.NotificationStatus status,
+                                       NotificationLog.NotificationType notificationType,
+                                       String relatedEntityId,
+                                       String relatedEntityType,
+                                       Boolean sentSuccessfully,
+                                       String errorMessage,
+                                       String errorCode,
+                                       Integer retryCount,
+                                       LocalDateTime sentAt,
+                                       LocalDateTime deliveredAt,
+                                       LocalDateTime readAt,
+                                       LocalDateTime clickedAt,
+                                       LocalDateTime bouncedAt,
+                                       String bounceReason,
+                                       String metadata,
+                                       LocalDateTime createdAt,
+                                       LocalDateTime updatedAt) {
+}
@@ -34,4 +34,15 @@ public class SendNotificationRequest {
     private String relatedEntityId;
     private String relatedEntityType;
     private java.util.Map<String, String> metadata;
+
+    /**
+     * Clave de idempotencia que se reenvía al proveedor cuando la soporta
+     * (Resend: header Idempotency-Key). La asigna el outbox.
+     */
+    private String idempotencyKey;
+
+    /**
+     * El contenido lleva un secreto: NotificationLog guarda un texto fijo en su lugar.
+     */
+    private boolean sensitiveContent;
 }
@@ -1,39 +1,55 @@
 package com.reservas.notifications.resend;
 
 import com.reservas.exception.NotificationException;
+import com.reservas.http.ClienteHttpSaliente;
 import com.reservas.notifications.domain.Notification;
 import com.reservas.notifications.domain.NotificationChannel;
 import com.reservas.notifications.domain.NotificationResult;
 import com.reservas.notifications.dto.SendNotificationRequest;
 import com.reservas.notifications.provider.NotificationProvider;
+import com.reservas.notifications.resilience.ProteccionProveedores;
 import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestClientException;
-import org.springframework.web.client.RestTemplate;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
 
 /**
  * Implementación de NotificationProvider usando Resend para Email.
  *
  * Utiliza la API REST de Resend directamente:
- * - POST https://api.resend.com/emails
+ * - POST https://api.resend.com/emails        (un email)
+ * - POST https://api.resend.com/emails/batch  (hasta 100 emails por llamada)
  * - Authorization: Bearer {API_KEY}
  *
+ * Las llamadas salen por ClienteHttpSaliente (conexiones reutilizadas, timeouts,
+ * límite por host y métricas de latencia) y pasan por el circuit breaker de Resend:
+ * con el circuito abierto fallan al momento con PROVIDER_UNAVAILABLE.
+ *
  * Documentación: https://resend.com/docs/api-reference/emails/send-email
+ *                https://resend.com/docs/api-reference/emails/send-batch-emails
  */
 @Slf4j
 @Service("resendEmailProvider")
+@RequiredArgsConstructor
 public class ResendEmailProvider implements NotificationProvider {
 
-    private static final String RESEND_API_URL = "https://api.resend.com/emails";
+    /** Máximo de emails por llamada al endpoint batch de Resend */
+    static final int MAX_POR_BATCH = 100;
+
+    @Value("${resend.api.url:https://api.resend.com}")
+    private String apiUrl;
 
     @Value("${resend.api.key:}")
     private String resendApiKey;
@@ -44,12 +60,18 @@ public class ResendEmailProvider implements NotificationProvider {
     @Value("${resend.from.name:Cita Click}")
     private String fromName;
 
-    private RestTemplate restTemplate;
+    /** Bloques de un mismo sendBatch enviados a la vez (Resend limita peticiones por segundo) */
+    @Value("${resend.batch.concurrencia-max:4}")
+    private int concurrenciaBatch;
+
+    private final ClienteHttpSaliente clienteHttp;
+
+    private final ProteccionProveedores proteccionProveedores;
+
     private boolean configured = false;
 
     @PostConstruct
     public void init() {
-        this.restTemplate = new RestTemplate();
         if (resendApiKey != null && !resendApiKey.isBlank()) {
             configured = true;
             log.info("[Resend] Provider inicializado correctamente - From: {} <{}>", fromName, fromEmail);
@@ -70,21 +92,15 @@ public class ResendEmailProvider implements NotificationProvider {
         try {
             log.info("[Resend] Enviando email a: {}", request.getRecipient());
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.setBearerAuth(resendApiKey);
-            headers.setContentType(MediaType.APPLICATION_JSON);
-
-            String subject = request.getSubject() != null ? request.getSubject() : "Notificación";
-            String htmlContent = request.getContent() != null ? request.getContent() : "";
-
-            Map<String, Object> body = new HashMap<>();
-            body.put("from", fromName + " <" + fromEmail + ">");
-            body.put("to", List.of(request.getRecipient()));
-            body.put("subject", subject);
-            body.put("html", htmlContent);
+            HttpHeaders headers = cabeceras();
+            if (request.getIdempotencyKey() != null) {
+                // Resend descarta el duplicado si un reintento llega con la misma clave (24 h)
+                headers.set("Idempotency-Key", request.getIdempotencyKey());
+            }
 
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(body, headers);
-            ResponseEntity<Map> response = restTemplate.postForEntity(RESEND_API_URL, entity, Map.class);
+            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(cuerpo(request), headers);
+            ResponseEntity<Map> response = proteccionProveedores.resend()
+                    .ejecutar(() -> clienteHttp.postForEntity(apiUrl + "/emails", entity, Map.class));
 
             if (response.getStatusCode().is2xxSuccessful()) {
                 String messageId = response.getBody() != null ? (String) response.getBody().get("id") : null;
@@ -110,6 +126,9 @@ public class ResendEmailProvider implements NotificationProvider {
                         .build();
             }
 
+        } catch (NotificationException e) {
+            log.warn("[Resend] Email a {} no enviado: {}", request.getRecipient(), e.getMessage());
+            throw e;
         } catch (RestClientException e) {
             log.error("[Resend] ❌ Error HTTP enviando email a {}: {}", request.getRecipient(), e.getMessage(), e);
 
@@ -127,33 +146,134 @@ public class ResendEmailProvider implements NotificationProvider {
         }
     }
 
+    /**
+     * Envía el lote con el endpoint batch de Resend: bloques de hasta 100 emails,
+     * varios bloques en paralelo (asíncronos, acotado por concurrencia-max).
+     * Un bloque que falla marca como fallidos solo sus emails.
+     *
+     * @return Un resultado por request, en el mismo orden
+     */
     @Override
     public List<NotificationResult> sendBatch(List<SendNotificationRequest> requests) {
-        List<NotificationResult> results = new ArrayList<>();
+        if (!configured) {
+            throw new NotificationException(
+                    "Resend no está configurado",
+                    "RESEND_NOT_CONFIGURED"
+            );
+        }
+        if (requests.isEmpty()) {
+            return List.of();
+        }
+
+        List<List<SendNotificationRequest>> bloques = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i += MAX_POR_BATCH) {
+            bloques.add(requests.subList(i, Math.min(i + MAX_POR_BATCH, requests.size())));
+        }
+
+        // Cada bloque se envía de forma asíncrona; el hilo que llama solo espera
+        // a que haya hueco (concurrencia-max) y después a los resultados.
+        Semaphore permisos = new Semaphore(Math.max(1, concurrenciaBatch));
+        List<CompletableFuture<List<NotificationResult>>> pendientes = new ArrayList<>(bloques.size());
+        for (List<SendNotificationRequest> bloque : bloques) {
+            permisos.acquireUninterruptibly();
+            pendientes.add(enviarBloque(bloque).whenComplete((r, e) -> permisos.release()));
+        }
 
-        for (SendNotificationRequest request : requests) {
+        List<NotificationResult> results = new ArrayList<>(requests.size());
+        for (int i = 0; i < bloques.size(); i++) {
             try {
-                NotificationResult result = send(request);
-                results.add(result);
+                results.addAll(pendientes.get(i).join());
             } catch (Exception e) {
-                log.error("[Resend] Error en batch para {}: {}", request.getRecipient(), e.getMessage());
-
-                results.add(NotificationResult.builder()
-                        .success(false)
-                        .recipient(request.getRecipient())
-                        .channel(NotificationChannel.EMAIL)
-                        .errorMessage(e.getMessage())
-                        .build());
+                results.addAll(fallidos(bloques.get(i), null, e.getMessage()));
             }
         }
 
-        log.info("[Resend] Batch completado - Total: {} - Exitosos: {}",
+        log.info("[Resend] Batch completado - Total: {} - Bloques: {} - Exitosos: {}",
                 results.size(),
+                bloques.size(),
                 results.stream().filter(NotificationResult::getSuccess).count());
 
         return results;
     }
 
+    /**
+     * Una llamada asíncrona a /emails/batch. Resend devuelve los IDs en el orden de los emails enviados.
+     * El future nunca termina con error: un fallo marca como fallidos los emails del bloque.
+     */
+    private CompletableFuture<List<NotificationResult>> enviarBloque(List<SendNotificationRequest> bloque) {
+        List<Map<String, Object>> body = bloque.stream().map(this::cuerpo).toList();
+        HttpEntity<List<Map<String, Object>>> entity = new HttpEntity<>(body, cabeceras());
+
+        return proteccionProveedores.resend()
+                .ejecutarAsync(() -> clienteHttp.postForEntityAsync(apiUrl + "/emails/batch", entity, Map.class))
+                .handle((response, error) -> {
+                    if (error != null) {
+                        Throwable causa = error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause() : error;
+                        if (causa instanceof NotificationException e) {
+                            log.warn("[Resend] Bloque de {} emails no enviado: {}", bloque.size(), e.getMessage());
+                            return fallidos(bloque, e.getErrorCode(), e.getMessage());
+                        }
+                        log.error("[Resend] ❌ Error HTTP enviando bloque de {} emails: {}", bloque.size(), causa.getMessage());
+                        return fallidos(bloque, null, "Error de comunicación con Resend: " + causa.getMessage());
+                    }
+                    return resultadosBloque(bloque, response);
+                });
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<NotificationResult> resultadosBloque(List<SendNotificationRequest> bloque, ResponseEntity<Map> response) {
+        if (!response.getStatusCode().is2xxSuccessful() || response.getBody() == null) {
+            log.error("[Resend] ❌ Error enviando bloque de {} emails - Status: {}",
+                    bloque.size(), response.getStatusCode());
+            return fallidos(bloque, response.getStatusCode().toString(), "Error HTTP al enviar batch: " + response.getStatusCode());
+        }
+
+        List<Map<String, Object>> data = (List<Map<String, Object>>) response.getBody().get("data");
+        LocalDateTime ahora = LocalDateTime.now();
+        List<NotificationResult> results = new ArrayList<>(bloque.size());
+        for (int i = 0; i < bloque.size(); i++) {
+            String messageId = data != null && i < data.size() ? (String) data.get(i).get("id") : null;
+            results.add(NotificationResult.builder()
+                    .success(true)
+                    .providerId(messageId)
+                    .recipient(bloque.get(i).getRecipient())
+                    .channel(NotificationChannel.EMAIL)
+                    .message("Email enviado exitosamente")
+                    .sentAt(ahora)
+                    .build());
+        }
+        return results;
+    }
+
+    private HttpHeaders cabeceras() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setBearerAuth(resendApiKey);
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return headers;
+    }
+
+    private Map<String, Object> cuerpo(SendNotificationRequest request) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("from", fromName + " <" + fromEmail + ">");
+        body.put("to", List.of(request.getRecipient()));
+        body.put("subject", request.getSubject() != null ? request.getSubject() : "Notificación");
+        body.put("html", request.getContent() != null ? request.getContent() : "");
+        return body;
+    }
+
+    private static List<NotificationResult> fallidos(List<SendNotificationRequest> bloque, String codigo, String error) {
+        return bloque.stream()
+                .map(request -> NotificationResult.builder()
+                        .success(false)
+                        .recipient(request.getRecipient())
+                        .channel(NotificationChannel.EMAIL)
+                        .errorCode(codigo)
+                        .errorMessage(error)
+                        .build())
+                .toList();
+    }
+
     @Override
     public Notification getStatus(String notificationId) {
         // Resend proporciona tracking vía webhooks, no mediante polling
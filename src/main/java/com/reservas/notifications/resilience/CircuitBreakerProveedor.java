@@ -0,0 +1,295 @@
+package com.reservas.notifications.resilience;
+
+import com.reservas.exception.NotificationException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker y bulkhead para las llamadas a un proveedor externo (Resend, Twilio).
+ *
+ * - Bulkhead: como máximo maxConcurrentes llamadas a la vez; si no hay hueco tras
+ *   esperaMax, la llamada se rechaza en lugar de bloquear otro hilo más.
+ * - Circuit breaker: ventana con las últimas N llamadas. Si hay al menos minimoLlamadas
+ *   y el porcentaje de fallos llega a umbralFallos, el circuito se abre y las llamadas
+ *   se rechazan de inmediato durante tiempoAbierto. Después pasa a semiabierto: se dejan
+ *   pasar pruebasSemiabierto llamadas; si todas salen bien se cierra, si una falla se
+ *   vuelve a abrir.
+ *
+ * Los rechazos lanzan NotificationException con código PROVIDER_UNAVAILABLE: quien
+ * llama debe diferir el envío (outbox, reprogramar el recordatorio), no reintentarlo ya.
+ *
+ * Métricas (tag proveedor): notificaciones.proveedor.estado (0 cerrado, 1 semiabierto,
+ * 2 abierto), notificaciones.proveedor.en-curso, notificaciones.proveedor.transiciones
+ * (tag hacia) y notificaciones.proveedor.rechazadas (tag motivo).
+ */
+@Slf4j
+public class CircuitBreakerProveedor {
+
+    public static final String PROVIDER_UNAVAILABLE = "PROVIDER_UNAVAILABLE";
+
+    public enum Estado { CERRADO, SEMIABIERTO, ABIERTO }
+
+    private final String nombre;
+    private final int minimoLlamadas;
+    private final int umbralFallos;
+    private final long tiempoAbiertoNanos;
+    private final int pruebasSemiabierto;
+    private final Duration esperaMax;
+    private final Semaphore bulkhead;
+    private final int maxConcurrentes;
+    private final Predicate<Throwable> cuentaComoFallo;
+    private final MeterRegistry meterRegistry;
+
+    /** Últimas llamadas (true = fallo), como buffer circular */
+    private final boolean[] ventana;
+    private int posicion;
+    private int llamadas;
+    private int fallos;
+
+    private Estado estado = Estado.CERRADO;
+    private long abiertoHasta;
+    private int pruebasEnCurso;
+    private int pruebasExitosas;
+
+    /**
+     * @param cuentaComoFallo Qué excepciones cuentan para abrir el circuito (p. ej. un 4xx
+     *                        por un destinatario inválido no indica que el proveedor esté caído)
+     */
+    public CircuitBreakerProveedor(String nombre,
+                                   int tamanoVentana,
+                                   int minimoLlamadas,
+                                   int umbralFallos,
+                                   Duration tiempoAbierto,
+                                   int pruebasSemiabierto,
+                                   int maxConcurrentes,
+                                   Duration esperaMax,
+                                   Predicate<Throwable> cuentaComoFallo,
+                                   MeterRegistry meterRegistry) {
+        this.nombre = nombre;
+        this.ventana = new boolean[tamanoVentana];
+        this.minimoLlamadas = Math.min(minimoLlamadas, tamanoVentana);
+        this.umbralFallos = umbralFallos;
+        this.tiempoAbiertoNanos = tiempoAbierto.toNanos();
+        this.pruebasSemiabierto = Math.max(1, pruebasSemiabierto);
+        this.maxConcurrentes = maxConcurrentes;
+        this.bulkhead = new Semaphore(maxConcurrentes);
+        this.esperaMax = esperaMax;
+        this.cuentaComoFallo = cuentaComoFallo;
+        this.meterRegistry = meterRegistry;
+
+        Gauge.builder("notificaciones.proveedor.estado", this, cb -> cb.getEstado().ordinal())
+                .description("Estado del circuito: 0 cerrado, 1 semiabierto, 2 abierto")
+                .tag("proveedor", nombre)
+                .register(meterRegistry);
+        Gauge.builder("notificaciones.proveedor.en-curso", this, CircuitBreakerProveedor::getEnCurso)
+                .description("Llamadas en curso al proveedor (bulkhead)")
+                .tag("proveedor", nombre)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Ejecuta una llamada síncrona al proveedor.
+     *
+     * @throws NotificationException PROVIDER_UNAVAILABLE si el circuito está abierto o el bulkhead lleno
+     */
+    public <T> T ejecutar(Supplier<T> llamada) {
+        boolean prueba = adquirir();
+        boolean fallo = true;
+        try {
+            T resultado = llamada.get();
+            fallo = false;
+            return resultado;
+        } catch (RuntimeException e) {
+            fallo = cuentaComoFallo.test(e);
+            throw e;
+        } finally {
+            bulkhead.release();
+            registrar(prueba, fallo);
+        }
+    }
+
+    /**
+     * Ejecuta una llamada asíncrona. El hueco del bulkhead se mantiene hasta que el
+     * future termina. Un rechazo se devuelve como future fallido.
+     */
+    public <T> CompletableFuture<T> ejecutarAsync(Supplier<CompletableFuture<T>> llamada) {
+        boolean prueba;
+        try {
+            prueba = adquirir();
+        } catch (NotificationException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        CompletableFuture<T> futuro;
+        try {
+            futuro = llamada.get();
+        } catch (RuntimeException e) {
+            bulkhead.release();
+            registrar(prueba, cuentaComoFallo.test(e));
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return futuro.whenComplete((resultado, error) -> {
+            bulkhead.release();
+            Throwable causa = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            registrar(prueba, causa != null && cuentaComoFallo.test(causa));
+        });
+    }
+
+    public synchronized Estado getEstado() {
+        // Un circuito abierto cuyo tiempo ya venció se reporta como semiabierto
+        if (estado == Estado.ABIERTO && System.nanoTime() - abiertoHasta >= 0) {
+            return Estado.SEMIABIERTO;
+        }
+        return estado;
+    }
+
+    public synchronized double getTasaFallos() {
+        return llamadas == 0 ? 0.0 : fallos * 100.0 / llamadas;
+    }
+
+    public int getEnCurso() {
+        return maxConcurrentes - bulkhead.availablePermits();
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    /**
+     * Reserva un hueco del bulkhead y pide permiso al circuito.
+     *
+     * @return true si la llamada es una prueba del estado semiabierto
+     */
+    private boolean adquirir() {
+        boolean conHueco;
+        try {
+            conHueco = bulkhead.tryAcquire(esperaMax.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            conHueco = false;
+        }
+        if (!conHueco) {
+            contarRechazo("bulkhead_lleno");
+            throw new NotificationException(
+                    "Demasiadas llamadas simultáneas a " + nombre, PROVIDER_UNAVAILABLE, "BULKHEAD_LLENO");
+        }
+
+        try {
+            return permitir();
+        } catch (NotificationException e) {
+            bulkhead.release();
+            throw e;
+        }
+    }
+
+    private synchronized boolean permitir() {
+        if (estado == Estado.ABIERTO) {
+            if (System.nanoTime() - abiertoHasta < 0) {
+                contarRechazo("circuito_abierto");
+                throw new NotificationException(
+                        "Circuito abierto para " + nombre, PROVIDER_UNAVAILABLE, "CIRCUITO_ABIERTO");
+            }
+            cambiarEstado(Estado.SEMIABIERTO);
+        }
+
+        if (estado == Estado.SEMIABIERTO) {
+            if (pruebasEnCurso + pruebasExitosas >= pruebasSemiabierto) {
+                contarRechazo("circuito_abierto");
+                throw new NotificationException(
+                        "Circuito semiabierto para " + nombre + ": prueba en curso", PROVIDER_UNAVAILABLE, "CIRCUITO_ABIERTO");
+            }
+            pruebasEnCurso++;
+            return true;
+        }
+        return false;
+    }
+
+    private synchronized void registrar(boolean prueba, boolean fallo) {
+        if (prueba) {
+            // Una prueba que termina después de que el circuito cambiara ya no cuenta
+            if (estado != Estado.SEMIABIERTO) {
+                return;
+            }
+            pruebasEnCurso--;
+            if (fallo) {
+                abrir();
+            } else if (++pruebasExitosas >= pruebasSemiabierto) {
+                cambiarEstado(Estado.CERRADO);
+            }
+            return;
+        }
+
+        if (estado != Estado.CERRADO) {
+            return;
+        }
+
+        if (llamadas == ventana.length) {
+            if (ventana[posicion]) {
+                fallos--;
+            }
+        } else {
+            llamadas++;
+        }
+        ventana[posicion] = fallo;
+        if (fallo) {
+            fallos++;
+        }
+        posicion = (posicion + 1) % ventana.length;
+
+        if (llamadas >= minimoLlamadas && fallos * 100 >= umbralFallos * llamadas) {
+            abrir();
+        }
+    }
+
+    private void abrir() {
+        abiertoHasta = System.nanoTime() + tiempoAbiertoNanos;
+        cambiarEstado(Estado.ABIERTO);
+    }
+
+    private void cambiarEstado(Estado nuevo) {
+        Estado anterior = estado;
+        estado = nuevo;
+        pruebasEnCurso = 0;
+        pruebasExitosas = 0;
+        if (nuevo == Estado.CERRADO) {
+            Arrays.fill(ventana, false);
+            posicion = 0;
+            llamadas = 0;
+            fallos = 0;
+        }
+
+        if (nuevo == Estado.ABIERTO) {
+            log.warn("[CircuitBreakerProveedor] Circuito de {} ABIERTO ({} -> {}); se rechazan llamadas durante {} ms",
+                    nombre, anterior, nuevo, TimeUnit.NANOSECONDS.toMillis(tiempoAbiertoNanos));
+        } else {
+            log.info("[CircuitBreakerProveedor] Circuito de {}: {} -> {}", nombre, anterior, nuevo);
+        }
+        Counter.builder("notificaciones.proveedor.transiciones")
+                .description("Cambios de estado del circuito")
+                .tag("proveedor", nombre)
+                .tag("hacia", nuevo.name())
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private void contarRechazo(String motivo) {
+        Counter.builder("notificaciones.proveedor.rechazadas")
+                .description("Llamadas rechazadas sin llegar al proveedor")
+                .tag("proveedor", nombre)
+                .tag("motivo", motivo)
+                .register(meterRegistry)
+                .increment();
+    }
+}
@@ -0,0 +1,68 @@
+package com.reservas.notifications.resilience;
+
+import com.twilio.exception.ApiException;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Circuit breaker y bulkhead de cada proveedor de notificaciones.
+ *
+ * Resend lo comparten EmailService y ResendEmailProvider: si Resend no responde,
+ * ambos dejan de llamarlo a la vez. La configuración (notificaciones.circuit-breaker.*)
+ * es la misma para todos los proveedores; cada uno tiene su propio estado.
+ */
+@Component
+public class ProteccionProveedores {
+
+    private final CircuitBreakerProveedor resend;
+    private final CircuitBreakerProveedor twilio;
+
+    public ProteccionProveedores(MeterRegistry meterRegistry,
+                                 @Value("${notificaciones.circuit-breaker.ventana:20}") int ventana,
+                                 @Value("${notificaciones.circuit-breaker.minimo-llamadas:10}") int minimoLlamadas,
+                                 @Value("${notificaciones.circuit-breaker.umbral-fallos:50}") int umbralFallos,
+                                 @Value("${notificaciones.circuit-breaker.tiempo-abierto:PT30S}") Duration tiempoAbierto,
+                                 @Value("${notificaciones.circuit-breaker.pruebas-semiabierto:3}") int pruebasSemiabierto,
+                                 @Value("${notificaciones.bulkhead.max-concurrentes:10}") int maxConcurrentes,
+                                 @Value("${notificaciones.bulkhead.espera-max:PT0.5S}") Duration esperaMax) {
+        this.resend = new CircuitBreakerProveedor("resend", ventana, minimoLlamadas, umbralFallos, tiempoAbierto,
+                pruebasSemiabierto, maxConcurrentes, esperaMax, ProteccionProveedores::falloResend, meterRegistry);
+        this.twilio = new CircuitBreakerProveedor("twilio", ventana, minimoLlamadas, umbralFallos, tiempoAbierto,
+                pruebasSemiabierto, maxConcurrentes, esperaMax, ProteccionProveedores::falloTwilio, meterRegistry);
+    }
+
+    public CircuitBreakerProveedor resend() {
+        return resend;
+    }
+
+    public CircuitBreakerProveedor twilio() {
+        return twilio;
+    }
+
+    public List<CircuitBreakerProveedor> todos() {
+        return List.of(resend, twilio);
+    }
+
+    /**
+     * Un 4xx (destinatario inválido, datos mal formados) es un error de la petición,
+     * no del proveedor; salvo 429, que sí indica que hay que dejar de llamarlo.
+     */
+    static boolean falloResend(Throwable error) {
+        if (error instanceof HttpClientErrorException e) {
+            return e.getStatusCode().value() == 429;
+        }
+        return true;
+    }
+
+    static boolean falloTwilio(Throwable error) {
+        if (error instanceof ApiException e && e.getStatusCode() != null && e.getStatusCode() < 500) {
+            return e.getStatusCode() == 429;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,39 @@
+package com.reservas.notifications.resilience;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Estado de los circuitos de Resend y Twilio en /actuator/health (proveedoresNotificacion).
+ *
+ * Se reporta UP aunque un circuito esté abierto: la aplicación sigue atendiendo y los
+ * envíos quedan diferidos. El detalle indica qué proveedor está fallando.
+ */
+@Component
+@RequiredArgsConstructor
+public class ProveedoresNotificacionHealthIndicator implements HealthIndicator {
+
+    private final ProteccionProveedores proteccionProveedores;
+
+    @Override
+    public Health health() {
+        boolean degradado = false;
+        Health.Builder builder = Health.up();
+
+        for (CircuitBreakerProveedor circuito : proteccionProveedores.todos()) {
+            Map<String, Object> detalle = new LinkedHashMap<>();
+            detalle.put("estado", circuito.getEstado().name());
+            detalle.put("tasaFallos", Math.round(circuito.getTasaFallos()));
+            detalle.put("enCurso", circuito.getEnCurso());
+            builder.withDetail(circuito.getNombre(), detalle);
+            degradado |= circuito.getEstado() != CircuitBreakerProveedor.Estado.CERRADO;
+        }
+
+        return builder.withDetail("degradado", degradado).build();
+    }
+}
@@ -0,0 +1,269 @@
+package com.reservas.notifications.service;
+
+import com.reservas.entity.NotificationLog;
+import com.reservas.notifications.domain.DeliveryStatusUpdate;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Buffer en memoria de los callbacks de estado de Twilio.
+ *
+ * En una campaña grande Twilio envía varios callbacks por mensaje (queued, sent,
+ * delivered, read) en ráfagas. En lugar de una transacción por callback, se
+ * acumulan aquí unos instantes, combinados por MessageSid (solo queda el estado más
+ * avanzado) y se aplican a NotificationLog en lotes.
+ *
+ * - Los callbacks desordenados no hacen retroceder el estado (ver DeliveryStatusUpdate.orden).
+ * - Si el buffer llega a notificaciones.estados.max-pendientes, el hilo del callback
+ *   vacía un lote antes de volver: la memoria queda acotada durante una tormenta.
+ * - Un fallo al aplicar un lote lo devuelve al buffer para el siguiente ciclo.
+ * - Un callback puede llegar antes de que exista su NotificationLog (el outbox la
+ *   escribe al volver el envío). Esos estados esperan en un buffer aparte y se
+ *   reintentan en cada vaciado periódico hasta notificaciones.estados.ttl-sin-notificacion
+ *   desde que llegaron; después se descartan y se cuentan en
+ *   notificaciones.estados.descartados.
+ *
+ * El estado solo vive en memoria: si la instancia cae se pierden los callbacks de los
+ * últimos instantes, igual que si no hubieran llegado.
+ */
+@Slf4j
+@Component
+public class DeliveryStatusBuffer {
+
+    private final NotificationService notificationService;
+    private final Map<String, DeliveryStatusUpdate> pendientes = new ConcurrentHashMap<>();
+    /** Estados cuya NotificationLog aún no existía, solo se tocan con el lock de vaciado */
+    private final Map<String, DeliveryStatusUpdate> sinNotificacion = new HashMap<>();
+    private final ReentrantLock vaciando = new ReentrantLock();
+    private final int tamanoLote;
+    private final int maxPendientes;
+    private final Duration ttlSinNotificacion;
+
+    private final Counter recibidos;
+    private final Counter aplicados;
+    private final Counter descartados;
+
+    public DeliveryStatusBuffer(NotificationService notificationService,
+                                MeterRegistry meterRegistry,
+                                @Value("${notificaciones.estados.lote.tamano:500}") int tamanoLote,
+                                @Value("${notificaciones.estados.max-pendientes:20000}") int maxPendientes,
+                                @Value("${notificaciones.estados.ttl-sin-notificacion:PT10M}") Duration ttlSinNotificacion) {
+        this.notificationService = notificationService;
+        this.tamanoLote = tamanoLote;
+        this.maxPendientes = maxPendientes;
+        this.ttlSinNotificacion = ttlSinNotificacion;
+        this.recibidos = Counter.builder("notificaciones.estados.recibidos")
+                .description("Callbacks de estado recibidos del proveedor")
+                .register(meterRegistry);
+        this.aplicados = Counter.builder("notificaciones.estados.aplicados")
+                .description("Notificaciones actualizadas a partir de callbacks")
+                .register(meterRegistry);
+        this.descartados = Counter.builder("notificaciones.estados.descartados")
+                .description("Callbacks descartados porque su notificación no apareció a tiempo")
+                .register(meterRegistry);
+        meterRegistry.gauge("notificaciones.estados.pendientes", pendientes, Map::size);
+    }
+
+    /**
+     * Registra un callback de estado de Twilio.
+     *
+     * @param messageSid    MessageSid (provider_message_id de NotificationLog)
+     * @param messageStatus MessageStatus de Twilio (queued, sent, delivered, read, failed...)
+     * @return true si el estado se reconoció y quedó en el buffer
+     */
+    public boolean registrar(String messageSid, String messageStatus, String errorCode, String errorMessage) {
+        NotificationLog.NotificationStatus estado = traducirEstadoTwilio(messageStatus);
+        if (messageSid == null || messageSid.isBlank() || estado == null) {
+            return false;
+        }
+
+        recibidos.increment();
+        pendientes.merge(messageSid,
+                new DeliveryStatusUpdate(estado, LocalDateTime.now(), errorCode, errorMessage),
+                DeliveryStatusUpdate::combinar);
+
+        if (pendientes.size() >= maxPendientes) {
+            // Contrapresión: el callback espera a que se vacíe un lote
+            vaciar(true);
+        }
+        return true;
+    }
+
+    /**
+     * Aplica los estados acumulados en lotes de notificaciones.estados.lote.tamano.
+     *
+     * @return Número de mensajes procesados
+     */
+    public int vaciar() {
+        return vaciar(false);
+    }
+
+    @Scheduled(fixedDelayString = "${notificaciones.estados.intervalo-ms:1000}")
+    void vaciarPeriodicamente() {
+        vaciar(false);
+    }
+
+    /**
+     * @param esperar Contrapresión desde un callback: espera si otro hilo ya está vaciando
+     *                y solo vacía hasta bajar de max-pendientes. Si es false y otro hilo
+     *                ya está vaciando, no hace nada.
+     */
+    private int vaciar(boolean esperar) {
+        if (esperar) {
+            vaciando.lock();
+        } else if (!vaciando.tryLock()) {
+            return 0;
+        }
+        try {
+            if (!esperar) {
+                reintentarSinNotificacion();
+            }
+            int total = 0;
+            while (esperar ? pendientes.size() >= maxPendientes : !pendientes.isEmpty()) {
+                Map<String, DeliveryStatusUpdate> lote = tomarLote();
+                if (lote.isEmpty()) {
+                    break;
+                }
+                if (!aplicar(lote)) {
+                    break;
+                }
+                total += lote.size();
+            }
+            return total;
+        } finally {
+            vaciando.unlock();
+        }
+    }
+
+    @PreDestroy
+    void cerrar() {
+        vaciar();
+    }
+
+    int getPendientes() {
+        return pendientes.size();
+    }
+
+    int getSinNotificacion() {
+        vaciando.lock();
+        try {
+            return sinNotificacion.size();
+        } finally {
+            vaciando.unlock();
+        }
+    }
+
+    /**
+     * Devuelve al buffer los estados que esperan su NotificationLog y descarta los
+     * que superaron el TTL. Se llama con el lock de vaciado.
+     */
+    private void reintentarSinNotificacion() {
+        if (sinNotificacion.isEmpty()) {
+            return;
+        }
+        LocalDateTime limite = LocalDateTime.now().minus(ttlSinNotificacion);
+        int expirados = 0;
+        for (Map.Entry<String, DeliveryStatusUpdate> entrada : sinNotificacion.entrySet()) {
+            if (!entrada.getValue().receivedAt().isAfter(limite)) {
+                expirados++;
+            } else {
+                pendientes.merge(entrada.getKey(), entrada.getValue(), DeliveryStatusUpdate::combinar);
+            }
+        }
+        sinNotificacion.clear();
+        if (expirados > 0) {
+            descartados.increment(expirados);
+            log.warn("[DeliveryStatusBuffer] {} estados descartados: su notificación no apareció en {}",
+                    expirados, ttlSinNotificacion);
+        }
+    }
+
+    /**
+     * Aparta los estados sin NotificationLog hasta el siguiente vaciado periódico. Si
+     * ya hay max-pendientes apartados, el estado se descarta.
+     */
+    private void apartarSinNotificacion(Map<String, DeliveryStatusUpdate> lote, Set<String> sids) {
+        int expirados = 0;
+        for (String sid : sids) {
+            DeliveryStatusUpdate actualizacion = lote.get(sid);
+            if (actualizacion == null) {
+                continue;
+            }
+            if (sinNotificacion.size() >= maxPendientes && !sinNotificacion.containsKey(sid)) {
+                expirados++;
+            } else {
+                sinNotificacion.merge(sid, actualizacion, DeliveryStatusUpdate::combinar);
+            }
+        }
+        if (expirados > 0) {
+            descartados.increment(expirados);
+            log.warn("[DeliveryStatusBuffer] {} estados descartados: {} ya esperan su notificación",
+                    expirados, sinNotificacion.size());
+        }
+    }
+
+    /**
+     * Retira hasta tamanoLote entradas. Un callback que llega después de retirar su
+     * entrada crea una nueva y se aplica en el siguiente lote.
+     */
+    private Map<String, DeliveryStatusUpdate> tomarLote() {
+        Map<String, DeliveryStatusUpdate> lote = new HashMap<>();
+        Iterator<String> claves = pendientes.keySet().iterator();
+        while (claves.hasNext() && lote.size() < tamanoLote) {
+            String sid = claves.next();
+            DeliveryStatusUpdate actualizacion = pendientes.remove(sid);
+            if (actualizacion != null) {
+                lote.put(sid, actualizacion);
+            }
+        }
+        return lote;
+    }
+
+    private boolean aplicar(Map<String, DeliveryStatusUpdate> lote) {
+        try {
+            NotificationService.ResultadoEstados resultado = notificationService.updateNotificationStatuses(lote);
+            aplicados.increment(resultado.actualizadas());
+            apartarSinNotificacion(lote, resultado.sinNotificacion());
+            log.debug("[DeliveryStatusBuffer] Lote de {} estados aplicado ({} notificaciones actualizadas, {} sin notificación)",
+                    lote.size(), resultado.actualizadas(), resultado.sinNotificacion().size());
+            return true;
+        } catch (Exception e) {
+            log.error("[DeliveryStatusBuffer] Error aplicando {} estados, se reintentan en el siguiente ciclo: {}",
+                    lote.size(), e.getMessage());
+            lote.forEach((sid, actualizacion) -> pendientes.merge(sid, actualizacion, DeliveryStatusUpdate::combinar));
+            return false;
+        }
+    }
+
+    /**
+     * Traduce MessageStatus de Twilio. Devuelve null para valores desconocidos.
+     */
+    static NotificationLog.NotificationStatus traducirEstadoTwilio(String messageStatus) {
+        if (messageStatus == null) {
+            return null;
+        }
+        return switch (messageStatus.toLowerCase(Locale.ROOT)) {
+            case "accepted", "scheduled", "queued", "sending" -> NotificationLog.NotificationStatus.QUEUED;
+            case "sent" -> NotificationLog.NotificationStatus.SENT;
+            case "delivered" -> NotificationLog.NotificationStatus.DELIVERED;
+            case "read" -> NotificationLog.NotificationStatus.READ;
+            case "failed", "undelivered", "canceled" -> NotificationLog.NotificationStatus.FAILED;
+            default -> null;
+        };
+    }
+}
@@ -0,0 +1,281 @@
+package com.reservas.notifications.service;
+
+import com.reservas.entity.NotificationLog;
+import com.reservas.entity.NotificationOutbox;
+import com.reservas.exception.NotificationException;
+import com.reservas.notifications.domain.NotificationResult;
+import com.reservas.notifications.dto.SendNotificationRequest;
+import com.reservas.notifications.resilience.CircuitBreakerProveedor;
+import com.reservas.repository.NotificationOutboxRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Outbox de notificaciones salientes (email y WhatsApp).
+ *
+ * Los servicios de negocio llaman a encolar() dentro de su transacción: la fila se
+ * confirma junto con el cambio que la origina y la petición HTTP responde sin esperar
+ * a Resend ni a Twilio. procesarPendientes() la envía después, en tres fases:
+ * 1. Transacción corta: reclama un lote con SKIP LOCKED y lo reserva unos minutos.
+ * 2. Envío al proveedor, sin transacción ni conexión de BD abierta.
+ * 3. Transacción corta por notificación: SENT, reintento con backoff o FAILED.
+ *
+ * Si el circuit breaker del proveedor rechaza el envío (PROVIDER_UNAVAILABLE), la
+ * notificación se difiere sin gastar un intento: no llegó a salir.
+ *
+ * Solo el resultado final (enviada o descartada) se registra en NotificationLog.
+ * Las notificaciones con contenido sensible (contraseñas temporales) borran su
+ * contenido en ese momento y NotificationLog guarda un texto fijo en su lugar.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class NotificationOutboxService {
+
+    /** Minutos que una notificación reclamada queda reservada mientras se envía */
+    private static final long MINUTOS_RESERVA = 5;
+
+    private final NotificationOutboxRepository outboxRepository;
+    private final NotificationService notificationService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${notificaciones.outbox.max-intentos:6}")
+    private int maxIntentos;
+
+    @Value("${notificaciones.outbox.backoff-inicial:PT30S}")
+    private Duration backoffInicial;
+
+    @Value("${notificaciones.outbox.backoff-maximo:PT1H}")
+    private Duration backoffMaximo;
+
+    /** Días que se conservan las notificaciones ya enviadas o descartadas */
+    @Value("${notificaciones.outbox.retencion-dias:30}")
+    private int diasRetencion;
+
+    @Value("${notificaciones.outbox.purga-lote:1000}")
+    private int tamanoLotePurga;
+
+    /**
+     * Encola una notificación en la transacción en curso.
+     * Si ya existe una con la misma clave de idempotencia, devuelve esa sin duplicarla.
+     *
+     * @param request Destinatario y contenido ya renderizado
+     * @param tipo Tipo de notificación (se copia a NotificationLog)
+     * @param idempotencyKey Clave única de la notificación
+     */
+    @Transactional
+    public NotificationOutbox encolar(SendNotificationRequest request,
+                                      NotificationLog.NotificationType tipo,
+                                      String idempotencyKey) {
+        int insertadas = outboxRepository.insertarSiNoExiste(
+                UUID.randomUUID().toString(),
+                idempotencyKey,
+                request.getChannel().name(),
+                tipo != null ? tipo.name() : null,
+                request.getUsuarioId(),
+                request.getRecipient(),
+                request.getRecipientName(),
+                request.getSubject(),
+                request.getContent(),
+                request.isSensitiveContent(),
+                request.getRelatedEntityId(),
+                request.getRelatedEntityType(),
+                LocalDateTime.now());
+
+        if (insertadas == 0) {
+            log.info("[NotificationOutbox] Notificación {} ya estaba encolada", idempotencyKey);
+        } else {
+            log.info("[NotificationOutbox] {} encolada por {} para {}", tipo, request.getChannel(), request.getRecipient());
+        }
+        return outboxRepository.findByIdempotencyKey(idempotencyKey).orElseThrow();
+    }
+
+    /**
+     * Reclama y envía un lote de notificaciones pendientes.
+     *
+     * @param tamanoLote Máximo de notificaciones a reclamar
+     * @return Número de notificaciones reclamadas (si es igual a tamanoLote, puede haber más)
+     */
+    public int procesarPendientes(int tamanoLote) {
+        List<NotificationOutbox> lote = transactionTemplate.execute(status -> reclamarLote(tamanoLote));
+        if (lote == null || lote.isEmpty()) {
+            return 0;
+        }
+
+        for (NotificationOutbox notificacion : lote) {
+            enviar(notificacion);
+        }
+        return lote.size();
+    }
+
+    /**
+     * Elimina las notificaciones SENT y FAILED con más de notificaciones.outbox.retencion-dias,
+     * en lotes de notificaciones.outbox.purga-lote con una transacción corta cada uno.
+     * El resultado queda en NotificationLog; la fila del outbox ya no se consulta.
+     *
+     * @return Notificaciones eliminadas
+     */
+    public long purgarResueltas() {
+        LocalDateTime antesDe = LocalDateTime.now().minusDays(diasRetencion);
+        long total = 0;
+        int eliminadas;
+        do {
+            Integer lote = transactionTemplate.execute(status ->
+                    outboxRepository.eliminarResueltas(antesDe, tamanoLotePurga));
+            eliminadas = lote != null ? lote : 0;
+            total += eliminadas;
+        } while (eliminadas >= tamanoLotePurga);
+
+        log.info("[NotificationOutbox] {} notificaciones resueltas eliminadas (anteriores a {})", total, antesDe);
+        return total;
+    }
+
+    private List<NotificationOutbox> reclamarLote(int tamanoLote) {
+        LocalDateTime ahora = LocalDateTime.now();
+        List<String> ids = outboxRepository.reclamarPendientes(ahora, tamanoLote);
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+
+        // Reserva: si la instancia cae a mitad del envío, el reintento llega al vencer
+        List<NotificationOutbox> lote = outboxRepository.findAllById(ids);
+        for (NotificationOutbox notificacion : lote) {
+            notificacion.setAttempts(notificacion.getAttempts() + 1);
+            notificacion.setNextAttemptAt(ahora.plusMinutes(MINUTOS_RESERVA));
+        }
+        return outboxRepository.saveAll(lote);
+    }
+
+    private void enviar(NotificationOutbox notificacion) {
+        SendNotificationRequest request = SendNotificationRequest.builder()
+                .usuarioId(notificacion.getUsuarioId() != null ? notificacion.getUsuarioId().toString() : null)
+                .channel(notificacion.getChannel())
+                .recipient(notificacion.getRecipient())
+                .recipientName(notificacion.getRecipientName())
+                .subject(notificacion.getSubject())
+                .content(notificacion.getContent())
+                .relatedEntityId(notificacion.getRelatedEntityId())
+                .relatedEntityType(notificacion.getRelatedEntityType())
+                .idempotencyKey(notificacion.getIdempotencyKey())
+                .sensitiveContent(notificacion.isSensitiveContent())
+                .build();
+
+        NotificationResult resultado;
+        boolean reintentable = true;
+        try {
+            resultado = notificationService.entregar(request);
+        } catch (NotificationException e) {
+            if (CircuitBreakerProveedor.PROVIDER_UNAVAILABLE.equals(e.getErrorCode())) {
+                diferir(notificacion, e.getMessage());
+                return;
+            }
+            // Sin proveedor configurado no tiene sentido reintentar
+            reintentable = !"PROVIDER_NOT_CONFIGURED".equals(e.getErrorCode());
+            resultado = fallo(notificacion, e.getErrorCode(), e.getMessage());
+        } catch (Exception e) {
+            resultado = fallo(notificacion, "UNEXPECTED_ERROR", e.getMessage());
+        }
+
+        try {
+            NotificationResult finalResultado = resultado;
+            boolean finalReintentable = reintentable;
+            transactionTemplate.executeWithoutResult(status ->
+                    registrarResultado(notificacion, request, finalResultado, finalReintentable));
+        } catch (Exception e) {
+            // La reserva vence y la notificación se reintenta; Resend descarta el duplicado por la clave
+            log.error("[NotificationOutbox] Error registrando el resultado de {}: {}",
+                    notificacion.getId(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * El proveedor no está aceptando llamadas: se devuelve el intento y se reprograma
+     * con el primer paso del backoff, parecido al tiempo que el circuito pasa abierto.
+     */
+    private void diferir(NotificationOutbox notificacion, String motivo) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                notificacion.setAttempts(notificacion.getAttempts() - 1);
+                notificacion.setNextAttemptAt(LocalDateTime.now().plus(retrasoReintento(1)));
+                notificacion.setLastError(motivo);
+                outboxRepository.save(notificacion);
+            });
+            log.info("[NotificationOutbox] Notificación {} diferida: {}", notificacion.getId(), motivo);
+        } catch (Exception e) {
+            log.error("[NotificationOutbox] Error difiriendo {}: {}", notificacion.getId(), e.getMessage(), e);
+        }
+    }
+
+    private void registrarResultado(NotificationOutbox notificacion,
+                                    SendNotificationRequest request,
+                                    NotificationResult resultado,
+                                    boolean reintentable) {
+        LocalDateTime ahora = LocalDateTime.now();
+        int intentos = notificacion.getAttempts();
+
+        if (Boolean.TRUE.equals(resultado.getSuccess())) {
+            notificacion.setStatus(NotificationOutbox.OutboxStatus.SENT);
+            notificacion.setSentAt(ahora);
+            notificacion.setLastError(null);
+            registrarLog(notificacion, request, resultado);
+            log.info("[NotificationOutbox] Notificación {} enviada a {} (intento {})",
+                    notificacion.getId(), notificacion.getRecipient(), intentos);
+        } else if (!reintentable || intentos >= maxIntentos) {
+            notificacion.setStatus(NotificationOutbox.OutboxStatus.FAILED);
+            notificacion.setLastError(resultado.getErrorMessage());
+            registrarLog(notificacion, request, resultado);
+            log.error("[NotificationOutbox] Notificación {} descartada tras {} intentos: {}",
+                    notificacion.getId(), intentos, resultado.getErrorMessage());
+        } else {
+            Duration retraso = retrasoReintento(intentos);
+            notificacion.setNextAttemptAt(ahora.plus(retraso));
+            notificacion.setLastError(resultado.getErrorMessage());
+            log.warn("[NotificationOutbox] Falló el intento {} de {}; reintento en {} s: {}",
+                    intentos, notificacion.getId(), retraso.toSeconds(), resultado.getErrorMessage());
+        }
+
+        // Resuelta: el secreto ya no hace falta
+        if (notificacion.isSensitiveContent() && notificacion.getStatus() != NotificationOutbox.OutboxStatus.PENDING) {
+            notificacion.setContent(NotificationService.CONTENIDO_OMITIDO);
+        }
+        outboxRepository.save(notificacion);
+    }
+
+    private void registrarLog(NotificationOutbox notificacion, SendNotificationRequest request,
+                              NotificationResult resultado) {
+        NotificationLog registro = notificationService.registrarEnvio(
+                request, resultado, notificacion.getNotificationType(), notificacion.getAttempts() - 1);
+        notificacion.setNotificationLogId(registro.getId());
+    }
+
+    /**
+     * Backoff exponencial: backoffInicial * 2^(intentos-1), acotado a backoffMaximo,
+     * más hasta un 20% aleatorio para que los fallos de un mismo corte no se reintenten juntos.
+     */
+    Duration retrasoReintento(int intentos) {
+        long base = backoffInicial.toMillis() << Math.min(Math.max(intentos - 1, 0), 20);
+        long acotado = Math.min(base, backoffMaximo.toMillis());
+        long jitter = ThreadLocalRandom.current().nextLong(acotado / 5 + 1);
+        return Duration.ofMillis(acotado + jitter);
+    }
+
+    private static NotificationResult fallo(NotificationOutbox notificacion, String codigo, String mensaje) {
+        return NotificationResult.builder()
+                .success(false)
+                .recipient(notificacion.getRecipient())
+                .channel(notificacion.getChannel())
+                .errorCode(codigo)
+                .errorMessage(mensaje)
+                .build();
+    }
+}
@@ -0,0 +1,153 @@
+package com.reservas.notifications.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.reservas.batch.ChunkJob;
+import com.reservas.batch.ChunkJobRunner;
+import com.reservas.entity.NotificationLogArchivo;
+import com.reservas.notifications.domain.NotificationLogArchivado;
+import com.reservas.repository.NotificationLogArchivoRepository;
+import com.reservas.repository.NotificationLogRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Retención de tbl_notification_logs.
+ *
+ * - Las notificaciones con más de notificaciones.retencion.archivar-dias (90) se
+ *   mueven a tbl_notification_logs_archivo: cada lote se guarda como un bloque
+ *   JSON Lines + gzip y se borra de la tabla en la misma transacción.
+ * - Los bloques con más de notificaciones.retencion.archivo-dias (730) se eliminan
+ *   con un DELETE por rango sobre unas pocas filas.
+ *
+ * Así la tabla viva (y sus cinco índices) solo contiene los meses recientes que
+ * consultan los webhooks de estado y el historial.
+ */
+@Slf4j
+@Service
+public class NotificationRetentionService {
+
+    static final String JOB_ARCHIVAR = "notificaciones.archivar";
+
+    private static final LocalDateTime INICIO = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final NotificationLogRepository notificationLogRepository;
+    private final NotificationLogArchivoRepository archivoRepository;
+    private final ChunkJobRunner chunkJobRunner;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final int diasArchivar;
+    private final int diasArchivo;
+    private final int tamanoLote;
+
+    public NotificationRetentionService(NotificationLogRepository notificationLogRepository,
+                                        NotificationLogArchivoRepository archivoRepository,
+                                        ChunkJobRunner chunkJobRunner,
+                                        TransactionTemplate transactionTemplate,
+                                        ObjectMapper objectMapper,
+                                        @Value("${notificaciones.retencion.archivar-dias:90}") int diasArchivar,
+                                        @Value("${notificaciones.retencion.archivo-dias:730}") int diasArchivo,
+                                        @Value("${notificaciones.retencion.lote:1000}") int tamanoLote) {
+        this.notificationLogRepository = notificationLogRepository;
+        this.archivoRepository = archivoRepository;
+        this.chunkJobRunner = chunkJobRunner;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.diasArchivar = diasArchivar;
+        this.diasArchivo = diasArchivo;
+        this.tamanoLote = tamanoLote;
+    }
+
+    /**
+     * Archiva las notificaciones antiguas y caduca los bloques de archivo vencidos.
+     *
+     * @return Notificaciones archivadas
+     */
+    public long aplicarRetencion() {
+        long archivadas = chunkJobRunner.ejecutar(ChunkJob.de(JOB_ARCHIVAR,
+                (despuesDe, corte, limite) -> leer(despuesDe, corte.minusDays(diasArchivar), limite),
+                n -> n.createdAt() + "|" + n.id(),
+                (lote, corte) -> archivar(lote)), tamanoLote).procesados();
+
+        LocalDateTime limiteArchivo = LocalDateTime.now().minusDays(diasArchivo);
+        Integer bloques = transactionTemplate.execute(status -> archivoRepository.eliminarAnterioresA(limiteArchivo));
+
+        log.info("[NotificationRetention] {} notificaciones archivadas, {} bloques de archivo caducados",
+                archivadas, bloques);
+        return archivadas;
+    }
+
+    private List<NotificationLogArchivado> leer(String despuesDe, LocalDateTime limite, int tamano) {
+        LocalDateTime desdeFecha = INICIO;
+        String desdeId = "";
+        if (despuesDe != null) {
+            int separador = despuesDe.indexOf('|');
+            desdeFecha = LocalDateTime.parse(despuesDe.substring(0, separador));
+            desdeId = despuesDe.substring(separador + 1);
+        }
+        return notificationLogRepository.findParaArchivar(limite, desdeFecha, desdeId, PageRequest.of(0, tamano));
+    }
+
+    private int archivar(List<NotificationLogArchivado> lote) {
+        archivoRepository.save(NotificationLogArchivo.builder()
+                .desde(lote.get(0).createdAt())
+                .hasta(lote.get(lote.size() - 1).createdAt())
+                .filas(lote.size())
+                .contenido(comprimir(lote))
+                .build());
+        return notificationLogRepository.eliminarPorIds(lote.stream().map(NotificationLogArchivado::id).toList());
+    }
+
+    private byte[] comprimir(List<NotificationLogArchivado> lote) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8)) {
+            for (NotificationLogArchivado notificacion : lote) {
+                writer.write(objectMapper.writeValueAsString(notificacion));
+                writer.write('\n');
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar la notificación para archivarla", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Lee un bloque de archivo (para consultas puntuales o restauraciones).
+     */
+    public List<NotificationLogArchivado> leerArchivo(NotificationLogArchivo archivo) {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(archivo.getContenido()))) {
+            String lineas = new String(gzip.readAllBytes(), StandardCharsets.UTF_8);
+            return lineas.lines()
+                    .filter(linea -> !linea.isBlank())
+                    .map(this::deserializar)
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private NotificationLogArchivado deserializar(String linea) {
+        try {
+            return objectMapper.readValue(linea, NotificationLogArchivado.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Línea de archivo de notificaciones inválida", e);
+        }
+    }
+}
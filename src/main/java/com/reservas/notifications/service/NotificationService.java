@@ -3,6 +3,7 @@ package com.reservas.notifications.service;
 import com.reservas.entity.NotificationLog;
 import com.reservas.entity.Usuario;
 import com.reservas.exception.NotificationException;
+import com.reservas.notifications.domain.DeliveryStatusUpdate;
 import com.reservas.notifications.domain.NotificationChannel;
 import com.reservas.notifications.domain.NotificationResult;
 import com.reservas.notifications.dto.SendNotificationRequest;
@@ -15,9 +16,16 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -27,21 +35,27 @@ import java.util.UUID;
 @Service
 public class NotificationService {
 
+    /** Se guarda en lugar del contenido de una notificación con un secreto */
+    public static final String CONTENIDO_OMITIDO = "[contenido omitido: contenía credenciales]";
+
     private final NotificationProvider whatsappProvider;
     private final NotificationProvider emailProvider;
     private final NotificationLogRepository notificationLogRepository;
     private final UsuarioRepository usuarioRepository;
+    private final TransactionTemplate transactionTemplate;
 
     public NotificationService(
             @Qualifier("twilioWhatsAppProvider") NotificationProvider whatsappProvider,
             @Qualifier("resendEmailProvider") NotificationProvider emailProvider,
             NotificationLogRepository notificationLogRepository,
-            UsuarioRepository usuarioRepository
+            UsuarioRepository usuarioRepository,
+            TransactionTemplate transactionTemplate
     ) {
         this.whatsappProvider = whatsappProvider;
         this.emailProvider = emailProvider;
         this.notificationLogRepository = notificationLogRepository;
         this.usuarioRepository = usuarioRepository;
+        this.transactionTemplate = transactionTemplate;
     }
 
     /**
@@ -93,14 +107,80 @@ public class NotificationService {
 
     /**
      * Envía múltiples notificaciones en lote.
+     *
+     * Agrupa por canal y usa el envío batch de cada proveedor (Resend: 100 emails por
+     * llamada). Las llamadas HTTP se hacen sin transacción abierta; después todos los
+     * logs se guardan con un solo saveAll (INSERTs agrupados por hibernate.jdbc.batch_size).
+     *
+     * @return Un log por request, en el mismo orden
      */
-    @Transactional
     public List<NotificationLog> sendBatch(List<SendNotificationRequest> requests) {
         log.info("Enviando batch de {} notificaciones", requests.size());
 
-        return requests.stream()
-                .map(this::send)
-                .toList();
+        // Agrupar por canal recordando la posición original de cada request
+        Map<NotificationChannel, List<Integer>> posicionesPorCanal = new EnumMap<>(NotificationChannel.class);
+        for (int i = 0; i < requests.size(); i++) {
+            posicionesPorCanal.computeIfAbsent(requests.get(i).getChannel(), c -> new ArrayList<>()).add(i);
+        }
+
+        // Validar todos los canales antes de enviar nada
+        for (NotificationChannel canal : posicionesPorCanal.keySet()) {
+            if (!proveedor(canal).isConfigured()) {
+                throw new NotificationException(
+                        "Provider de " + canal + " no está configurado", "PROVIDER_NOT_CONFIGURED");
+            }
+        }
+
+        NotificationResult[] resultados = new NotificationResult[requests.size()];
+        for (Map.Entry<NotificationChannel, List<Integer>> grupo : posicionesPorCanal.entrySet()) {
+            List<Integer> posiciones = grupo.getValue();
+            List<SendNotificationRequest> delCanal = posiciones.stream().map(requests::get).toList();
+
+            List<NotificationResult> enviados = proveedor(grupo.getKey()).sendBatch(delCanal);
+            for (int i = 0; i < posiciones.size(); i++) {
+                resultados[posiciones.get(i)] = enviados.get(i);
+            }
+        }
+
+        List<NotificationResult> enOrden = Arrays.asList(resultados);
+        return transactionTemplate.execute(status -> {
+            List<NotificationLog> logs = new ArrayList<>(requests.size());
+            for (int i = 0; i < requests.size(); i++) {
+                SendNotificationRequest request = requests.get(i);
+                logs.add(construirLog(request, enOrden.get(i), proveedorLog(request.getChannel()), null, 0));
+            }
+            return notificationLogRepository.saveAll(logs);
+        });
+    }
+
+    /**
+     * Entrega la notificación al proveedor del canal, sin registrarla ni abrir transacción.
+     * La usa el outbox, que decide reintentos y registra solo el resultado final.
+     *
+     * @throws NotificationException si el proveedor no está configurado o falla la llamada
+     */
+    public NotificationResult entregar(SendNotificationRequest request) {
+        NotificationProvider provider = proveedor(request.getChannel());
+
+        if (!provider.isConfigured()) {
+            throw new NotificationException(
+                    "Provider de " + request.getChannel() + " no está configurado", "PROVIDER_NOT_CONFIGURED");
+        }
+
+        return provider.send(request);
+    }
+
+    /**
+     * Registra en el historial el resultado de una notificación enviada desde el outbox.
+     */
+    @Transactional
+    public NotificationLog registrarEnvio(
+            SendNotificationRequest request,
+            NotificationResult result,
+            NotificationLog.NotificationType tipo,
+            int reintentos
+    ) {
+        return saveNotificationLog(request, result, proveedorLog(request.getChannel()), tipo, reintentos);
     }
 
     /**
@@ -120,6 +200,7 @@ public class NotificationService {
 
     /**
      * Actualiza el estado de una notificación (llamado desde webhooks).
+     * Un estado anterior en el ciclo de vida no reemplaza a uno posterior.
      */
     @Transactional
     public void updateNotificationStatus(String providerId, NotificationLog.NotificationStatus status) {
@@ -128,18 +209,79 @@ public class NotificationService {
         NotificationLog log = notificationLogRepository.findByProviderMessageId(providerId)
                 .orElse(null);
 
-        if (log != null) {
-            log.setStatus(status);
+        if (log != null && aplicarEstado(log, new DeliveryStatusUpdate(status, LocalDateTime.now(), null, null))) {
+            notificationLogRepository.save(log);
+        }
+    }
+
+    /**
+     * Aplica un lote de estados de entrega, con la misma semántica que
+     * updateNotificationStatus: una consulta por el índice provider_message_id para
+     * todo el lote y las actualizaciones en batch al hacer commit.
+     *
+     * El callback puede llegar antes que la fila de NotificationLog (el outbox la
+     * escribe cuando vuelve el envío): esos ids se devuelven en sinNotificacion para
+     * que el llamador los reintente.
+     *
+     * @param actualizaciones Estado más avanzado recibido por cada provider_message_id
+     */
+    @Transactional
+    public ResultadoEstados updateNotificationStatuses(Map<String, DeliveryStatusUpdate> actualizaciones) {
+        if (actualizaciones.isEmpty()) {
+            return new ResultadoEstados(0, Set.of());
+        }
 
-            switch (status) {
-                case DELIVERED -> log.setDeliveredAt(LocalDateTime.now());
-                case READ -> log.setReadAt(LocalDateTime.now());
-                case CLICKED -> log.setClickedAt(LocalDateTime.now());
-                case BOUNCED -> log.setBouncedAt(LocalDateTime.now());
+        List<NotificationLog> logs = notificationLogRepository.bloquearPorProviderMessageIds(actualizaciones.keySet());
+        Set<String> sinNotificacion = new HashSet<>(actualizaciones.keySet());
+        List<NotificationLog> modificados = new ArrayList<>();
+        for (NotificationLog notificacion : logs) {
+            sinNotificacion.remove(notificacion.getProviderMessageId());
+            if (aplicarEstado(notificacion, actualizaciones.get(notificacion.getProviderMessageId()))) {
+                modificados.add(notificacion);
             }
+        }
+        notificationLogRepository.saveAll(modificados);
+        return new ResultadoEstados(modificados.size(), sinNotificacion);
+    }
 
-            notificationLogRepository.save(log);
+    /**
+     * @param actualizadas    Notificaciones que cambiaron de estado
+     * @param sinNotificacion provider_message_id sin fila en NotificationLog todavía
+     */
+    public record ResultadoEstados(int actualizadas, Set<String> sinNotificacion) {
+    }
+
+    /**
+     * @return true si la notificación cambió
+     */
+    private static boolean aplicarEstado(NotificationLog notificacion, DeliveryStatusUpdate actualizacion) {
+        if (actualizacion == null
+                || DeliveryStatusUpdate.orden(actualizacion.status()) <= DeliveryStatusUpdate.orden(notificacion.getStatus())) {
+            return false;
         }
+
+        LocalDateTime momento = actualizacion.receivedAt();
+        notificacion.setStatus(actualizacion.status());
+        switch (actualizacion.status()) {
+            case DELIVERED -> notificacion.setDeliveredAt(momento);
+            case READ -> {
+                // Si el "delivered" no llegó (o llega después), la lectura implica entrega
+                if (notificacion.getDeliveredAt() == null) {
+                    notificacion.setDeliveredAt(momento);
+                }
+                notificacion.setReadAt(momento);
+            }
+            case CLICKED -> notificacion.setClickedAt(momento);
+            case BOUNCED -> notificacion.setBouncedAt(momento);
+            case FAILED -> {
+                if (actualizacion.errorCode() != null) {
+                    notificacion.setErrorCode(actualizacion.errorCode());
+                    notificacion.setErrorMessage(actualizacion.errorMessage());
+                }
+            }
+            default -> { }
+        }
+        return true;
     }
 
     private NotificationLog saveNotificationLog(
@@ -147,16 +289,39 @@ public class NotificationService {
             NotificationResult result,
             NotificationLog.NotificationProvider provider
     ) {
-        Usuario usuario = null;
-        if (request.getUsuarioId() != null) {
-            usuario = usuarioRepository.findById(UUID.fromString(request.getUsuarioId())).orElse(null);
-        }
+        return saveNotificationLog(request, result, provider, null, 0);
+    }
+
+    private NotificationLog saveNotificationLog(
+            SendNotificationRequest request,
+            NotificationResult result,
+            NotificationLog.NotificationProvider provider,
+            NotificationLog.NotificationType tipo,
+            int retryCount
+    ) {
+        NotificationLog saved = notificationLogRepository.save(construirLog(request, result, provider, tipo, retryCount));
+        this.log.info("Notificación registrada: {} - Status: {}", saved.getId(), saved.getStatus());
 
-        NotificationLog.NotificationStatus status = result.getSuccess()
+        return saved;
+    }
+
+    private NotificationLog construirLog(
+            SendNotificationRequest request,
+            NotificationResult result,
+            NotificationLog.NotificationProvider provider,
+            NotificationLog.NotificationType tipo,
+            int retryCount
+    ) {
+        // Referencia (proxy) en lugar de findById: para la FK basta el ID, sin SELECT por log
+        Usuario usuario = request.getUsuarioId() != null
+                ? usuarioRepository.getReferenceById(UUID.fromString(request.getUsuarioId()))
+                : null;
+
+        NotificationLog.NotificationStatus status = Boolean.TRUE.equals(result.getSuccess())
                 ? NotificationLog.NotificationStatus.SENT
                 : NotificationLog.NotificationStatus.FAILED;
 
-        NotificationLog log = NotificationLog.builder()
+        return NotificationLog.builder()
                 .usuario(usuario)
                 .channel(request.getChannel())
                 .provider(provider)
@@ -164,21 +329,34 @@ public class NotificationService {
                 .recipient(request.getRecipient())
                 .recipientName(request.getRecipientName())
                 .subject(request.getSubject())
-                .content(request.getContent())
+                .content(request.isSensitiveContent() ? CONTENIDO_OMITIDO : request.getContent())
                 .templateId(request.getTemplateId())
                 .status(status)
+                .notificationType(tipo)
                 .relatedEntityId(request.getRelatedEntityId())
                 .relatedEntityType(request.getRelatedEntityType())
-                .sentSuccessfully(result.getSuccess())
+                .sentSuccessfully(Boolean.TRUE.equals(result.getSuccess()))
                 .errorMessage(result.getErrorMessage())
                 .errorCode(result.getErrorCode())
-                .retryCount(0)
+                .retryCount(retryCount)
                 .sentAt(result.getSentAt())
                 .build();
+    }
 
-        NotificationLog saved = notificationLogRepository.save(log);
-        this.log.info("Notificación registrada: {} - Status: {}", saved.getId(), status);
+    private NotificationProvider proveedor(NotificationChannel canal) {
+        return switch (canal) {
+            case WHATSAPP -> whatsappProvider;
+            case EMAIL -> emailProvider;
+            default -> throw new NotificationException(
+                    "Canal no soportado: " + canal,
+                    "UNSUPPORTED_CHANNEL"
+            );
+        };
+    }
 
-        return saved;
+    private static NotificationLog.NotificationProvider proveedorLog(NotificationChannel canal) {
+        return canal == NotificationChannel.EMAIL
+                ? NotificationLog.NotificationProvider.RESEND
+                : NotificationLog.NotificationProvider.TWILIO;
     }
 }
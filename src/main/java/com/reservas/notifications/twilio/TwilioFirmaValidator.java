@@ -0,0 +1,66 @@
+package com.reservas.notifications.twilio;
+
+import com.twilio.security.RequestValidator;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Valida la cabecera X-Twilio-Signature de los webhooks de Twilio.
+ *
+ * Twilio firma cada petición con HMAC-SHA1 del auth token sobre la URL pública
+ * completa más los parámetros del formulario. Detrás de un proxy la URL que ve el
+ * servidor no es la que Twilio llamó, por eso se puede fijar twilio.webhook.base-url
+ * (origen público + context-path, p. ej. https://api.ejemplo.com/api). La misma base
+ * se usa para el statusCallback de los mensajes salientes.
+ *
+ * Sin auth token configurado ninguna petición es válida.
+ */
+@Slf4j
+@Component
+public class TwilioFirmaValidator {
+
+    public static final String CABECERA_FIRMA = "X-Twilio-Signature";
+
+    private final RequestValidator validator;
+    private final String baseUrl;
+
+    public TwilioFirmaValidator(@Value("${twilio.auth.token:}") String authToken,
+                                @Value("${twilio.webhook.base-url:}") String baseUrl) {
+        this.validator = authToken == null || authToken.isBlank() ? null : new RequestValidator(authToken);
+        this.baseUrl = baseUrl == null ? "" : baseUrl.replaceAll("/+$", "");
+    }
+
+    /**
+     * @param params Parámetros del formulario recibidos
+     * @return true si la firma corresponde a la URL y los parámetros
+     */
+    public boolean esValida(HttpServletRequest request, Map<String, String> params) {
+        String firma = request.getHeader(CABECERA_FIRMA);
+        if (validator == null) {
+            log.warn("[Twilio Webhook] Petición rechazada: twilio.auth.token no configurado");
+            return false;
+        }
+        if (firma == null || firma.isBlank()) {
+            return false;
+        }
+        return validator.validate(urlPublica(request), params, firma);
+    }
+
+    /**
+     * URL pública de un webhook, p. ej. /webhooks/twilio/status. Null si no hay base configurada.
+     */
+    public String urlWebhook(String ruta) {
+        return baseUrl.isEmpty() ? null : baseUrl + ruta;
+    }
+
+    private String urlPublica(HttpServletRequest request) {
+        String url = baseUrl.isEmpty()
+                ? request.getRequestURL().toString()
+                : baseUrl + request.getRequestURI().substring(request.getContextPath().length());
+        return request.getQueryString() == null ? url : url + "?" + request.getQueryString();
+    }
+}
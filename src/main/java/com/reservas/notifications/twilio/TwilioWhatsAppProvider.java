@@ -6,10 +6,13 @@ import com.reservas.notifications.domain.NotificationChannel;
 import com.reservas.notifications.domain.NotificationResult;
 import com.reservas.notifications.dto.SendNotificationRequest;
 import com.reservas.notifications.provider.NotificationProvider;
+import com.reservas.notifications.resilience.ProteccionProveedores;
 import com.twilio.Twilio;
 import com.twilio.rest.api.v2010.account.Message;
+import com.twilio.rest.api.v2010.account.MessageCreator;
 import com.twilio.type.PhoneNumber;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -27,11 +30,16 @@ import java.util.List;
  * - El remitente debe ser un número aprobado por Twilio
  * - Para producción necesitas una cuenta aprobada de WhatsApp Business
  * - En desarrollo usa el sandbox de Twilio
+ * - Las llamadas pasan por el circuit breaker de Twilio (ProteccionProveedores)
+ * - Con twilio.webhook.base-url configurado, cada mensaje pide sus callbacks de
+ *   estado a /webhooks/twilio/status (TwilioWebhookController)
  */
 @Slf4j
 @Service("twilioWhatsAppProvider")
 public class TwilioWhatsAppProvider implements NotificationProvider {
 
+    private static final String STATUS_CALLBACK = "/webhooks/twilio/status";
+
     @Value("${twilio.account.sid:}")
     private String accountSid;
 
@@ -41,6 +49,12 @@ public class TwilioWhatsAppProvider implements NotificationProvider {
     @Value("${twilio.whatsapp.from:}")
     private String whatsappFrom;
 
+    @Autowired
+    private ProteccionProveedores proteccionProveedores;
+
+    @Autowired
+    private TwilioFirmaValidator firmaValidator;
+
     private boolean configured = false;
 
     @PostConstruct
@@ -50,6 +64,9 @@ public class TwilioWhatsAppProvider implements NotificationProvider {
                 Twilio.init(accountSid, authToken);
                 configured = true;
                 log.info("[Twilio WhatsApp]  Inicializado correctamente - From: {}", whatsappFrom);
+                if (firmaValidator.urlWebhook(STATUS_CALLBACK) == null) {
+                    log.warn("[Twilio WhatsApp]  twilio.webhook.base-url vacío: los mensajes no tendrán callbacks de estado");
+                }
             } else {
                 log.warn("[Twilio WhatsApp]  No configurado - credenciales faltantes");
             }
@@ -75,11 +92,16 @@ public class TwilioWhatsAppProvider implements NotificationProvider {
             String recipient = formatPhoneNumber(request.getRecipient());
 
             // Crear mensaje - Ambos números deben tener prefijo "whatsapp:"
-            Message message = Message.creator(
+            MessageCreator creator = Message.creator(
                     new PhoneNumber("whatsapp:" + recipient),
                     new PhoneNumber("whatsapp:" + whatsappFrom),
                     request.getContent()
-            ).create();
+            );
+            String statusCallback = firmaValidator.urlWebhook(STATUS_CALLBACK);
+            if (statusCallback != null) {
+                creator.setStatusCallback(statusCallback);
+            }
+            Message message = proteccionProveedores.twilio().ejecutar(creator::create);
 
             log.info("[Twilio WhatsApp]  Mensaje enviado - SID: {} - Status: {}",
                     message.getSid(), message.getStatus());
@@ -105,6 +127,10 @@ public class TwilioWhatsAppProvider implements NotificationProvider {
                     .errorMessage(e.getMessage())
                     .build();
 
+        } catch (NotificationException e) {
+            log.warn("[Twilio WhatsApp]  Mensaje a {} no enviado: {}", request.getRecipient(), e.getMessage());
+            throw e;
+
         } catch (Exception e) {
             log.error("[Twilio WhatsApp]  Error inesperado: {}", e.getMessage(), e);
 
@@ -131,6 +157,7 @@ public class TwilioWhatsAppProvider implements NotificationProvider {
                         .success(false)
                         .recipient(request.getRecipient())
                         .channel(NotificationChannel.WHATSAPP)
+                        .errorCode(e instanceof NotificationException ne ? ne.getErrorCode() : null)
                         .errorMessage(e.getMessage())
                         .build());
             }
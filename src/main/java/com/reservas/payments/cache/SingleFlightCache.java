@@ -0,0 +1,127 @@
+package com.reservas.payments.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Caché de estado remoto con una sola carga en curso por clave (single-flight).
+ *
+ * - Si varias peticiones piden la misma clave sin un valor vigente, solo una llama
+ *   al origen; las demás esperan ese mismo resultado.
+ * - {@link #actualizar} sustituye el valor sin llamar al origen (webhooks).
+ * - Ningún valor dura más que el TTL, por si se pierde algún evento.
+ * - Un error del origen no se cachea: lo reciben las peticiones que esperaban esa
+ *   carga y la siguiente vuelve a intentarlo.
+ *
+ * Métrica: cache.single-flight con tags cache y resultado (acierto, carga, espera).
+ */
+public class SingleFlightCache<V> {
+
+    private final Duration ttl;
+    private final AsyncCache<String, Entrada<V>> cache;
+    private final Counter aciertos;
+    private final Counter cargas;
+    private final Counter esperas;
+
+    public SingleFlightCache(String nombre, Duration ttl, long maximo, MeterRegistry meterRegistry) {
+        this.ttl = ttl;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximo)
+                .expireAfterWrite(ttl)
+                .buildAsync();
+        this.aciertos = contador(meterRegistry, nombre, "acierto");
+        this.cargas = contador(meterRegistry, nombre, "carga");
+        this.esperas = contador(meterRegistry, nombre, "espera");
+    }
+
+    private static Counter contador(MeterRegistry meterRegistry, String nombre, String resultado) {
+        return Counter.builder("cache.single-flight")
+                .description("Consultas a cachés de estado remoto")
+                .tag("cache", nombre)
+                .tag("resultado", resultado)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Devuelve el valor cacheado o lo carga del origen, como mucho una vez a la vez por clave.
+     */
+    public V obtener(String clave, Supplier<V> origen) {
+        return obtener(clave, valor -> ttl, origen);
+    }
+
+    /**
+     * Como {@link #obtener(String, Supplier)}, pero un valor ya cargado solo se usa
+     * mientras tenga menos antigüedad que la vigencia que indica la función.
+     */
+    public V obtener(String clave, Function<V, Duration> vigencia, Supplier<V> origen) {
+        while (true) {
+            CompletableFuture<Entrada<V>> actual = cache.getIfPresent(clave);
+            if (actual != null && !actual.isDone()) {
+                esperas.increment();
+                return esperar(actual).valor();
+            }
+            if (actual != null && !actual.isCompletedExceptionally()) {
+                Entrada<V> entrada = actual.join();
+                if (entrada.obtenidoEn().plus(vigencia.apply(entrada.valor())).isAfter(Instant.now())) {
+                    aciertos.increment();
+                    return entrada.valor();
+                }
+            }
+
+            CompletableFuture<Entrada<V>> carga = new CompletableFuture<>();
+            boolean propia = actual == null
+                    ? cache.asMap().putIfAbsent(clave, carga) == null
+                    : cache.asMap().replace(clave, actual, carga);
+            if (!propia) {
+                // Otra petición se adelantó: se usa su carga o su valor
+                continue;
+            }
+
+            cargas.increment();
+            try {
+                V valor = origen.get();
+                carga.complete(new Entrada<>(valor, Instant.now()));
+                return valor;
+            } catch (RuntimeException e) {
+                cache.asMap().remove(clave, carga);
+                carga.completeExceptionally(e);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Sustituye el valor de la clave (p. ej. con el objeto recibido en un webhook).
+     * Una carga en curso sigue respondiendo a quien la esperaba, pero ya no queda en caché.
+     */
+    public void actualizar(String clave, V valor) {
+        cache.put(clave, CompletableFuture.completedFuture(new Entrada<>(valor, Instant.now())));
+    }
+
+    public void invalidar(String clave) {
+        cache.synchronous().invalidate(clave);
+    }
+
+    private static <T> T esperar(CompletableFuture<T> carga) {
+        try {
+            return carga.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            throw e;
+        }
+    }
+
+    private record Entrada<V>(V valor, Instant obtenidoEn) {
+    }
+}
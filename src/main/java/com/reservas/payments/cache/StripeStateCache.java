@@ -0,0 +1,90 @@
+package com.reservas.payments.cache;
+
+import com.reservas.payments.domain.ConnectedAccount;
+import com.reservas.payments.domain.EstadoCuentaConectada;
+import com.stripe.model.checkout.Session;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Estado de Stripe que cambia poco y se consulta mucho:
+ *
+ * - cuentas: cuentas conectadas según la API de Stripe, por acct_xxx.
+ * - estado-cuentas: cuenta conectada de cada usuario según la base de datos.
+ * - sesiones: sesiones de checkout según la API de Stripe, por cs_xxx.
+ *
+ * Los webhooks account.updated y checkout.session.* actualizan las entradas al
+ * procesarse. Como solo las ve la instancia que procesa el evento, cada entrada
+ * caduca a los stripe.cache.ttl; las que aún pueden cambiar pronto (cuenta sin
+ * terminar el onboarding, sesión abierta) solo se usan durante
+ * stripe.cache.vigencia-pendiente.
+ */
+@Component
+public class StripeStateCache {
+
+    private final SingleFlightCache<ConnectedAccount> cuentas;
+    private final SingleFlightCache<Optional<EstadoCuentaConectada>> estadoCuentas;
+    private final SingleFlightCache<Session> sesiones;
+    private final Duration ttl;
+    private final Duration vigenciaPendiente;
+
+    public StripeStateCache(MeterRegistry meterRegistry,
+                            @Value("${stripe.cache.ttl:PT10M}") Duration ttl,
+                            @Value("${stripe.cache.vigencia-pendiente:PT10S}") Duration vigenciaPendiente,
+                            @Value("${stripe.cache.max-size:10000}") long maximo) {
+        this.cuentas = new SingleFlightCache<>("stripe.cuentas", ttl, maximo, meterRegistry);
+        this.estadoCuentas = new SingleFlightCache<>("stripe.estado-cuentas", ttl, maximo, meterRegistry);
+        this.sesiones = new SingleFlightCache<>("stripe.sesiones", ttl, maximo, meterRegistry);
+        this.ttl = ttl;
+        this.vigenciaPendiente = vigenciaPendiente;
+    }
+
+    /**
+     * Cuenta de Stripe, reutilizando una respuesta con menos antigüedad que la vigencia.
+     */
+    public ConnectedAccount obtenerCuenta(String stripeAccountId, Duration vigencia, Supplier<ConnectedAccount> origen) {
+        return cuentas.obtener(stripeAccountId, cuenta -> vigencia, origen);
+    }
+
+    public void actualizarCuenta(ConnectedAccount cuenta) {
+        cuentas.actualizar(cuenta.getId(), cuenta);
+    }
+
+    /**
+     * Cuenta conectada del usuario (vacío si no tiene).
+     */
+    public Optional<EstadoCuentaConectada> obtenerEstadoCuenta(String usuarioId,
+                                                              Supplier<Optional<EstadoCuentaConectada>> origen) {
+        return estadoCuentas.obtener(usuarioId,
+                estado -> estado.map(EstadoCuentaConectada::readyForPayments).orElse(false) ? ttl : vigenciaPendiente,
+                origen);
+    }
+
+    public void actualizarEstadoCuenta(String usuarioId, EstadoCuentaConectada estado) {
+        estadoCuentas.actualizar(usuarioId, Optional.of(estado));
+    }
+
+    public Session obtenerSesion(String sessionId, Supplier<Session> origen) {
+        return sesiones.obtener(sessionId,
+                sesion -> sesionCerrada(sesion) ? ttl : vigenciaPendiente,
+                origen);
+    }
+
+    public void actualizarSesion(Session sesion) {
+        sesiones.actualizar(sesion.getId(), sesion);
+    }
+
+    /**
+     * Una sesión expirada o completada ya no cambia, salvo un pago asíncrono
+     * (OXXO, SPEI) aún sin confirmar.
+     */
+    private static boolean sesionCerrada(Session sesion) {
+        return "expired".equals(sesion.getStatus())
+                || ("complete".equals(sesion.getStatus()) && !"unpaid".equals(sesion.getPaymentStatus()));
+    }
+}
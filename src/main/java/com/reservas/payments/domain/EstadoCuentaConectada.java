@@ -0,0 +1,30 @@
+package com.reservas.payments.domain;
+
+import com.reservas.entity.StripeConnectedAccount;
+
+/**
+ * Estado de la cuenta conectada de un usuario, tal como está guardado en la base de datos.
+ * Es lo que consultan el panel de integraciones y las validaciones de cobro.
+ */
+public record EstadoCuentaConectada(
+        String accountId,
+        String stripeAccountId,
+        Boolean chargesEnabled,
+        Boolean payoutsEnabled,
+        Boolean onboardingCompleted,
+        Boolean active,
+        boolean readyForPayments
+) {
+
+    public static EstadoCuentaConectada de(StripeConnectedAccount account) {
+        return new EstadoCuentaConectada(
+                account.getId(),
+                account.getStripeAccountId(),
+                account.getChargesEnabled(),
+                account.getPayoutsEnabled(),
+                account.getOnboardingCompleted(),
+                account.getActive(),
+                account.isReadyForPayments()
+        );
+    }
+}
@@ -3,7 +3,9 @@ package com.reservas.payments.service;
 import com.reservas.entity.StripeConnectedAccount;
 import com.reservas.entity.Usuario;
 import com.reservas.exception.PaymentException;
+import com.reservas.payments.cache.StripeStateCache;
 import com.reservas.payments.domain.ConnectedAccount;
+import com.reservas.payments.domain.EstadoCuentaConectada;
 import com.reservas.payments.domain.OnboardingLink;
 import com.reservas.payments.dto.CreateConnectedAccountRequest;
 import com.reservas.payments.stripe.StripeConnectAccountProvider;
@@ -11,13 +13,20 @@ import com.reservas.repository.StripeConnectedAccountRepository;
 import com.reservas.repository.UsuarioRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Optional;
 
 /**
  * Servicio de negocio para gestionar cuentas conectadas de Stripe.
  *
- * Orquesta la lógica entre el provider de Stripe y la persistencia.
+ * Orquesta la lógica entre el provider de Stripe y la persistencia. El estado de
+ * las cuentas se sirve desde {@link StripeStateCache}.
  */
 @Slf4j
 @Service
@@ -27,6 +36,13 @@ public class ConnectAccountService {
     private final StripeConnectAccountProvider connectAccountProvider;
     private final StripeConnectedAccountRepository accountRepository;
     private final UsuarioRepository usuarioRepository;
+    private final StripeStateCache stripeStateCache;
+
+    /**
+     * Antigüedad máxima de una respuesta de Stripe reutilizada al sincronizar a petición del usuario.
+     */
+    @Value("${stripe.cache.refresco-min:PT30S}")
+    private Duration refrescoMin;
 
     /**
      * Crea una cuenta conectada para un usuario.
@@ -62,6 +78,8 @@ public class ConnectAccountService {
                 .build();
 
         StripeConnectedAccount saved = accountRepository.save(account);
+        stripeStateCache.actualizarCuenta(stripeAccount);
+        actualizarEstadoTrasCommit(request.getUsuarioId(), EstadoCuentaConectada.de(saved));
         log.info("Cuenta conectada creada exitosamente: {}", saved.getStripeAccountId());
 
         return saved;
@@ -95,15 +113,33 @@ public class ConnectAccountService {
 
     /**
      * Sincroniza el estado de una cuenta desde Stripe.
-     * Se llama típicamente desde webhooks.
+     * Se llama a petición del usuario: las peticiones simultáneas comparten una sola
+     * llamada a Stripe y una respuesta de hace menos de stripe.cache.refresco-min se reutiliza.
      */
     @Transactional
     public void syncAccount(String stripeAccountId) {
         log.info("Sincronizando cuenta: {}", stripeAccountId);
 
-        ConnectedAccount stripeAccount = connectAccountProvider.getAccount(stripeAccountId);
+        ConnectedAccount stripeAccount = stripeStateCache.obtenerCuenta(stripeAccountId, refrescoMin,
+                () -> connectAccountProvider.getAccount(stripeAccountId));
+
+        aplicarEstado(stripeAccount);
+    }
+
+    /**
+     * Sincroniza una cuenta con el estado recibido en un webhook account.updated,
+     * sin volver a consultarlo en Stripe.
+     */
+    @Transactional
+    public void syncAccount(ConnectedAccount stripeAccount) {
+        log.info("Sincronizando cuenta desde webhook: {}", stripeAccount.getId());
+
+        stripeStateCache.actualizarCuenta(stripeAccount);
+        aplicarEstado(stripeAccount);
+    }
 
-        StripeConnectedAccount account = accountRepository.findByStripeAccountId(stripeAccountId)
+    private void aplicarEstado(ConnectedAccount stripeAccount) {
+        StripeConnectedAccount account = accountRepository.findByStripeAccountId(stripeAccount.getId())
                 .orElseThrow(() -> new PaymentException("Cuenta no encontrada", "ACCOUNT_NOT_FOUND"));
 
         account.setChargesEnabled(stripeAccount.getChargesEnabled());
@@ -119,18 +155,45 @@ public class ConnectAccountService {
         }
 
         accountRepository.save(account);
-        log.info("Cuenta sincronizada: {}", stripeAccountId);
+        actualizarEstadoTrasCommit(account.getUsuario().getId().toString(), EstadoCuentaConectada.de(account));
+        log.info("Cuenta sincronizada: {}", stripeAccount.getId());
+    }
+
+    /**
+     * Publica el estado de la cuenta en la caché cuando la transacción confirma: si
+     * hace rollback, la caché no debe servir un estado que no llegó a la BD.
+     */
+    private void actualizarEstadoTrasCommit(String usuarioId, EstadoCuentaConectada estado) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            stripeStateCache.actualizarEstadoCuenta(usuarioId, estado);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                stripeStateCache.actualizarEstadoCuenta(usuarioId, estado);
+            }
+        });
     }
 
     /**
      * Verifica si la cuenta está lista para recibir pagos.
      */
     public boolean isAccountReady(String usuarioId) {
-        return accountRepository.findByUsuarioId(java.util.UUID.fromString(usuarioId))
-                .map(StripeConnectedAccount::isReadyForPayments)
+        return getEstadoCuenta(usuarioId)
+                .map(EstadoCuentaConectada::readyForPayments)
                 .orElse(false);
     }
 
+    /**
+     * Estado de la cuenta conectada de un usuario (vacío si no tiene), desde caché.
+     */
+    public Optional<EstadoCuentaConectada> getEstadoCuenta(String usuarioId) {
+        return stripeStateCache.obtenerEstadoCuenta(usuarioId,
+                () -> accountRepository.findByUsuarioId(java.util.UUID.fromString(usuarioId))
+                        .map(EstadoCuentaConectada::de));
+    }
+
     /**
      * Obtiene la cuenta conectada de un usuario.
      */
@@ -1,8 +1,12 @@
 package com.reservas.payments.service;
 
 import com.reservas.entity.Cita;
+import com.reservas.entity.MovimientoPago;
+import com.reservas.entity.Negocio;
 import com.reservas.entity.Payment;
+import com.reservas.entity.SaldoPagos;
 import com.reservas.entity.StripeConnectedAccount;
+import com.reservas.entity.Usuario;
 import com.reservas.exception.PaymentException;
 import com.reservas.payments.domain.PaymentIntent;
 import com.reservas.payments.domain.Refund;
@@ -12,6 +16,8 @@ import com.reservas.payments.stripe.StripePaymentProvider;
 import com.reservas.repository.CitaRepository;
 import com.reservas.repository.PaymentRepository;
 import com.reservas.repository.StripeConnectedAccountRepository;
+import com.reservas.repository.UsuarioRepository;
+import com.reservas.service.LibroPagosService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
@@ -21,8 +27,12 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -33,19 +43,43 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class PaymentService {
 
+    /** Estados sin movimiento en el libro de pagos: los pendientes y los cancelados */
+    private static final Set<Payment.PaymentStatus> ESTADOS_SIN_MOVIMIENTO = EnumSet.of(
+            Payment.PaymentStatus.PENDING,
+            Payment.PaymentStatus.PROCESSING,
+            Payment.PaymentStatus.REQUIRES_ACTION,
+            Payment.PaymentStatus.CANCELED);
+
     private final StripePaymentProvider paymentProvider;
     private final PaymentRepository paymentRepository;
     private final StripeConnectedAccountRepository accountRepository;
     private final CitaRepository citaRepository;
+    private final UsuarioRepository usuarioRepository;
+    private final LibroPagosService libroPagosService;
 
     /**
      * Crea un PaymentIntent para cobrar a un cliente final.
      */
     @Transactional
     public Payment createPayment(CreatePaymentRequest request) {
+        return createPayment(request, UUID.randomUUID().toString());
+    }
+
+    /**
+     * Crea un PaymentIntent con la clave de idempotencia indicada (ver IdempotencyService).
+     * Si ya existe un pago con esa clave lo devuelve en lugar de crear otro.
+     */
+    @Transactional
+    public Payment createPayment(CreatePaymentRequest request, String idempotencyKey) {
         log.info("Creando pago - Usuario: {}, Monto: {} {}",
                 request.getUsuarioId(), request.getAmount(), request.getCurrency());
 
+        Payment existente = paymentRepository.findByIdempotencyKey(idempotencyKey).orElse(null);
+        if (existente != null) {
+            log.info("Pago ya creado con la misma clave de idempotencia: {}", existente.getId());
+            return existente;
+        }
+
         StripeConnectedAccount account = accountRepository.findByUsuarioId(UUID.fromString(request.getUsuarioId()))
                 .orElseThrow(() -> new PaymentException(
                         "El usuario no tiene una cuenta conectada",
@@ -59,8 +93,6 @@ public class PaymentService {
             );
         }
 
-        String idempotencyKey = UUID.randomUUID().toString();
-
         PaymentIntent paymentIntent = paymentProvider.createPaymentIntentForConnectedAccount(
                 request,
                 account.getStripeAccountId(),
@@ -111,11 +143,24 @@ public class PaymentService {
         Payment payment = paymentRepository.findByPaymentIntentId(paymentIntentId)
                 .orElseThrow(() -> new PaymentException("Pago no encontrado", "PAYMENT_NOT_FOUND"));
 
+        aplicarPagoExitoso(payment, chargeId);
+
+        log.info("Pago procesado exitosamente: {} - Amount: {} {}",
+                payment.getId(), payment.getAmount(), payment.getCurrency());
+    }
+
+    /**
+     * Marca el pago como exitoso y confirma su cita.
+     * Lo usan el webhook y la reconciliación con Stripe (StripeReconciliacionService).
+     */
+    @Transactional
+    public void aplicarPagoExitoso(Payment payment, String chargeId) {
         payment.setStatus(Payment.PaymentStatus.SUCCESS);
         payment.setChargeId(chargeId);
         payment.setConfirmedAt(LocalDateTime.now());
 
         paymentRepository.save(payment);
+        libroPagosService.registrar(payment);
 
         if (payment.getCita() != null) {
             Cita cita = payment.getCita();
@@ -123,9 +168,6 @@ public class PaymentService {
             citaRepository.save(cita);
             log.info("Cita confirmada automáticamente: {}", cita.getId());
         }
-
-        log.info("Pago procesado exitosamente: {} - Amount: {} {}",
-                payment.getId(), payment.getAmount(), payment.getCurrency());
     }
 
     /**
@@ -140,6 +182,7 @@ public class PaymentService {
 
         payment.setStatus(Payment.PaymentStatus.FAILED);
         paymentRepository.save(payment);
+        libroPagosService.registrar(payment);
 
         log.warn("Pago marcado como fallido: {}", payment.getId());
     }
@@ -167,6 +210,7 @@ public class PaymentService {
         payment.setRefundReason(refund.getReason());
         payment.setStatus(Payment.PaymentStatus.REFUNDED);
         paymentRepository.save(payment);
+        libroPagosService.registrar(payment);
 
         log.info("Reembolso creado exitosamente: {}", refund.getId());
         return refund;
@@ -248,49 +292,52 @@ public class PaymentService {
     }
 
     /**
-     * Obtiene estadísticas de pagos del usuario.
+     * Obtiene estadísticas de pagos del negocio del usuario desde el saldo del libro de
+     * pagos (LibroPagosService), sin cargar el historial.
+     *
+     * Los importes no se suman entre monedas: el nivel superior es la moneda principal
+     * del negocio y byCurrency desglosa cada moneda con movimientos.
      */
+    @Transactional(readOnly = true)
     public Map<String, Object> getPaymentStatistics(String email) {
-        Page<Payment> allPayments = findByUsuarioEmail(email, Pageable.unpaged());
-
-        long totalPayments = allPayments.getTotalElements();
-        BigDecimal totalAmount = allPayments.stream()
-                .filter(p -> p.getStatus() == Payment.PaymentStatus.SUCCESS || p.getStatus() == Payment.PaymentStatus.SUCCEEDED)
-                .map(Payment::getAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        BigDecimal totalPlatformFees = allPayments.stream()
-                .filter(p -> p.getStatus() == Payment.PaymentStatus.SUCCESS || p.getStatus() == Payment.PaymentStatus.SUCCEEDED)
-                .map(Payment::getPlatformFee)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        BigDecimal totalNetAmount = allPayments.stream()
-                .filter(p -> p.getStatus() == Payment.PaymentStatus.SUCCESS || p.getStatus() == Payment.PaymentStatus.SUCCEEDED)
-                .map(Payment::getNetAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        long successfulPayments = allPayments.stream()
-                .filter(p -> p.getStatus() == Payment.PaymentStatus.SUCCESS || p.getStatus() == Payment.PaymentStatus.SUCCEEDED)
-                .count();
+        Negocio negocio = usuarioRepository.findByEmail(email)
+                .map(Usuario::getNegocio)
+                .orElse(null);
+        List<SaldoPagos> saldos = negocio != null
+                ? libroPagosService.obtenerSaldos(negocio.getId(), MovimientoPago.Origen.CONNECT)
+                : List.of();
+        SaldoPagos principal = !saldos.isEmpty() ? saldos.get(0) : SaldoPagos.builder().moneda("MXN").build();
+
+        // Todo con alcance de negocio: los cobros y fallos salen del libro; los pendientes
+        // y cancelados, que no tienen movimiento, de tbl_payments
+        Map<String, Long> sinMovimiento = new HashMap<>();
+        if (negocio != null) {
+            for (Object[] fila : paymentRepository.contarPorMoneda(negocio.getId(), ESTADOS_SIN_MOVIMIENTO)) {
+                sinMovimiento.put((String) fila[0], (Long) fila[1]);
+            }
+        }
 
-        long failedPayments = allPayments.stream()
-                .filter(p -> p.getStatus() == Payment.PaymentStatus.FAILED)
-                .count();
+        Map<String, Object> stats = estadisticas(principal, sinMovimiento);
+        Map<String, Object> porMoneda = new LinkedHashMap<>();
+        for (SaldoPagos saldo : saldos) {
+            porMoneda.put(saldo.getMoneda(), estadisticas(saldo, sinMovimiento));
+        }
+        stats.put("byCurrency", porMoneda);
 
-        long refundedPayments = allPayments.stream()
-                .filter(p -> p.getStatus() == Payment.PaymentStatus.REFUNDED)
-                .count();
+        return stats;
+    }
 
+    private Map<String, Object> estadisticas(SaldoPagos saldo, Map<String, Long> sinMovimiento) {
         Map<String, Object> stats = new HashMap<>();
-        stats.put("totalPayments", totalPayments);
-        stats.put("successfulPayments", successfulPayments);
-        stats.put("failedPayments", failedPayments);
-        stats.put("refundedPayments", refundedPayments);
-        stats.put("totalAmount", totalAmount);
-        stats.put("totalPlatformFees", totalPlatformFees);
-        stats.put("totalNetAmount", totalNetAmount);
-        stats.put("currency", allPayments.getContent().isEmpty() ? "MXN" : allPayments.getContent().get(0).getCurrency());
-
+        stats.put("totalPayments", saldo.getCobros() + saldo.getFallos()
+                + sinMovimiento.getOrDefault(saldo.getMoneda(), 0L));
+        stats.put("successfulPayments", saldo.getCobrosVigentes());
+        stats.put("failedPayments", saldo.getFallos());
+        stats.put("refundedPayments", saldo.getReembolsos());
+        stats.put("totalAmount", saldo.getMonto());
+        stats.put("totalPlatformFees", saldo.getComision());
+        stats.put("totalNetAmount", saldo.getNeto());
+        stats.put("currency", saldo.getMoneda());
         return stats;
     }
 }
@@ -236,8 +236,9 @@ public class StripeConnectAccountProvider implements ConnectAccountProvider {
 
     /**
      * Mapea un Account de Stripe a nuestro dominio ConnectedAccount.
+     * También lo usan los webhooks account.updated, que ya traen la cuenta completa.
      */
-    private ConnectedAccount mapToDomain(Account account) {
+    public ConnectedAccount mapToDomain(Account account) {
         ConnectedAccount.AccountRequirements requirements = null;
 
         if (account.getRequirements() != null) {
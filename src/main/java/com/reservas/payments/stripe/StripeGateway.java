@@ -0,0 +1,280 @@
+package com.reservas.payments.stripe;
+
+import com.stripe.Stripe;
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.StripeException;
+import com.stripe.net.ApiResource;
+import com.stripe.net.HttpClient;
+import com.stripe.net.HttpURLConnectionClient;
+import com.stripe.net.LiveStripeResponseGetter;
+import com.stripe.net.StripeRequest;
+import com.stripe.net.StripeResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Punto único de salida hacia la API de Stripe.
+ *
+ * Se instala como HttpClient global del SDK, así que todas las llamadas estáticas
+ * (PaymentIntent.create, Session.retrieve, Account.retrieve...) de StripeService y de
+ * los providers pasan por aquí sin tocarlas:
+ * - Timeouts explícitos de conexión y lectura (stripe.http.*); el SDK trae 30s/80s.
+ * - Límite de llamadas simultáneas; si sigue lleno tras stripe.http.espera-max, la
+ *   llamada falla en lugar de acumular hilos de petición bloqueados.
+ * - Reintentos con jitter en 429, 5xx y errores de red. Stripe-Should-Retry manda
+ *   sobre el código de estado y Retry-After sobre el backoff calculado.
+ * - Tras un 429 todas las llamadas esperan el mismo backoff antes de salir, para no
+ *   seguir golpeando el rate limit desde otros hilos.
+ * - Métricas por operación (método + ruta sin ids): latencia total con reintentos,
+ *   reintentos, llamadas en curso y llamadas rechazadas por saturación.
+ *
+ * Los POST llevan siempre Idempotency-Key (la del llamador o una generada), de modo
+ * que reintentar nunca duplica un cobro.
+ */
+@Component
+@Slf4j
+public class StripeGateway extends HttpClient {
+
+    private static final String HEADER_IDEMPOTENCY = "Idempotency-Key";
+    private static final String HEADER_SHOULD_RETRY = "Stripe-Should-Retry";
+    private static final String HEADER_RETRY_AFTER = "Retry-After";
+
+    /** Segmentos de ruta que son ids de Stripe (acct_1Nv..., cs_test_a1..., pi_3O...) */
+    private static final Pattern ID_STRIPE = Pattern.compile("/(?=[^/]*_)(?=[^/]*\\d)[^/]+");
+
+    private final MeterRegistry meterRegistry;
+    private final Duration connectTimeout;
+    private final Duration readTimeout;
+    private final int maxConcurrentes;
+    private final Duration esperaMax;
+    private final int reintentos;
+    private final Duration backoffBase;
+    private final Duration backoffMax;
+    private final String apiBase;
+
+    private final HttpClient delegado = new HttpURLConnectionClient();
+    private final Semaphore huecos;
+
+    /** Instante (System.nanoTime) hasta el que no sale ninguna llamada tras un 429 */
+    private volatile long pausaHasta;
+
+    public StripeGateway(MeterRegistry meterRegistry,
+                         @Value("${stripe.http.connect-timeout:PT5S}") Duration connectTimeout,
+                         @Value("${stripe.http.read-timeout:PT30S}") Duration readTimeout,
+                         @Value("${stripe.http.max-concurrentes:20}") int maxConcurrentes,
+                         @Value("${stripe.http.espera-max:PT5S}") Duration esperaMax,
+                         @Value("${stripe.http.reintentos:3}") int reintentos,
+                         @Value("${stripe.http.backoff-base:PT0.5S}") Duration backoffBase,
+                         @Value("${stripe.http.backoff-max:PT8S}") Duration backoffMax,
+                         @Value("${stripe.api.base:}") String apiBase) {
+        this.meterRegistry = meterRegistry;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.maxConcurrentes = maxConcurrentes;
+        this.esperaMax = esperaMax;
+        this.reintentos = reintentos;
+        this.backoffBase = backoffBase;
+        this.backoffMax = backoffMax;
+        this.apiBase = apiBase;
+        this.huecos = new Semaphore(maxConcurrentes);
+        this.pausaHasta = System.nanoTime();
+
+        Gauge.builder("stripe.api.en-curso", huecos, s -> maxConcurrentes - s.availablePermits())
+                .description("Llamadas a Stripe en curso")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Configura el SDK para que todas sus llamadas salgan por este cliente.
+     */
+    @PostConstruct
+    public void instalar() {
+        Stripe.setConnectTimeout((int) connectTimeout.toMillis());
+        Stripe.setReadTimeout((int) readTimeout.toMillis());
+        // Los reintentos los hace requestWithRetries; el bucle del SDK no se usa
+        Stripe.setMaxNetworkRetries(0);
+        if (apiBase != null && !apiBase.isBlank()) {
+            Stripe.overrideApiBase(apiBase);
+        }
+        ApiResource.setStripeResponseGetter(new LiveStripeResponseGetter(this));
+
+        log.info("[StripeGateway] Inicializado (connectTimeout={}, readTimeout={}, maxConcurrentes={}, reintentos={})",
+                connectTimeout, readTimeout, maxConcurrentes, reintentos);
+    }
+
+    @Override
+    public StripeResponse request(StripeRequest request) throws StripeException {
+        return delegado.request(request);
+    }
+
+    @Override
+    public StripeResponse requestWithRetries(StripeRequest request) throws StripeException {
+        StripeRequest peticion = conClaveIdempotente(request);
+        String operacion = operacion(peticion);
+        String estado = "IO_ERROR";
+        long t0 = System.nanoTime();
+        try {
+            for (int intento = 0; ; intento++) {
+                StripeResponse response = null;
+                ApiConnectionException error = null;
+                try {
+                    response = enviar(peticion);
+                    estado = String.valueOf(response.code());
+                } catch (LimiteAlcanzadoException e) {
+                    // Reintentar solo alargaría la cola
+                    estado = "SATURADO";
+                    throw e;
+                } catch (ApiConnectionException e) {
+                    error = e;
+                    estado = "IO_ERROR";
+                }
+
+                if (intento >= reintentos || !debeReintentar(response, error)) {
+                    if (error != null) {
+                        throw error;
+                    }
+                    return response;
+                }
+
+                Duration espera = espera(intento, response);
+                Counter.builder("stripe.api.reintentos")
+                        .description("Llamadas a Stripe repetidas tras 429, 5xx o error de red")
+                        .tag("operacion", operacion)
+                        .tag("motivo", estado)
+                        .register(meterRegistry)
+                        .increment();
+                log.warn("[StripeGateway] {} respondió {}; reintento {}/{} en {} ms",
+                        operacion, estado, intento + 1, reintentos, espera.toMillis());
+
+                if (response != null && response.code() == 429) {
+                    pausar(espera);
+                }
+                dormir(espera);
+            }
+        } finally {
+            Timer.builder("stripe.api")
+                    .description("Latencia de las llamadas a Stripe, reintentos incluidos")
+                    .tag("operacion", operacion)
+                    .tag("estado", estado)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - t0, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Un intento: espera la pausa global y un hueco libre, y envía.
+     */
+    private StripeResponse enviar(StripeRequest peticion) throws StripeException {
+        long restante = pausaHasta - System.nanoTime();
+        if (restante > 0) {
+            dormir(Duration.ofNanos(restante));
+        }
+
+        boolean adquirido;
+        try {
+            adquirido = huecos.tryAcquire(esperaMax.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiConnectionException("Interrumpido esperando un hueco para llamar a Stripe", e);
+        }
+        if (!adquirido) {
+            Counter.builder("stripe.api.saturado")
+                    .description("Llamadas a Stripe rechazadas porque el límite siguió lleno")
+                    .register(meterRegistry)
+                    .increment();
+            log.warn("[StripeGateway] Límite de {} llamadas simultáneas a Stripe lleno tras {}",
+                    maxConcurrentes, esperaMax);
+            throw new LimiteAlcanzadoException();
+        }
+
+        try {
+            return requestWithTelemetry(peticion);
+        } finally {
+            huecos.release();
+        }
+    }
+
+    private boolean debeReintentar(StripeResponse response, ApiConnectionException error) {
+        if (error != null) {
+            return true;
+        }
+        Optional<String> shouldRetry = response.headers().firstValue(HEADER_SHOULD_RETRY);
+        if (shouldRetry.isPresent()) {
+            return Boolean.parseBoolean(shouldRetry.get());
+        }
+        return response.code() == 429 || response.code() >= 500;
+    }
+
+    /**
+     * Backoff exponencial con jitter completo, salvo que Stripe indique Retry-After.
+     */
+    private Duration espera(int intento, StripeResponse response) {
+        if (response != null) {
+            Optional<String> retryAfter = response.headers().firstValue(HEADER_RETRY_AFTER);
+            if (retryAfter.isPresent()) {
+                try {
+                    Duration pedida = Duration.ofSeconds(Long.parseLong(retryAfter.get().trim()));
+                    return pedida.compareTo(backoffMax) > 0 ? backoffMax : pedida;
+                } catch (NumberFormatException e) {
+                    // Formato fecha HTTP: se ignora y se usa el backoff normal
+                }
+            }
+        }
+        long tope = Math.min(backoffMax.toMillis(), backoffBase.toMillis() << Math.min(intento, 20));
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(tope / 2, tope + 1));
+    }
+
+    private void pausar(Duration espera) {
+        long hasta = System.nanoTime() + espera.toNanos();
+        if (hasta - pausaHasta > 0) {
+            pausaHasta = hasta;
+        }
+    }
+
+    private void dormir(Duration espera) throws ApiConnectionException {
+        try {
+            Thread.sleep(espera);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiConnectionException("Interrumpido esperando para reintentar la llamada a Stripe", e);
+        }
+    }
+
+    private StripeRequest conClaveIdempotente(StripeRequest request) {
+        if (request.method() == ApiResource.RequestMethod.POST
+                && request.headers().firstValue(HEADER_IDEMPOTENCY).isEmpty()) {
+            return request.withAdditionalHeader(HEADER_IDEMPOTENCY, UUID.randomUUID().toString());
+        }
+        return request;
+    }
+
+    /**
+     * "POST /v1/checkout/sessions/{id}/expire": agrupa las métricas sin disparar la cardinalidad.
+     */
+    static String operacion(StripeRequest request) {
+        String ruta = ID_STRIPE.matcher(request.url().getPath()).replaceAll("/{id}");
+        return request.method().name() + " " + ruta;
+    }
+
+    /** El límite de llamadas simultáneas siguió lleno tras stripe.http.espera-max */
+    static class LimiteAlcanzadoException extends ApiConnectionException {
+        LimiteAlcanzadoException() {
+            super("Límite de llamadas simultáneas a Stripe alcanzado");
+        }
+    }
+}
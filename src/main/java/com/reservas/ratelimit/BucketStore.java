@@ -0,0 +1,32 @@
+package com.reservas.ratelimit;
+
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+
+import java.util.function.Supplier;
+
+/**
+ * Almacén de buckets de rate limiting.
+ *
+ * Abstrae dónde vive el estado de cada bucket:
+ * - LocalBucketStore: memoria de la instancia, acotada y con expiración por inactividad
+ * - RedisBucketStore: Redis compartido, los límites aplican a todas las instancias de Cloud Run
+ *
+ * Se selecciona con la propiedad rate.limit.store (local | redis).
+ */
+public interface BucketStore {
+
+    /**
+     * Obtiene el bucket de una clave, creándolo con la configuración indicada si no existe.
+     *
+     * @param key Identificador único (ej: IP + endpoint)
+     * @param configuration Configuración a usar solo si el bucket aún no existe
+     * @return Bucket listo para consumir tokens
+     */
+    Bucket resolve(String key, Supplier<BucketConfiguration> configuration);
+
+    /**
+     * Número aproximado de buckets en memoria local (0 si el estado está fuera de la instancia).
+     */
+    long estimatedSize();
+}
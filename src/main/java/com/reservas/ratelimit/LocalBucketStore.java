@@ -0,0 +1,53 @@
+package com.reservas.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.local.LocalBucketBuilder;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * BucketStore en memoria de la instancia (modo por defecto).
+ *
+ * A diferencia del ConcurrentHashMap anterior, la caché está acotada por número de
+ * claves y descarta los buckets sin uso tras el tiempo de inactividad: un bucket
+ * inactivo ya estaría recargado, así que descartarlo no relaja el límite.
+ */
+public class LocalBucketStore implements BucketStore {
+
+    private final Cache<String, Bucket> cache;
+
+    public LocalBucketStore(long maxKeys, Duration idleTimeout) {
+        this(maxKeys, idleTimeout, Ticker.systemTicker());
+    }
+
+    LocalBucketStore(long maxKeys, Duration idleTimeout, Ticker ticker) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(idleTimeout)
+                .ticker(ticker)
+                .build();
+    }
+
+    @Override
+    public Bucket resolve(String key, Supplier<BucketConfiguration> configuration) {
+        return cache.get(key, k -> {
+            LocalBucketBuilder builder = Bucket.builder();
+            for (Bandwidth bandwidth : configuration.get().getBandwidths()) {
+                builder.addLimit(bandwidth);
+            }
+            return builder.build();
+        });
+    }
+
+    @Override
+    public long estimatedSize() {
+        cache.cleanUp();
+        return cache.estimatedSize();
+    }
+}
@@ -0,0 +1,29 @@
+package com.reservas.ratelimit;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marca endpoints costosos sujetos a rate limiting por negocio (tenant).
+ *
+ * Cada negocio tiene un bucket por grupo cuyo tamaño depende de su plan
+ * (rate.limit.tenant.*); cada petición consume tantos tokens como indique cost.
+ * Lo aplica TenantRateLimitInterceptor.
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RateLimited {
+
+    /**
+     * Grupo del bucket. Endpoints con el mismo grupo comparten límite.
+     * Ejemplos: "dashboard", "reportes", "disponibilidad"
+     */
+    String value();
+
+    /**
+     * Tokens que consume cada petición (peso del endpoint)
+     */
+    int cost() default 1;
+}
@@ -0,0 +1,39 @@
+package com.reservas.ratelimit;
+
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.distributed.proxy.ProxyManager;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.function.Supplier;
+
+/**
+ * BucketStore distribuido: el estado de cada bucket vive en Redis y se actualiza
+ * con compare-and-swap (LettuceBasedProxyManager), por lo que todas las instancias
+ * comparten el mismo límite por clave.
+ *
+ * Las claves expiran en Redis cuando el bucket se recarga por completo, así que el
+ * almacén no crece con claves abandonadas.
+ */
+@Slf4j
+public class RedisBucketStore implements BucketStore {
+
+    static final String KEY_PREFIX = "rate-limit:";
+
+    private final ProxyManager<String> proxyManager;
+
+    public RedisBucketStore(ProxyManager<String> proxyManager) {
+        this.proxyManager = proxyManager;
+    }
+
+    @Override
+    public Bucket resolve(String key, Supplier<BucketConfiguration> configuration) {
+        // El proxy es ligero (no hace I/O hasta consumir), no hace falta cachearlo
+        return proxyManager.builder().build(KEY_PREFIX + key, configuration);
+    }
+
+    @Override
+    public long estimatedSize() {
+        return 0;
+    }
+}
@@ -0,0 +1,156 @@
+package com.reservas.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.reservas.entity.enums.TipoPlan;
+import com.reservas.repository.UsuarioRepository;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.ConsumptionProbe;
+import io.github.bucket4j.Refill;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Interceptor de rate limiting por negocio para endpoints anotados con @RateLimited.
+ *
+ * - La clave del bucket es negocio + plan + grupo, así que todos los usuarios de un
+ *   negocio comparten el límite y un negocio no puede agotar el pool de conexiones de
+ *   los demás. Con el plan en la clave, un cambio de plan usa un bucket nuevo con la
+ *   capacidad del plan nuevo en lugar de conservar la del anterior.
+ * - La capacidad por minuto depende del plan del negocio.
+ * - Al exceder el límite responde 429 con Retry-After y registra la métrica
+ *   rate_limit.tenant.throttled (tags: plan, grupo). El negocio solo va al log: como
+ *   tag crearía una serie por negocio.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TenantRateLimitInterceptor implements HandlerInterceptor {
+
+    static final String METRICA_THROTTLED = "rate_limit.tenant.throttled";
+
+    private final BucketStore bucketStore;
+    private final UsuarioRepository usuarioRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${rate.limit.enabled:true}")
+    private boolean rateLimitEnabled;
+
+    @Value("${rate.limit.tenant.basico-per-minute:60}")
+    private long basicoPorMinuto;
+
+    @Value("${rate.limit.tenant.profesional-per-minute:120}")
+    private long profesionalPorMinuto;
+
+    @Value("${rate.limit.tenant.premium-per-minute:300}")
+    private long premiumPorMinuto;
+
+    /**
+     * email → negocio/plan. Evita una consulta a BD por petición limitada;
+     * un cambio de plan se refleja como máximo tras el TTL.
+     */
+    private final Cache<String, Tenant> tenants = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofMinutes(5))
+            .build();
+
+    record Tenant(UUID negocioId, TipoPlan plan) {}
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (!rateLimitEnabled || !(handler instanceof HandlerMethod handlerMethod)) {
+            return true;
+        }
+
+        RateLimited rateLimited = handlerMethod.getMethodAnnotation(RateLimited.class);
+        if (rateLimited == null) {
+            rateLimited = handlerMethod.getBeanType().getAnnotation(RateLimited.class);
+        }
+        if (rateLimited == null) {
+            return true;
+        }
+
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated() ||
+            "anonymousUser".equals(authentication.getPrincipal())) {
+            // Si no está autenticado, Spring Security se encargará
+            return true;
+        }
+
+        Tenant tenant = resolverTenant(authentication.getName());
+        if (tenant == null) {
+            return true;
+        }
+
+        String grupo = rateLimited.value();
+        String key = "tenant:" + tenant.negocioId() + ":" + tenant.plan().getCodigo() + ":" + grupo;
+        ConsumptionProbe probe = bucketStore.resolve(key, () -> configuracion(tenant.plan()))
+                .tryConsumeAndReturnRemaining(rateLimited.cost());
+
+        if (probe.isConsumed()) {
+            response.setHeader("X-RateLimit-Remaining", String.valueOf(probe.getRemainingTokens()));
+            return true;
+        }
+
+        long retryAfter = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(probe.getNanosToWaitForRefill() + 999_999_999L));
+        log.warn("[TenantRateLimit] Límite excedido - negocio: {}, plan: {}, grupo: {}, reintentar en {}s",
+                tenant.negocioId(), tenant.plan().getCodigo(), grupo, retryAfter);
+        meterRegistry.counter(METRICA_THROTTLED,
+                "plan", tenant.plan().getCodigo(),
+                "grupo", grupo).increment();
+
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
+        response.setHeader("X-RateLimit-Remaining", "0");
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().write(String.format(
+                "{\"success\": false, \"message\": \"Demasiadas peticiones. Intenta de nuevo en %d segundos.\"}",
+                retryAfter));
+        return false;
+    }
+
+    private Tenant resolverTenant(String email) {
+        return tenants.get(email, e -> usuarioRepository.findByEmailWithNegocio(e)
+                .map(usuario -> new Tenant(usuario.getNegocio().getId(), planDe(usuario.getNegocio().getPlan())))
+                .orElse(null));
+    }
+
+    private TipoPlan planDe(String codigo) {
+        try {
+            return TipoPlan.fromCodigo(codigo);
+        } catch (IllegalArgumentException e) {
+            return TipoPlan.BASICO;
+        }
+    }
+
+    /**
+     * Solo se invoca al crear el bucket (o cuando su estado expiró en Redis).
+     */
+    BucketConfiguration configuracion(TipoPlan plan) {
+        long porMinuto = switch (plan) {
+            case BASICO -> basicoPorMinuto;
+            case PROFESIONAL -> profesionalPorMinuto;
+            case PREMIUM -> premiumPorMinuto;
+        };
+        return BucketConfiguration.builder()
+                .addLimit(Bandwidth.classic(porMinuto, Refill.greedy(porMinuto, Duration.ofMinutes(1))))
+                .build();
+    }
+}
@@ -0,0 +1,24 @@
+package com.reservas.repository;
+
+import com.reservas.entity.BatchJobCursor;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+/**
+ * Cursores de los jobs por lotes. Cada lote bloquea la fila de su job hasta el commit:
+ * dos ejecuciones simultáneas del mismo job avanzan el cursor por turnos en lugar
+ * de procesar dos veces el mismo lote.
+ */
+@Repository
+public interface BatchJobCursorRepository extends JpaRepository<BatchJobCursor, String> {
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM BatchJobCursor c WHERE c.nombre = :nombre")
+    Optional<BatchJobCursor> bloquear(@Param("nombre") String nombre);
+}
@@ -68,12 +68,13 @@ public interface CitaRepository extends JpaRepository<Cita, String> {
 
     List<Cita> findByNegocioOrderByFechaHoraAsc(Negocio negocio);
 
+    // Rango semiabierto [inicio, fin) en lugar de YEAR()/MONTH() para poder usar idx_citas_negocio_fecha_hora
     @Query("SELECT COUNT(c) FROM Cita c WHERE c.negocio.id = :negocioId AND " +
-           "YEAR(c.fechaHora) = :year AND MONTH(c.fechaHora) = :month")
-    long countCitasByNegocioAndMonth(
+           "c.fechaHora >= :inicio AND c.fechaHora < :fin")
+    long countCitasByNegocioAndFechaHoraRange(
         @Param("negocioId") UUID negocioId,
-        @Param("year") int year,
-        @Param("month") int month
+        @Param("inicio") LocalDateTime inicio,
+        @Param("fin") LocalDateTime fin
     );
 
     // Métodos para citas recurrentes
@@ -0,0 +1,31 @@
+package com.reservas.repository;
+
+import com.reservas.entity.IdempotencyRecord;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+
+    /**
+     * Bloquea la clave hasta el commit: las repeticiones simultáneas la leen por turnos.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM IdempotencyRecord r " +
+           "WHERE r.tenant = :tenant AND r.operacion = :operacion AND r.idempotencyKey = :idempotencyKey")
+    Optional<IdempotencyRecord> bloquear(@Param("tenant") String tenant,
+                                         @Param("operacion") String operacion,
+                                         @Param("idempotencyKey") String idempotencyKey);
+
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.expiraEn < :ahora")
+    int eliminarExpiradas(@Param("ahora") LocalDateTime ahora);
+}
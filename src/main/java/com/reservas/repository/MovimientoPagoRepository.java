@@ -0,0 +1,54 @@
+package com.reservas.repository;
+
+import com.reservas.entity.MovimientoPago;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Libro de pagos. Solo inserta: no hay métodos de actualización ni de borrado.
+ */
+@Repository
+public interface MovimientoPagoRepository extends JpaRepository<MovimientoPago, Long> {
+
+    /**
+     * Inserta el movimiento salvo que ya exista (mismo origen, referencia y tipo).
+     * Devuelve 1 si se insertó y 0 si ya estaba: solo en el primer caso se suma al saldo.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO {h-schema}tbl_movimientos_pago " +
+            "(negocio_id, origen, referencia, tipo, moneda, monto, comision, neto, reembolsado, " +
+            "referencia_stripe, fecha, created_at) " +
+            "VALUES (:negocioId, :origen, :referencia, :tipo, :moneda, :monto, :comision, :neto, :reembolsado, " +
+            ":referenciaStripe, :fecha, :ahora) " +
+            "ON CONFLICT DO NOTHING", nativeQuery = true)
+    int insertarSiNoExiste(@Param("negocioId") UUID negocioId,
+                           @Param("origen") String origen,
+                           @Param("referencia") String referencia,
+                           @Param("tipo") String tipo,
+                           @Param("moneda") String moneda,
+                           @Param("monto") BigDecimal monto,
+                           @Param("comision") BigDecimal comision,
+                           @Param("neto") BigDecimal neto,
+                           @Param("reembolsado") BigDecimal reembolsado,
+                           @Param("referenciaStripe") String referenciaStripe,
+                           @Param("fecha") LocalDateTime fecha,
+                           @Param("ahora") LocalDateTime ahora);
+
+    /**
+     * Historial del negocio del más reciente al más antiguo, paginado por id (keyset)
+     * sobre idx_movimientos_pago_negocio_id.
+     */
+    @Query("SELECT m FROM MovimientoPago m WHERE m.negocioId = :negocioId AND m.id < :antesDe ORDER BY m.id DESC")
+    List<MovimientoPago> findHistorial(@Param("negocioId") UUID negocioId,
+                                       @Param("antesDe") Long antesDe,
+                                       Pageable pageable);
+}
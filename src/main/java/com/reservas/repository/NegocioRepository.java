@@ -1,9 +1,18 @@
 package com.reservas.repository;
 
 import com.reservas.entity.Negocio;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -12,4 +21,66 @@ public interface NegocioRepository extends JpaRepository<Negocio, UUID> {
     Optional<Negocio> findByEmail(String email);
     boolean existsByEmail(String email);
     Optional<Negocio> findByStripeSubscriptionId(String stripeSubscriptionId);
-}
\ No newline at end of file
+    List<Negocio> findByStripeSubscriptionIdIn(Collection<String> stripeSubscriptionIds);
+
+    // ==================== Barrido nocturno de suscripciones ====================
+    // Las consultas del barrido paginan por id (keyset, despuesDe = último id del lote
+    // anterior) y bloquean el lote hasta el commit, así que un webhook de pago que
+    // llega a la vez no se pisa con el UPDATE masivo del lote.
+
+    /**
+     * Periodos de prueba vencidos con la cuenta todavía activa.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT n FROM Negocio n WHERE n.enPeriodoPrueba = true AND n.cuentaActiva = true " +
+           "AND n.fechaFinPrueba < :ahora AND n.id > :despuesDe ORDER BY n.id")
+    List<Negocio> bloquearPruebasVencidas(@Param("ahora") LocalDateTime ahora,
+                                          @Param("despuesDe") UUID despuesDe,
+                                          Pageable pageable);
+
+    /**
+     * Suscripciones activas cuya fecha de cobro ya pasó.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT n FROM Negocio n WHERE n.enPeriodoPrueba = false AND n.estadoPago = 'activo' " +
+           "AND n.fechaProximoCobro < :ahora AND n.id > :despuesDe ORDER BY n.id")
+    List<Negocio> bloquearSuscripcionesVencidas(@Param("ahora") LocalDateTime ahora,
+                                                @Param("despuesDe") UUID despuesDe,
+                                                Pageable pageable);
+
+    /**
+     * Pruebas que terminan en [desde, hasta) sin aviso enviado.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT n FROM Negocio n WHERE n.enPeriodoPrueba = true AND n.notificacionPruebaEnviada = false " +
+           "AND n.fechaFinPrueba >= :desde AND n.fechaFinPrueba < :hasta AND n.id > :despuesDe ORDER BY n.id")
+    List<Negocio> bloquearPendientesAvisoPrueba(@Param("desde") LocalDateTime desde,
+                                                @Param("hasta") LocalDateTime hasta,
+                                                @Param("despuesDe") UUID despuesDe,
+                                                Pageable pageable);
+
+    /**
+     * Suscripciones activas con cobro en [desde, hasta) sin aviso enviado.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT n FROM Negocio n WHERE n.enPeriodoPrueba = false AND n.estadoPago = 'activo' " +
+           "AND n.notificacionVencimientoEnviada = false " +
+           "AND n.fechaProximoCobro >= :desde AND n.fechaProximoCobro < :hasta AND n.id > :despuesDe ORDER BY n.id")
+    List<Negocio> bloquearPendientesAvisoVencimiento(@Param("desde") LocalDateTime desde,
+                                                     @Param("hasta") LocalDateTime hasta,
+                                                     @Param("despuesDe") UUID despuesDe,
+                                                     Pageable pageable);
+
+    @Modifying
+    @Query("UPDATE Negocio n SET n.cuentaActiva = false, n.estadoPago = 'vencido', n.updatedAt = :ahora " +
+           "WHERE n.id IN :ids")
+    int marcarVencidos(@Param("ids") Collection<UUID> ids, @Param("ahora") LocalDateTime ahora);
+
+    @Modifying
+    @Query("UPDATE Negocio n SET n.notificacionPruebaEnviada = true, n.updatedAt = :ahora WHERE n.id IN :ids")
+    int marcarAvisoPruebaEnviado(@Param("ids") Collection<UUID> ids, @Param("ahora") LocalDateTime ahora);
+
+    @Modifying
+    @Query("UPDATE Negocio n SET n.notificacionVencimientoEnviada = true, n.updatedAt = :ahora WHERE n.id IN :ids")
+    int marcarAvisoVencimientoEnviado(@Param("ids") Collection<UUID> ids, @Param("ahora") LocalDateTime ahora);
+}
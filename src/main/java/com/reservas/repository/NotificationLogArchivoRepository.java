@@ -0,0 +1,22 @@
+package com.reservas.repository;
+
+import com.reservas.entity.NotificationLogArchivo;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface NotificationLogArchivoRepository extends JpaRepository<NotificationLogArchivo, String> {
+
+    /**
+     * Elimina los bloques cuyas notificaciones son todas anteriores a :limite.
+     * Cada bloque agrupa un lote completo, así que son pocas filas.
+     */
+    @Modifying
+    @Query("DELETE FROM NotificationLogArchivo a WHERE a.hasta < :limite")
+    int eliminarAnterioresA(@Param("limite") LocalDateTime limite);
+}
@@ -2,12 +2,19 @@ package com.reservas.repository;
 
 import com.reservas.entity.NotificationLog;
 import com.reservas.notifications.domain.NotificationChannel;
+import com.reservas.notifications.domain.NotificationLogArchivado;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -17,6 +24,15 @@ public interface NotificationLogRepository extends JpaRepository<NotificationLog
 
     Optional<NotificationLog> findByProviderMessageId(String providerMessageId);
 
+    /**
+     * Carga y bloquea las notificaciones de un lote de callbacks del proveedor
+     * (índice provider_message_id). El orden por id evita interbloqueos entre
+     * instancias que apliquen lotes con mensajes en común.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT n FROM NotificationLog n WHERE n.providerMessageId IN :ids ORDER BY n.id")
+    List<NotificationLog> bloquearPorProviderMessageIds(@Param("ids") Collection<String> providerMessageIds);
+
     List<NotificationLog> findByUsuarioIdOrderByCreatedAtDesc(UUID usuarioId);
 
     Page<NotificationLog> findByUsuarioId(UUID usuarioId, Pageable pageable);
@@ -28,4 +44,27 @@ public interface NotificationLogRepository extends JpaRepository<NotificationLog
     List<NotificationLog> findByRecipientAndCreatedAtAfter(String recipient, LocalDateTime date);
 
     Long countByUsuarioIdAndStatus(UUID usuarioId, NotificationLog.NotificationStatus status);
+
+    /**
+     * Notificaciones anteriores a :limite en orden (created_at, id), a partir de la
+     * posición (:desdeFecha, :desdeId). Proyección plana para archivarlas sin cargar
+     * el usuario de cada una.
+     */
+    @Query("SELECT new com.reservas.notifications.domain.NotificationLogArchivado(" +
+           "n.id, u.id, n.channel, n.provider, n.providerMessageId, n.recipient, n.recipientName, n.subject, " +
+           "n.content, n.templateId, n.templateVariables, n.status, n.notificationType, n.relatedEntityId, " +
+           "n.relatedEntityType, n.sentSuccessfully, n.errorMessage, n.errorCode, n.retryCount, n.sentAt, " +
+           "n.deliveredAt, n.readAt, n.clickedAt, n.bouncedAt, n.bounceReason, n.metadata, n.createdAt, n.updatedAt) " +
+           "FROM NotificationLog n LEFT JOIN n.usuario u " +
+           "WHERE n.createdAt < :limite " +
+           "AND (n.createdAt > :desdeFecha OR (n.createdAt = :desdeFecha AND n.id > :desdeId)) " +
+           "ORDER BY n.createdAt, n.id")
+    List<NotificationLogArchivado> findParaArchivar(@Param("limite") LocalDateTime limite,
+                                                    @Param("desdeFecha") LocalDateTime desdeFecha,
+                                                    @Param("desdeId") String desdeId,
+                                                    Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM NotificationLog n WHERE n.id IN :ids")
+    int eliminarPorIds(@Param("ids") Collection<String> ids);
 }
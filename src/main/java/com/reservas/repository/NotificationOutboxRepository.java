@@ -0,0 +1,70 @@
+package com.reservas.repository;
+
+import com.reservas.entity.NotificationOutbox;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface NotificationOutboxRepository extends JpaRepository<NotificationOutbox, String> {
+
+    Optional<NotificationOutbox> findByIdempotencyKey(String idempotencyKey);
+
+    /**
+     * Encola la notificación si no existe otra con la misma clave de idempotencia.
+     * ON CONFLICT evita que dos peticiones simultáneas choquen con la restricción única
+     * y reviertan la transacción de quien encola. Devuelve 1 si se insertó y 0 si ya existía.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO {h-schema}tbl_notification_outbox " +
+            "(id, idempotency_key, channel, notification_type, usuario_id, recipient, recipient_name, subject, " +
+            "content, sensitive_content, related_entity_id, related_entity_type, status, attempts, " +
+            "next_attempt_at, created_at) " +
+            "VALUES (:id, :idempotencyKey, :channel, :tipo, CAST(:usuarioId AS UUID), :recipient, :recipientName, " +
+            ":subject, :content, :sensitiveContent, :relatedEntityId, :relatedEntityType, 'PENDING', 0, " +
+            ":ahora, :ahora) " +
+            "ON CONFLICT DO NOTHING", nativeQuery = true)
+    int insertarSiNoExiste(
+            @Param("id") String id,
+            @Param("idempotencyKey") String idempotencyKey,
+            @Param("channel") String channel,
+            @Param("tipo") String tipo,
+            @Param("usuarioId") String usuarioId,
+            @Param("recipient") String recipient,
+            @Param("recipientName") String recipientName,
+            @Param("subject") String subject,
+            @Param("content") String content,
+            @Param("sensitiveContent") boolean sensitiveContent,
+            @Param("relatedEntityId") String relatedEntityId,
+            @Param("relatedEntityType") String relatedEntityType,
+            @Param("ahora") LocalDateTime ahora);
+
+    /**
+     * Reclama un lote de notificaciones pendientes cuyo próximo intento ya venció.
+     * SKIP LOCKED permite que varias instancias vacíen el outbox sin enviar duplicados.
+     * Debe llamarse dentro de una transacción (el bloqueo dura hasta el commit).
+     */
+    @Query(value = "SELECT o.id FROM {h-schema}tbl_notification_outbox o " +
+            "WHERE o.status = 'PENDING' AND o.next_attempt_at <= :ahora " +
+            "ORDER BY o.next_attempt_at " +
+            "LIMIT :limite " +
+            "FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<String> reclamarPendientes(@Param("ahora") LocalDateTime ahora, @Param("limite") int limite);
+
+    /**
+     * Elimina hasta :limite notificaciones ya resueltas (SENT o FAILED) creadas antes
+     * de :antesDe. Por lotes, para no retener bloqueos sobre millones de filas.
+     */
+    @Modifying
+    @Query(value = "DELETE FROM {h-schema}tbl_notification_outbox WHERE id IN (" +
+            "SELECT o.id FROM {h-schema}tbl_notification_outbox o " +
+            "WHERE o.status IN ('SENT', 'FAILED') AND o.created_at < :antesDe " +
+            "LIMIT :limite)", nativeQuery = true)
+    int eliminarResueltas(@Param("antesDe") LocalDateTime antesDe, @Param("limite") int limite);
+}
@@ -2,13 +2,17 @@ package com.reservas.repository;
 
 import com.reservas.entity.Payment;
 import com.reservas.entity.Usuario;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -36,6 +40,49 @@ public interface PaymentRepository extends JpaRepository<Payment, String> {
     @Query("SELECT SUM(p.netAmount) FROM Payment p WHERE p.usuario.id = ?1 AND p.status = 'SUCCESS'")
     java.math.BigDecimal getTotalNetAmountByUsuarioId(UUID usuarioId);
 
+    /**
+     * Pagos sin estado final creados en [desde, hasta), paginados por id (keyset).
+     * Sin bloqueo: la reconciliación consulta Stripe con estas filas y solo bloquea
+     * las que va a corregir (bloquearPorIds).
+     */
+    @Query("SELECT p FROM Payment p WHERE p.status IN :estados AND p.createdAt >= :desde " +
+           "AND p.createdAt < :hasta AND p.id > :despuesDe ORDER BY p.id")
+    List<Payment> findSinEstadoFinal(@Param("estados") Collection<Payment.PaymentStatus> estados,
+                                     @Param("desde") LocalDateTime desde,
+                                     @Param("hasta") LocalDateTime hasta,
+                                     @Param("despuesDe") String despuesDe,
+                                     Pageable pageable);
+
+    /**
+     * Pagos por id, bloqueados hasta el commit: un webhook simultáneo espera a que la
+     * corrección termine. Ordenados por id para bloquear siempre en el mismo orden.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Payment p WHERE p.id IN :ids ORDER BY p.id")
+    List<Payment> bloquearPorIds(@Param("ids") Collection<String> ids);
+
+    /**
+     * Pagos con movimientos en el libro de pagos creados antes del corte, paginados por
+     * id para el backfill de LibroPagosService.
+     */
+    @Query("SELECT p FROM Payment p JOIN FETCH p.usuario WHERE p.status IN :estados AND p.createdAt < :corte " +
+           "AND p.id > :despuesDe ORDER BY p.id")
+    List<Payment> findParaLibro(@Param("estados") Collection<Payment.PaymentStatus> estados,
+                                @Param("corte") LocalDateTime corte,
+                                @Param("despuesDe") String despuesDe,
+                                Pageable pageable);
+
+    long countByUsuarioEmail(String email);
+
+    /**
+     * Pagos del negocio en los estados dados por moneda (en mayúsculas, como el libro
+     * de pagos): pendientes y cancelados de /v1/payments/statistics, que no tienen movimiento.
+     */
+    @Query("SELECT UPPER(p.currency), COUNT(p) FROM Payment p WHERE p.usuario.negocio.id = :negocioId " +
+           "AND p.status IN :estados GROUP BY UPPER(p.currency)")
+    List<Object[]> contarPorMoneda(@Param("negocioId") UUID negocioId,
+                                   @Param("estados") Collection<Payment.PaymentStatus> estados);
+
     // Métodos adicionales para el controlador
     @Query("SELECT p FROM Payment p WHERE p.usuario.email = ?1 ORDER BY p.createdAt DESC")
     Page<Payment> findByUsuarioEmail(String email, Pageable pageable);
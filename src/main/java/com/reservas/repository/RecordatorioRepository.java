@@ -1,9 +1,14 @@
 package com.reservas.repository;
 
 import com.reservas.entity.Recordatorio;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
@@ -12,5 +17,57 @@ public interface RecordatorioRepository extends JpaRepository<Recordatorio, Stri
 
     List<Recordatorio> findByEnviado(boolean enviado);
 
-    List<Recordatorio> findByEnviadoFalse();
-}
\ No newline at end of file
+    /**
+     * Reclama un lote de recordatorios vencidos bloqueando sus filas.
+     * SKIP LOCKED permite que varias instancias procesen la cola sin enviar duplicados:
+     * cada una se salta las filas que otra ya tiene reclamadas.
+     * Debe llamarse dentro de una transacción (el bloqueo dura hasta el commit).
+     */
+    @Query(value = "SELECT r.id FROM {h-schema}tbl_recordatorios r " +
+            "WHERE r.enviado = false AND r.scheduled_at <= :ahora " +
+            "ORDER BY r.scheduled_at " +
+            "LIMIT :limite " +
+            "FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<String> reclamarVencidos(@Param("ahora") LocalDateTime ahora, @Param("limite") int limite);
+
+    /**
+     * Carga los recordatorios reclamados con cita, cliente, servicio y negocio en una sola consulta.
+     */
+    @Query("SELECT r FROM Recordatorio r " +
+           "JOIN FETCH r.cita c " +
+           "JOIN FETCH c.cliente " +
+           "JOIN FETCH c.servicio " +
+           "JOIN FETCH c.negocio " +
+           "WHERE r.id IN :ids")
+    List<Recordatorio> findByIdInWithCita(@Param("ids") List<String> ids);
+
+    /**
+     * Recordatorios pendientes que vencen antes de :hasta (incluidos los ya vencidos),
+     * en orden de envío. Solo id y momento: alimenta la agenda en memoria.
+     */
+    @Query("SELECT r.id AS id, r.scheduledAt AS scheduledAt FROM Recordatorio r " +
+           "WHERE r.enviado = false AND r.scheduledAt IS NOT NULL AND r.scheduledAt <= :hasta " +
+           "ORDER BY r.scheduledAt")
+    List<RecordatorioProgramado> findProgramadosHasta(@Param("hasta") LocalDateTime hasta, Pageable pageable);
+
+    /**
+     * Registra un envío exitoso y saca el recordatorio de la cola.
+     */
+    @Modifying
+    @Query("UPDATE Recordatorio r SET r.enviado = true, r.fechaEnvio = :fechaEnvio, r.scheduledAt = null " +
+           "WHERE r.id = :id")
+    int marcarEnviado(@Param("id") String id, @Param("fechaEnvio") LocalDateTime fechaEnvio);
+
+    /**
+     * Mueve el recordatorio a otro momento de la cola (reintento tras un envío fallido).
+     */
+    @Modifying
+    @Query("UPDATE Recordatorio r SET r.scheduledAt = :scheduledAt WHERE r.id = :id AND r.enviado = false")
+    int reprogramar(@Param("id") String id, @Param("scheduledAt") LocalDateTime scheduledAt);
+
+    interface RecordatorioProgramado {
+        String getId();
+
+        LocalDateTime getScheduledAt();
+    }
+}
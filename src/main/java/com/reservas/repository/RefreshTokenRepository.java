@@ -0,0 +1,53 @@
+package com.reservas.repository;
+
+import com.reservas.entity.RefreshToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface RefreshTokenRepository extends JpaRepository<RefreshToken, UUID> {
+
+    @Query("SELECT r FROM RefreshToken r JOIN FETCH r.usuario WHERE r.tokenHash = :tokenHash")
+    Optional<RefreshToken> findByTokenHashWithUsuario(@Param("tokenHash") String tokenHash);
+
+    /**
+     * Sesiones activas de un usuario (una por familia), la más reciente primero.
+     */
+    @Query("SELECT r FROM RefreshToken r WHERE r.usuario.email = :email " +
+           "AND r.revocadoEn IS NULL AND r.expiraEn > :ahora ORDER BY r.createdAt DESC")
+    List<RefreshToken> findActivosByEmail(@Param("email") String email, @Param("ahora") LocalDateTime ahora);
+
+    /**
+     * Revoca un token solo si sigue activo. Devuelve 0 si otra petición lo rotó antes.
+     */
+    @Modifying
+    @Query("UPDATE RefreshToken r SET r.revocadoEn = :ahora WHERE r.id = :id AND r.revocadoEn IS NULL")
+    int revocarSiActivo(@Param("id") UUID id, @Param("ahora") LocalDateTime ahora);
+
+    @Modifying
+    @Query("UPDATE RefreshToken r SET r.revocadoEn = :ahora WHERE r.familia = :familia AND r.revocadoEn IS NULL")
+    int revocarFamilia(@Param("familia") UUID familia, @Param("ahora") LocalDateTime ahora);
+
+    @Modifying
+    @Query("UPDATE RefreshToken r SET r.revocadoEn = :ahora " +
+           "WHERE r.familia = :familia AND r.revocadoEn IS NULL " +
+           "AND r.usuario.id IN (SELECT u.id FROM Usuario u WHERE u.email = :email)")
+    int revocarFamiliaDeUsuario(@Param("familia") UUID familia, @Param("email") String email,
+                                @Param("ahora") LocalDateTime ahora);
+
+    /**
+     * Borra tokens expirados y tokens rotados/revocados antes de revocadoAntesDe.
+     * Los revocados recientes se conservan para detectar reutilización.
+     */
+    @Modifying
+    @Query("DELETE FROM RefreshToken r WHERE r.expiraEn < :ahora OR r.revocadoEn < :revocadoAntesDe")
+    int eliminarObsoletos(@Param("ahora") LocalDateTime ahora, @Param("revocadoAntesDe") LocalDateTime revocadoAntesDe);
+}
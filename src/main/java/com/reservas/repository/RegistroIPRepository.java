@@ -1,11 +1,15 @@
 package com.reservas.repository;
 
 import com.reservas.entity.RegistroIP;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -33,4 +37,23 @@ public interface RegistroIPRepository extends JpaRepository<RegistroIP, UUID> {
      * Busca todos los registros de una IP
      */
     List<RegistroIP> findByIpAddress(String ipAddress);
+
+    /**
+     * Marca como inactivos los registros de los negocios indicados (por idx_registro_ips_negocio_id)
+     */
+    @Modifying
+    @Query("UPDATE RegistroIP r SET r.activo = false WHERE r.negocio.id IN :negocioIds")
+    int desactivarPorNegocios(@Param("negocioIds") Collection<UUID> negocioIds);
+
+    /**
+     * Ids de registros creados antes de :antesDe, por id a partir de :despuesDe (retención por lotes)
+     */
+    @Query("SELECT r.id FROM RegistroIP r WHERE r.createdAt < :antesDe AND r.id > :despuesDe ORDER BY r.id")
+    List<UUID> findIdsCreadosAntesDe(@Param("antesDe") LocalDateTime antesDe,
+                                     @Param("despuesDe") UUID despuesDe,
+                                     Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM RegistroIP r WHERE r.id IN :ids")
+    int eliminarPorIds(@Param("ids") Collection<UUID> ids);
 }
@@ -0,0 +1,61 @@
+package com.reservas.repository;
+
+import com.reservas.entity.MovimientoPago;
+import com.reservas.entity.SaldoPagos;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Saldos acumulados del libro de pagos. Se modifican solo con sumar(), en la misma
+ * transacción que inserta el movimiento.
+ */
+@Repository
+public interface SaldoPagosRepository extends JpaRepository<SaldoPagos, UUID> {
+
+    List<SaldoPagos> findByNegocioIdAndOrigen(UUID negocioId, MovimientoPago.Origen origen);
+
+    /**
+     * Crea la fila a cero si no existe. ON CONFLICT evita que el primer movimiento de
+     * dos peticiones concurrentes choque contra la restricción única.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO {h-schema}tbl_saldos_pago " +
+            "(id, negocio_id, origen, moneda, cobros, fallos, reembolsos, monto, comision, neto, reembolsado, " +
+            "created_at, updated_at) " +
+            "VALUES (:id, :negocioId, :origen, :moneda, 0, 0, 0, 0, 0, 0, 0, :ahora, :ahora) " +
+            "ON CONFLICT DO NOTHING", nativeQuery = true)
+    int insertarSiNoExiste(@Param("id") UUID id,
+                           @Param("negocioId") UUID negocioId,
+                           @Param("origen") String origen,
+                           @Param("moneda") String moneda,
+                           @Param("ahora") LocalDateTime ahora);
+
+    /**
+     * Suma un movimiento al saldo. Devuelve 0 si la fila aún no existe.
+     */
+    @Modifying
+    @Query("UPDATE SaldoPagos s SET s.cobros = s.cobros + :cobros, s.fallos = s.fallos + :fallos, " +
+           "s.reembolsos = s.reembolsos + :reembolsos, s.monto = s.monto + :monto, " +
+           "s.comision = s.comision + :comision, s.neto = s.neto + :neto, " +
+           "s.reembolsado = s.reembolsado + :reembolsado, s.updatedAt = :ahora " +
+           "WHERE s.negocioId = :negocioId AND s.origen = :origen AND s.moneda = :moneda")
+    int sumar(@Param("negocioId") UUID negocioId,
+              @Param("origen") MovimientoPago.Origen origen,
+              @Param("moneda") String moneda,
+              @Param("cobros") long cobros,
+              @Param("fallos") long fallos,
+              @Param("reembolsos") long reembolsos,
+              @Param("monto") BigDecimal monto,
+              @Param("comision") BigDecimal comision,
+              @Param("neto") BigDecimal neto,
+              @Param("reembolsado") BigDecimal reembolsado,
+              @Param("ahora") LocalDateTime ahora);
+}
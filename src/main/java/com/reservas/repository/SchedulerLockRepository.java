@@ -0,0 +1,55 @@
+package com.reservas.repository;
+
+import com.reservas.entity.SchedulerLock;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Leases de jobs programados. Todas las operaciones son un único UPDATE
+ * condicionado y devuelven las filas afectadas: 1 = éxito, 0 = lease ajeno o vencido.
+ */
+@Repository
+public interface SchedulerLockRepository extends JpaRepository<SchedulerLock, String> {
+
+    /**
+     * Crea la fila del job con el lease tomado. Falla por clave duplicada si otra
+     * instancia la creó antes.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO {h-schema}tbl_scheduler_locks (nombre, bloqueado_hasta, bloqueado_en, bloqueado_por) " +
+            "VALUES (:nombre, :hasta, :ahora, :instancia)", nativeQuery = true)
+    int crear(@Param("nombre") String nombre, @Param("instancia") String instancia,
+              @Param("ahora") LocalDateTime ahora, @Param("hasta") LocalDateTime hasta);
+
+    /**
+     * Toma el lease solo si el anterior ya venció.
+     */
+    @Modifying
+    @Query("UPDATE SchedulerLock l SET l.bloqueadoHasta = :hasta, l.bloqueadoEn = :ahora, l.bloqueadoPor = :instancia " +
+           "WHERE l.nombre = :nombre AND l.bloqueadoHasta <= :ahora")
+    int adquirir(@Param("nombre") String nombre, @Param("instancia") String instancia,
+                 @Param("ahora") LocalDateTime ahora, @Param("hasta") LocalDateTime hasta);
+
+    /**
+     * Heartbeat: alarga el lease mientras siga siendo de esta instancia.
+     */
+    @Modifying
+    @Query("UPDATE SchedulerLock l SET l.bloqueadoHasta = :hasta " +
+           "WHERE l.nombre = :nombre AND l.bloqueadoPor = :instancia")
+    int extender(@Param("nombre") String nombre, @Param("instancia") String instancia,
+                 @Param("hasta") LocalDateTime hasta);
+
+    /**
+     * Libera el lease. :hasta puede quedar en el futuro para respetar la duración mínima.
+     */
+    @Modifying
+    @Query("UPDATE SchedulerLock l SET l.bloqueadoHasta = :hasta " +
+           "WHERE l.nombre = :nombre AND l.bloqueadoPor = :instancia")
+    int liberar(@Param("nombre") String nombre, @Param("instancia") String instancia,
+                @Param("hasta") LocalDateTime hasta);
+}
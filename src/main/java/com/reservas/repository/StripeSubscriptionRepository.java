@@ -5,6 +5,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -14,6 +15,8 @@ public interface StripeSubscriptionRepository extends JpaRepository<StripeSubscr
 
     Optional<StripeSubscription> findBySubscriptionId(String subscriptionId);
 
+    List<StripeSubscription> findBySubscriptionIdIn(Collection<String> subscriptionIds);
+
     Optional<StripeSubscription> findByCustomerId(String customerId);
 
     List<StripeSubscription> findByUsuarioId(UUID usuarioId);
@@ -0,0 +1,50 @@
+package com.reservas.repository;
+
+import com.reservas.entity.StripeWebhookEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface StripeWebhookEventRepository extends JpaRepository<StripeWebhookEvent, String> {
+
+    boolean existsByEventId(String eventId);
+
+    /**
+     * Reclama un lote de eventos pendientes cuyo próximo intento ya venció.
+     *
+     * Solo reclama el evento más antiguo pendiente de cada objeto: mientras un evento
+     * anterior del mismo objeto siga pendiente (en curso o esperando reintento), los
+     * siguientes esperan. Así un lote nunca trae dos eventos del mismo objeto y se
+     * pueden procesar en paralelo.
+     *
+     * SKIP LOCKED permite que varias instancias vacíen el inbox sin procesar duplicados.
+     * Debe llamarse dentro de una transacción (el bloqueo dura hasta el commit).
+     */
+    @Query(value = "SELECT e.id FROM {h-schema}tbl_stripe_webhook_events e " +
+            "WHERE e.status = 'PENDING' AND e.next_attempt_at <= :ahora " +
+            "AND NOT EXISTS (SELECT 1 FROM {h-schema}tbl_stripe_webhook_events p " +
+            "    WHERE p.object_id = e.object_id AND p.status = 'PENDING' " +
+            "    AND (p.stripe_created_at < e.stripe_created_at " +
+            "         OR (p.stripe_created_at = e.stripe_created_at AND p.created_at < e.created_at))) " +
+            "ORDER BY e.stripe_created_at " +
+            "LIMIT :limite " +
+            "FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<String> reclamarPendientes(@Param("ahora") LocalDateTime ahora, @Param("limite") int limite);
+
+    /**
+     * Elimina hasta :limite eventos ya resueltos (PROCESSED o FAILED) recibidos antes
+     * de :antesDe. Por lotes, para no retener bloqueos sobre millones de filas.
+     */
+    @Modifying
+    @Query(value = "DELETE FROM {h-schema}tbl_stripe_webhook_events WHERE id IN (" +
+            "SELECT e.id FROM {h-schema}tbl_stripe_webhook_events e " +
+            "WHERE e.status IN ('PROCESSED', 'FAILED') AND e.created_at < :antesDe " +
+            "LIMIT :limite)", nativeQuery = true)
+    int eliminarResueltos(@Param("antesDe") LocalDateTime antesDe, @Param("limite") int limite);
+}
@@ -3,13 +3,24 @@ package com.reservas.repository;
 import com.reservas.entity.Negocio;
 import com.reservas.entity.UsoNegocio;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
+/**
+ * Repositorio de contadores de uso por negocio y periodo.
+ *
+ * Los métodos incrementar* son la verificación de cuota: un único UPDATE atómico
+ * sobre la fila (negocio_id, periodo) que solo suma si el total sigue por debajo
+ * del máximo del plan (max < 0 = ilimitado). Devuelven el número de filas
+ * afectadas: 1 = cupo reservado, 0 = límite alcanzado o fila inexistente.
+ */
 @Repository
 public interface UsoNegocioRepository extends JpaRepository<UsoNegocio, UUID> {
 
@@ -19,4 +30,80 @@ public interface UsoNegocioRepository extends JpaRepository<UsoNegocio, UUID> {
     Optional<UsoNegocio> findByNegocioIdAndPeriodo(@Param("negocioId") UUID negocioId, @Param("periodo") String periodo);
 
     boolean existsByNegocioAndPeriodo(Negocio negocio, String periodo);
+
+    @Query("SELECT u.negocio.id FROM UsoNegocio u WHERE u.periodo = :periodo")
+    List<UUID> findNegocioIdsByPeriodo(@Param("periodo") String periodo);
+
+    /**
+     * Crea la fila del periodo si no existe. ON CONFLICT evita que dos peticiones
+     * concurrentes del primer día del mes choquen contra la restricción única.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO {h-schema}tbl_uso_negocio " +
+            "(id, negocio_id, periodo, total_usuarios, total_clientes, total_citas_mes, total_servicios, created_at, updated_at) " +
+            "VALUES (:id, :negocioId, :periodo, :usuarios, :clientes, :citasMes, :servicios, :ahora, :ahora) " +
+            "ON CONFLICT DO NOTHING", nativeQuery = true)
+    int insertarSiNoExiste(
+            @Param("id") UUID id,
+            @Param("negocioId") UUID negocioId,
+            @Param("periodo") String periodo,
+            @Param("usuarios") int usuarios,
+            @Param("clientes") int clientes,
+            @Param("citasMes") int citasMes,
+            @Param("servicios") int servicios,
+            @Param("ahora") LocalDateTime ahora
+    );
+
+    // ========== Incrementos condicionados al límite del plan ==========
+
+    @Modifying
+    @Query("UPDATE UsoNegocio u SET u.totalUsuarios = u.totalUsuarios + 1, u.updatedAt = :ahora " +
+           "WHERE u.negocio.id = :negocioId AND u.periodo = :periodo AND (:max < 0 OR u.totalUsuarios < :max)")
+    int incrementarUsuarios(@Param("negocioId") UUID negocioId, @Param("periodo") String periodo,
+                            @Param("max") int max, @Param("ahora") LocalDateTime ahora);
+
+    @Modifying
+    @Query("UPDATE UsoNegocio u SET u.totalClientes = u.totalClientes + 1, u.updatedAt = :ahora " +
+           "WHERE u.negocio.id = :negocioId AND u.periodo = :periodo AND (:max < 0 OR u.totalClientes < :max)")
+    int incrementarClientes(@Param("negocioId") UUID negocioId, @Param("periodo") String periodo,
+                            @Param("max") int max, @Param("ahora") LocalDateTime ahora);
+
+    @Modifying
+    @Query("UPDATE UsoNegocio u SET u.totalCitasMes = u.totalCitasMes + :cantidad, u.updatedAt = :ahora " +
+           "WHERE u.negocio.id = :negocioId AND u.periodo = :periodo AND (:max < 0 OR u.totalCitasMes < :max)")
+    int incrementarCitasMes(@Param("negocioId") UUID negocioId, @Param("periodo") String periodo,
+                            @Param("cantidad") int cantidad, @Param("max") int max,
+                            @Param("ahora") LocalDateTime ahora);
+
+    @Modifying
+    @Query("UPDATE UsoNegocio u SET u.totalServicios = u.totalServicios + 1, u.updatedAt = :ahora " +
+           "WHERE u.negocio.id = :negocioId AND u.periodo = :periodo AND (:max < 0 OR u.totalServicios < :max)")
+    int incrementarServicios(@Param("negocioId") UUID negocioId, @Param("periodo") String periodo,
+                             @Param("max") int max, @Param("ahora") LocalDateTime ahora);
+
+    // ========== Decrementos (nunca por debajo de cero) ==========
+
+    @Modifying
+    @Query("UPDATE UsoNegocio u SET u.totalUsuarios = u.totalUsuarios - 1, u.updatedAt = :ahora " +
+           "WHERE u.negocio.id = :negocioId AND u.periodo = :periodo AND u.totalUsuarios > 0")
+    int decrementarUsuarios(@Param("negocioId") UUID negocioId, @Param("periodo") String periodo,
+                            @Param("ahora") LocalDateTime ahora);
+
+    @Modifying
+    @Query("UPDATE UsoNegocio u SET u.totalClientes = u.totalClientes - 1, u.updatedAt = :ahora " +
+           "WHERE u.negocio.id = :negocioId AND u.periodo = :periodo AND u.totalClientes > 0")
+    int decrementarClientes(@Param("negocioId") UUID negocioId, @Param("periodo") String periodo,
+                            @Param("ahora") LocalDateTime ahora);
+
+    /**
+     * Sobrescribe los cuatro contadores con los totales reales (job de reconciliación).
+     */
+    @Modifying
+    @Query("UPDATE UsoNegocio u SET u.totalUsuarios = :usuarios, u.totalClientes = :clientes, " +
+           "u.totalCitasMes = :citasMes, u.totalServicios = :servicios, u.updatedAt = :ahora " +
+           "WHERE u.negocio.id = :negocioId AND u.periodo = :periodo")
+    int reconciliar(@Param("negocioId") UUID negocioId, @Param("periodo") String periodo,
+                    @Param("usuarios") int usuarios, @Param("clientes") int clientes,
+                    @Param("citasMes") int citasMes, @Param("servicios") int servicios,
+                    @Param("ahora") LocalDateTime ahora);
 }
@@ -0,0 +1,38 @@
+package com.reservas.scheduler;
+
+import com.reservas.service.IdempotencyService;
+import com.reservas.service.SchedulerLockService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Scheduler de limpieza de claves de idempotencia.
+ * Una clave caducada ya no se consulta, pero cada petición con Idempotency-Key
+ * deja una fila con su respuesta.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IdempotencyScheduler {
+
+    private final IdempotencyService idempotencyService;
+    private final SchedulerLockService schedulerLockService;
+
+    /**
+     * Se ejecuta cada hora, en una sola instancia del clúster.
+     */
+    @Scheduled(cron = "0 15 * * * *") // Ejecutar en el minuto 15 de cada hora
+    public void purgarClaves() {
+        schedulerLockService.ejecutar("idempotencia.purga", Duration.ofMinutes(5), () -> {
+            try {
+                idempotencyService.purgarExpiradas();
+            } catch (Exception e) {
+                log.error("[IdempotencyScheduler] Error purgando claves de idempotencia", e);
+            }
+        });
+    }
+}
@@ -0,0 +1,56 @@
+package com.reservas.scheduler;
+
+import com.reservas.notifications.service.NotificationOutboxService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Vacía el outbox de notificaciones cada pocos segundos.
+ *
+ * Corre en todas las instancias: el reclamo con SKIP LOCKED reparte las filas
+ * entre ellas sin duplicar envíos, así que no necesita SchedulerLockService.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class NotificationOutboxScheduler {
+
+    private final NotificationOutboxService notificationOutboxService;
+
+    @Value("${notificaciones.outbox.enabled:true}")
+    private boolean habilitado;
+
+    @Value("${notificaciones.outbox.lote.tamano:50}")
+    private int tamanoLote;
+
+    /** Tope de lotes por ejecución, para que un atasco no alargue el ciclo indefinidamente */
+    @Value("${notificaciones.outbox.lote.max-por-ejecucion:20}")
+    private int maxLotes;
+
+    @Scheduled(fixedDelayString = "${notificaciones.outbox.intervalo-ms:5000}")
+    public void despacharPendientes() {
+        if (!habilitado) {
+            return;
+        }
+
+        int total = 0;
+        int lotes = 0;
+        try {
+            int reclamadas;
+            do {
+                reclamadas = notificationOutboxService.procesarPendientes(tamanoLote);
+                total += reclamadas;
+                lotes++;
+            } while (reclamadas == tamanoLote && lotes < maxLotes);
+
+            if (total > 0) {
+                log.info("[NotificationOutboxScheduler] {} notificaciones procesadas en {} lotes", total, lotes);
+            }
+        } catch (Exception e) {
+            log.error("[NotificationOutboxScheduler] Error vaciando el outbox: {}", e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.reservas.scheduler;
+
+import com.reservas.notifications.service.NotificationRetentionService;
+import com.reservas.service.SchedulerLockService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Scheduler de retención de tbl_notification_logs.
+ * Cada notificación enviada deja un registro con su contenido completo, así que
+ * sin retención la tabla y sus índices crecen sin límite.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class NotificationRetentionScheduler {
+
+    private final NotificationRetentionService notificationRetentionService;
+    private final SchedulerLockService schedulerLockService;
+
+    /**
+     * Se ejecuta todos los días a las 3:30 AM, en una sola instancia del clúster.
+     */
+    @Scheduled(cron = "0 30 3 * * *") // Ejecutar a las 3:30 AM todos los días
+    public void aplicarRetencion() {
+        schedulerLockService.ejecutar("notificaciones.retencion", Duration.ofMinutes(5), () -> {
+            try {
+                notificationRetentionService.aplicarRetencion();
+            } catch (Exception e) {
+                log.error("[NotificationRetentionScheduler] Error aplicando la retención de notificaciones", e);
+            }
+        });
+    }
+}
@@ -1,13 +1,30 @@
 package com.reservas.scheduler;
 
+import com.reservas.service.RecordatorioAgenda;
 import com.reservas.service.RecordatorioService;
+import com.reservas.service.SchedulerLockService;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.List;
+
 /**
- * Scheduler para procesar recordatorios de citas periódicamente
+ * Scheduler para procesar recordatorios de citas.
+ *
+ * Camino principal: un hilo consume la {@link RecordatorioAgenda} y reclama un lote
+ * en cuanto vence un recordatorio (precisión de segundos, sin consultas en reposo).
+ * Respaldo: el cron de cada 30 minutos sondea la base de datos, así que tras un
+ * reinicio o con la agenda deshabilitada los recordatorios siguen saliendo.
+ *
+ * El cron corre en una sola instancia del clúster. La agenda y su recarga son por
+ * instancia (memoria local); el reclamo con SKIP LOCKED evita envíos duplicados.
  */
 @Component
 @Slf4j
@@ -16,20 +33,108 @@ public class RecordatorioScheduler {
     @Autowired
     private RecordatorioService recordatorioService;
 
+    @Autowired
+    private RecordatorioAgenda agenda;
+
+    @Autowired
+    private SchedulerLockService schedulerLockService;
+
+    @Value("${recordatorios.lote.tamano:100}")
+    private int tamanoLote;
+
+    /** Tope de lotes por ejecución, para que un atasco no alargue el ciclo indefinidamente */
+    @Value("${recordatorios.lote.max-por-ejecucion:50}")
+    private int maxLotes;
+
+    private Thread consumidorAgenda;
+
     /**
-     * Procesa recordatorios pendientes cada 30 minutos
+     * Carga la agenda y arranca el hilo que la consume.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void iniciarAgenda() {
+        if (!agenda.isHabilitada()) {
+            log.info("[RecordatorioScheduler] Agenda deshabilitada: solo sondeo cada 30 minutos");
+            return;
+        }
+
+        agenda.recargar();
+        consumidorAgenda = Thread.ofVirtual()
+                .name("recordatorios-agenda")
+                .start(this::consumirAgenda);
+    }
+
+    @PreDestroy
+    public void detenerAgenda() {
+        if (consumidorAgenda != null) {
+            consumidorAgenda.interrupt();
+        }
+    }
+
+    /**
+     * Recarga la agenda con los recordatorios del siguiente horizonte.
+     * Recoge también los cambios hechos desde otras instancias.
+     */
+    @Scheduled(fixedDelayString = "${recordatorios.agenda.recarga-ms:900000}",
+               initialDelayString = "${recordatorios.agenda.recarga-ms:900000}")
+    public void recargarAgenda() {
+        try {
+            agenda.recargar();
+        } catch (Exception e) {
+            log.error("[RecordatorioScheduler] Error recargando la agenda: {}", e.getMessage(), e);
+        }
+    }
+
+    private void consumirAgenda() {
+        log.info("[RecordatorioScheduler] Agenda de recordatorios iniciada");
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                List<String> vencidos = agenda.esperarVencidos();
+                log.debug("[RecordatorioScheduler] Vencieron {} recordatorios de la agenda", vencidos.size());
+                procesarVencidos();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("[RecordatorioScheduler] Error procesando la agenda: {}", e.getMessage(), e);
+            }
+        }
+        log.info("[RecordatorioScheduler] Agenda de recordatorios detenida");
+    }
+
+    /**
+     * Respaldo: sondea recordatorios vencidos cada 30 minutos, en lotes acotados.
+     * El trabajo por ejecución depende de los recordatorios vencidos, no del total pendiente.
      * Cron: segundos minutos horas día mes día-semana
      */
     @Scheduled(cron = "0 */30 * * * *")
     public void procesarRecordatorios() {
-        log.info("Iniciando procesamiento programado de recordatorios...");
+        schedulerLockService.ejecutar("recordatorios.sondeo", Duration.ofMinutes(1), () -> {
+            log.info("Iniciando procesamiento programado de recordatorios...");
+            int total = procesarVencidos();
+            log.info("Procesamiento programado de recordatorios completado: {} recordatorios", total);
+        });
+    }
 
+    /**
+     * Reclama lotes mientras vuelvan completos. Puede ejecutarse a la vez desde la
+     * agenda y desde el cron: SKIP LOCKED y la reserva evitan envíos duplicados.
+     */
+    int procesarVencidos() {
+        int total = 0;
+        int lotes = 0;
         try {
-            recordatorioService.procesarRecordatoriosPendientes();
-            log.info("Procesamiento programado de recordatorios completado");
+            int reclamados;
+            do {
+                reclamados = recordatorioService.procesarRecordatoriosPendientes(tamanoLote);
+                total += reclamados;
+                lotes++;
+            } while (reclamados == tamanoLote && lotes < maxLotes);
+
+            log.debug("Recordatorios procesados: {} en {} lotes", total, lotes);
         } catch (Exception e) {
-            log.error("Error en procesamiento programado de recordatorios: {}", e.getMessage(), e);
+            log.error("Error en procesamiento de recordatorios: {}", e.getMessage(), e);
         }
+        return total;
     }
 
     /**
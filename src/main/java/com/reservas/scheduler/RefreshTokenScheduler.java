@@ -0,0 +1,39 @@
+package com.reservas.scheduler;
+
+import com.reservas.service.RefreshTokenService;
+import com.reservas.service.SchedulerLockService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Scheduler de limpieza de refresh tokens.
+ * Cada /auth/refresh crea un registro nuevo, así que sin purga la tabla crece
+ * con cada sesión abierta.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RefreshTokenScheduler {
+
+    private final RefreshTokenService refreshTokenService;
+    private final SchedulerLockService schedulerLockService;
+
+    /**
+     * Se ejecuta todos los días a las 4:30 AM, en una sola instancia del clúster.
+     */
+    @Scheduled(cron = "0 30 4 * * *") // Ejecutar a las 4:30 AM todos los días
+    public void purgarTokens() {
+        schedulerLockService.ejecutar("refresh-tokens.purga", Duration.ofMinutes(5), () -> {
+            try {
+                int eliminados = refreshTokenService.purgarObsoletos();
+                log.info("[RefreshTokenScheduler] Refresh tokens obsoletos eliminados: {}", eliminados);
+            } catch (Exception e) {
+                log.error("[RefreshTokenScheduler] Error purgando refresh tokens", e);
+            }
+        });
+    }
+}
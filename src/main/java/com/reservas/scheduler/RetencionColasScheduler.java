@@ -0,0 +1,46 @@
+package com.reservas.scheduler;
+
+import com.reservas.notifications.service.NotificationOutboxService;
+import com.reservas.service.SchedulerLockService;
+import com.reservas.service.StripeWebhookInboxService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Scheduler de retención de las colas en base de datos.
+ * Las filas ya resueltas del outbox de notificaciones y del inbox de webhooks de
+ * Stripe no se vuelven a leer, pero cada aviso o evento deja una con su contenido
+ * (o payload) completo.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RetencionColasScheduler {
+
+    private final NotificationOutboxService notificationOutboxService;
+    private final StripeWebhookInboxService stripeWebhookInboxService;
+    private final SchedulerLockService schedulerLockService;
+
+    /**
+     * Se ejecuta todos los días a las 4:00 AM, en una sola instancia del clúster.
+     */
+    @Scheduled(cron = "0 0 4 * * *") // Ejecutar a las 4:00 AM todos los días
+    public void purgarColas() {
+        schedulerLockService.ejecutar("colas.retencion", Duration.ofMinutes(5), () -> {
+            try {
+                notificationOutboxService.purgarResueltas();
+            } catch (Exception e) {
+                log.error("[RetencionColasScheduler] Error purgando el outbox de notificaciones", e);
+            }
+            try {
+                stripeWebhookInboxService.purgarResueltos();
+            } catch (Exception e) {
+                log.error("[RetencionColasScheduler] Error purgando el inbox de webhooks de Stripe", e);
+            }
+        });
+    }
+}
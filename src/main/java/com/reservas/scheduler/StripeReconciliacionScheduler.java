@@ -0,0 +1,37 @@
+package com.reservas.scheduler;
+
+import com.reservas.service.SchedulerLockService;
+import com.reservas.service.StripeReconciliacionService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Scheduler de reconciliación con Stripe.
+ * Corrige los pagos y suscripciones cuyo webhook no llegó o no se aplicó.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StripeReconciliacionScheduler {
+
+    private final StripeReconciliacionService stripeReconciliacionService;
+    private final SchedulerLockService schedulerLockService;
+
+    /**
+     * Se ejecuta cada hora, en una sola instancia del clúster.
+     */
+    @Scheduled(cron = "0 40 * * * *") // Ejecutar en el minuto 40 de cada hora
+    public void reconciliar() {
+        schedulerLockService.ejecutar("stripe.reconciliacion", Duration.ofMinutes(30), () -> {
+            try {
+                stripeReconciliacionService.reconciliar();
+            } catch (Exception e) {
+                log.error("[StripeReconciliacionScheduler] Error reconciliando con Stripe", e);
+            }
+        });
+    }
+}
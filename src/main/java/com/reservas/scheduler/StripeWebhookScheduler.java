@@ -0,0 +1,56 @@
+package com.reservas.scheduler;
+
+import com.reservas.service.StripeWebhookInboxService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Procesa los webhooks de Stripe guardados en el inbox cada pocos segundos.
+ *
+ * Corre en todas las instancias: el reclamo con SKIP LOCKED reparte los eventos
+ * entre ellas sin procesarlos dos veces, así que no necesita SchedulerLockService.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StripeWebhookScheduler {
+
+    private final StripeWebhookInboxService stripeWebhookInboxService;
+
+    @Value("${stripe.webhook.inbox.enabled:true}")
+    private boolean habilitado;
+
+    @Value("${stripe.webhook.inbox.lote.tamano:20}")
+    private int tamanoLote;
+
+    /** Tope de lotes por ejecución, para que un atasco no alargue el ciclo indefinidamente */
+    @Value("${stripe.webhook.inbox.lote.max-por-ejecucion:20}")
+    private int maxLotes;
+
+    @Scheduled(fixedDelayString = "${stripe.webhook.inbox.intervalo-ms:2000}")
+    public void procesarPendientes() {
+        if (!habilitado) {
+            return;
+        }
+
+        int total = 0;
+        int lotes = 0;
+        try {
+            int reclamados;
+            do {
+                reclamados = stripeWebhookInboxService.procesarPendientes(tamanoLote);
+                total += reclamados;
+                lotes++;
+            } while (reclamados == tamanoLote && lotes < maxLotes);
+
+            if (total > 0) {
+                log.info("[StripeWebhookScheduler] {} eventos procesados en {} lotes", total, lotes);
+            }
+        } catch (Exception e) {
+            log.error("[StripeWebhookScheduler] Error vaciando el inbox: {}", e.getMessage(), e);
+        }
+    }
+}
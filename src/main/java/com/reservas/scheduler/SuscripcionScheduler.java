@@ -1,17 +1,24 @@
 package com.reservas.scheduler;
 
+import com.reservas.service.SchedulerLockService;
 import com.reservas.service.SuscripcionService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 
 /**
  * Scheduler para ejecutar tareas automáticas relacionadas con suscripciones.
  * - Verifica y desactiva cuentas vencidas (3:00 AM diario)
  * - Envía notificaciones de vencimiento (9:00 AM diario)
+ * - Elimina registros de IP antiguos (2:00 AM del día 1 de cada mes)
+ *
+ * Cada job se ejecuta en una sola instancia del clúster (ver {@link SchedulerLockService}).
+ * El trabajo va en lotes con el avance persistido (ver ChunkJobRunner): si una
+ * ejecución se corta, la siguiente continúa donde se quedó.
  */
 @Slf4j
 @Component
@@ -19,6 +26,10 @@ import java.time.LocalDateTime;
 public class SuscripcionScheduler {
 
     private final SuscripcionService suscripcionService;
+    private final SchedulerLockService schedulerLockService;
+
+    /** Jobs diarios: el lease se mantiene al menos 5 minutos para absorber desfases de reloj */
+    private static final Duration LEASE_MINIMO = Duration.ofMinutes(5);
 
     /**
      * Verifica el estado de todas las suscripciones y desactiva las que hayan expirado.
@@ -26,18 +37,20 @@ public class SuscripcionScheduler {
      */
     @Scheduled(cron = "0 0 3 * * *") // Ejecutar a las 3:00 AM todos los días
     public void verificarSuscripciones() {
-        log.info("========================================");
-        log.info("Iniciando verificación de suscripciones: {}", LocalDateTime.now());
-        log.info("========================================");
+        schedulerLockService.ejecutar("suscripciones.verificar", LEASE_MINIMO, () -> {
+            log.info("========================================");
+            log.info("Iniciando verificación de suscripciones: {}", LocalDateTime.now());
+            log.info("========================================");
 
-        try {
-            suscripcionService.verificarSuscripcionesVencidas();
-            log.info("Verificación de suscripciones completada exitosamente");
-        } catch (Exception e) {
-            log.error("Error durante la verificación de suscripciones", e);
-        }
+            try {
+                suscripcionService.verificarSuscripcionesVencidas();
+                log.info("Verificación de suscripciones completada exitosamente");
+            } catch (Exception e) {
+                log.error("Error durante la verificación de suscripciones", e);
+            }
 
-        log.info("========================================");
+            log.info("========================================");
+        });
     }
 
     /**
@@ -48,38 +61,41 @@ public class SuscripcionScheduler {
      */
     @Scheduled(cron = "0 0 9 * * *") // Ejecutar a las 9:00 AM todos los días
     public void enviarNotificaciones() {
-        log.info("========================================");
-        log.info("Iniciando envío de notificaciones de suscripción: {}", LocalDateTime.now());
-        log.info("========================================");
+        schedulerLockService.ejecutar("suscripciones.notificaciones", LEASE_MINIMO, () -> {
+            log.info("========================================");
+            log.info("Iniciando envío de notificaciones de suscripción: {}", LocalDateTime.now());
+            log.info("========================================");
 
-        try {
-            suscripcionService.enviarNotificaciones();
-            log.info("Envío de notificaciones completado exitosamente");
-        } catch (Exception e) {
-            log.error("Error durante el envío de notificaciones", e);
-        }
+            try {
+                suscripcionService.enviarNotificaciones();
+                log.info("Envío de notificaciones completado exitosamente");
+            } catch (Exception e) {
+                log.error("Error durante el envío de notificaciones", e);
+            }
 
-        log.info("========================================");
+            log.info("========================================");
+        });
     }
 
     /**
-     * OPCIONAL: Limpieza de registros IP antiguos (más de 90 días)
+     * Limpieza de registros IP antiguos (más de registros-ip.retencion-dias, 90 por defecto)
      * Se ejecuta el primer día de cada mes a las 2:00 AM
      */
     @Scheduled(cron = "0 0 2 1 * *") // Ejecutar el día 1 de cada mes a las 2:00 AM
     public void limpiarRegistrosIPAntiguos() {
-        log.info("========================================");
-        log.info("Iniciando limpieza de registros IP antiguos: {}", LocalDateTime.now());
-        log.info("========================================");
+        schedulerLockService.ejecutar("registros-ip.limpieza", LEASE_MINIMO, () -> {
+            log.info("========================================");
+            log.info("Iniciando limpieza de registros IP antiguos: {}", LocalDateTime.now());
+            log.info("========================================");
 
-        try {
-            // Esta funcionalidad se puede implementar si se desea
-            // suscripcionService.limpiarRegistrosIPAntiguos();
-            log.info("Limpieza de registros IP completada (actualmente deshabilitada)");
-        } catch (Exception e) {
-            log.error("Error durante la limpieza de registros IP", e);
-        }
+            try {
+                suscripcionService.limpiarRegistrosIPAntiguos();
+                log.info("Limpieza de registros IP completada");
+            } catch (Exception e) {
+                log.error("Error durante la limpieza de registros IP", e);
+            }
 
-        log.info("========================================");
+            log.info("========================================");
+        });
     }
 }
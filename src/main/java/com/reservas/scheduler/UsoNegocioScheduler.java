@@ -0,0 +1,56 @@
+package com.reservas.scheduler;
+
+import com.reservas.service.PlanLimitesService;
+import com.reservas.service.SchedulerLockService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Scheduler de reconciliación de los contadores de uso (tbl_uso_negocio).
+ * Los contadores se mantienen de forma atómica en cada alta/baja; este job
+ * corrige cualquier desviación recontando los totales reales una vez al día.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UsoNegocioScheduler {
+
+    private final PlanLimitesService planLimitesService;
+    private final SchedulerLockService schedulerLockService;
+
+    /**
+     * Reconcilia el uso del periodo actual de cada negocio.
+     * Se ejecuta todos los días a las 4:00 AM, en una sola instancia del clúster;
+     * cada negocio en su propia transacción.
+     */
+    @Scheduled(cron = "0 0 4 * * *") // Ejecutar a las 4:00 AM todos los días
+    public void reconciliarUso() {
+        schedulerLockService.ejecutar("uso-negocio.reconciliar", Duration.ofMinutes(5), () -> {
+            log.info("========================================");
+            log.info("Iniciando reconciliación de uso de negocios: {}", LocalDateTime.now());
+            log.info("========================================");
+
+            List<UUID> negocioIds = planLimitesService.obtenerNegociosConUsoActual();
+            int errores = 0;
+
+            for (UUID negocioId : negocioIds) {
+                try {
+                    planLimitesService.actualizarUso(negocioId);
+                } catch (Exception e) {
+                    errores++;
+                    log.error("Error reconciliando uso del negocio {}", negocioId, e);
+                }
+            }
+
+            log.info("Reconciliación de uso completada: {} negocios, {} errores", negocioIds.size(), errores);
+            log.info("========================================");
+        });
+    }
+}
@@ -1,6 +1,7 @@
 package com.reservas.security;
 
 import com.reservas.config.CorrelationIdFilter;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.Cookie;
@@ -36,8 +37,11 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         try {
             String jwt = extractJwtFromRequest(request);
 
-            if (jwt != null && jwtProvider.validateToken(jwt)) {
-                String username = jwtProvider.getUsernameFromToken(jwt);
+            // Una sola validación por petición: devuelve los claims o null si el token no es válido
+            Claims claims = jwt != null ? jwtProvider.validateAndGetClaims(jwt) : null;
+
+            if (claims != null) {
+                String username = claims.getSubject();
 
                 UserDetails userDetails = userDetailsService.loadUserByUsername(username);
 
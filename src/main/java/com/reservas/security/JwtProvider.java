@@ -1,13 +1,22 @@
 package com.reservas.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 @Component
 @Slf4j
@@ -19,8 +28,45 @@ public class JwtProvider {
     @Value("${jwt.expiration}")
     private long jwtExpirationMs;
 
-    private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(jwtSecret.getBytes());
+    @Value("${jwt.verification-cache.max-size:10000}")
+    private long verificationCacheMaxSize;
+
+    // Construidos una sola vez: la clave HMAC y el parser son inmutables y thread-safe
+    private SecretKey signingKey;
+    private JwtParser parser;
+
+    /**
+     * Tokens ya verificados (hash SHA-256 del token → claims). Cada entrada vive
+     * hasta el exp del token, así que un token vigente solo paga la verificación
+     * HMAC la primera vez que llega a esta instancia.
+     */
+    private Cache<String, Claims> tokensVerificados;
+
+    @PostConstruct
+    void init() {
+        this.signingKey = Keys.hmacShaKeyFor(jwtSecret.getBytes());
+        this.parser = Jwts.parser()
+                .verifyWith(signingKey)
+                .build();
+        this.tokensVerificados = Caffeine.newBuilder()
+                .maximumSize(verificationCacheMaxSize)
+                .expireAfter(new Expiry<String, Claims>() {
+                    @Override
+                    public long expireAfterCreate(String key, Claims claims, long currentTime) {
+                        return nanosHastaExpiracion(claims);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Claims claims, long currentTime, long currentDuration) {
+                        return nanosHastaExpiracion(claims);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Claims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
     }
 
     public String generateToken(String username) {
@@ -31,27 +77,55 @@ public class JwtProvider {
                 .subject(username)
                 .issuedAt(now)
                 .expiration(expiryDate)
-                .signWith(getSigningKey(), SignatureAlgorithm.HS512)
+                .signWith(signingKey, SignatureAlgorithm.HS512)
                 .compact();
     }
 
+    /**
+     * Valida el token y devuelve sus claims en una sola pasada.
+     * Usa la caché de tokens verificados antes de recurrir a la verificación HMAC.
+     *
+     * @return claims del token, o null si el token no es válido o expiró
+     */
+    public Claims validateAndGetClaims(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+
+        String key = hash(token);
+        Claims cached = tokensVerificados.getIfPresent(key);
+        if (cached != null) {
+            // La expiración de la caché es aproximada: revalidar exp en cada acierto
+            if (cached.getExpiration() == null || cached.getExpiration().after(new Date())) {
+                return cached;
+            }
+            tokensVerificados.invalidate(key);
+            return null;
+        }
+
+        Claims claims = parse(token);
+        if (claims != null && claims.getExpiration() != null) {
+            tokensVerificados.put(key, claims);
+        }
+        return claims;
+    }
+
     public String getUsernameFromToken(String token) {
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload()
-                .getSubject();
+        Claims claims = validateAndGetClaims(token);
+        if (claims != null) {
+            return claims.getSubject();
+        }
+        // Mantiene el contrato anterior: token inválido → excepción de jjwt
+        return parser.parseSignedClaims(token).getPayload().getSubject();
     }
 
     public boolean validateToken(String token) {
-        try {
-            Jwts.parser()
-                    .verifyWith(getSigningKey())
-                    .build()
-                    .parseSignedClaims(token);
+        return validateAndGetClaims(token) != null;
+    }
 
-            return true;
+    private Claims parse(String token) {
+        try {
+            return parser.parseSignedClaims(token).getPayload();
         } catch (SecurityException e) {
             log.warn("JWT con firma inválida: {}", e.getMessage());
         } catch (MalformedJwtException e) {
@@ -67,6 +141,28 @@ public class JwtProvider {
             log.warn("Error al procesar JWT: {}", e.getMessage());
         }
 
-        return false;
+        return null;
+    }
+
+    /**
+     * Número aproximado de tokens en la caché de verificación.
+     */
+    long tokensEnCache() {
+        tokensVerificados.cleanUp();
+        return tokensVerificados.estimatedSize();
+    }
+
+    private static long nanosHastaExpiracion(Claims claims) {
+        long ms = claims.getExpiration().getTime() - System.currentTimeMillis();
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, ms));
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
     }
-}
\ No newline at end of file
+}
@@ -8,6 +8,7 @@ import com.reservas.entity.Cita;
 import com.reservas.entity.CitaServicio;
 import com.reservas.entity.Cliente;
 import com.reservas.entity.Negocio;
+import com.reservas.entity.NotificationLog;
 import com.reservas.entity.PlantillaEmailConfig;
 import com.reservas.entity.Servicio;
 import com.reservas.entity.Usuario;
@@ -21,7 +22,6 @@ import com.reservas.repository.CitaServicioRepository;
 import com.reservas.repository.ClienteRepository;
 import com.reservas.repository.DiaLibreRepository;
 import com.reservas.repository.HorarioTrabajoRepository;
-import com.reservas.repository.PlantillaEmailConfigRepository;
 import com.reservas.repository.ServicioRepository;
 import com.reservas.repository.UsuarioRepository;
 import lombok.extern.slf4j.Slf4j;
@@ -70,13 +70,16 @@ public class CitaService {
     private CitaRecurrenteService citaRecurrenteService;
 
     @Autowired
-    private com.reservas.notifications.service.NotificationService notificationService;
+    private com.reservas.notifications.service.NotificationOutboxService notificationOutboxService;
 
     @Autowired
     private EmailService emailService;
 
     @Autowired
-    private PlantillaEmailConfigRepository plantillaEmailConfigRepository;
+    private PlantillaEmailService plantillaEmailService;
+
+    @Autowired
+    private RecordatorioService recordatorioService;
 
     @Transactional
     public CitaResponse crearCita(String email, CitaRequest request) {
@@ -92,7 +95,7 @@ public class CitaService {
 
         // VALIDAR LÍMITE DE CITAS DEL MES
         com.reservas.entity.enums.TipoPlan plan = com.reservas.entity.enums.TipoPlan.fromCodigo(negocio.getPlan());
-        planLimitesService.validarLimiteCitasMes(negocio.getId(), plan);
+        planLimitesService.validarLimiteCitasMes(negocio.getId(), plan, request.getFechaHora());
 
         // Validar cliente
         Cliente cliente = clienteRepository.findById(UUID.fromString(request.getClienteId()))
@@ -159,10 +162,12 @@ public class CitaService {
         if (cita.isEsRecurrente()) {
             List<com.reservas.entity.Cita> citasGeneradas = citaRecurrenteService.generarCitasRecurrentes(cita);
             log.info("[Citas Recurrentes]  Generadas {} citas adicionales", citasGeneradas.size());
-        }
 
-        // ACTUALIZAR USO
-        planLimitesService.actualizarUso(negocio.getId());
+            // Cada ocurrencia cuenta en el mes de su fechaHora (el cupo de la cita principal ya se reservó)
+            planLimitesService.registrarCitasAdicionales(negocio.getId(), citasGeneradas.stream()
+                    .map(com.reservas.entity.Cita::getFechaHora)
+                    .toList());
+        }
 
         return mapToResponse(cita);
     }
@@ -250,6 +255,8 @@ public class CitaService {
             validarDisponibilidad(cita.getNegocio(), request.getFechaHora(), servicio.getDuracionMinutos(), citaId);
         }
 
+        boolean fechaCambio = !cita.getFechaHora().equals(request.getFechaHora());
+
         cita.setFechaHora(request.getFechaHora());
         cita.setServicio(servicio);
         cita.setNotas(request.getNotas());
@@ -257,6 +264,10 @@ public class CitaService {
         cita = citaRepository.save(cita);
         log.info(" Cita actualizada: {}", citaId);
 
+        if (fechaCambio) {
+            recordatorioService.reprogramarParaCita(cita);
+        }
+
         return mapToResponse(cita);
     }
 
@@ -280,6 +291,7 @@ public class CitaService {
             cita.setEstado(estadoEnum);
             cita = citaRepository.save(cita);
             log.info(" Estado de cita actualizado: {} -> {}", citaId, nuevoEstado);
+            recordatorioService.reprogramarParaCita(cita);
         } catch (IllegalArgumentException e) {
             throw new BadRequestException("Estado inválido: " + nuevoEstado);
         }
@@ -305,6 +317,9 @@ public class CitaService {
         cita.setEstado(Cita.EstadoCita.CANCELADA);
         citaRepository.save(cita);
         log.info(" Cita cancelada: {}", citaId);
+
+        // Saca sus recordatorios de la cola y de la agenda
+        recordatorioService.reprogramarParaCita(cita);
     }
 
     @Transactional(readOnly = true)
@@ -471,7 +486,7 @@ public class CitaService {
 
         // VALIDAR LÍMITE DE CITAS DEL MES
         com.reservas.entity.enums.TipoPlan plan = com.reservas.entity.enums.TipoPlan.fromCodigo(negocio.getPlan());
-        planLimitesService.validarLimiteCitasMes(negocio.getId(), plan);
+        planLimitesService.validarLimiteCitasMes(negocio.getId(), plan, request.getFechaHora());
 
         // Validar cliente
         Cliente cliente = clienteRepository.findById(UUID.fromString(request.getClienteId()))
@@ -548,9 +563,6 @@ public class CitaService {
         citaServicioRepository.saveAll(citaServicios);
         log.info(" Guardados {} servicios para la cita", citaServicios.size());
 
-        // ACTUALIZAR USO
-        planLimitesService.actualizarUso(negocio.getId());
-
         // Construir respuesta
         List<CitaMultipleServiciosResponse.ServicioInfo> serviciosInfo = servicios.stream()
                 .map(s -> CitaMultipleServiciosResponse.ServicioInfo.builder()
@@ -570,7 +582,8 @@ public class CitaService {
     }
 
     /**
-     * Envía confirmación de cita por WhatsApp/SMS al cliente
+     * Envía confirmación de cita por WhatsApp/SMS al cliente.
+     * El mensaje se encola en el outbox y sale en segundo plano tras el commit.
      */
     @Transactional
     public void enviarConfirmacionCita(String email, String citaId, String canal, boolean confirmarPago) {
@@ -623,43 +636,36 @@ public class CitaService {
         log.info("[CitaService] Mensaje de confirmación preparado para {}: {}", cliente.getTelefono(), mensaje);
         log.info("[CitaService] Canal: {}, Pago confirmado: {}", canal, confirmarPago);
 
-        // Enviar notificación según el canal seleccionado
-        try {
-            if ("WHATSAPP".equals(canal) || "AMBOS".equals(canal)) {
-                com.reservas.notifications.dto.SendNotificationRequest whatsappRequest =
-                    com.reservas.notifications.dto.SendNotificationRequest.builder()
-                        .recipient(cliente.getTelefono())
-                        .content(mensaje)
-                        .channel(com.reservas.notifications.domain.NotificationChannel.WHATSAPP)
-                        .usuarioId(usuario.getId().toString())
-                        .recipientName(nombreCliente)
-                        .relatedEntityId(citaId)
-                        .relatedEntityType("CITA")
-                        .build();
+        // Encolar en el outbox: se envía al confirmar la transacción, sin esperar a Twilio
+        if ("WHATSAPP".equals(canal) || "AMBOS".equals(canal)) {
+            com.reservas.notifications.dto.SendNotificationRequest whatsappRequest =
+                com.reservas.notifications.dto.SendNotificationRequest.builder()
+                    .recipient(cliente.getTelefono())
+                    .content(mensaje)
+                    .channel(com.reservas.notifications.domain.NotificationChannel.WHATSAPP)
+                    .usuarioId(usuario.getId().toString())
+                    .recipientName(nombreCliente)
+                    .relatedEntityId(citaId)
+                    .relatedEntityType("CITA")
+                    .build();
 
-                notificationService.sendWhatsApp(whatsappRequest);
-                log.info("[CitaService] Mensaje de WhatsApp enviado exitosamente");
-            }
+            // Cada confirmación manual es un envío nuevo; la clave protege sus reintentos
+            notificationOutboxService.encolar(whatsappRequest,
+                    NotificationLog.NotificationType.APPOINTMENT_CONFIRMATION,
+                    "cita-confirmacion:" + citaId + ":" + UUID.randomUUID());
+            log.info("[CitaService] Confirmación por WhatsApp encolada");
+        }
 
-            if ("SMS".equals(canal) || "AMBOS".equals(canal)) {
-                // Por ahora, WhatsApp también puede ser usado como SMS
-                // Si tienes un provider SMS separado, puedes implementarlo aquí
-                log.warn("[CitaService] Canal SMS no implementado aún, usando WhatsApp como alternativa");
-            }
-        } catch (com.reservas.exception.NotificationException e) {
-            log.error("[CitaService] Error al enviar notificación: {}", e.getMessage());
-            // Si Twilio no está configurado, solo loguear pero no fallar
-            if ("PROVIDER_NOT_CONFIGURED".equals(e.getErrorCode())) {
-                log.warn("[CitaService] Provider de notificaciones no configurado. La notificación no se envió.");
-                log.info("[CitaService] Mensaje que se hubiera enviado: {}", mensaje);
-            } else {
-                throw e; // Re-throw otros errores
-            }
+        if ("SMS".equals(canal) || "AMBOS".equals(canal)) {
+            // Por ahora, WhatsApp también puede ser usado como SMS
+            // Si tienes un provider SMS separado, puedes implementarlo aquí
+            log.warn("[CitaService] Canal SMS no implementado aún, usando WhatsApp como alternativa");
         }
     }
 
     /**
-     * Envía recordatorio de cita por Email al cliente
+     * Envía recordatorio de cita por Email al cliente.
+     * El email se encola en el outbox y sale en segundo plano tras el commit.
      * Nota: SMS y WhatsApp están deshabilitados temporalmente
      */
     @Transactional
@@ -706,13 +712,10 @@ public class CitaService {
         String horaCita = formatearHora(cita.getFechaHora());
 
         // Cargar configuración de plantilla email del negocio (colores, textos, diseño)
-        PlantillaEmailConfig emailConfig = plantillaEmailConfigRepository
-                .findByNegocio(cita.getNegocio())
-                .orElse(null);
+        PlantillaEmailConfig emailConfig = plantillaEmailService.obtenerConfiguracionPorNegocio(cita.getNegocio());
 
-        // Enviar recordatorio por email con configuración personalizada del negocio
-        boolean enviado = emailService.enviarRecordatorioCita(
-                cliente.getEmail(),
+        // Renderizar ahora (con la configuración vigente) y encolar: el envío sale del outbox
+        EmailService.MensajeEmail recordatorio = emailService.prepararRecordatorioCita(
                 nombreCliente,
                 fechaCita,
                 horaCita,
@@ -721,12 +724,26 @@ public class CitaService {
                 emailConfig
         );
 
-        if (enviado) {
-            log.info("✅ [CitaService] Recordatorio enviado exitosamente a {}", cliente.getEmail());
-        } else {
-            log.error("❌ [CitaService] Error al enviar recordatorio a {}", cliente.getEmail());
+        if (recordatorio == null) {
+            log.error("❌ [CitaService] No se pudo preparar el recordatorio para {}", cliente.getEmail());
             throw new BadRequestException("No se pudo enviar el recordatorio. Por favor, intenta nuevamente.");
         }
+
+        notificationOutboxService.encolar(
+                com.reservas.notifications.dto.SendNotificationRequest.builder()
+                        .channel(com.reservas.notifications.domain.NotificationChannel.EMAIL)
+                        .recipient(cliente.getEmail())
+                        .recipientName(nombreCliente)
+                        .subject(recordatorio.asunto())
+                        .content(recordatorio.html())
+                        .usuarioId(usuario.getId().toString())
+                        .relatedEntityId(citaId)
+                        .relatedEntityType("CITA")
+                        .build(),
+                NotificationLog.NotificationType.APPOINTMENT_REMINDER,
+                "cita-recordatorio:" + citaId + ":" + UUID.randomUUID());
+
+        log.info("✅ [CitaService] Recordatorio encolado para {}", cliente.getEmail());
     }
 
     /**
@@ -76,9 +76,6 @@ public class ClienteService {
         cliente = clienteRepository.save(cliente);
         log.info(" Cliente creado: {} - {} {}", cliente.getId(), cliente.getNombre(), cliente.getApellidoPaterno());
 
-        // ACTUALIZAR USO
-        planLimitesService.actualizarUso(negocio.getId());
-
         return mapToResponse(cliente);
     }
 
@@ -194,6 +191,7 @@ public class ClienteService {
         }
 
         clienteRepository.delete(cliente);
+        planLimitesService.liberarCupoCliente(cliente.getNegocio().getId());
         log.info(" Cliente eliminado: {}", clienteId);
     }
 
@@ -1,20 +1,30 @@
 package com.reservas.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.reservas.entity.PlantillaEmailConfig;
+import com.reservas.exception.NotificationException;
+import com.reservas.http.ClienteHttpSaliente;
+import com.reservas.notifications.resilience.ProteccionProveedores;
+import com.reservas.util.PlantillaHtml;
 import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestClientException;
-import org.springframework.web.client.RestTemplate;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Servicio para envío de emails usando Resend API.
@@ -22,14 +32,20 @@ import java.util.Map;
  *
  * Soporta dos modos de envío:
  *  - HTML inline:        enviarEmail() — para emails one-off (confirmación, invitación, etc.)
- *  - Classpath template: enviarConTemplate() — carga archivos HTML de
- *    src/main/resources/email-templates/, reemplaza {{variable}} y envía con campo "html"
+ *  - Classpath template: prepararConTemplate() — usa los archivos HTML de
+ *    src/main/resources/email-templates/, compilados al arrancar (PlantillaHtml),
+ *    reemplaza {{variable}} escapando el valor y envía con campo "html"
+ *
+ * Los métodos preparar*() solo renderizan: los usan los servicios que encolan el
+ * email en el outbox de notificaciones en lugar de enviarlo en la petición.
  */
 @Service
 @Slf4j
+@RequiredArgsConstructor
 public class EmailService {
 
     private static final String RESEND_API_URL = "https://api.resend.com/emails";
+    private static final String TEMPLATES_DIR = "email-templates/";
 
     @Value("${resend.api.key:}")
     private String resendApiKey;
@@ -40,11 +56,28 @@ public class EmailService {
     @Value("${resend.from.name:Sistema de Reservas}")
     private String fromName;
 
-    private RestTemplate restTemplate;
+    private final ClienteHttpSaliente clienteHttp;
+
+    private final ProteccionProveedores proteccionProveedores;
+
+    /** Templates del classpath ya compilados, por nombre de archivo. */
+    private final Map<String, PlantillaHtml> plantillas = new ConcurrentHashMap<>();
+
+    /**
+     * Templates con los colores y textos de cada negocio ya aplicados. La clave son los
+     * valores resueltos, así que editar la plantilla del negocio genera una entrada nueva
+     * y nunca se sirve una versión anterior.
+     */
+    private final Cache<MarcaNegocio, PlantillaHtml> plantillasNegocio = Caffeine.newBuilder()
+            .maximumSize(1_000)
+            .expireAfterAccess(Duration.ofHours(6))
+            .build();
+
+    private record MarcaNegocio(String template, Map<String, String> variables) {}
 
     @PostConstruct
     public void init() {
-        this.restTemplate = new RestTemplate();
+        precompilarTemplates();
         if (resendApiKey != null && !resendApiKey.isBlank()) {
             log.info("[Resend] Email service inicializado - From: {} <{}>", fromName, fromEmail);
         } else {
@@ -54,11 +87,12 @@ public class EmailService {
 
     /**
      * Realiza el POST a la API de Resend.
+     * Usa el cliente HTTP compartido (conexiones reutilizadas, timeouts y métricas).
      * Método protegido para facilitar el testing (stubbing vía subclase).
      */
     @SuppressWarnings("unchecked")
     protected ResponseEntity<Map> doPost(String url, HttpEntity<?> entity) {
-        return restTemplate.postForEntity(url, entity, Map.class);
+        return clienteHttp.postForEntity(url, entity, Map.class);
     }
 
     // ══════════════════════════════════════════════════════════════════
@@ -66,49 +100,90 @@ public class EmailService {
     // ══════════════════════════════════════════════════════════════════
 
     /**
-     * Carga el contenido HTML de un template desde el classpath.
-     * Los archivos deben estar en: src/main/resources/email-templates/{nombre}.html
+     * Compila todos los templates del classpath al arrancar.
      */
-    private String cargarTemplate(String nombre) {
+    private void precompilarTemplates() {
         try {
-            ClassPathResource resource = new ClassPathResource("email-templates/" + nombre + ".html");
-            return new String(resource.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            Resource[] recursos = new PathMatchingResourcePatternResolver()
+                    .getResources("classpath*:" + TEMPLATES_DIR + "*.html");
+            for (Resource recurso : recursos) {
+                String archivo = recurso.getFilename();
+                if (archivo != null) {
+                    plantilla(archivo.substring(0, archivo.length() - ".html".length()));
+                }
+            }
+            log.info("[Resend] {} templates de email compilados", plantillas.size());
         } catch (IOException e) {
-            log.error("[Resend] No se pudo cargar el template '{}': {}", nombre, e.getMessage());
-            return null;
+            log.warn("[Resend] No se pudieron listar los templates de email: {}", e.getMessage());
         }
     }
 
     /**
-     * Reemplaza los placeholders {@code {{variable}}} del template HTML con los valores del mapa.
+     * Devuelve el template compilado. Se lee del classpath y se parsea solo la primera vez.
+     * Los archivos deben estar en: src/main/resources/email-templates/{nombre}.html
+     *
+     * @return El template compilado, o null si no existe
      */
-    private String renderTemplate(String html, Map<String, String> variables) {
-        for (Map.Entry<String, String> entry : variables.entrySet()) {
-            html = html.replace("{{" + entry.getKey() + "}}",
-                                entry.getValue() != null ? entry.getValue() : "");
-        }
-        return html;
+    private PlantillaHtml plantilla(String nombre) {
+        return plantillas.computeIfAbsent(nombre, n -> {
+            try {
+                ClassPathResource resource = new ClassPathResource(TEMPLATES_DIR + n + ".html");
+                return PlantillaHtml.compilar(new String(resource.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                log.error("[Resend] No se pudo cargar el template '{}': {}", n, e.getMessage());
+                return null;
+            }
+        });
     }
 
     /**
-     * Carga el template, reemplaza variables y envía con el campo "html".
-     * Este es el método principal para emails con diseño personalizado.
+     * Email ya renderizado, listo para enviarse o para encolarse en el outbox.
+     */
+    public record MensajeEmail(String asunto, String html) {}
+
+    /**
+     * Carga el template y reemplaza variables.
      *
-     * @param destinatario   Email del destinatario
      * @param asunto         Asunto del email
      * @param templateNombre Nombre del archivo sin extensión (ej: "verificacion-correo")
      * @param variables      Mapa de variables para reemplazar en el template
+     * @return El email renderizado, o null si el template no existe
+     */
+    private MensajeEmail prepararConTemplate(String asunto, String templateNombre, Map<String, String> variables) {
+        PlantillaHtml plantilla = plantilla(templateNombre);
+        if (plantilla == null) {
+            log.error("[Resend] Template '{}' no encontrado", templateNombre);
+            return null;
+        }
+        return new MensajeEmail(asunto, plantilla.render(variables));
+    }
+
+    /**
+     * Como prepararConTemplate(), pero con los colores y textos del negocio ya fijados
+     * en el template compilado. Solo quedan por resolver las variables de la cita.
+     */
+    private MensajeEmail prepararConMarca(String asunto, String templateNombre, Map<String, String> marca,
+                                          Map<String, String> variables) {
+        PlantillaHtml base = plantilla(templateNombre);
+        if (base == null) {
+            log.error("[Resend] Template '{}' no encontrado", templateNombre);
+            return null;
+        }
+        PlantillaHtml plantilla = plantillasNegocio.get(new MarcaNegocio(templateNombre, marca), m -> base.aplicar(marca));
+        return new MensajeEmail(asunto, plantilla.render(variables));
+    }
+
+    /**
+     * Envía un email ya renderizado.
+     *
      * @return true si se envió correctamente
      */
-    private boolean enviarConTemplate(String destinatario, String asunto,
-                                      String templateNombre, Map<String, String> variables) {
-        String html = cargarTemplate(templateNombre);
-        if (html == null) {
-            log.error("[Resend] Template '{}' no encontrado. Email no enviado a: {}", templateNombre, destinatario);
+    private boolean enviar(String destinatario, MensajeEmail mensaje) {
+        if (mensaje == null) {
+            log.error("[Resend] Email no enviado a: {} (no se pudo renderizar)", destinatario);
             return false;
         }
-        html = renderTemplate(html, variables);
-        return enviarEmail(destinatario, asunto, html);
+        return enviarEmail(destinatario, mensaje.asunto(), mensaje.html());
     }
 
     /**
@@ -156,7 +231,8 @@ public class EmailService {
             body.put("html", contenido);
 
             HttpEntity<Map<String, Object>> request = new HttpEntity<>(body, headers);
-            ResponseEntity<Map> response = doPost(RESEND_API_URL, request);
+            // Circuit breaker compartido con ResendEmailProvider: si Resend está caído no se espera al timeout
+            ResponseEntity<Map> response = proteccionProveedores.resend().ejecutar(() -> doPost(RESEND_API_URL, request));
 
             if (response.getStatusCode().is2xxSuccessful()) {
                 String emailId = response.getBody() != null ? (String) response.getBody().get("id") : null;
@@ -166,6 +242,10 @@ public class EmailService {
                 log.error("❌ Error al enviar email. Status: {}", response.getStatusCode());
                 return false;
             }
+        } catch (NotificationException e) {
+            // Circuito abierto o demasiados envíos simultáneos: quien llama reprograma el envío
+            log.warn("⚠️ Resend no disponible, email a {} no enviado: {}", destinatario, e.getMessage());
+            return false;
         } catch (RestClientException e) {
             log.error("❌ Error al enviar email a {}: {}", destinatario, e.getMessage(), e);
             return false;
@@ -232,6 +312,19 @@ public class EmailService {
     public boolean enviarRecordatorioCita(String destinatario, String nombreCliente, String fechaCita,
                                           String horaCita, String nombreServicio, String nombreNegocio,
                                           PlantillaEmailConfig config) {
+        return enviar(destinatario, prepararRecordatorioCita(nombreCliente, fechaCita, horaCita,
+                                                             nombreServicio, nombreNegocio, config));
+    }
+
+    /**
+     * Renderiza el recordatorio de cita con el diseño y textos del negocio, sin enviarlo.
+     *
+     * @param config Configuración de plantilla del negocio (puede ser null → usa defaults)
+     * @return El email renderizado, o null si el template no existe
+     */
+    public MensajeEmail prepararRecordatorioCita(String nombreCliente, String fechaCita, String horaCita,
+                                                 String nombreServicio, String nombreNegocio,
+                                                 PlantillaEmailConfig config) {
         String asunto = String.format("Recordatorio de cita - %s", nombreNegocio);
 
         // Si el negocio tiene config activa, usarla; sino usar defaults
@@ -240,65 +333,71 @@ public class EmailService {
                 ? config.getDisenoBase()
                 : PlantillaEmailConfig.TipoDiseno.CLASICO;
 
+        Map<String, String> variables = variablesCita(nombreCliente, fechaCita, horaCita, nombreServicio, nombreNegocio);
+        return prepararConMarca(asunto, resolverNombreTemplate(diseno),
+                                marcaNegocio(usarConfig ? config : null, nombreNegocio), variables);
+    }
+
+    /**
+     * Envía recordatorio usando un diseño específico (con colores y textos por defecto).
+     * Mantiene compatibilidad con código que pasa el diseño explícitamente.
+     *
+     * @param diseno Diseño de la plantilla (CLASICO, MODERNO, MINIMALISTA)
+     */
+    public boolean enviarRecordatorioCita(String destinatario, String nombreCliente, String fechaCita,
+                                          String horaCita, String nombreServicio, String nombreNegocio,
+                                          PlantillaEmailConfig.TipoDiseno diseno) {
+        String asunto = String.format("Recordatorio de cita - %s", nombreNegocio);
+
+        Map<String, String> variables = variablesCita(nombreCliente, fechaCita, horaCita, nombreServicio, nombreNegocio);
+        // Valores por defecto de estilo (sin configuración personalizada)
+        return enviar(destinatario, prepararConMarca(asunto, resolverNombreTemplate(diseno),
+                                                     marcaNegocio(null, nombreNegocio), variables));
+    }
+
+    private Map<String, String> variablesCita(String nombreCliente, String fechaCita, String horaCita,
+                                              String nombreServicio, String nombreNegocio) {
         Map<String, String> variables = new HashMap<>();
-        // Variables de cita
         variables.put("nombreCliente",  nombreCliente);
         variables.put("nombreServicio", nombreServicio);
         variables.put("fechaCita",      fechaCita);
         variables.put("horaCita",       horaCita);
         variables.put("nombreNegocio",  nombreNegocio);
+        return variables;
+    }
+
+    /**
+     * Variables de estilo y texto del negocio (colores, mensajeBienvenida, firma, infoContacto).
+     *
+     * @param config Configuración activa del negocio, o null para los valores por defecto
+     */
+    private Map<String, String> marcaNegocio(PlantillaEmailConfig config, String nombreNegocio) {
+        boolean usarConfig = config != null;
+        Map<String, String> marca = new HashMap<>();
 
         // Variables de color (con defaults que coinciden con los colores originales del template)
-        variables.put("colorPrimario",   usarConfig && config.getColorPrimario()  != null ? config.getColorPrimario()  : "#2563eb");
-        variables.put("colorSecundario", usarConfig && config.getColorSecundario() != null ? config.getColorSecundario() : "#7c3aed");
-        variables.put("colorFondo",      usarConfig && config.getColorFondo()     != null ? config.getColorFondo()     : "#f4f4f5");
+        marca.put("colorPrimario",   usarConfig && config.getColorPrimario()  != null ? config.getColorPrimario()  : "#2563eb");
+        marca.put("colorSecundario", usarConfig && config.getColorSecundario() != null ? config.getColorSecundario() : "#7c3aed");
+        marca.put("colorFondo",      usarConfig && config.getColorFondo()     != null ? config.getColorFondo()     : "#f4f4f5");
 
         // Variables de texto personalizado
         String mensajeBienvenida = usarConfig && config.getMensajeBienvenida() != null && !config.getMensajeBienvenida().isBlank()
                 ? config.getMensajeBienvenida()
                 : "Te recordamos que tienes una cita próxima. ¡Te esperamos con gusto!";
-        variables.put("mensajeBienvenida", mensajeBienvenida);
+        marca.put("mensajeBienvenida", mensajeBienvenida);
 
         String firma = usarConfig && config.getFirma() != null && !config.getFirma().isBlank()
                 ? config.getFirma()
                 : nombreNegocio;
-        variables.put("firma", firma);
+        marca.put("firma", firma);
 
-        // infoContacto como bloque HTML pre-armado (vacío si no hay info)
+        // infoContacto como bloque HTML pre-armado (vacío si no hay info); el texto se escapa aquí
+        // porque el template lo inserta sin escapar ({{{infoContactoHtml}}})
         String infoContacto = usarConfig && config.getInfoContacto() != null ? config.getInfoContacto() : "";
         String infoContactoHtml = infoContacto.isBlank() ? ""
-                : "<p style=\"color:#6b7280;font-size:12px;margin:0 0 6px 0;\">" + infoContacto + "</p>";
-        variables.put("infoContactoHtml", infoContactoHtml);
-
-        return enviarConTemplate(destinatario, asunto, resolverNombreTemplate(diseno), variables);
-    }
-
-    /**
-     * Envía recordatorio usando un diseño específico (con colores y textos por defecto).
-     * Mantiene compatibilidad con código que pasa el diseño explícitamente.
-     *
-     * @param diseno Diseño de la plantilla (CLASICO, MODERNO, MINIMALISTA)
-     */
-    public boolean enviarRecordatorioCita(String destinatario, String nombreCliente, String fechaCita,
-                                          String horaCita, String nombreServicio, String nombreNegocio,
-                                          PlantillaEmailConfig.TipoDiseno diseno) {
-        String asunto = String.format("Recordatorio de cita - %s", nombreNegocio);
-
-        Map<String, String> variables = new HashMap<>();
-        variables.put("nombreCliente",     nombreCliente);
-        variables.put("nombreServicio",    nombreServicio);
-        variables.put("fechaCita",         fechaCita);
-        variables.put("horaCita",          horaCita);
-        variables.put("nombreNegocio",     nombreNegocio);
-        // Valores por defecto de estilo (sin configuración personalizada)
-        variables.put("colorPrimario",     "#2563eb");
-        variables.put("colorSecundario",   "#7c3aed");
-        variables.put("colorFondo",        "#f4f4f5");
-        variables.put("mensajeBienvenida", "Te recordamos que tienes una cita próxima. ¡Te esperamos con gusto!");
-        variables.put("firma",             nombreNegocio);
-        variables.put("infoContactoHtml",  "");
-
-        return enviarConTemplate(destinatario, asunto, resolverNombreTemplate(diseno), variables);
+                : "<p style=\"color:#6b7280;font-size:12px;margin:0 0 6px 0;\">" + PlantillaHtml.escapar(infoContacto) + "</p>";
+        marca.put("infoContactoHtml", infoContactoHtml);
+        return marca;
     }
 
     /**
@@ -342,6 +441,14 @@ public class EmailService {
      */
     public boolean enviarEmailInvitacionUsuario(String destinatario, String nombreUsuario,
                                                 String nombreNegocio, String passwordTemporal) {
+        return enviar(destinatario, prepararEmailInvitacionUsuario(destinatario, nombreUsuario, nombreNegocio, passwordTemporal));
+    }
+
+    /**
+     * Renderiza el email de invitación a un nuevo usuario del negocio, sin enviarlo.
+     */
+    public MensajeEmail prepararEmailInvitacionUsuario(String destinatario, String nombreUsuario,
+                                                       String nombreNegocio, String passwordTemporal) {
         String asunto = String.format("Invitación a unirte a %s en Cita Click", nombreNegocio);
         String contenido = String.format(
                 "<div style=\"font-family: Arial, sans-serif; max-width: 600px; margin: 0 auto; padding: 20px;\">" +
@@ -361,7 +468,7 @@ public class EmailService {
                 "</div>",
                 nombreUsuario, nombreNegocio, destinatario, passwordTemporal
         );
-        return enviarEmail(destinatario, asunto, contenido);
+        return new MensajeEmail(asunto, contenido);
     }
 
     /**
@@ -374,13 +481,22 @@ public class EmailService {
      * @return true si se envió correctamente
      */
     public boolean enviarEmailVerificacion(String destinatario, String nombreUsuario, String verificationUrl) {
+        return enviar(destinatario, prepararEmailVerificacion(nombreUsuario, verificationUrl));
+    }
+
+    /**
+     * Renderiza el email de verificación de cuenta, sin enviarlo.
+     *
+     * @return El email renderizado, o null si el template no existe
+     */
+    public MensajeEmail prepararEmailVerificacion(String nombreUsuario, String verificationUrl) {
         String asunto = "Verifica tu cuenta en Cita Click";
 
         Map<String, String> variables = new HashMap<>();
         variables.put("nombre",          nombreUsuario);
         variables.put("verificationUrl", verificationUrl);
 
-        return enviarConTemplate(destinatario, asunto, "verificacion-correo", variables);
+        return prepararConTemplate(asunto, "verificacion-correo", variables);
     }
 
     /**
@@ -393,12 +509,21 @@ public class EmailService {
      * @return true si se envió correctamente
      */
     public boolean enviarEmailFinPrueba(String destinatario, String nombre, String loginUrl) {
+        return enviar(destinatario, prepararEmailFinPrueba(nombre, loginUrl));
+    }
+
+    /**
+     * Renderiza el aviso de fin de periodo de prueba, sin enviarlo.
+     *
+     * @return El email renderizado, o null si el template no existe
+     */
+    public MensajeEmail prepararEmailFinPrueba(String nombre, String loginUrl) {
         String asunto = "Tu periodo de prueba termina mañana — elige tu plan en Cita Click";
 
         Map<String, String> variables = new HashMap<>();
         variables.put("nombre",   nombre);
         variables.put("loginUrl", loginUrl);
 
-        return enviarConTemplate(destinatario, asunto, "prueba-terminando", variables);
+        return prepararConTemplate(asunto, "prueba-terminando", variables);
     }
 }
@@ -1,6 +1,10 @@
 package com.reservas.service;
 
+import com.reservas.entity.NotificationLog;
 import com.reservas.entity.Usuario;
+import com.reservas.notifications.domain.NotificationChannel;
+import com.reservas.notifications.dto.SendNotificationRequest;
+import com.reservas.notifications.service.NotificationOutboxService;
 import com.reservas.repository.UsuarioRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -8,9 +12,11 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
 import java.time.LocalDateTime;
 import java.util.Base64;
+import java.util.UUID;
 
 /**
  * Servicio para gestionar la verificación de correos electrónicos
@@ -22,6 +28,7 @@ public class EmailVerificationService {
 
     private final UsuarioRepository usuarioRepository;
     private final EmailService emailService;
+    private final NotificationOutboxService notificationOutboxService;
 
     @Value("${app.frontend.url:http://localhost:5174}")
     private String frontendUrl;
@@ -39,9 +46,10 @@ public class EmailVerificationService {
     }
 
     /**
-     * Guarda el token de verificación en el usuario y envía el email.
-     * El guardado del token siempre se intenta; el envío del email nunca bloquea
-     * el registro aunque falle (el usuario puede solicitar un reenvío).
+     * Guarda el token de verificación en el usuario y encola el email.
+     * El email va al outbox en la misma transacción que el token: sale cuando el
+     * registro se confirma y la petición no espera a Resend. Si el envío falla,
+     * el outbox lo reintenta (y el usuario siempre puede solicitar un reenvío).
      */
     @Transactional
     public void enviarEmailVerificacion(Usuario usuario) {
@@ -52,24 +60,31 @@ public class EmailVerificationService {
         usuarioRepository.save(usuario);
         log.info("[Email Verificación] Token generado y guardado para: {}", usuario.getEmail());
 
-        // 2. Enviar email — cualquier fallo aquí no debe deshacer el registro
-        try {
-            String verificationUrl = frontendUrl + "/verify-email?token=" + token;
-            boolean enviado = emailService.enviarEmailVerificacion(
-                    usuario.getEmail(), usuario.getNombre(), verificationUrl);
-
-            if (enviado) {
-                log.info("[Email Verificación] Email enviado correctamente a: {}", usuario.getEmail());
-            } else {
-                log.warn("[Email Verificación] No se pudo enviar el email a: {}. " +
-                         "El token está guardado; el usuario puede solicitar reenvío.", usuario.getEmail());
-            }
-        } catch (Exception e) {
-            // Capturamos cualquier excepción inesperada para que NO marque la TX
-            // como rollback-only y así el registro del usuario siempre se complete.
-            log.error("[Email Verificación] Error inesperado enviando email a {}: {}",
-                      usuario.getEmail(), e.getMessage(), e);
+        // 2. Encolar email — un template ausente no debe deshacer el registro
+        String verificationUrl = frontendUrl + "/verify-email?token=" + token;
+        EmailService.MensajeEmail mensaje = emailService.prepararEmailVerificacion(usuario.getNombre(), verificationUrl);
+        if (mensaje == null) {
+            log.warn("[Email Verificación] No se pudo preparar el email para: {}. " +
+                     "El token está guardado; el usuario puede solicitar reenvío.", usuario.getEmail());
+            return;
         }
+
+        SendNotificationRequest request = SendNotificationRequest.builder()
+                .channel(NotificationChannel.EMAIL)
+                .recipient(usuario.getEmail())
+                .recipientName(usuario.getNombre())
+                .subject(mensaje.asunto())
+                .content(mensaje.html())
+                .usuarioId(usuario.getId() != null ? usuario.getId().toString() : null)
+                .relatedEntityType("USUARIO")
+                .relatedEntityId(usuario.getId() != null ? usuario.getId().toString() : null)
+                .build();
+
+        // Una clave por token (derivada, para no exponer el token en la clave)
+        String idempotencyKey = "verificacion-email:" +
+                UUID.nameUUIDFromBytes(token.getBytes(StandardCharsets.UTF_8));
+        notificationOutboxService.encolar(request, NotificationLog.NotificationType.VERIFICATION_CODE, idempotencyKey);
+        log.info("[Email Verificación] Email encolado para: {}", usuario.getEmail());
     }
 
     /**
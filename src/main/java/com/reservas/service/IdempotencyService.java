@@ -0,0 +1,362 @@
+package com.reservas.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.reservas.entity.IdempotencyRecord;
+import com.reservas.exception.BadRequestException;
+import com.reservas.exception.IdempotencyException;
+import com.reservas.repository.IdempotencyRecordRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Peticiones idempotentes con la cabecera Idempotency-Key.
+ *
+ * - La primera petición con una clave (por usuario y operación) ejecuta la operación
+ *   y su respuesta se guarda en tbl_idempotency_keys durante idempotencia.ttl (24 h,
+ *   lo mismo que Stripe conserva sus claves).
+ * - Las repeticiones reciben la respuesta guardada, con la cabecera Idempotent-Replayed.
+ * - Una repetición que llega mientras la original sigue en curso espera su resultado
+ *   (hasta idempotencia.espera-max; después, 409) en lugar de volver a llamar a Stripe.
+ * - Reutilizar la clave con otro cuerpo devuelve 422.
+ *
+ * La operación recibe una clave de idempotencia para Stripe derivada de la del
+ * cliente: si la instancia cae a mitad de la operación y otra la retoma, Stripe
+ * devuelve el mismo objeto en lugar de crear otro.
+ *
+ * Las respuestas 5xx y las excepciones no se guardan: el cliente puede reintentar.
+ */
+@Slf4j
+@Service
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String HEADER_REPLAYED = "Idempotent-Replayed";
+
+    private static final int MAX_LONGITUD_CLAVE = 255;
+    private static final Duration SONDEO = Duration.ofMillis(200);
+
+    private final IdempotencyRecordRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final Duration ttl;
+    private final Duration bloqueo;
+    private final Duration esperaMax;
+
+    /**
+     * Claves que esta instancia está resolviendo: las repeticiones locales esperan aquí
+     * sin consultar la base de datos.
+     */
+    private final ConcurrentMap<String, CompletableFuture<Respuesta>> enCurso = new ConcurrentHashMap<>();
+
+    public IdempotencyService(IdempotencyRecordRepository repository,
+                              TransactionTemplate transactionTemplate,
+                              ObjectMapper objectMapper,
+                              MeterRegistry meterRegistry,
+                              @Value("${idempotencia.ttl:PT24H}") Duration ttl,
+                              @Value("${idempotencia.bloqueo:PT2M}") Duration bloqueo,
+                              @Value("${idempotencia.espera-max:PT30S}") Duration esperaMax) {
+        this.repository = repository;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.ttl = ttl;
+        this.bloqueo = bloqueo;
+        this.esperaMax = esperaMax;
+    }
+
+    /**
+     * Respuesta guardada de una petición.
+     *
+     * @param requestHash SHA-256 del cuerpo de la petición que la generó
+     * @param status      Código HTTP
+     * @param cuerpo      Cuerpo JSON (null si no tenía)
+     */
+    record Respuesta(String requestHash, int status, String cuerpo) {
+    }
+
+    private record Reserva(String id, Respuesta respuesta) {
+        static Reserva propia(String id) {
+            return new Reserva(id, null);
+        }
+
+        static Reserva guardada(Respuesta respuesta) {
+            return new Reserva(null, respuesta);
+        }
+
+        static Reserva enCurso() {
+            return new Reserva(null, null);
+        }
+    }
+
+    /**
+     * Ejecuta la operación una sola vez por clave.
+     *
+     * @param tenant         Usuario autenticado
+     * @param operacion      Nombre de la operación (p. ej. payments.create)
+     * @param idempotencyKey Valor de la cabecera Idempotency-Key; null ejecuta la operación sin protección
+     * @param peticion       Cuerpo de la petición, para detectar la reutilización de la clave
+     * @param tipo           Tipo del cuerpo de la respuesta, para reconstruir las guardadas
+     * @param accion         Operación; recibe la clave de idempotencia que debe enviar a Stripe
+     */
+    public <T> ResponseEntity<T> ejecutar(String tenant, String operacion, String idempotencyKey, Object peticion,
+                                          TypeReference<T> tipo, Function<String, ResponseEntity<T>> accion) {
+        if (idempotencyKey == null) {
+            return accion.apply(UUID.randomUUID().toString());
+        }
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_LONGITUD_CLAVE) {
+            throw new BadRequestException("La cabecera " + HEADER + " debe tener entre 1 y "
+                    + MAX_LONGITUD_CLAVE + " caracteres");
+        }
+
+        String requestHash = sha256(json(peticion));
+        String claveLocal = tenant + "|" + operacion + "|" + idempotencyKey;
+
+        CompletableFuture<Respuesta> propia = new CompletableFuture<>();
+        CompletableFuture<Respuesta> existente = enCurso.putIfAbsent(claveLocal, propia);
+        if (existente != null) {
+            contar(operacion, "esperada");
+            return responder(esperar(existente), requestHash, tipo);
+        }
+
+        try {
+            return resolver(tenant, operacion, idempotencyKey, requestHash, tipo, accion, propia);
+        } catch (RuntimeException e) {
+            propia.completeExceptionally(e);
+            throw e;
+        } finally {
+            enCurso.remove(claveLocal, propia);
+        }
+    }
+
+    private <T> ResponseEntity<T> resolver(String tenant, String operacion, String idempotencyKey, String requestHash,
+                                           TypeReference<T> tipo, Function<String, ResponseEntity<T>> accion,
+                                           CompletableFuture<Respuesta> propia) {
+        long limite = System.nanoTime() + esperaMax.toNanos();
+        while (true) {
+            Reserva reserva;
+            try {
+                reserva = transactionTemplate.execute(status ->
+                        reservar(tenant, operacion, idempotencyKey, requestHash, LocalDateTime.now()));
+            } catch (DataIntegrityViolationException e) {
+                // Otra instancia insertó la misma clave a la vez: se vuelve a leer
+                if (System.nanoTime() > limite) {
+                    throw e;
+                }
+                continue;
+            }
+
+            if (reserva.respuesta() != null) {
+                propia.complete(reserva.respuesta());
+                contar(operacion, "repetida");
+                return responder(reserva.respuesta(), requestHash, tipo);
+            }
+            if (reserva.id() != null) {
+                contar(operacion, "ejecutada");
+                return ejecutarPropia(reserva.id(), tenant, operacion, idempotencyKey, requestHash, accion, propia);
+            }
+
+            // La petición original se ejecuta en otra instancia
+            if (System.nanoTime() > limite) {
+                contar(operacion, "en-curso");
+                throw new IdempotencyException(
+                        "Hay otra petición en curso con la misma " + HEADER + "; reintenta en unos segundos",
+                        HttpStatus.CONFLICT);
+            }
+            dormir(SONDEO);
+        }
+    }
+
+    private Reserva reservar(String tenant, String operacion, String idempotencyKey, String requestHash,
+                             LocalDateTime ahora) {
+        IdempotencyRecord registro = repository.bloquear(tenant, operacion, idempotencyKey).orElse(null);
+        if (registro == null) {
+            registro = IdempotencyRecord.builder()
+                    .tenant(tenant)
+                    .operacion(operacion)
+                    .idempotencyKey(idempotencyKey)
+                    .build();
+        } else if (!registro.getExpiraEn().isBefore(ahora)) {
+            if (!registro.getRequestHash().equals(requestHash)) {
+                throw claveReutilizada();
+            }
+            if (registro.getEstado() == IdempotencyRecord.Estado.COMPLETADO) {
+                return Reserva.guardada(new Respuesta(
+                        registro.getRequestHash(), registro.getHttpStatus(), registro.getRespuesta()));
+            }
+            if (registro.getBloqueadoHasta().isAfter(ahora)) {
+                return Reserva.enCurso();
+            }
+            log.warn("[Idempotency] {} {}: la petición original no terminó, se retoma", operacion, idempotencyKey);
+        }
+
+        registro.setRequestHash(requestHash);
+        registro.setEstado(IdempotencyRecord.Estado.EN_CURSO);
+        registro.setHttpStatus(null);
+        registro.setRespuesta(null);
+        registro.setBloqueadoHasta(ahora.plus(bloqueo));
+        registro.setExpiraEn(ahora.plus(ttl));
+        return Reserva.propia(repository.saveAndFlush(registro).getId());
+    }
+
+    private <T> ResponseEntity<T> ejecutarPropia(String id, String tenant, String operacion, String idempotencyKey,
+                                                 String requestHash, Function<String, ResponseEntity<T>> accion,
+                                                 CompletableFuture<Respuesta> propia) {
+        ResponseEntity<T> resultado;
+        try {
+            resultado = accion.apply(claveStripe(tenant, operacion, idempotencyKey));
+        } catch (RuntimeException e) {
+            liberar(id);
+            throw e;
+        }
+
+        Respuesta respuesta = new Respuesta(requestHash, resultado.getStatusCode().value(),
+                resultado.getBody() != null ? json(resultado.getBody()) : null);
+        if (resultado.getStatusCode().is5xxServerError()) {
+            liberar(id);
+        } else {
+            transactionTemplate.executeWithoutResult(status -> repository.findById(id).ifPresent(registro -> {
+                registro.setEstado(IdempotencyRecord.Estado.COMPLETADO);
+                registro.setHttpStatus(respuesta.status());
+                registro.setRespuesta(respuesta.cuerpo());
+                registro.setBloqueadoHasta(null);
+                repository.save(registro);
+            }));
+        }
+        propia.complete(respuesta);
+        return resultado;
+    }
+
+    /**
+     * Borra la reserva de una petición que no terminó bien, para que se pueda reintentar.
+     */
+    private void liberar(String id) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> repository.deleteById(id));
+        } catch (Exception e) {
+            // La reserva caduca al vencer bloqueado_hasta
+            log.error("[Idempotency] No se pudo liberar la clave {}: {}", id, e.getMessage());
+        }
+    }
+
+    /**
+     * Elimina las claves caducadas.
+     *
+     * @return Claves eliminadas
+     */
+    public int purgarExpiradas() {
+        Integer eliminadas = transactionTemplate.execute(status -> repository.eliminarExpiradas(LocalDateTime.now()));
+        log.info("[Idempotency] {} claves caducadas eliminadas", eliminadas);
+        return eliminadas != null ? eliminadas : 0;
+    }
+
+    private <T> ResponseEntity<T> responder(Respuesta respuesta, String requestHash, TypeReference<T> tipo) {
+        if (!respuesta.requestHash().equals(requestHash)) {
+            throw claveReutilizada();
+        }
+        T cuerpo = null;
+        if (respuesta.cuerpo() != null) {
+            try {
+                cuerpo = objectMapper.readerFor(tipo)
+                        .with(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS)
+                        .readValue(respuesta.cuerpo());
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Respuesta idempotente guardada inválida", e);
+            }
+        }
+        return ResponseEntity.status(respuesta.status())
+                .header(HEADER_REPLAYED, "true")
+                .body(cuerpo);
+    }
+
+    private Respuesta esperar(CompletableFuture<Respuesta> original) {
+        try {
+            return original.get(esperaMax.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new IdempotencyException(
+                    "Hay otra petición en curso con la misma " + HEADER + "; reintenta en unos segundos",
+                    HttpStatus.CONFLICT);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Espera interrumpida", e);
+        }
+    }
+
+    private static IdempotencyException claveReutilizada() {
+        return new IdempotencyException(
+                "La " + HEADER + " ya se usó con una petición distinta", HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+
+    /**
+     * Clave para Stripe: la misma para todas las repeticiones de una petición y
+     * distinta entre usuarios aunque elijan la misma Idempotency-Key.
+     */
+    private static String claveStripe(String tenant, String operacion, String idempotencyKey) {
+        return operacion + "-" + sha256(tenant + "|" + idempotencyKey);
+    }
+
+    private String json(Object valor) {
+        try {
+            return objectMapper.writeValueAsString(valor);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar para idempotencia", e);
+        }
+    }
+
+    private static String sha256(String valor) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(valor.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void contar(String operacion, String resultado) {
+        Counter.builder("idempotencia.peticiones")
+                .description("Peticiones con Idempotency-Key por resultado")
+                .tag("operacion", operacion)
+                .tag("resultado", resultado)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private static void dormir(Duration espera) {
+        try {
+            Thread.sleep(espera.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Espera interrumpida", e);
+        }
+    }
+}
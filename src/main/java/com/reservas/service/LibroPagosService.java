@@ -0,0 +1,339 @@
+package com.reservas.service;
+
+import com.reservas.batch.ChunkJob;
+import com.reservas.batch.ChunkJobRunner;
+import com.reservas.dto.response.MovimientoPagoResponse;
+import com.reservas.entity.MovimientoPago;
+import com.reservas.entity.Negocio;
+import com.reservas.entity.Pago;
+import com.reservas.entity.Payment;
+import com.reservas.entity.SaldoPagos;
+import com.reservas.entity.Usuario;
+import com.reservas.exception.NotFoundException;
+import com.reservas.repository.MovimientoPagoRepository;
+import com.reservas.repository.PagoRepository;
+import com.reservas.repository.PaymentRepository;
+import com.reservas.repository.SaldoPagosRepository;
+import com.reservas.repository.UsuarioRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Libro único de pagos: Pago (planes) y Payment (Stripe Connect) anotan aquí sus
+ * hechos con importe (cobro, fallo, reembolso) como movimientos inmutables, y cada
+ * movimiento nuevo suma en el saldo de su negocio, origen y moneda.
+ *
+ * - registrar(...) se llama tras cada cambio de estado, en la misma transacción.
+ *   Deriva los movimientos del estado actual y es idempotente: el movimiento ya
+ *   anotado no se inserta ni se suma otra vez.
+ * - Las estadísticas leen el saldo (una fila por moneda) y el historial pagina
+ *   el libro por id, sin cargar las tablas de pagos.
+ * - backfill() anota los pagos anteriores al libro con ChunkJobRunner; se puede
+ *   relanzar y convivir con los pagos en curso.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LibroPagosService {
+
+    static final String JOB_BACKFILL_SUSCRIPCIONES = "libro-pagos.backfill.suscripciones";
+    static final String JOB_BACKFILL_CONNECT = "libro-pagos.backfill.connect";
+
+    private static final List<String> ESTADOS_PAGO_CON_MOVIMIENTO = List.of("completed", "failed", "refunded");
+    private static final List<Payment.PaymentStatus> ESTADOS_PAYMENT_CON_MOVIMIENTO = List.of(
+            Payment.PaymentStatus.SUCCESS, Payment.PaymentStatus.SUCCEEDED,
+            Payment.PaymentStatus.FAILED, Payment.PaymentStatus.REFUNDED);
+
+    private static final String MONEDA_POR_DEFECTO = "MXN";
+    private static final int MAX_HISTORIAL = 100;
+
+    private final MovimientoPagoRepository movimientoRepository;
+    private final SaldoPagosRepository saldoRepository;
+    private final PagoRepository pagoRepository;
+    private final PaymentRepository paymentRepository;
+    private final UsuarioRepository usuarioRepository;
+    private final ChunkJobRunner chunkJobRunner;
+    private final MeterRegistry meterRegistry;
+
+    // ==================== Registro ====================
+
+    /**
+     * Anota los movimientos que correspondan al estado del Pago.
+     *
+     * @return movimientos nuevos (0 si ya estaban anotados)
+     */
+    @Transactional
+    public int registrar(Pago pago) {
+        return registrar(pago, LocalDateTime.now());
+    }
+
+    /**
+     * Anota los movimientos que correspondan al estado del Payment.
+     *
+     * @return movimientos nuevos (0 si ya estaban anotados)
+     */
+    @Transactional
+    public int registrar(Payment payment) {
+        return registrar(payment, LocalDateTime.now());
+    }
+
+    private int registrar(Pago pago, LocalDateTime fechaCambio) {
+        MovimientoPago base = MovimientoPago.builder()
+                .negocioId(pago.getNegocio().getId())
+                .origen(MovimientoPago.Origen.SUSCRIPCION)
+                .referencia(pago.getId().toString())
+                .moneda(moneda(pago.getMoneda()))
+                .comision(BigDecimal.ZERO)
+                .reembolsado(BigDecimal.ZERO)
+                .build();
+        BigDecimal monto = pago.getMonto();
+
+        int anotados = 0;
+        if (pago.isPagado() || pago.isReembolsado()) {
+            anotados += anotar(base.toBuilder()
+                    .tipo(MovimientoPago.Tipo.COBRO)
+                    .monto(monto)
+                    .neto(monto)
+                    .referenciaStripe(pago.getStripePaymentIntentId())
+                    .fecha(primera(pago.getFechaCompletado(), fechaCambio))
+                    .build());
+        }
+        if (pago.isReembolsado()) {
+            anotados += anotar(base.toBuilder()
+                    .tipo(MovimientoPago.Tipo.REEMBOLSO)
+                    .monto(monto.negate())
+                    .neto(monto.negate())
+                    .reembolsado(monto)
+                    .referenciaStripe(pago.getStripePaymentIntentId())
+                    .fecha(fechaCambio)
+                    .build());
+        }
+        if (pago.isFallido()) {
+            anotados += anotar(base.toBuilder()
+                    .tipo(MovimientoPago.Tipo.FALLO)
+                    .monto(BigDecimal.ZERO)
+                    .neto(BigDecimal.ZERO)
+                    .fecha(fechaCambio)
+                    .build());
+        }
+        return anotados;
+    }
+
+    /**
+     * El reembolso revierte el cobro entero, como hasta ahora en las estadísticas (un
+     * pago reembolsado deja de sumar), y guarda aparte el importe devuelto.
+     */
+    private int registrar(Payment payment, LocalDateTime fechaCambio) {
+        Negocio negocio = payment.getUsuario() != null ? payment.getUsuario().getNegocio() : null;
+        if (negocio == null) {
+            log.warn("[LibroPagos] Payment {} sin negocio; no se anota", payment.getId());
+            return 0;
+        }
+        BigDecimal monto = payment.getAmount();
+        BigDecimal comision = primera(payment.getPlatformFee(), BigDecimal.ZERO);
+        BigDecimal neto = primera(payment.getNetAmount(), monto.subtract(comision));
+        MovimientoPago base = MovimientoPago.builder()
+                .negocioId(negocio.getId())
+                .origen(MovimientoPago.Origen.CONNECT)
+                .referencia(payment.getId())
+                .moneda(moneda(payment.getCurrency()))
+                .reembolsado(BigDecimal.ZERO)
+                .build();
+
+        MovimientoPago cobro = base.toBuilder()
+                .tipo(MovimientoPago.Tipo.COBRO)
+                .monto(monto)
+                .comision(comision)
+                .neto(neto)
+                .referenciaStripe(primera(payment.getChargeId(), payment.getPaymentIntentId()))
+                .fecha(primera(payment.getConfirmedAt(), fechaCambio))
+                .build();
+
+        return switch (payment.getStatus()) {
+            case SUCCESS, SUCCEEDED -> anotar(cobro);
+            case REFUNDED -> anotar(cobro) + anotar(base.toBuilder()
+                    .tipo(MovimientoPago.Tipo.REEMBOLSO)
+                    .monto(monto.negate())
+                    .comision(comision.negate())
+                    .neto(neto.negate())
+                    .reembolsado(primera(payment.getAmountRefunded(), monto))
+                    .referenciaStripe(payment.getRefundId())
+                    .fecha(fechaCambio)
+                    .build());
+            case FAILED -> anotar(base.toBuilder()
+                    .tipo(MovimientoPago.Tipo.FALLO)
+                    .monto(BigDecimal.ZERO)
+                    .comision(BigDecimal.ZERO)
+                    .neto(BigDecimal.ZERO)
+                    .referenciaStripe(payment.getPaymentIntentId())
+                    .fecha(fechaCambio)
+                    .build());
+            default -> 0;
+        };
+    }
+
+    /**
+     * Inserta el movimiento y, solo si es nuevo, lo suma al saldo.
+     */
+    private int anotar(MovimientoPago movimiento) {
+        LocalDateTime ahora = LocalDateTime.now();
+        int insertado = movimientoRepository.insertarSiNoExiste(
+                movimiento.getNegocioId(),
+                movimiento.getOrigen().name(),
+                movimiento.getReferencia(),
+                movimiento.getTipo().name(),
+                movimiento.getMoneda(),
+                movimiento.getMonto(),
+                movimiento.getComision(),
+                movimiento.getNeto(),
+                movimiento.getReembolsado(),
+                movimiento.getReferenciaStripe(),
+                movimiento.getFecha(),
+                ahora);
+        if (insertado == 0) {
+            return 0;
+        }
+
+        if (sumar(movimiento, ahora) == 0) {
+            // Primer movimiento del negocio en este origen y moneda
+            saldoRepository.insertarSiNoExiste(UUID.randomUUID(), movimiento.getNegocioId(),
+                    movimiento.getOrigen().name(), movimiento.getMoneda(), ahora);
+            sumar(movimiento, ahora);
+        }
+
+        Counter.builder("pagos.libro.movimientos")
+                .description("Movimientos anotados en el libro de pagos")
+                .tag("origen", movimiento.getOrigen().name())
+                .tag("tipo", movimiento.getTipo().name())
+                .register(meterRegistry)
+                .increment();
+        log.debug("[LibroPagos] {} {} {} {} {} - Negocio: {}", movimiento.getOrigen(), movimiento.getTipo(),
+                movimiento.getReferencia(), movimiento.getMonto(), movimiento.getMoneda(), movimiento.getNegocioId());
+        return 1;
+    }
+
+    private int sumar(MovimientoPago movimiento, LocalDateTime ahora) {
+        MovimientoPago.Tipo tipo = movimiento.getTipo();
+        return saldoRepository.sumar(
+                movimiento.getNegocioId(),
+                movimiento.getOrigen(),
+                movimiento.getMoneda(),
+                tipo == MovimientoPago.Tipo.COBRO ? 1 : 0,
+                tipo == MovimientoPago.Tipo.FALLO ? 1 : 0,
+                tipo == MovimientoPago.Tipo.REEMBOLSO ? 1 : 0,
+                movimiento.getMonto(),
+                movimiento.getComision(),
+                movimiento.getNeto(),
+                movimiento.getReembolsado(),
+                ahora);
+    }
+
+    // ==================== Consultas ====================
+
+    /**
+     * Saldos del negocio en un origen, uno por moneda (los importes de monedas distintas
+     * no se suman), del más reciente al más antiguo.
+     */
+    @Transactional(readOnly = true)
+    public List<SaldoPagos> obtenerSaldos(UUID negocioId, MovimientoPago.Origen origen) {
+        return saldoRepository.findByNegocioIdAndOrigen(negocioId, origen).stream()
+                .sorted(Comparator.comparing(SaldoPagos::getUpdatedAt).reversed())
+                .toList();
+    }
+
+    /**
+     * Saldo del negocio en un origen en su moneda principal: la del último movimiento
+     * (MXN si no hay ninguno). Las demás monedas se consultan con obtenerSaldos.
+     */
+    @Transactional(readOnly = true)
+    public SaldoPagos obtenerSaldo(UUID negocioId, MovimientoPago.Origen origen) {
+        return obtenerSaldos(negocioId, origen).stream()
+                .findFirst()
+                .orElseGet(() -> SaldoPagos.builder()
+                        .negocioId(negocioId)
+                        .origen(origen)
+                        .moneda(MONEDA_POR_DEFECTO)
+                        .build());
+    }
+
+    /**
+     * Movimientos del negocio del usuario, del más reciente al más antiguo.
+     *
+     * @param antesDe id del último movimiento de la página anterior (null = primera página)
+     */
+    @Transactional(readOnly = true)
+    public List<MovimientoPagoResponse> obtenerHistorial(String email, Long antesDe, int limite) {
+        log.info("[LibroPagos] Obteniendo movimientos para usuario: {} (antesDe={})", email, antesDe);
+
+        Usuario usuario = usuarioRepository.findByEmail(email)
+                .orElseThrow(() -> new NotFoundException("Usuario no encontrado"));
+
+        Negocio negocio = usuario.getNegocio();
+        if (negocio == null) {
+            throw new NotFoundException("Negocio no encontrado para el usuario");
+        }
+
+        int tamano = Math.max(1, Math.min(limite, MAX_HISTORIAL));
+        return movimientoRepository.findHistorial(negocio.getId(), antesDe != null ? antesDe : Long.MAX_VALUE,
+                        PageRequest.of(0, tamano)).stream()
+                .map(MovimientoPagoResponse::fromEntity)
+                .toList();
+    }
+
+    // ==================== Backfill ====================
+
+    /**
+     * Anota en el libro los Pago y Payment existentes. Los ya anotados se saltan, así
+     * que puede relanzarse y ejecutarse con tráfico.
+     */
+    public void backfill() {
+        log.info("[LibroPagos] Iniciando backfill del libro de pagos...");
+
+        long pagos = chunkJobRunner.ejecutar(jobBackfillSuscripciones()).procesados();
+        long payments = chunkJobRunner.ejecutar(jobBackfillConnect()).procesados();
+
+        log.info("[LibroPagos]  Backfill: {} movimientos de suscripciones, {} de Stripe Connect", pagos, payments);
+    }
+
+    ChunkJob<Pago> jobBackfillSuscripciones() {
+        return ChunkJob.de(JOB_BACKFILL_SUSCRIPCIONES,
+                (despuesDe, corte, limite) -> pagoRepository.findParaLibro(ESTADOS_PAGO_CON_MOVIMIENTO, corte,
+                        despuesDe != null ? UUID.fromString(despuesDe) : new UUID(0L, 0L),
+                        PageRequest.of(0, limite)),
+                pago -> pago.getId().toString(),
+                (lote, corte) -> lote.stream()
+                        .mapToInt(pago -> registrar(pago, primera(pago.getFechaActualizacion(), corte)))
+                        .sum());
+    }
+
+    ChunkJob<Payment> jobBackfillConnect() {
+        return ChunkJob.de(JOB_BACKFILL_CONNECT,
+                (despuesDe, corte, limite) -> paymentRepository.findParaLibro(ESTADOS_PAYMENT_CON_MOVIMIENTO, corte,
+                        despuesDe != null ? despuesDe : "", PageRequest.of(0, limite)),
+                Payment::getId,
+                (lote, corte) -> lote.stream()
+                        .mapToInt(payment -> registrar(payment, primera(payment.getUpdatedAt(), corte)))
+                        .sum());
+    }
+
+    // ==================== Auxiliares ====================
+
+    private static String moneda(String moneda) {
+        return moneda != null && !moneda.isBlank() ? moneda.trim().toUpperCase() : MONEDA_POR_DEFECTO;
+    }
+
+    private static <T> T primera(T valor, T porDefecto) {
+        return valor != null ? valor : porDefecto;
+    }
+}
@@ -1,8 +1,10 @@
 package com.reservas.service;
 
 import com.reservas.dto.response.PagoResponse;
+import com.reservas.entity.MovimientoPago;
 import com.reservas.entity.Negocio;
 import com.reservas.entity.Pago;
+import com.reservas.entity.SaldoPagos;
 import com.reservas.entity.Usuario;
 import com.reservas.exception.NotFoundException;
 import com.reservas.exception.UnauthorizedException;
@@ -30,6 +32,7 @@ public class PagoService {
 
     private final PagoRepository pagoRepository;
     private final UsuarioRepository usuarioRepository;
+    private final LibroPagosService libroPagosService;
 
     /**
      * Obtiene el historial de pagos de un negocio
@@ -82,7 +85,7 @@ public class PagoService {
     }
 
     /**
-     * Obtiene estadísticas de pagos del negocio
+     * Obtiene estadísticas de pagos del negocio desde el libro de pagos
      */
     @Transactional(readOnly = true)
     public EstadisticasPagosResponse obtenerEstadisticas(String email) {
@@ -96,16 +99,11 @@ public class PagoService {
             throw new NotFoundException("Negocio no encontrado para el usuario");
         }
 
-        long totalPagos = pagoRepository.countPagosCompletadosByNegocio(negocio);
-        BigDecimal montoTotal = pagoRepository.sumMontoByNegocioAndEstadoCompleted(negocio);
-
-        if (montoTotal == null) {
-            montoTotal = BigDecimal.ZERO;
-        }
+        SaldoPagos saldo = libroPagosService.obtenerSaldo(negocio.getId(), MovimientoPago.Origen.SUSCRIPCION);
 
         return EstadisticasPagosResponse.builder()
-                .totalPagos(totalPagos)
-                .montoTotal(montoTotal)
+                .totalPagos(saldo.getCobrosVigentes())
+                .montoTotal(saldo.getMonto())
                 .build();
     }
 
@@ -16,7 +16,14 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -114,151 +121,196 @@ public class PlanLimitesService {
 
         return usoNegocioRepository.findByNegocioIdAndPeriodo(negocioId, periodoActual)
                 .orElseGet(() -> {
-                    log.info("[PlanLimitesService] Creando nuevo registro de uso para negocio: {}, periodo: {}",
-                            negocioId, periodoActual);
-                    // Crear nuevo registro de uso
-                    Negocio negocio = new Negocio();
-                    negocio.setId(negocioId);
-
-                    UsoNegocio nuevoUso = UsoNegocio.builder()
-                            .negocio(negocio)
-                            .periodo(periodoActual)
-                            .totalUsuarios(0)
-                            .totalClientes(0)
-                            .totalCitasMes(0)
-                            .totalServicios(0)
-                            .build();
-
-                    return usoNegocioRepository.save(nuevoUso);
+                    crearRegistroUsoSiNoExiste(negocioId, periodoActual);
+                    return usoNegocioRepository.findByNegocioIdAndPeriodo(negocioId, periodoActual)
+                            .orElseThrow(() -> new IllegalStateException(
+                                    "No se pudo crear el registro de uso para negocio: " + negocioId));
                 });
     }
 
     /**
-     * Actualiza el conteo de uso de un negocio
+     * Reconcilia los contadores de uso con los totales reales de la base de datos.
+     *
+     * Los contadores se mantienen de forma incremental en cada alta/baja; este método
+     * solo corrige desviaciones (altas fuera de estos servicios, borrados en cascada, etc.)
+     * y lo invoca periódicamente UsoNegocioScheduler.
      */
     @Transactional
     public void actualizarUso(UUID negocioId) {
-        log.info("[PlanLimitesService] Actualizando uso para negocio: {}", negocioId);
+        log.info("[PlanLimitesService] Reconciliando uso para negocio: {}", negocioId);
 
-        UsoNegocio uso = obtenerUsoActual(negocioId);
+        String periodoActual = UsoNegocio.getPeriodoActual();
+        if (crearRegistroUsoSiNoExiste(negocioId, periodoActual) == 1) {
+            // Recién creado con los totales reales, no hay nada que reconciliar
+            return;
+        }
 
-        // Contar totales reales
         long totalUsuarios = usuarioRepository.countActiveUsuariosByNegocioId(negocioId);
         long totalClientes = clienteRepository.countByNegocioId(negocioId);
         long totalServicios = servicioRepository.countByNegocioId(negocioId);
+        long totalCitasMes = contarCitasDelPeriodo(negocioId, periodoActual);
 
-        // Para citas del mes actual
-        String periodoActual = UsoNegocio.getPeriodoActual();
-        String[] parts = periodoActual.split("-");
-        int year = Integer.parseInt(parts[0]);
-        int month = Integer.parseInt(parts[1]);
-        long totalCitasMes = citaRepository.countCitasByNegocioAndMonth(negocioId, year, month);
-
-        uso.setTotalUsuarios((int) totalUsuarios);
-        uso.setTotalClientes((int) totalClientes);
-        uso.setTotalCitasMes((int) totalCitasMes);
-        uso.setTotalServicios((int) totalServicios);
-
-        usoNegocioRepository.save(uso);
-        log.info("[PlanLimitesService] Uso actualizado - Usuarios: {}, Clientes: {}, Citas: {}, Servicios: {}",
+        usoNegocioRepository.reconciliar(negocioId, periodoActual,
+                (int) totalUsuarios, (int) totalClientes, (int) totalCitasMes, (int) totalServicios,
+                LocalDateTime.now());
+        log.info("[PlanLimitesService] Uso reconciliado - Usuarios: {}, Clientes: {}, Citas: {}, Servicios: {}",
                 totalUsuarios, totalClientes, totalCitasMes, totalServicios);
     }
 
     /**
-     * Valida si se puede agregar un nuevo usuario
+     * IDs de los negocios con registro de uso en el periodo actual (para el job de reconciliación)
+     */
+    @Transactional(readOnly = true)
+    public List<UUID> obtenerNegociosConUsoActual() {
+        return usoNegocioRepository.findNegocioIdsByPeriodo(UsoNegocio.getPeriodoActual());
+    }
+
+    /**
+     * Valida y reserva un cupo de usuario.
+     * La reserva forma parte de la transacción del llamador: si el alta falla, se revierte.
      */
+    @Transactional
     public void validarLimiteUsuarios(UUID negocioId, TipoPlan tipoPlan) {
         log.info("[PlanLimitesService] Validando límite de usuarios para negocio: {}, plan: {}", negocioId, tipoPlan);
 
-        PlanLimites limites = obtenerLimites(tipoPlan);
-
-        // Si es ilimitado, permitir
-        if (limites.getMaxUsuarios() == -1) {
-            log.info("[PlanLimitesService] Plan con usuarios ilimitados");
-            return;
-        }
-
-        long usuariosActuales = usuarioRepository.countActiveUsuariosByNegocioId(negocioId);
-
-        if (usuariosActuales >= limites.getMaxUsuarios()) {
-            log.warn("[PlanLimitesService] Límite de usuarios excedido: {} >= {}", usuariosActuales, limites.getMaxUsuarios());
-            throw new LimiteExcedidoException("usuarios", (int) usuariosActuales, limites.getMaxUsuarios());
-        }
-
-        log.info("[PlanLimitesService] Validación exitosa: {} / {} usuarios", usuariosActuales, limites.getMaxUsuarios());
+        int max = obtenerLimites(tipoPlan).getMaxUsuarios();
+        reservarCupo(negocioId, "usuarios", max, UsoNegocio.getPeriodoActual(),
+                periodo -> usoNegocioRepository.incrementarUsuarios(negocioId, periodo, max, LocalDateTime.now()),
+                UsoNegocio::getTotalUsuarios);
     }
 
     /**
-     * Valida si se puede agregar un nuevo cliente
+     * Valida y reserva un cupo de cliente
      */
+    @Transactional
     public void validarLimiteClientes(UUID negocioId, TipoPlan tipoPlan) {
         log.info("[PlanLimitesService] Validando límite de clientes para negocio: {}, plan: {}", negocioId, tipoPlan);
 
-        PlanLimites limites = obtenerLimites(tipoPlan);
+        int max = obtenerLimites(tipoPlan).getMaxClientes();
+        reservarCupo(negocioId, "clientes", max, UsoNegocio.getPeriodoActual(),
+                periodo -> usoNegocioRepository.incrementarClientes(negocioId, periodo, max, LocalDateTime.now()),
+                UsoNegocio::getTotalClientes);
+    }
 
-        if (limites.getMaxClientes() == -1) {
-            log.info("[PlanLimitesService] Plan con clientes ilimitados");
-            return;
-        }
+    /**
+     * Valida y reserva un cupo de cita en el mes de fechaHora, el mismo en el que la
+     * cuentan actualizarUso y registrarCitasAdicionales.
+     */
+    @Transactional
+    public void validarLimiteCitasMes(UUID negocioId, TipoPlan tipoPlan, LocalDateTime fechaHora) {
+        String periodoCita = YearMonth.from(fechaHora).toString();
+        log.info("[PlanLimitesService] Validando límite de citas del mes {} para negocio: {}, plan: {}",
+                periodoCita, negocioId, tipoPlan);
+
+        int max = obtenerLimites(tipoPlan).getMaxCitasMes();
+        reservarCupo(negocioId, "citas del mes " + periodoCita, max, periodoCita,
+                periodo -> usoNegocioRepository.incrementarCitasMes(negocioId, periodo, 1, max, LocalDateTime.now()),
+                UsoNegocio::getTotalCitasMes);
+    }
 
-        long clientesActuales = clienteRepository.countByNegocioId(negocioId);
+    /**
+     * Valida y reserva un cupo de servicio
+     */
+    @Transactional
+    public void validarLimiteServicios(UUID negocioId, TipoPlan tipoPlan) {
+        log.info("[PlanLimitesService] Validando límite de servicios para negocio: {}, plan: {}", negocioId, tipoPlan);
 
-        if (clientesActuales >= limites.getMaxClientes()) {
-            log.warn("[PlanLimitesService] Límite de clientes excedido: {} >= {}", clientesActuales, limites.getMaxClientes());
-            throw new LimiteExcedidoException("clientes", (int) clientesActuales, limites.getMaxClientes());
-        }
+        int max = obtenerLimites(tipoPlan).getMaxServicios();
+        reservarCupo(negocioId, "servicios", max, UsoNegocio.getPeriodoActual(),
+                periodo -> usoNegocioRepository.incrementarServicios(negocioId, periodo, max, LocalDateTime.now()),
+                UsoNegocio::getTotalServicios);
+    }
 
-        log.info("[PlanLimitesService] Validación exitosa: {} / {} clientes", clientesActuales, limites.getMaxClientes());
+    /**
+     * Suma citas generadas automáticamente (recurrencias) al contador del mes de su
+     * fechaHora sin aplicar el límite: forman parte de una cita que ya pasó la validación.
+     */
+    @Transactional
+    public void registrarCitasAdicionales(UUID negocioId, List<LocalDateTime> fechas) {
+        Map<String, Long> porPeriodo = fechas.stream()
+                .collect(Collectors.groupingBy(f -> YearMonth.from(f).toString(), TreeMap::new, Collectors.counting()));
+
+        porPeriodo.forEach((periodo, cantidad) -> {
+            // Un registro recién creado ya se siembra contando estas citas
+            if (crearRegistroUsoSiNoExiste(negocioId, periodo) == 0) {
+                usoNegocioRepository.incrementarCitasMes(negocioId, periodo, cantidad.intValue(), -1,
+                        LocalDateTime.now());
+            }
+        });
     }
 
     /**
-     * Valida si se puede agregar una nueva cita este mes
+     * Libera el cupo de un usuario desactivado
      */
-    public void validarLimiteCitasMes(UUID negocioId, TipoPlan tipoPlan) {
-        log.info("[PlanLimitesService] Validando límite de citas del mes para negocio: {}, plan: {}", negocioId, tipoPlan);
+    @Transactional
+    public void liberarCupoUsuario(UUID negocioId) {
+        usoNegocioRepository.decrementarUsuarios(negocioId, UsoNegocio.getPeriodoActual(), LocalDateTime.now());
+    }
 
-        PlanLimites limites = obtenerLimites(tipoPlan);
+    /**
+     * Libera el cupo de un cliente eliminado
+     */
+    @Transactional
+    public void liberarCupoCliente(UUID negocioId) {
+        usoNegocioRepository.decrementarClientes(negocioId, UsoNegocio.getPeriodoActual(), LocalDateTime.now());
+    }
 
-        if (limites.getMaxCitasMes() == -1) {
-            log.info("[PlanLimitesService] Plan con citas ilimitadas");
+    /**
+     * Intenta el incremento atómico; si no afectó filas puede ser porque aún no existe
+     * el registro del periodo (primer alta del mes) o porque se alcanzó el límite.
+     * Tras asegurar el registro se reintenta siempre una vez: si lo creó una petición
+     * concurrente entre el primer intento y la inserción, el cupo sigue disponible.
+     */
+    private void reservarCupo(UUID negocioId, String recurso, int max, String periodo,
+                              ToIntFunction<String> incremento, ToIntFunction<UsoNegocio> totalActual) {
+        if (incremento.applyAsInt(periodo) == 1) {
+            log.info("[PlanLimitesService] Cupo de {} reservado (máximo: {})", recurso, max);
             return;
         }
 
-        UsoNegocio uso = obtenerUsoActual(negocioId);
-
-        if (uso.getTotalCitasMes() >= limites.getMaxCitasMes()) {
-            log.warn("[PlanLimitesService] Límite de citas del mes excedido: {} >= {}",
-                    uso.getTotalCitasMes(), limites.getMaxCitasMes());
-            throw new LimiteExcedidoException("citas este mes", uso.getTotalCitasMes(), limites.getMaxCitasMes());
+        crearRegistroUsoSiNoExiste(negocioId, periodo);
+        if (incremento.applyAsInt(periodo) == 1) {
+            log.info("[PlanLimitesService] Cupo de {} reservado en el periodo {} (máximo: {})", recurso, periodo, max);
+            return;
         }
 
-        log.info("[PlanLimitesService] Validación exitosa: {} / {} citas este mes",
-                uso.getTotalCitasMes(), limites.getMaxCitasMes());
+        int actual = usoNegocioRepository.findByNegocioIdAndPeriodo(negocioId, periodo)
+                .map(totalActual::applyAsInt)
+                .orElse(max);
+        log.warn("[PlanLimitesService] Límite de {} excedido: {} >= {}", recurso, actual, max);
+        throw new LimiteExcedidoException(recurso, actual, max);
     }
 
     /**
-     * Valida si se puede agregar un nuevo servicio
+     * Inserta el registro del periodo sembrado con los totales reales.
+     * Devuelve 1 si se creó y 0 si ya existía (otra petición lo creó antes).
      */
-    public void validarLimiteServicios(UUID negocioId, TipoPlan tipoPlan) {
-        log.info("[PlanLimitesService] Validando límite de servicios para negocio: {}, plan: {}", negocioId, tipoPlan);
-
-        PlanLimites limites = obtenerLimites(tipoPlan);
-
-        if (limites.getMaxServicios() == -1) {
-            log.info("[PlanLimitesService] Plan con servicios ilimitados");
-            return;
+    private int crearRegistroUsoSiNoExiste(UUID negocioId, String periodo) {
+        if (usoNegocioRepository.findByNegocioIdAndPeriodo(negocioId, periodo).isPresent()) {
+            return 0;
         }
 
-        long serviciosActuales = servicioRepository.countByNegocioId(negocioId);
-
-        if (serviciosActuales >= limites.getMaxServicios()) {
-            log.warn("[PlanLimitesService] Límite de servicios excedido: {} >= {}",
-                    serviciosActuales, limites.getMaxServicios());
-            throw new LimiteExcedidoException("servicios", (int) serviciosActuales, limites.getMaxServicios());
-        }
+        log.info("[PlanLimitesService] Creando nuevo registro de uso para negocio: {}, periodo: {}",
+                negocioId, periodo);
+
+        int insertados = usoNegocioRepository.insertarSiNoExiste(
+                UUID.randomUUID(),
+                negocioId,
+                periodo,
+                (int) usuarioRepository.countActiveUsuariosByNegocioId(negocioId),
+                (int) clienteRepository.countByNegocioId(negocioId),
+                (int) contarCitasDelPeriodo(negocioId, periodo),
+                (int) servicioRepository.countByNegocioId(negocioId),
+                LocalDateTime.now());
+        return insertados;
+    }
 
-        log.info("[PlanLimitesService] Validación exitosa: {} / {} servicios",
-                serviciosActuales, limites.getMaxServicios());
+    private long contarCitasDelPeriodo(UUID negocioId, String periodo) {
+        YearMonth mes = YearMonth.parse(periodo);
+        return citaRepository.countCitasByNegocioAndFechaHoraRange(
+                negocioId,
+                mes.atDay(1).atStartOfDay(),
+                mes.plusMonths(1).atDay(1).atStartOfDay());
     }
 
     /**
@@ -352,8 +404,9 @@ public class PlanLimitesService {
      * - Marcado como @Transactional(readOnly = true)
      * - Usa JOIN FETCH para cargar Negocio eagerly
      * - Previene LazyInitializationException
+     * - No es readOnly: puede crear el registro del periodo si aún no existe
      */
-    @Transactional(readOnly = true)
+    @Transactional
     public UsoNegocioDTO obtenerUsoPorEmail(String email) {
         log.info("[PlanLimitesService] Obteniendo uso del plan para usuario: {}", email);
 
@@ -369,9 +422,7 @@ public class PlanLimitesService {
         UUID negocioId = negocio.getId();
         TipoPlan plan = TipoPlan.fromCodigo(negocio.getPlan());
 
-        // Actualizar uso antes de obtenerlo
-        actualizarUso(negocioId);
-
+        // Los contadores se mantienen en cada alta/baja, no hace falta recontar
         UsoNegocio uso = obtenerUsoActual(negocioId);
         PlanLimites limites = obtenerLimites(plan);
 
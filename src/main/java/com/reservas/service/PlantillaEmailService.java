@@ -1,5 +1,7 @@
 package com.reservas.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.reservas.dto.request.PlantillaEmailConfigRequest;
 import com.reservas.dto.response.PlantillaEmailConfigResponse;
 import com.reservas.entity.Negocio;
@@ -12,6 +14,12 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
 
 /**
  * Servicio para gestionar plantillas de email personalizadas
@@ -26,6 +34,16 @@ public class PlantillaEmailService {
     @Autowired
     private UsuarioRepository usuarioRepository;
 
+    /**
+     * Plantilla de cada negocio para los envíos (recordatorios, confirmaciones).
+     * Se invalida al guardar o restaurar la configuración; el TTL acota lo que puede
+     * tardar en verse un cambio hecho desde otra instancia.
+     */
+    private final Cache<UUID, Optional<PlantillaEmailConfig>> plantillasPorNegocio = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofMinutes(5))
+            .build();
+
     /**
      * Obtiene la configuración de plantilla de email del negocio del usuario
      * Si no existe, retorna una configuración por defecto
@@ -94,6 +112,7 @@ public class PlantillaEmailService {
         }
 
         config = plantillaRepository.save(config);
+        invalidarCache(negocio.getId());
         log.info("✅ Configuración de plantilla guardada para negocio: {}", negocio.getId());
 
         return PlantillaEmailConfigResponse.fromEntity(config);
@@ -129,6 +148,7 @@ public class PlantillaEmailService {
                 .build();
 
         config = plantillaRepository.save(config);
+        invalidarCache(negocio.getId());
         log.info("✅ Configuración restaurada a valores por defecto para negocio: {}", negocio.getId());
 
         return PlantillaEmailConfigResponse.fromEntity(config);
@@ -149,12 +169,50 @@ public class PlantillaEmailService {
     }
 
     /**
-     * Obtiene la configuración de plantilla por negocio (uso interno)
-     * Usado por EmailService para generar HTML personalizado
+     * Obtiene la configuración de plantilla por negocio (uso interno).
+     * Usado por los envíos de email para generar HTML personalizado: un lote de
+     * recordatorios del mismo negocio consulta la base de datos una sola vez.
+     *
+     * Devuelve una copia de solo lectura, sin la relación con el negocio.
+     *
+     * @return La configuración, o null si el negocio no tiene una
      */
-    @Transactional(readOnly = true)
     public PlantillaEmailConfig obtenerConfiguracionPorNegocio(Negocio negocio) {
-        return plantillaRepository.findByNegocio(negocio)
+        return plantillasPorNegocio.get(negocio.getId(),
+                id -> plantillaRepository.findByNegocio(negocio).map(this::copiaParaEnvio))
                 .orElse(null);
     }
+
+    /**
+     * Invalida la plantilla cacheada del negocio. Si hay una transacción en curso se
+     * invalida de nuevo tras el commit, para que una lectura concurrente no deje
+     * en caché la versión anterior.
+     */
+    private void invalidarCache(UUID negocioId) {
+        plantillasPorNegocio.invalidate(negocioId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    plantillasPorNegocio.invalidate(negocioId);
+                }
+            });
+        }
+    }
+
+    private PlantillaEmailConfig copiaParaEnvio(PlantillaEmailConfig config) {
+        return PlantillaEmailConfig.builder()
+                .id(config.getId())
+                .colorPrimario(config.getColorPrimario())
+                .colorSecundario(config.getColorSecundario())
+                .colorFondo(config.getColorFondo())
+                .mensajeBienvenida(config.getMensajeBienvenida())
+                .firma(config.getFirma())
+                .infoContacto(config.getInfoContacto())
+                .disenoBase(config.getDisenoBase())
+                .activa(config.isActiva())
+                .createdAt(config.getCreatedAt())
+                .updatedAt(config.getUpdatedAt())
+                .build();
+    }
 }
@@ -1,37 +1,42 @@
 package com.reservas.service;
 
+import com.reservas.ratelimit.BucketStore;
 import io.github.bucket4j.Bandwidth;
 import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
 import io.github.bucket4j.Refill;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Rate limiting por clave (IP + endpoint).
+ *
+ * El estado de los buckets lo guarda el BucketStore configurado (local o Redis);
+ * ver RateLimitConfig.
+ */
 @Service
 @Slf4j
+@RequiredArgsConstructor
 public class RateLimitService {
 
-    private final Map<String, Bucket> cache = new ConcurrentHashMap<>();
-
     /**
-     * Obtener bucket para rate limiting
      * Configuración: 3 intentos cada 5 minutos
      */
-    public Bucket resolveBucket(String key) {
-        return cache.computeIfAbsent(key, k -> createNewBucket());
-    }
+    private static final BucketConfiguration CONFIGURACION = BucketConfiguration.builder()
+            .addLimit(Bandwidth.classic(3, Refill.intervally(3, Duration.ofMinutes(5))))
+            .build();
+
+    private final BucketStore bucketStore;
 
     /**
-     * Crear nuevo bucket con límite de 3 peticiones cada 5 minutos
+     * Obtener bucket para rate limiting
+     * Configuración: 3 intentos cada 5 minutos
      */
-    private Bucket createNewBucket() {
-        Bandwidth limit = Bandwidth.classic(3, Refill.intervally(3, Duration.ofMinutes(5)));
-        return Bucket.builder()
-                .addLimit(limit)
-                .build();
+    public Bucket resolveBucket(String key) {
+        return bucketStore.resolve(key, () -> CONFIGURACION);
     }
 
     /**
@@ -50,6 +55,25 @@ public class RateLimitService {
         return consumed;
     }
 
+    /**
+     * Verificar si se puede procesar la petición con un límite distinto al por defecto
+     * (ej: /auth/refresh, que se llama periódicamente por cada sesión abierta).
+     * La configuración solo se aplica al crear el bucket, así que la clave debe ser
+     * exclusiva del endpoint.
+     */
+    public boolean tryConsume(String key, long capacidad, Duration periodo) {
+        Bucket bucket = bucketStore.resolve(key, () -> BucketConfiguration.builder()
+                .addLimit(Bandwidth.classic(capacidad, Refill.intervally(capacidad, periodo)))
+                .build());
+        boolean consumed = bucket.tryConsume(1);
+
+        if (!consumed) {
+            log.warn(" Rate limit excedido para: {}", key);
+        }
+
+        return consumed;
+    }
+
     /**
      * Obtener tokens disponibles
      */
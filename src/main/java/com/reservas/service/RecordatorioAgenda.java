@@ -0,0 +1,152 @@
+package com.reservas.service;
+
+import com.reservas.repository.RecordatorioRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Agenda en memoria de los recordatorios que vencen en las próximas horas.
+ *
+ * Es solo un temporizador: indica CUÁNDO reclamar un lote, pero la base de datos
+ * sigue siendo la fuente de verdad (el reclamo con SKIP LOCKED decide qué se envía).
+ * Por eso una entrada obsoleta solo provoca un reclamo vacío, y perder la agenda
+ * en un reinicio solo hace que se recargue desde la base de datos.
+ *
+ * Se alimenta de dos formas:
+ * - recargar(): lee los recordatorios con scheduled_at dentro del horizonte.
+ * - programar(): cambios en vivo al crear, mover o cancelar citas.
+ */
+@Component
+@Slf4j
+public class RecordatorioAgenda {
+
+    @Autowired
+    private RecordatorioRepository recordatorioRepository;
+
+    @Value("${recordatorios.agenda.enabled:true}")
+    private boolean habilitada;
+
+    /** Horas hacia adelante que se cargan en memoria en cada recarga */
+    @Value("${recordatorios.agenda.horizonte-horas:6}")
+    private long horizonteHoras;
+
+    @Value("${recordatorios.agenda.max-entradas:50000}")
+    private int maxEntradas;
+
+    private final DelayQueue<Entrada> cola = new DelayQueue<>();
+    private final Map<String, Entrada> porId = new ConcurrentHashMap<>();
+
+    /** Fin del horizonte cargado; lo que quede más allá llega con la siguiente recarga */
+    private volatile LocalDateTime limite;
+
+    public boolean isHabilitada() {
+        return habilitada;
+    }
+
+    /**
+     * Sustituye el contenido de la agenda por los recordatorios pendientes que vencen
+     * antes del fin del horizonte (incluidos los ya vencidos).
+     *
+     * @return Número de recordatorios cargados
+     */
+    public synchronized int recargar() {
+        if (!habilitada) {
+            return 0;
+        }
+
+        LocalDateTime hasta = LocalDateTime.now().plusHours(horizonteHoras);
+        List<RecordatorioRepository.RecordatorioProgramado> programados =
+                recordatorioRepository.findProgramadosHasta(hasta, PageRequest.of(0, maxEntradas));
+
+        cola.clear();
+        porId.clear();
+        for (RecordatorioRepository.RecordatorioProgramado programado : programados) {
+            agregar(programado.getId(), programado.getScheduledAt());
+        }
+
+        // Si se alcanzó el tope, el horizonte efectivo termina en el último cargado
+        limite = programados.size() < maxEntradas
+                ? hasta
+                : programados.get(programados.size() - 1).getScheduledAt();
+
+        log.info("[RecordatorioAgenda] Agenda recargada: {} recordatorios hasta {}", programados.size(), limite);
+        return programados.size();
+    }
+
+    /**
+     * Registra (o mueve) un recordatorio en la agenda.
+     *
+     * @param recordatorioId ID del recordatorio
+     * @param scheduledAt Nuevo momento de envío; null lo quita de la agenda
+     */
+    public synchronized void programar(String recordatorioId, LocalDateTime scheduledAt) {
+        if (!habilitada || recordatorioId == null) {
+            return;
+        }
+
+        Entrada anterior = porId.remove(recordatorioId);
+        if (anterior != null) {
+            cola.remove(anterior);
+        }
+
+        // Fuera del horizonte (o agenda aún sin cargar): lo traerá la siguiente recarga
+        if (scheduledAt == null || limite == null || scheduledAt.isAfter(limite)) {
+            return;
+        }
+        agregar(recordatorioId, scheduledAt);
+    }
+
+    /**
+     * Bloquea hasta que vence al menos un recordatorio y devuelve todos los que
+     * ya están vencidos en ese momento.
+     */
+    public List<String> esperarVencidos() throws InterruptedException {
+        List<String> vencidos = new ArrayList<>();
+        Entrada entrada = cola.take();
+        do {
+            porId.remove(entrada.id(), entrada);
+            vencidos.add(entrada.id());
+            entrada = cola.poll();
+        } while (entrada != null);
+        return vencidos;
+    }
+
+    public int tamano() {
+        return cola.size();
+    }
+
+    private void agregar(String recordatorioId, LocalDateTime scheduledAt) {
+        Entrada entrada = new Entrada(recordatorioId, scheduledAt);
+        porId.put(recordatorioId, entrada);
+        cola.add(entrada);
+    }
+
+    /**
+     * Entrada de la DelayQueue: vence en scheduledAt (misma zona que LocalDateTime.now()).
+     */
+    record Entrada(String id, LocalDateTime momento) implements Delayed {
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(Duration.between(LocalDateTime.now(), momento));
+        }
+
+        @Override
+        public int compareTo(Delayed otro) {
+            return momento.compareTo(((Entrada) otro).momento);
+        }
+    }
+}
@@ -4,18 +4,30 @@ import com.reservas.entity.Cita;
 import com.reservas.entity.PlantillaEmailConfig;
 import com.reservas.entity.Recordatorio;
 import com.reservas.repository.CitaRepository;
-import com.reservas.repository.PlantillaEmailConfigRepository;
 import com.reservas.repository.RecordatorioRepository;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.TextStyle;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 /**
  * Servicio para gestión de recordatorios de citas
@@ -24,6 +36,11 @@ import java.util.Locale;
 @Slf4j
 public class RecordatorioService {
 
+    private static final int MINUTOS_REINTENTO = 30;
+
+    /** Tiempo que un recordatorio queda reservado por la instancia que lo está enviando */
+    private static final int MINUTOS_RESERVA = 10;
+
     @Autowired
     private RecordatorioRepository recordatorioRepository;
 
@@ -37,7 +54,27 @@ public class RecordatorioService {
     private EmailService emailService;
 
     @Autowired
-    private PlantillaEmailConfigRepository plantillaEmailConfigRepository;
+    private PlantillaEmailService plantillaEmailService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private RecordatorioAgenda agenda;
+
+    /**
+     * Envíos simultáneos máximos hacia los proveedores (Resend/Twilio), compartido
+     * entre lotes. Ajustar al límite de peticiones del plan contratado.
+     */
+    @Value("${recordatorios.envio.concurrencia-max:10}")
+    private int concurrenciaMaxima;
+
+    private Semaphore permisosEnvio;
+
+    @PostConstruct
+    void init() {
+        this.permisosEnvio = new Semaphore(concurrenciaMaxima);
+    }
 
     /**
      * Crea recordatorios para una cita
@@ -53,8 +90,10 @@ public class RecordatorioService {
                     .cita(cita)
                     .tipo(Recordatorio.TipoRecordatorio.EMAIL)
                     .enviado(false)
+                    .scheduledAt(calcularMomentoEnvio(cita.getFechaHora(), Recordatorio.TipoRecordatorio.EMAIL))
                     .build();
             recordatorioRepository.save(recordatorioEmail);
+            programarTrasCommit(recordatorioEmail.getId(), recordatorioEmail.getScheduledAt());
             log.debug("Recordatorio EMAIL creado para cita: {}", cita.getId());
         }
 
@@ -66,8 +105,10 @@ public class RecordatorioService {
                     .cita(cita)
                     .tipo(Recordatorio.TipoRecordatorio.SMS)
                     .enviado(false)
+                    .scheduledAt(calcularMomentoEnvio(cita.getFechaHora(), Recordatorio.TipoRecordatorio.SMS))
                     .build();
             recordatorioRepository.save(recordatorioSms);
+            programarTrasCommit(recordatorioSms.getId(), recordatorioSms.getScheduledAt());
             log.debug("Recordatorio SMS creado para cita: {}", cita.getId());
         }
         */
@@ -77,36 +118,185 @@ public class RecordatorioService {
     }
 
     /**
-     * Procesa y envía recordatorios pendientes
-     * Este método debe ser llamado por un scheduler periódicamente
+     * Recalcula el momento de envío de los recordatorios pendientes de una cita
+     * que se movió, se canceló o cambió de estado, y actualiza la agenda tras el commit.
+     * @param cita Cita modificada
      */
     @Transactional
-    public void procesarRecordatoriosPendientes() {
-        log.info("Procesando recordatorios pendientes...");
+    public void reprogramarParaCita(Cita cita) {
+        List<Recordatorio> pendientes = recordatorioRepository.findByCitaIdAndEnviado(cita.getId(), false);
+        if (pendientes.isEmpty()) {
+            return;
+        }
+
+        boolean vigente = cita.getEstado() != Cita.EstadoCita.CANCELADA
+                && cita.getFechaHora().isAfter(LocalDateTime.now());
+
+        for (Recordatorio recordatorio : pendientes) {
+            recordatorio.setScheduledAt(vigente
+                    ? calcularMomentoEnvio(cita.getFechaHora(), recordatorio.getTipo())
+                    : null);
+            recordatorioRepository.save(recordatorio);
+            programarTrasCommit(recordatorio.getId(), recordatorio.getScheduledAt());
+        }
+        log.debug("Recordatorios reprogramados para cita {}: {}", cita.getId(), pendientes.size());
+    }
+
+    /**
+     * Procesa un lote de recordatorios vencidos (scheduled_at <= ahora).
+     * Este método debe ser llamado por un scheduler periódicamente, repitiéndolo
+     * mientras devuelva un lote completo.
+     *
+     * Tres fases, sin ninguna transacción abierta durante las llamadas HTTP:
+     * 1. Reclamar (transacción corta): FOR UPDATE SKIP LOCKED y reserva de los
+     *    recordatorios a enviar, moviendo scheduled_at {@value #MINUTOS_RESERVA} minutos.
+     * 2. Enviar en paralelo en virtual threads, con un máximo de
+     *    recordatorios.envio.concurrencia-max envíos simultáneos.
+     * 3. Registrar el resultado de cada recordatorio en su propia transacción.
+     *
+     * Si la instancia cae a mitad del lote, los recordatorios reservados vuelven a
+     * la cola cuando vence la reserva.
+     *
+     * @param tamanoLote Máximo de recordatorios a reclamar
+     * @return Número de recordatorios reclamados en este lote
+     */
+    public int procesarRecordatoriosPendientes(int tamanoLote) {
+        LoteReclamado lote = transactionTemplate.execute(status -> reclamarLote(tamanoLote));
+        if (lote.envios().isEmpty()) {
+            return lote.reclamados();
+        }
+
+        // close() espera a que terminen todos los envíos del lote
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Recordatorio recordatorio : lote.envios()) {
+                PlantillaEmailConfig plantilla = lote.plantillas()
+                        .getOrDefault(recordatorio.getCita().getNegocio().getId(), Optional.empty())
+                        .orElse(null);
+                executor.submit(() -> despachar(recordatorio, plantilla));
+            }
+        }
 
-        // Obtener recordatorios no enviados
-        List<Recordatorio> recordatoriosPendientes = recordatorioRepository.findByEnviadoFalse();
-        log.info("Recordatorios pendientes encontrados: {}", recordatoriosPendientes.size());
+        return lote.reclamados();
+    }
 
+    /**
+     * Fase 1: reclama los recordatorios vencidos, descarta o reprograma los que ya no
+     * corresponden y reserva el resto. Debe ejecutarse dentro de una transacción.
+     */
+    private LoteReclamado reclamarLote(int tamanoLote) {
         LocalDateTime ahora = LocalDateTime.now();
 
-        for (Recordatorio recordatorio : recordatoriosPendientes) {
+        List<String> ids = recordatorioRepository.reclamarVencidos(ahora, tamanoLote);
+        if (ids.isEmpty()) {
+            return new LoteReclamado(0, List.of(), Map.of());
+        }
+        log.info("Recordatorios vencidos reclamados: {}", ids.size());
+
+        List<Recordatorio> envios = new ArrayList<>();
+        // La plantilla se carga una vez por negocio, aquí y no durante el envío
+        Map<UUID, Optional<PlantillaEmailConfig>> plantillas = new HashMap<>();
+
+        // Cita, cliente, servicio y negocio en una sola consulta
+        for (Recordatorio recordatorio : recordatorioRepository.findByIdInWithCita(ids)) {
             try {
                 Cita cita = recordatorio.getCita();
 
-                // Determinar cuándo enviar según el tipo
+                if (cita.getEstado() == Cita.EstadoCita.CANCELADA || !cita.getFechaHora().isAfter(ahora)) {
+                    // Ya no tiene sentido enviarlo: sacarlo de la cola
+                    recordatorio.setScheduledAt(null);
+                    recordatorioRepository.save(recordatorio);
+                    continue;
+                }
+
+                // La cita pudo reprogramarse después de crear el recordatorio
                 LocalDateTime momentoEnvio = calcularMomentoEnvio(cita.getFechaHora(), recordatorio.getTipo());
+                if (momentoEnvio.isAfter(ahora)) {
+                    recordatorio.setScheduledAt(momentoEnvio);
+                    recordatorioRepository.save(recordatorio);
+                    programarTrasCommit(recordatorio.getId(), momentoEnvio);
+                    continue;
+                }
 
-                // Solo enviar si ya es momento
-                if (ahora.isAfter(momentoEnvio)) {
-                    enviarRecordatorio(recordatorio);
+                if (recordatorio.getTipo() == Recordatorio.TipoRecordatorio.EMAIL) {
+                    plantillas.computeIfAbsent(cita.getNegocio().getId(),
+                            id -> Optional.ofNullable(plantillaEmailService.obtenerConfiguracionPorNegocio(cita.getNegocio())));
                 }
+
+                // Reserva: otras instancias no lo reclaman mientras se envía
+                recordatorio.setScheduledAt(ahora.plusMinutes(MINUTOS_RESERVA));
+                recordatorioRepository.save(recordatorio);
+                envios.add(recordatorio);
             } catch (Exception e) {
                 log.error(" Error al procesar recordatorio {}: {}", recordatorio.getId(), e.getMessage());
+                recordatorio.setScheduledAt(ahora.plusMinutes(MINUTOS_REINTENTO));
+                recordatorioRepository.save(recordatorio);
+            }
+        }
+
+        return new LoteReclamado(ids.size(), envios, plantillas);
+    }
+
+    /**
+     * Fases 2 y 3 para un recordatorio: envío acotado por el semáforo y registro
+     * del resultado en una transacción propia.
+     */
+    private void despachar(Recordatorio recordatorio, PlantillaEmailConfig plantilla) {
+        boolean enviado = false;
+        try {
+            permisosEnvio.acquire();
+            try {
+                enviado = enviarRecordatorio(recordatorio, plantilla);
+            } finally {
+                permisosEnvio.release();
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error(" Error al enviar recordatorio {}: {}", recordatorio.getId(), e.getMessage());
         }
 
-        log.info(" Procesamiento de recordatorios completado");
+        registrarResultado(recordatorio.getId(), enviado);
+    }
+
+    /**
+     * Un envío fallido se reintenta {@value #MINUTOS_REINTENTO} minutos después.
+     * Si ni siquiera se puede registrar el resultado, el recordatorio vuelve a la
+     * cola al vencer la reserva.
+     */
+    private void registrarResultado(String recordatorioId, boolean enviado) {
+        LocalDateTime ahora = LocalDateTime.now();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (enviado) {
+                    recordatorioRepository.marcarEnviado(recordatorioId, ahora);
+                } else {
+                    recordatorioRepository.reprogramar(recordatorioId, ahora.plusMinutes(MINUTOS_REINTENTO));
+                }
+            });
+            if (!enviado) {
+                agenda.programar(recordatorioId, ahora.plusMinutes(MINUTOS_REINTENTO));
+            }
+        } catch (Exception e) {
+            log.error(" Error al registrar resultado del recordatorio {}: {}", recordatorioId, e.getMessage());
+        }
+    }
+
+    /**
+     * Actualiza la agenda cuando el cambio del recordatorio ya es visible: si hay una
+     * transacción en curso, tras su commit (un rollback deja la agenda como estaba);
+     * si no, en el momento.
+     */
+    private void programarTrasCommit(String recordatorioId, LocalDateTime scheduledAt) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            agenda.programar(recordatorioId, scheduledAt);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                agenda.programar(recordatorioId, scheduledAt);
+            }
+        });
     }
 
     /**
@@ -136,10 +326,13 @@ public class RecordatorioService {
     }
 
     /**
-     * Envía un recordatorio específico
-     * @param recordatorio Recordatorio a enviar
+     * Envía un recordatorio específico. No toca la base de datos: se ejecuta fuera
+     * de cualquier transacción.
+     * @param recordatorio Recordatorio a enviar (con cita, cliente, servicio y negocio cargados)
+     * @param emailConfig Plantilla de email del negocio, o null para la plantilla por defecto
+     * @return true si el proveedor aceptó el envío
      */
-    private void enviarRecordatorio(Recordatorio recordatorio) {
+    private boolean enviarRecordatorio(Recordatorio recordatorio, PlantillaEmailConfig emailConfig) {
         Cita cita = recordatorio.getCita();
         String nombreCliente = cita.getCliente().getNombre() + " " + cita.getCliente().getApellidoPaterno();
         String fechaCita = formatearFecha(cita.getFechaHora());
@@ -152,10 +345,7 @@ public class RecordatorioService {
         switch (recordatorio.getTipo()) {
             case EMAIL:
                 if (cita.getCliente().getEmail() != null) {
-                    // Cargar configuración de plantilla del negocio (colores, textos, diseño)
-                    PlantillaEmailConfig emailConfig = plantillaEmailConfigRepository
-                            .findByNegocio(cita.getNegocio())
-                            .orElse(null);
+                    // emailConfig: colores, textos y diseño del negocio
                     enviado = emailService.enviarRecordatorioCita(
                             cita.getCliente().getEmail(),
                             nombreCliente,
@@ -202,13 +392,20 @@ public class RecordatorioService {
         }
 
         if (enviado) {
-            recordatorio.setEnviado(true);
-            recordatorio.setFechaEnvio(LocalDateTime.now());
-            recordatorioRepository.save(recordatorio);
             log.info("✅ Recordatorio {} enviado para cita: {}", recordatorio.getTipo(), cita.getId());
         } else {
             log.warn("⚠️ No se pudo enviar recordatorio {} para cita: {}", recordatorio.getTipo(), cita.getId());
         }
+        return enviado;
+    }
+
+    /**
+     * Resultado de la fase de reclamo: cuántos se reclamaron, cuáles hay que enviar
+     * y las plantillas de sus negocios.
+     */
+    private record LoteReclamado(int reclamados,
+                                 List<Recordatorio> envios,
+                                 Map<UUID, Optional<PlantillaEmailConfig>> plantillas) {
     }
 
     /**
@@ -217,7 +414,7 @@ public class RecordatorioService {
      * @param tipo Tipo de recordatorio
      * @return Momento en que debe enviarse
      */
-    private LocalDateTime calcularMomentoEnvio(LocalDateTime fechaHoraCita, Recordatorio.TipoRecordatorio tipo) {
+    LocalDateTime calcularMomentoEnvio(LocalDateTime fechaHoraCita, Recordatorio.TipoRecordatorio tipo) {
         return switch (tipo) {
             case EMAIL -> fechaHoraCita.minusHours(24);  // 24 horas antes
             case SMS -> fechaHoraCita.minusHours(2);     // 2 horas antes
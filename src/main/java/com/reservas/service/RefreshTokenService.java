@@ -0,0 +1,226 @@
+package com.reservas.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.reservas.entity.RefreshToken;
+import com.reservas.entity.Usuario;
+import com.reservas.exception.UnauthorizedException;
+import com.reservas.repository.RefreshTokenRepository;
+import com.reservas.repository.UsuarioRepository;
+import com.reservas.security.JwtProvider;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Refresh tokens opacos con rotación.
+ *
+ * - El access token (JWT) sigue siendo stateless y de vida corta; este servicio
+ *   solo interviene en login, /auth/refresh y logout, nunca en cada petición.
+ * - En BD se guarda el hash SHA-256 del refresh token, no su valor.
+ * - Cada uso revoca el token y emite uno nuevo de la misma familia (dispositivo).
+ *   Reutilizar un token ya rotado revoca la familia completa, salvo dentro del margen
+ *   jwt.refresh-reuse-grace-seconds: peticiones en paralelo de varias pestañas o el
+ *   reintento de una respuesta perdida reciben el mismo sucesor.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RefreshTokenService {
+
+    private static final SecureRandom secureRandom = new SecureRandom();
+    private static final int DIAS_RETENCION_REVOCADOS = 7;
+
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final UsuarioRepository usuarioRepository;
+    private final JwtProvider jwtProvider;
+
+    @Value("${jwt.refresh-expiration:2592000000}")
+    private long refreshExpirationMs;
+
+    @Value("${jwt.refresh-reuse-grace-seconds:30}")
+    private long segundosGracia;
+
+    /**
+     * Hash del token rotado → valor de su sucesor, para reenviarlo dentro del margen
+     * de gracia (en BD solo está el hash). En memoria y por instancia: en otra instancia
+     * la reutilización dentro del margen recibe 401, pero no revoca la familia.
+     */
+    private final Cache<String, String> sucesores = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofMinutes(5))
+            .build();
+
+    /**
+     * Resultado de una rotación: nuevo access token y nuevo refresh token.
+     */
+    public record Rotacion(String email, String accessToken, String refreshToken) {}
+
+    /**
+     * Emite el refresh token de una nueva sesión (login / registro / Google).
+     *
+     * @return valor del token para la cookie (no se vuelve a poder recuperar)
+     */
+    @Transactional
+    public String emitir(String email, String dispositivo, String ipAddress) {
+        Usuario usuario = usuarioRepository.findByEmail(email)
+                .orElseThrow(() -> new UnauthorizedException("Usuario no encontrado"));
+        return crear(usuario, UUID.randomUUID(), dispositivo, ipAddress);
+    }
+
+    /**
+     * Valida y rota un refresh token.
+     * No hace rollback al revocar una familia por reutilización: la revocación debe persistir.
+     */
+    @Transactional(noRollbackFor = UnauthorizedException.class)
+    public Rotacion rotar(String token, String dispositivo, String ipAddress) {
+        if (token == null || token.isBlank()) {
+            throw new UnauthorizedException("Refresh token requerido");
+        }
+
+        LocalDateTime ahora = LocalDateTime.now();
+        String tokenHash = hash(token);
+        RefreshToken actual = refreshTokenRepository.findByTokenHashWithUsuario(tokenHash)
+                .orElseThrow(() -> new UnauthorizedException("Refresh token inválido"));
+
+        if (actual.getRevocadoEn() != null) {
+            if (!actual.getRevocadoEn().isBefore(ahora.minusSeconds(segundosGracia))) {
+                return reenviarSucesor(actual, tokenHash, ahora);
+            }
+            int revocados = refreshTokenRepository.revocarFamilia(actual.getFamilia(), ahora);
+            log.warn("[RefreshToken] Reutilización de token rotado - usuario: {}, familia: {}. {} tokens revocados",
+                    actual.getUsuario().getEmail(), actual.getFamilia(), revocados);
+            throw new UnauthorizedException("Refresh token inválido");
+        }
+
+        if (!actual.getExpiraEn().isAfter(ahora)) {
+            throw new UnauthorizedException("Refresh token expirado");
+        }
+
+        Usuario usuario = actual.getUsuario();
+        if (!usuario.isActivo()) {
+            refreshTokenRepository.revocarFamilia(actual.getFamilia(), ahora);
+            throw new UnauthorizedException("Usuario inactivo");
+        }
+
+        // Revocación condicionada: si dos peticiones rotan el mismo token a la vez, solo una
+        // gana; la otra espera a su commit y recibe el mismo sucesor
+        if (refreshTokenRepository.revocarSiActivo(actual.getId(), ahora) == 0) {
+            return reenviarSucesor(actual, tokenHash, ahora);
+        }
+
+        String nuevoRefresh = crear(usuario, actual.getFamilia(), dispositivo, ipAddress);
+        sucesores.put(tokenHash, nuevoRefresh);
+        String accessToken = jwtProvider.generateToken(usuario.getEmail());
+
+        log.debug("[RefreshToken] Token rotado - usuario: {}, familia: {}", usuario.getEmail(), actual.getFamilia());
+        return new Rotacion(usuario.getEmail(), accessToken, nuevoRefresh);
+    }
+
+    /**
+     * Reutilización dentro del margen de gracia: devuelve el sucesor del token si sigue
+     * activo. Si no se conoce (otra instancia) o ya no está activo (logout, nueva
+     * rotación), responde 401 sin revocar la familia.
+     */
+    private Rotacion reenviarSucesor(RefreshToken rotado, String tokenHash, LocalDateTime ahora) {
+        String sucesor = sucesores.getIfPresent(tokenHash);
+        boolean activo = sucesor != null && rotado.getUsuario().isActivo()
+                && refreshTokenRepository.findByTokenHashWithUsuario(hash(sucesor))
+                        .filter(r -> r.getRevocadoEn() == null && r.getExpiraEn().isAfter(ahora))
+                        .isPresent();
+        if (!activo) {
+            throw new UnauthorizedException("Refresh token inválido");
+        }
+
+        String email = rotado.getUsuario().getEmail();
+        log.debug("[RefreshToken] Token recién rotado reutilizado dentro del margen - usuario: {}, familia: {}",
+                email, rotado.getFamilia());
+        return new Rotacion(email, jwtProvider.generateToken(email), sucesor);
+    }
+
+    /**
+     * Cierra la sesión (familia) asociada a un refresh token. Token desconocido = no-op.
+     */
+    @Transactional
+    public void revocar(String token) {
+        if (token == null || token.isBlank()) {
+            return;
+        }
+        refreshTokenRepository.findByTokenHashWithUsuario(hash(token))
+                .ifPresent(r -> refreshTokenRepository.revocarFamilia(r.getFamilia(), LocalDateTime.now()));
+    }
+
+    /**
+     * Sesiones activas del usuario (una por dispositivo).
+     */
+    @Transactional(readOnly = true)
+    public List<RefreshToken> listarSesiones(String email) {
+        return refreshTokenRepository.findActivosByEmail(email, LocalDateTime.now());
+    }
+
+    /**
+     * Revoca la sesión de un dispositivo del usuario.
+     *
+     * @return true si la sesión existía y pertenecía al usuario
+     */
+    @Transactional
+    public boolean revocarSesion(String email, UUID familia) {
+        int revocados = refreshTokenRepository.revocarFamiliaDeUsuario(familia, email, LocalDateTime.now());
+        log.info("[RefreshToken] Sesión {} revocada por el usuario {} ({} tokens)", familia, email, revocados);
+        return revocados > 0;
+    }
+
+    /**
+     * Purga tokens expirados y tokens revocados hace más de 7 días.
+     *
+     * @return número de registros eliminados
+     */
+    @Transactional
+    public int purgarObsoletos() {
+        LocalDateTime ahora = LocalDateTime.now();
+        return refreshTokenRepository.eliminarObsoletos(ahora, ahora.minusDays(DIAS_RETENCION_REVOCADOS));
+    }
+
+    private String crear(Usuario usuario, UUID familia, String dispositivo, String ipAddress) {
+        byte[] randomBytes = new byte[32];
+        secureRandom.nextBytes(randomBytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(randomBytes);
+
+        refreshTokenRepository.save(RefreshToken.builder()
+                .usuario(usuario)
+                .tokenHash(hash(token))
+                .familia(familia)
+                .dispositivo(truncar(dispositivo, 255))
+                .ipAddress(truncar(ipAddress, 45))
+                .expiraEn(LocalDateTime.now().plus(Duration.ofMillis(refreshExpirationMs)))
+                .build());
+        return token;
+    }
+
+    static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    private static String truncar(String valor, int max) {
+        if (valor == null) return null;
+        return valor.length() <= max ? valor : valor.substring(0, max);
+    }
+}
@@ -0,0 +1,201 @@
+package com.reservas.service;
+
+import com.reservas.repository.SchedulerLockRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ejecución exclusiva de jobs programados en despliegues con varias instancias.
+ *
+ * Cada job tiene una fila en tbl_scheduler_locks. Antes de ejecutarse, la instancia
+ * intenta mover bloqueado_hasta al futuro con un UPDATE condicionado; solo una lo
+ * consigue y las demás omiten esa ejecución. Mientras el job corre, un heartbeat
+ * alarga el lease, así que un job largo no lo pierde y una instancia caída lo
+ * libera sola al vencer.
+ *
+ * Al terminar, el lease se mantiene hasta inicio + minimo: evita que otra instancia
+ * con el reloj unos segundos atrasado vuelva a ejecutar un job que ya terminó.
+ */
+@Service
+@Slf4j
+public class SchedulerLockService {
+
+    private final SchedulerLockRepository schedulerLockRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    /** Duración de cada lease; el heartbeat lo renueva cada tercio */
+    private final Duration lease;
+
+    /** Identifica a esta instancia en bloqueado_por */
+    private final String instancia;
+
+    private final ScheduledExecutorService heartbeats =
+            Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("scheduler-lock-heartbeat").factory());
+
+    public SchedulerLockService(SchedulerLockRepository schedulerLockRepository,
+                                TransactionTemplate transactionTemplate,
+                                MeterRegistry meterRegistry,
+                                @Value("${scheduler.lock.lease:PT2M}") Duration lease) {
+        this.schedulerLockRepository = schedulerLockRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+        this.lease = lease;
+        this.instancia = nombreHost() + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    /**
+     * Ejecuta la tarea si esta instancia consigue el lease del job.
+     *
+     * @param job Nombre único del job
+     * @param minimo Tiempo mínimo que el lease se mantiene desde el inicio
+     * @param tarea Trabajo a ejecutar
+     * @return true si se ejecutó aquí, false si otra instancia tiene el lease
+     */
+    public boolean ejecutar(String job, Duration minimo, Runnable tarea) {
+        LocalDateTime inicio = LocalDateTime.now();
+
+        long t0 = System.nanoTime();
+        boolean adquirido = adquirir(job, inicio);
+        Timer.builder("scheduler.lock.acquire")
+                .description("Tiempo en intentar tomar el lease de un job")
+                .tag("job", job)
+                .tag("resultado", adquirido ? "adquirido" : "ocupado")
+                .register(meterRegistry)
+                .record(System.nanoTime() - t0, TimeUnit.NANOSECONDS);
+
+        if (!adquirido) {
+            log.info("[SchedulerLock] {} omitido: otra instancia tiene el lease", job);
+            return false;
+        }
+
+        // extender y liberar se excluyen: un heartbeat ya en curso al terminar el job
+        // alargaría el lease después de liberarlo, porque solo comprueba bloqueado_por
+        ReentrantLock cerrojo = new ReentrantLock();
+        AtomicBoolean terminado = new AtomicBoolean(false);
+        long periodo = Math.max(1, lease.toMillis() / 3);
+        ScheduledFuture<?> heartbeat = heartbeats.scheduleAtFixedRate(() -> {
+            cerrojo.lock();
+            try {
+                if (!terminado.get()) {
+                    extender(job);
+                }
+            } finally {
+                cerrojo.unlock();
+            }
+        }, periodo, periodo, TimeUnit.MILLISECONDS);
+
+        String resultado = "ok";
+        long t1 = System.nanoTime();
+        try {
+            tarea.run();
+        } catch (RuntimeException e) {
+            resultado = "error";
+            throw e;
+        } finally {
+            // Espera al heartbeat que esté en curso; los siguientes ya no extienden
+            cerrojo.lock();
+            try {
+                terminado.set(true);
+                heartbeat.cancel(false);
+            } finally {
+                cerrojo.unlock();
+            }
+            Timer.builder("scheduler.job.duration")
+                    .description("Duración de los jobs programados")
+                    .tag("job", job)
+                    .tag("resultado", resultado)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - t1, TimeUnit.NANOSECONDS);
+            liberar(job, inicio.plus(minimo));
+        }
+        return true;
+    }
+
+    private boolean adquirir(String job, LocalDateTime ahora) {
+        LocalDateTime hasta = ahora.plus(lease);
+        try {
+            Boolean tomado = transactionTemplate.execute(status ->
+                    schedulerLockRepository.adquirir(job, instancia, ahora, hasta) == 1);
+            if (Boolean.TRUE.equals(tomado)) {
+                return true;
+            }
+
+            if (schedulerLockRepository.existsById(job)) {
+                return false;
+            }
+
+            // Primera ejecución del job: crear la fila equivale a tomar el lease.
+            // INSERT explícito (no save/merge) para que la clave primaria decida entre instancias
+            return Boolean.TRUE.equals(transactionTemplate.execute(status ->
+                    schedulerLockRepository.crear(job, instancia, ahora, hasta) == 1));
+        } catch (DataIntegrityViolationException e) {
+            // Otra instancia creó la fila a la vez
+            return false;
+        } catch (Exception e) {
+            log.error("[SchedulerLock] Error tomando el lease de {}: {}", job, e.getMessage());
+            return false;
+        }
+    }
+
+    private void extender(String job) {
+        try {
+            LocalDateTime hasta = LocalDateTime.now().plus(lease);
+            Integer filas = transactionTemplate.execute(status ->
+                    schedulerLockRepository.extender(job, instancia, hasta));
+            if (filas == null || filas == 0) {
+                // El job sigue corriendo, pero otra instancia pudo tomar el lease
+                Counter.builder("scheduler.lock.lost")
+                        .description("Heartbeats que encontraron el lease en manos de otra instancia")
+                        .tag("job", job)
+                        .register(meterRegistry)
+                        .increment();
+                log.warn("[SchedulerLock] {} perdió el lease mientras se ejecutaba", job);
+            }
+        } catch (Exception e) {
+            log.error("[SchedulerLock] Error extendiendo el lease de {}: {}", job, e.getMessage());
+        }
+    }
+
+    private void liberar(String job, LocalDateTime hasta) {
+        LocalDateTime liberarHasta = hasta.isAfter(LocalDateTime.now()) ? hasta : LocalDateTime.now();
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    schedulerLockRepository.liberar(job, instancia, liberarHasta));
+        } catch (Exception e) {
+            // El lease vencerá solo
+            log.error("[SchedulerLock] Error liberando el lease de {}: {}", job, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void detener() {
+        heartbeats.shutdownNow();
+    }
+
+    private static String nombreHost() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "desconocido";
+        }
+    }
+}
@@ -63,9 +63,6 @@ public class ServicioService {
         servicio = servicioRepository.save(servicio);
         log.info(" Servicio creado: {} - {}", servicio.getId(), servicio.getNombre());
 
-        // ACTUALIZAR USO
-        planLimitesService.actualizarUso(negocio.getId());
-
         return mapToResponse(servicio);
     }
 
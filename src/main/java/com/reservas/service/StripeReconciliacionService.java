@@ -0,0 +1,542 @@
+package com.reservas.service;
+
+import com.reservas.batch.ChunkJob;
+import com.reservas.batch.ChunkJobRunner;
+import com.reservas.billing.domain.Subscription;
+import com.reservas.billing.provider.SubscriptionProvider;
+import com.reservas.entity.Negocio;
+import com.reservas.entity.Pago;
+import com.reservas.entity.Payment;
+import com.reservas.entity.StripeSubscription;
+import com.reservas.payments.service.PaymentService;
+import com.reservas.repository.NegocioRepository;
+import com.reservas.repository.PagoRepository;
+import com.reservas.repository.PaymentRepository;
+import com.reservas.repository.StripeSubscriptionRepository;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Event;
+import com.stripe.model.EventDataObjectDeserializer;
+import com.stripe.model.PaymentIntent;
+import com.stripe.model.StripeObject;
+import com.stripe.model.checkout.Session;
+import com.stripe.net.RequestOptions;
+import com.stripe.param.EventListParams;
+import com.stripe.param.PaymentIntentListParams;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Reconciliación periódica de Pago, Payment, StripeSubscription y Negocio.estadoPago
+ * con Stripe, para corregir lo que no llegó (o no se aplicó) por webhook.
+ *
+ * Dos jobs por lotes con {@link ChunkJobRunner}, reanudables si se cortan:
+ * - stripe.reconciliacion.eventos: eventos de la cuenta de plataforma
+ *   (checkout.session.*, customer.subscription.*) creados desde el corte de la última
+ *   ejecución completada (created[gte], menos stripe.reconciliacion.solape), con
+ *   auto-paginación. Cada lote se contrasta de una vez con las filas locales y solo
+ *   se corrige lo que difiere. Stripe se consulta fuera de transacción y las
+ *   suscripciones se corrigen después en una transacción corta.
+ * - stripe.reconciliacion.pagos-connect: los Payment sin estado final. Viven en las
+ *   cuentas conectadas, así que se agrupan por cuenta y se lista una vez cada cuenta
+ *   (created[gte] del pago más antiguo). Solo se consulta a las cuentas con pagos
+ *   pendientes, no a todos los negocios. Los pagos se leen sin bloqueo y Stripe se
+ *   consulta fuera de transacción; después, por cada cuenta, una transacción corta
+ *   bloquea solo los pagos que cambian, comprueba que siguen pendientes y los corrige.
+ *
+ * Las llamadas salen por StripeGateway, que limita la concurrencia y reintenta los 429.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StripeReconciliacionService {
+
+    static final String JOB_EVENTOS = "stripe.reconciliacion.eventos";
+    static final String JOB_PAGOS_CONNECT = "stripe.reconciliacion.pagos-connect";
+
+    private static final List<String> TIPOS_EVENTO = List.of(
+            "checkout.session.completed",
+            "checkout.session.async_payment_succeeded",
+            "checkout.session.async_payment_failed",
+            "checkout.session.expired",
+            "customer.subscription.created",
+            "customer.subscription.updated",
+            "customer.subscription.deleted");
+
+    private static final List<Payment.PaymentStatus> SIN_ESTADO_FINAL =
+            List.of(Payment.PaymentStatus.PENDING, Payment.PaymentStatus.PROCESSING);
+
+    /** Stripe solo conserva los eventos de los últimos 30 días */
+    private static final Duration RETENCION_EVENTOS = Duration.ofDays(30);
+
+    /** Máximo de elementos por página que admite la API de Stripe */
+    private static final int PAGINA_STRIPE = 100;
+
+    private final ChunkJobRunner chunkJobRunner;
+    private final TransactionTemplate transactionTemplate;
+    private final StripeService stripeService;
+    private final PaymentService paymentService;
+    private final LibroPagosService libroPagosService;
+    private final SubscriptionProvider subscriptionProvider;
+    private final PagoRepository pagoRepository;
+    private final PaymentRepository paymentRepository;
+    private final NegocioRepository negocioRepository;
+    private final StripeSubscriptionRepository stripeSubscriptionRepository;
+    private final MeterRegistry meterRegistry;
+
+    /** Eventos o pagos por transacción */
+    @Value("${stripe.reconciliacion.lote:500}")
+    private int tamanoLote;
+
+    /** Margen hacia atrás sobre el último corte: eventos que Stripe registra con retraso */
+    @Value("${stripe.reconciliacion.solape:PT1H}")
+    private Duration solape;
+
+    /** Ventana de la primera ejecución (sin corte anterior) */
+    @Value("${stripe.reconciliacion.ventana-inicial:P3D}")
+    private Duration ventanaInicial;
+
+    /** Pagos más recientes que esto se dejan al webhook */
+    @Value("${stripe.reconciliacion.espera-webhook:PT15M}")
+    private Duration esperaWebhook;
+
+    /** Pagos más antiguos que esto ya no se revisan */
+    @Value("${stripe.reconciliacion.antiguedad-max:P7D}")
+    private Duration antiguedadMax;
+
+    /**
+     * Ejecuta los dos jobs de reconciliación.
+     */
+    public void reconciliar() {
+        log.info("[Reconciliación] Iniciando reconciliación con Stripe...");
+
+        long eventos = chunkJobRunner.ejecutar(jobEventos(), tamanoLote).procesados();
+        long pagos = chunkJobRunner.ejecutar(jobPagosConnect(), tamanoLote).procesados();
+
+        log.info("[Reconciliación]  {} correcciones por eventos de plataforma, {} pagos de cuentas conectadas",
+                eventos, pagos);
+    }
+
+    // ==================== Eventos de la cuenta de plataforma ====================
+
+    ChunkJob<Event> jobEventos() {
+        return ChunkJob.incremental(JOB_EVENTOS, this::leerEventos, Event::getId, this::procesarEventos)
+                .sinTransaccion();
+    }
+
+    private List<Event> leerEventos(String despuesDe, LocalDateTime desde, LocalDateTime corte, int limite) {
+        LocalDateTime inicio = desde != null ? desde.minus(solape) : corte.minus(ventanaInicial);
+        if (inicio.isBefore(corte.minus(RETENCION_EVENTOS))) {
+            inicio = corte.minus(RETENCION_EVENTOS);
+        }
+
+        EventListParams params = EventListParams.builder()
+                .setCreated(EventListParams.Created.builder()
+                        .setGte(epoch(inicio))
+                        .setLte(epoch(corte))
+                        .build())
+                .addAllType(TIPOS_EVENTO)
+                .setLimit((long) Math.min(limite, PAGINA_STRIPE))
+                .setStartingAfter(despuesDe)
+                .build();
+        try {
+            List<Event> eventos = new ArrayList<>();
+            for (Event evento : Event.list(params).autoPagingIterable()) {
+                eventos.add(evento);
+                if (eventos.size() >= limite) {
+                    break;
+                }
+            }
+            return eventos;
+        } catch (StripeException e) {
+            throw new RuntimeException("Error listando eventos de Stripe: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Stripe lista del más reciente al más antiguo: el primer evento de cada objeto en
+     * el lote es su último estado.
+     *
+     * Sin transacción alrededor: las suscripciones se consultan a Stripe sin retener
+     * bloqueos y se corrigen después en una transacción corta.
+     */
+    private int procesarEventos(List<Event> lote, LocalDateTime corte) {
+        Map<String, Cambio<Session>> sesiones = new LinkedHashMap<>();
+        Map<String, Cambio<com.stripe.model.Subscription>> suscripciones = new LinkedHashMap<>();
+        for (Event evento : lote) {
+            StripeObject objeto = objeto(evento);
+            if (objeto instanceof Session session) {
+                sesiones.putIfAbsent(session.getId(), new Cambio<>(evento.getType(), session));
+            } else if (objeto instanceof com.stripe.model.Subscription subscription) {
+                suscripciones.putIfAbsent(subscription.getId(), new Cambio<>(evento.getType(), subscription));
+            }
+        }
+        int corregidos = reconciliarPagos(sesiones);
+
+        Map<String, Subscription> actuales = consultarSuscripciones(suscripciones, corte);
+        if (!actuales.isEmpty()) {
+            Integer aplicados = transactionTemplate.execute(status -> aplicarSuscripciones(actuales, corte));
+            corregidos += aplicados != null ? aplicados : 0;
+        }
+        return corregidos;
+    }
+
+    /**
+     * Pagos de planes (Pago) que siguen pendientes aunque su sesión de checkout terminó.
+     * Se corrigen con los mismos métodos que usa el webhook, cada uno en su transacción.
+     */
+    private int reconciliarPagos(Map<String, Cambio<Session>> sesiones) {
+        if (sesiones.isEmpty()) {
+            return 0;
+        }
+        int corregidos = 0;
+        for (Pago pago : pagoRepository.findByStripeCheckoutSessionIdIn(sesiones.keySet())) {
+            if (!pago.isPendiente()) {
+                continue;
+            }
+            Cambio<Session> cambio = sesiones.get(pago.getStripeCheckoutSessionId());
+            Session session = cambio.objeto();
+            boolean completa = "complete".equals(session.getStatus());
+
+            if (completa && "subscription".equals(session.getMode())) {
+                stripeService.procesarSuscripcionCreada(session);
+            } else if (completa && "paid".equals(session.getPaymentStatus()) && session.getPaymentIntent() != null) {
+                stripeService.procesarPagoCompletado(session.getId(), session.getPaymentIntent());
+            } else if ("checkout.session.async_payment_failed".equals(cambio.tipo())) {
+                stripeService.procesarPagoFallido(session.getId(), "Async payment failed");
+            } else if ("expired".equals(session.getStatus())) {
+                stripeService.procesarPagoFallido(session.getId(), "Sesión de checkout expirada");
+            } else {
+                continue;
+            }
+            log.info("[Reconciliación] Pago {} corregido desde la sesión {} ({})",
+                    pago.getId(), session.getId(), cambio.tipo());
+            contar("pago");
+            corregidos++;
+        }
+        return corregidos;
+    }
+
+    /**
+     * Estado actual en Stripe de las suscripciones cuyo estado local difiere del evento,
+     * por id. El evento puede no ser el último cambio, así que antes de corregir se
+     * consulta el estado actual. Las filas locales se leen sin bloqueo.
+     */
+    private Map<String, Subscription> consultarSuscripciones(
+            Map<String, Cambio<com.stripe.model.Subscription>> suscripciones, LocalDateTime corte) {
+        if (suscripciones.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, StripeSubscription> locales = suscripcionesLocales(suscripciones.keySet());
+        Map<String, Negocio> negocios = negociosPorSuscripcion(suscripciones.keySet());
+
+        Map<String, Subscription> actuales = new LinkedHashMap<>();
+        for (Cambio<com.stripe.model.Subscription> cambio : suscripciones.values()) {
+            com.stripe.model.Subscription evento = cambio.objeto();
+            StripeSubscription local = locales.get(evento.getId());
+            Negocio negocio = negocios.get(evento.getId());
+            if (!difiere(local, evento) && !difiere(negocio, evento.getStatus(), fecha(evento.getCurrentPeriodEnd()), corte)) {
+                continue;
+            }
+
+            try {
+                actuales.put(evento.getId(), subscriptionProvider.getSubscription(evento.getId()));
+            } catch (IllegalArgumentException e) {
+                // Estado sin equivalente local (p. ej. paused): no hay nada que corregir
+                log.warn("[Reconciliación] Suscripción {} en estado no soportado: {}", evento.getId(), e.getMessage());
+            }
+        }
+        return actuales;
+    }
+
+    /**
+     * Corrige las suscripciones y negocios que aún difieren del estado consultado: un
+     * webhook pudo aplicarlo mientras se esperaba a Stripe.
+     */
+    private int aplicarSuscripciones(Map<String, Subscription> actuales, LocalDateTime corte) {
+        Map<String, StripeSubscription> locales = suscripcionesLocales(actuales.keySet());
+        Map<String, Negocio> negocios = negociosPorSuscripcion(actuales.keySet());
+
+        int corregidos = 0;
+        for (Map.Entry<String, Subscription> entrada : actuales.entrySet()) {
+            Subscription actual = entrada.getValue();
+            StripeSubscription local = locales.get(entrada.getKey());
+            if (local != null && difiere(local, actual)) {
+                local.setStatus(StripeSubscription.SubscriptionStatus.valueOf(actual.getStatus().name()));
+                local.setCurrentPeriodStart(actual.getCurrentPeriodStart());
+                local.setCurrentPeriodEnd(actual.getCurrentPeriodEnd());
+                local.setCancelAtPeriodEnd(actual.getCancelAtPeriodEnd());
+                local.setCanceledAt(actual.getCanceledAt());
+                stripeSubscriptionRepository.save(local);
+                log.info("[Reconciliación] Suscripción {} → {}", local.getSubscriptionId(), local.getStatus());
+                contar("suscripcion");
+                corregidos++;
+            }
+            Negocio negocio = negocios.get(entrada.getKey());
+            String estado = actual.getStatus().name().toLowerCase();
+            if (negocio != null && difiere(negocio, estado, actual.getCurrentPeriodEnd(), corte)) {
+                corregirNegocio(negocio, actual.getCurrentPeriodEnd());
+                contar("negocio");
+                corregidos++;
+            }
+        }
+        return corregidos;
+    }
+
+    private Map<String, StripeSubscription> suscripcionesLocales(Set<String> subscriptionIds) {
+        return stripeSubscriptionRepository.findBySubscriptionIdIn(subscriptionIds).stream()
+                .collect(Collectors.toMap(StripeSubscription::getSubscriptionId, Function.identity(), (a, b) -> a));
+    }
+
+    private Map<String, Negocio> negociosPorSuscripcion(Set<String> subscriptionIds) {
+        return negocioRepository.findByStripeSubscriptionIdIn(subscriptionIds).stream()
+                .collect(Collectors.toMap(Negocio::getStripeSubscriptionId, Function.identity(), (a, b) -> a));
+    }
+
+    private static boolean difiere(StripeSubscription local, com.stripe.model.Subscription evento) {
+        return local != null && (!local.getStatus().name().equalsIgnoreCase(evento.getStatus())
+                || !Objects.equals(local.getCurrentPeriodEnd(), fecha(evento.getCurrentPeriodEnd()))
+                || !Objects.equals(local.getCancelAtPeriodEnd(), evento.getCancelAtPeriodEnd()));
+    }
+
+    private static boolean difiere(StripeSubscription local, Subscription actual) {
+        return !local.getStatus().name().equals(actual.getStatus().name())
+                || !Objects.equals(local.getCurrentPeriodEnd(), actual.getCurrentPeriodEnd())
+                || !Objects.equals(local.getCancelAtPeriodEnd(), actual.getCancelAtPeriodEnd());
+    }
+
+    /**
+     * Un negocio con la suscripción al día en Stripe debe estar activo y con la fecha de
+     * cobro de Stripe. La baja no se replica aquí: la aplica el barrido nocturno al
+     * pasar fecha_proximo_cobro.
+     */
+    private static boolean difiere(Negocio negocio, String estadoStripe, LocalDateTime finPeriodo, LocalDateTime corte) {
+        boolean alDia = ("active".equals(estadoStripe) || "trialing".equals(estadoStripe))
+                && finPeriodo != null && finPeriodo.isAfter(corte);
+        if (negocio == null || !alDia) {
+            return false;
+        }
+        return switch (negocio.getEstadoPago()) {
+            case "activo" -> !finPeriodo.equals(negocio.getFechaProximoCobro()) || !negocio.isCuentaActiva();
+            case "vencido" -> true;
+            default -> false;
+        };
+    }
+
+    private void corregirNegocio(Negocio negocio, LocalDateTime finPeriodo) {
+        if (!"activo".equals(negocio.getEstadoPago())) {
+            // Renovación pagada en Stripe cuyo invoice.paid no llegó antes del barrido
+            negocio.setEstadoPago("activo");
+            negocio.setNotificacionVencimientoEnviada(false);
+        }
+        negocio.setCuentaActiva(true);
+        negocio.setFechaProximoCobro(finPeriodo);
+        negocioRepository.save(negocio);
+        log.info("[Reconciliación] Negocio {} activo - Próximo cobro: {}", negocio.getNombre(), finPeriodo);
+    }
+
+    // ==================== Pagos en cuentas conectadas ====================
+
+    ChunkJob<Payment> jobPagosConnect() {
+        return ChunkJob.de(JOB_PAGOS_CONNECT,
+                (despuesDe, corte, limite) -> paymentRepository.findSinEstadoFinal(SIN_ESTADO_FINAL,
+                        corte.minus(antiguedadMax), corte.minus(esperaWebhook),
+                        despuesDe != null ? despuesDe : "", PageRequest.of(0, limite)),
+                Payment::getId,
+                this::procesarPagosConnect).sinTransaccion();
+    }
+
+    private int procesarPagosConnect(List<Payment> lote, LocalDateTime corte) {
+        Map<String, List<Payment>> porCuenta = lote.stream()
+                .filter(p -> p.getStripeAccount() != null)
+                .collect(Collectors.groupingBy(p -> p.getStripeAccount().getStripeAccountId(),
+                        LinkedHashMap::new, Collectors.toList()));
+
+        int corregidos = 0;
+        for (Map.Entry<String, List<Payment>> cuenta : porCuenta.entrySet()) {
+            corregidos += reconciliarCuenta(cuenta.getKey(), cuenta.getValue(), corte);
+        }
+        return corregidos;
+    }
+
+    /**
+     * Lista los PaymentIntents de la cuenta desde el pago pendiente más antiguo y
+     * corrige los pagos locales que Stripe ya resolvió.
+     */
+    private int reconciliarCuenta(String stripeAccountId, List<Payment> pagos, LocalDateTime corte) {
+        Map<String, PaymentIntent> cambios = consultarCuenta(stripeAccountId, pagos, corte);
+        if (cambios.isEmpty()) {
+            return 0;
+        }
+        Integer corregidos = transactionTemplate.execute(status -> aplicarCambios(stripeAccountId, cambios));
+        return corregidos != null ? corregidos : 0;
+    }
+
+    /**
+     * PaymentIntents de la cuenta que cambiarían el pago local, por id de Payment. Sin
+     * transacción: no se retiene ningún bloqueo mientras se espera a Stripe.
+     *
+     * Si Stripe rechaza la consulta la cuenta se omite (vacío): sus pagos se revisan
+     * de nuevo en la siguiente ejecución.
+     */
+    private Map<String, PaymentIntent> consultarCuenta(String stripeAccountId, List<Payment> pagos, LocalDateTime corte) {
+        Map<String, Payment> porIntent = pagos.stream()
+                .collect(Collectors.toMap(Payment::getPaymentIntentId, Function.identity(), (a, b) -> a));
+        LocalDateTime masAntiguo = pagos.stream()
+                .map(Payment::getCreatedAt)
+                .min(Comparator.naturalOrder())
+                .orElse(corte);
+
+        PaymentIntentListParams params = PaymentIntentListParams.builder()
+                .setCreated(PaymentIntentListParams.Created.builder()
+                        // El PaymentIntent se crea en Stripe antes de guardar el pago
+                        .setGte(epoch(masAntiguo) - 60)
+                        .setLte(epoch(corte))
+                        .build())
+                .setLimit((long) PAGINA_STRIPE)
+                .build();
+        RequestOptions opciones = RequestOptions.builder().setStripeAccount(stripeAccountId).build();
+
+        Map<String, PaymentIntent> cambios = new LinkedHashMap<>();
+        try {
+            for (PaymentIntent intent : PaymentIntent.list(params, opciones).autoPagingIterable()) {
+                Payment payment = porIntent.remove(intent.getId());
+                if (payment != null && cambia(payment, intent)) {
+                    cambios.put(payment.getId(), intent);
+                }
+                if (porIntent.isEmpty()) {
+                    break;
+                }
+            }
+        } catch (StripeException e) {
+            // Cuenta desconectada, sin permisos...: no debe detener el resto del job
+            log.warn("[Reconciliación] Cuenta {} omitida, error listando PaymentIntents: {}",
+                    stripeAccountId, e.getMessage());
+            Counter.builder("stripe.reconciliacion.cuentas.omitidas")
+                    .description("Cuentas conectadas omitidas por un error de Stripe")
+                    .register(meterRegistry)
+                    .increment();
+            return Map.of();
+        }
+        return cambios;
+    }
+
+    /**
+     * Bloquea los pagos que cambian y los corrige si siguen sin estado final: un webhook
+     * pudo resolverlos mientras se consultaba Stripe.
+     */
+    private int aplicarCambios(String stripeAccountId, Map<String, PaymentIntent> cambios) {
+        int corregidos = 0;
+        for (Payment payment : paymentRepository.bloquearPorIds(cambios.keySet())) {
+            PaymentIntent intent = cambios.get(payment.getId());
+            if (SIN_ESTADO_FINAL.contains(payment.getStatus()) && corregir(payment, intent)) {
+                log.info("[Reconciliación] Payment {} → {} (cuenta {})",
+                        payment.getId(), payment.getStatus(), stripeAccountId);
+                contar("payment");
+                corregidos++;
+            }
+        }
+        return corregidos;
+    }
+
+    /**
+     * true si {@link #corregir} cambiaría el pago con este PaymentIntent.
+     */
+    private static boolean cambia(Payment payment, PaymentIntent intent) {
+        return switch (intent.getStatus()) {
+            case "succeeded", "canceled" -> true;
+            case "processing" -> payment.getStatus() != Payment.PaymentStatus.PROCESSING;
+            case "requires_payment_method" -> intent.getLastPaymentError() != null;
+            default -> false;
+        };
+    }
+
+    /**
+     * Aplica el estado del PaymentIntent como lo harían los webhooks payment_intent.*.
+     */
+    private boolean corregir(Payment payment, PaymentIntent intent) {
+        switch (intent.getStatus()) {
+            case "succeeded" -> {
+                paymentService.aplicarPagoExitoso(payment, intent.getLatestCharge());
+                return true;
+            }
+            case "canceled" -> payment.setStatus(Payment.PaymentStatus.CANCELED);
+            case "processing" -> {
+                if (payment.getStatus() == Payment.PaymentStatus.PROCESSING) {
+                    return false;
+                }
+                payment.setStatus(Payment.PaymentStatus.PROCESSING);
+            }
+            case "requires_payment_method" -> {
+                if (intent.getLastPaymentError() == null) {
+                    return false;
+                }
+                payment.setStatus(Payment.PaymentStatus.FAILED);
+            }
+            default -> {
+                return false;
+            }
+        }
+        paymentRepository.save(payment);
+        libroPagosService.registrar(payment);
+        return true;
+    }
+
+    // ==================== Auxiliares ====================
+
+    /**
+     * Objeto del evento. Si el evento se generó con otra versión de la API se intenta
+     * igualmente: solo se leen ids, estados y fechas.
+     */
+    private static StripeObject objeto(Event evento) {
+        EventDataObjectDeserializer deserializer = evento.getDataObjectDeserializer();
+        if (deserializer.getObject().isPresent()) {
+            return deserializer.getObject().get();
+        }
+        try {
+            return deserializer.deserializeUnsafe();
+        } catch (Exception e) {
+            log.warn("[Reconciliación] Evento {} ({}) no deserializable: {}",
+                    evento.getId(), evento.getType(), e.getMessage());
+            return null;
+        }
+    }
+
+    private void contar(String tipo) {
+        Counter.builder("stripe.reconciliacion.correcciones")
+                .description("Filas locales corregidas por la reconciliación con Stripe")
+                .tag("tipo", tipo)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private static long epoch(LocalDateTime fecha) {
+        return fecha.atZone(ZoneId.systemDefault()).toEpochSecond();
+    }
+
+    private static LocalDateTime fecha(Long epoch) {
+        return epoch != null ? LocalDateTime.ofInstant(Instant.ofEpochSecond(epoch), ZoneId.systemDefault()) : null;
+    }
+
+    private record Cambio<T>(String tipo, T objeto) {
+    }
+}
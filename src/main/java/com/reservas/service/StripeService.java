@@ -3,10 +3,13 @@ package com.reservas.service;
 import com.reservas.dto.request.CheckoutRequest;
 import com.reservas.dto.response.CheckoutResponse;
 import com.reservas.dto.response.PagoResponse;
+import com.reservas.entity.MovimientoPago;
 import com.reservas.entity.Negocio;
 import com.reservas.entity.Pago;
+import com.reservas.entity.SaldoPagos;
 import com.reservas.entity.Usuario;
 import com.reservas.exception.NotFoundException;
+import com.reservas.payments.cache.StripeStateCache;
 import com.reservas.repository.NegocioRepository;
 import com.reservas.repository.PagoRepository;
 import com.reservas.repository.UsuarioRepository;
@@ -19,6 +22,7 @@ import com.stripe.model.PaymentIntent;
 import com.stripe.model.PaymentMethod;
 import com.stripe.model.Subscription;
 import com.stripe.model.checkout.Session;
+import com.stripe.net.RequestOptions;
 import com.stripe.param.CustomerCreateParams;
 import com.stripe.param.checkout.SessionCreateParams;
 import com.stripe.param.checkout.SessionRetrieveParams;
@@ -51,6 +55,8 @@ public class StripeService {
     private final UsuarioRepository usuarioRepository;
     private final NegocioRepository negocioRepository;
     private final SuscripcionService suscripcionService;
+    private final StripeStateCache stripeStateCache;
+    private final LibroPagosService libroPagosService;
 
     @Value("${stripe.api.key}")
     private String stripeApiKey;
@@ -88,6 +94,15 @@ public class StripeService {
      */
     @Transactional
     public CheckoutResponse crearCheckoutSession(CheckoutRequest request, String emailUsuario) {
+        return crearCheckoutSession(request, emailUsuario, null);
+    }
+
+    /**
+     * Crea una sesión de checkout enviando a Stripe la clave de idempotencia indicada
+     * (ver IdempotencyService): repetir la llamada con la misma clave devuelve la misma sesión.
+     */
+    @Transactional
+    public CheckoutResponse crearCheckoutSession(CheckoutRequest request, String emailUsuario, String idempotencyKey) {
         log.info("[Stripe] Creando sesión de checkout para plan: {} - usuario: {}", request.getPlan(), emailUsuario);
 
         try {
@@ -155,10 +170,25 @@ public class StripeService {
 
             log.info("[Stripe] Checkout con cobro inmediato (sin trial) para: {}", emailUsuario);
 
-            Session session = Session.create(params);
+            Session session = idempotencyKey != null
+                    ? Session.create(params, RequestOptions.builder().setIdempotencyKey(idempotencyKey).build())
+                    : Session.create(params);
 
-            // Guardar registro de pago pendiente
-            Pago pago = Pago.builder()
+            // Guardar registro de pago pendiente (Stripe devuelve la misma sesión a una repetición)
+            Pago pago = pagoRepository.findByStripeCheckoutSessionId(session.getId()).orElse(null);
+            if (pago != null) {
+                log.info("[Stripe] Sesión de checkout ya registrada: {}", session.getId());
+                return CheckoutResponse.builder()
+                        .sessionId(session.getId())
+                        .clientSecret(null)
+                        .url(session.getUrl())
+                        .plan(pago.getPlan())
+                        .monto(pago.getMonto().toString())
+                        .moneda(pago.getMoneda())
+                        .build();
+            }
+
+            pago = Pago.builder()
                     .negocio(negocio)
                     .stripeCheckoutSessionId(session.getId())
                     .stripeCustomerId(customerId)
@@ -193,70 +223,77 @@ public class StripeService {
      * Obtiene el estado de una sesión de checkout.
      * Además, si la sesión está completa y es una suscripción, activa la suscripción
      * como respaldo del webhook (patrón recomendado por Stripe).
+     *
+     * La página de éxito consulta el estado repetidamente: la sesión se lee de
+     * {@link StripeStateCache}, que los webhooks checkout.session.* mantienen al día,
+     * y las consultas simultáneas de una misma sesión comparten una sola llamada a Stripe.
      */
     @Transactional
     public Map<String, Object> obtenerEstadoSesion(String sessionId) {
         log.info("[Stripe] Obteniendo estado de sesión: {}", sessionId);
 
-        try {
-            // Recuperar sesión con metadata expandida
-            SessionRetrieveParams params = SessionRetrieveParams.builder()
-                    .addExpand("line_items")
-                    .build();
-            Session session = Session.retrieve(sessionId, params, null);
-
-            Map<String, Object> response = new HashMap<>();
-            response.put("status", session.getStatus());
-            response.put("payment_status", session.getPaymentStatus());
+        Session session = stripeStateCache.obtenerSesion(sessionId, () -> recuperarSesion(sessionId));
 
-            if (session.getCustomerDetails() != null) {
-                response.put("customer_email", session.getCustomerDetails().getEmail());
-            }
-
-            if (session.getPaymentIntent() != null) {
-                response.put("payment_intent", session.getPaymentIntent());
-            }
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", session.getStatus());
+        response.put("payment_status", session.getPaymentStatus());
 
-            // ============================================================
-            // RESPALDO: Activar suscripción si la sesión está completa
-            // Esto asegura la activación incluso si el webhook no llega
-            // (ej: desarrollo local sin Stripe CLI)
-            // ============================================================
-            if ("complete".equals(session.getStatus()) && "subscription".equals(session.getMode())) {
-                try {
-                    String negocioId = session.getMetadata().get("negocio_id");
-                    String plan = session.getMetadata().get("plan");
+        if (session.getCustomerDetails() != null) {
+            response.put("customer_email", session.getCustomerDetails().getEmail());
+        }
 
-                    if (negocioId != null && plan != null) {
-                        Negocio negocio = negocioRepository.findById(UUID.fromString(negocioId))
-                                .orElse(null);
+        if (session.getPaymentIntent() != null) {
+            response.put("payment_intent", session.getPaymentIntent());
+        }
 
-                        // Solo activar si aún no está activo con este plan
-                        if (negocio != null && (!"activo".equals(negocio.getEstadoPago()) || !plan.equals(negocio.getPlan()))) {
-                            log.info("[Stripe] Activando suscripción desde session-status (respaldo webhook)");
-                            procesarSuscripcionCreada(session);
-                        }
+        // ============================================================
+        // RESPALDO: Activar suscripción si la sesión está completa
+        // Esto asegura la activación incluso si el webhook no llega
+        // (ej: desarrollo local sin Stripe CLI)
+        // ============================================================
+        if ("complete".equals(session.getStatus()) && "subscription".equals(session.getMode())) {
+            try {
+                String negocioId = session.getMetadata().get("negocio_id");
+                String plan = session.getMetadata().get("plan");
+
+                if (negocioId != null && plan != null) {
+                    Negocio negocio = negocioRepository.findById(UUID.fromString(negocioId))
+                            .orElse(null);
+
+                    // Solo activar si aún no está activo con este plan
+                    if (negocio != null && (!"activo".equals(negocio.getEstadoPago()) || !plan.equals(negocio.getPlan()))) {
+                        log.info("[Stripe] Activando suscripción desde session-status (respaldo webhook)");
+                        procesarSuscripcionCreada(session);
                     }
-                } catch (Exception e) {
-                    // No fallar la consulta de estado si la activación falla
-                    log.warn("[Stripe] Error en activación de respaldo: {}", e.getMessage());
                 }
-            } else if ("complete".equals(session.getStatus()) && "paid".equals(session.getPaymentStatus())
-                    && session.getPaymentIntent() != null) {
-                // Pago único completado
-                try {
-                    Pago pago = pagoRepository.findByStripeCheckoutSessionId(sessionId).orElse(null);
-                    if (pago != null && !pago.isPagado()) {
-                        log.info("[Stripe] Procesando pago desde session-status (respaldo webhook)");
-                        procesarPagoCompletado(sessionId, session.getPaymentIntent());
-                    }
-                } catch (Exception e) {
-                    log.warn("[Stripe] Error en procesamiento de pago de respaldo: {}", e.getMessage());
+            } catch (Exception e) {
+                // No fallar la consulta de estado si la activación falla
+                log.warn("[Stripe] Error en activación de respaldo: {}", e.getMessage());
+            }
+        } else if ("complete".equals(session.getStatus()) && "paid".equals(session.getPaymentStatus())
+                && session.getPaymentIntent() != null) {
+            // Pago único completado
+            try {
+                Pago pago = pagoRepository.findByStripeCheckoutSessionId(sessionId).orElse(null);
+                if (pago != null && !pago.isPagado()) {
+                    log.info("[Stripe] Procesando pago desde session-status (respaldo webhook)");
+                    procesarPagoCompletado(sessionId, session.getPaymentIntent());
                 }
+            } catch (Exception e) {
+                log.warn("[Stripe] Error en procesamiento de pago de respaldo: {}", e.getMessage());
             }
+        }
 
-            return response;
+        return response;
+    }
 
+    private Session recuperarSesion(String sessionId) {
+        try {
+            // Recuperar sesión con metadata expandida
+            SessionRetrieveParams params = SessionRetrieveParams.builder()
+                    .addExpand("line_items")
+                    .build();
+            return Session.retrieve(sessionId, params, null);
         } catch (StripeException e) {
             log.error("[Stripe] Error obteniendo estado de sesión", e);
             throw new RuntimeException("Error al obtener estado de sesión: " + e.getMessage());
@@ -317,6 +354,7 @@ public class StripeService {
             }
 
             pagoRepository.save(pago);
+            libroPagosService.registrar(pago);
 
             // Activar la suscripción del negocio
             suscripcionService.activarSuscripcion(
@@ -346,6 +384,7 @@ public class StripeService {
         pago.setEstado("failed");
         pago.setErrorMensaje(errorMessage);
         pagoRepository.save(pago);
+        libroPagosService.registrar(pago);
 
         log.info("[Stripe] Pago marcado como fallido: {}", pago.getId());
     }
@@ -400,16 +439,12 @@ public class StripeService {
             throw new NotFoundException("Negocio no encontrado para el usuario");
         }
 
-        long totalPagos = pagoRepository.countPagosCompletadosByNegocio(negocio);
-        BigDecimal montoTotal = pagoRepository.sumMontoByNegocioAndEstadoCompleted(negocio);
-
-        if (montoTotal == null) {
-            montoTotal = BigDecimal.ZERO;
-        }
+        // Saldo del libro de pagos: una fila, sin recorrer el historial
+        SaldoPagos saldo = libroPagosService.obtenerSaldo(negocio.getId(), MovimientoPago.Origen.SUSCRIPCION);
 
         return Map.of(
-                "totalPagos", totalPagos,
-                "montoTotal", montoTotal
+                "totalPagos", saldo.getCobrosVigentes(),
+                "montoTotal", saldo.getMonto()
         );
     }
 
@@ -466,6 +501,7 @@ public class StripeService {
             }
 
             pagoRepository.save(pago);
+            libroPagosService.registrar(pago);
             log.info("[Stripe] ✅ Pago {} sincronizado → completado (sub: {})", pago.getId(), subscriptionId);
 
         } catch (Exception e) {
@@ -0,0 +1,293 @@
+package com.reservas.service;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.reservas.entity.StripeWebhookEvent;
+import com.reservas.repository.StripeWebhookEventRepository;
+import com.stripe.model.Event;
+import com.stripe.net.ApiResource;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Inbox de webhooks de Stripe.
+ *
+ * registrar() lo llama el controller tras verificar la firma: guarda el evento y
+ * responde 200 sin procesarlo. Un reenvío del mismo evento (Stripe entrega al menos
+ * una vez) choca con el event_id único y no hace nada.
+ *
+ * procesarPendientes() lo vacía en segundo plano, en tres fases:
+ * 1. Transacción corta: reclama un lote con SKIP LOCKED (a lo sumo un evento por
+ *    objeto, el más antiguo) y lo reserva unos minutos.
+ * 2. Procesa los eventos en paralelo en virtual threads, con un máximo de
+ *    stripe.webhook.inbox.concurrencia-max simultáneos.
+ * 3. Transacción corta por evento: PROCESSED, reintento con backoff o FAILED.
+ */
+@Slf4j
+@Service
+public class StripeWebhookInboxService {
+
+    /** Minutos que un evento reclamado queda reservado mientras se procesa */
+    private static final long MINUTOS_RESERVA = 5;
+
+    @Autowired
+    private StripeWebhookEventRepository eventRepository;
+
+    @Autowired
+    private StripeWebhookService stripeWebhookService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${stripe.webhook.inbox.max-intentos:8}")
+    private int maxIntentos;
+
+    @Value("${stripe.webhook.inbox.backoff-inicial:PT30S}")
+    private Duration backoffInicial;
+
+    @Value("${stripe.webhook.inbox.backoff-maximo:PT1H}")
+    private Duration backoffMaximo;
+
+    @Value("${stripe.webhook.inbox.concurrencia-max:4}")
+    private int concurrenciaMaxima;
+
+    /**
+     * Días que se conservan los eventos resueltos. Mientras existe la fila, un reenvío
+     * de Stripe (hasta 3 días después) se reconoce como duplicado.
+     */
+    @Value("${stripe.webhook.inbox.retencion-dias:30}")
+    private int diasRetencion;
+
+    @Value("${stripe.webhook.inbox.purga-lote:1000}")
+    private int tamanoLotePurga;
+
+    private Semaphore permisos;
+
+    @PostConstruct
+    void init() {
+        this.permisos = new Semaphore(concurrenciaMaxima);
+    }
+
+    /**
+     * Guarda un evento ya verificado para procesarlo después.
+     *
+     * @param event Evento construido por Webhook.constructEvent
+     * @param payload Cuerpo original del webhook
+     * @return true si el evento es nuevo; false si ya se había recibido
+     */
+    public boolean registrar(Event event, String payload) {
+        if (eventRepository.existsByEventId(event.getId())) {
+            log.info("[StripeWebhookInbox] Evento {} ({}) duplicado, se ignora", event.getId(), event.getType());
+            return false;
+        }
+
+        StripeWebhookEvent registro = StripeWebhookEvent.builder()
+                .eventId(event.getId())
+                .type(event.getType())
+                .objectId(objetoOrden(payload))
+                .payload(payload)
+                .stripeCreatedAt(event.getCreated() != null
+                        ? LocalDateTime.ofInstant(Instant.ofEpochSecond(event.getCreated()), ZoneId.systemDefault())
+                        : LocalDateTime.now())
+                .nextAttemptAt(LocalDateTime.now())
+                .build();
+
+        try {
+            eventRepository.saveAndFlush(registro);
+        } catch (DataIntegrityViolationException e) {
+            // Dos entregas simultáneas del mismo evento: la otra ya lo guardó
+            log.info("[StripeWebhookInbox] Evento {} ({}) duplicado, se ignora", event.getId(), event.getType());
+            return false;
+        }
+
+        log.info("[StripeWebhookInbox] Evento {} ({}) recibido para {}", event.getId(), event.getType(), registro.getObjectId());
+        return true;
+    }
+
+    /**
+     * Elimina los eventos PROCESSED y FAILED con más de stripe.webhook.inbox.retencion-dias,
+     * en lotes de stripe.webhook.inbox.purga-lote con una transacción corta cada uno.
+     *
+     * @return Eventos eliminados
+     */
+    public long purgarResueltos() {
+        LocalDateTime antesDe = LocalDateTime.now().minusDays(Math.max(diasRetencion, 3));
+        long total = 0;
+        int eliminados;
+        do {
+            Integer lote = transactionTemplate.execute(status ->
+                    eventRepository.eliminarResueltos(antesDe, tamanoLotePurga));
+            eliminados = lote != null ? lote : 0;
+            total += eliminados;
+        } while (eliminados >= tamanoLotePurga);
+
+        log.info("[StripeWebhookInbox] {} eventos resueltos eliminados (anteriores a {})", total, antesDe);
+        return total;
+    }
+
+    /**
+     * Reclama y procesa un lote de eventos pendientes.
+     *
+     * @param tamanoLote Máximo de eventos a reclamar
+     * @return Número de eventos reclamados (si es igual a tamanoLote, puede haber más)
+     */
+    public int procesarPendientes(int tamanoLote) {
+        List<StripeWebhookEvent> lote = transactionTemplate.execute(status -> reclamarLote(tamanoLote));
+        if (lote == null || lote.isEmpty()) {
+            return 0;
+        }
+
+        // El lote no trae dos eventos del mismo objeto: el orden se mantiene aunque vayan en paralelo.
+        // close() espera a que terminen todos.
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (StripeWebhookEvent evento : lote) {
+                executor.submit(() -> despachar(evento));
+            }
+        }
+        return lote.size();
+    }
+
+    private List<StripeWebhookEvent> reclamarLote(int tamanoLote) {
+        LocalDateTime ahora = LocalDateTime.now();
+        List<String> ids = eventRepository.reclamarPendientes(ahora, tamanoLote);
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+
+        // Reserva: si la instancia cae a mitad del procesamiento, el reintento llega al vencer
+        List<StripeWebhookEvent> lote = eventRepository.findAllById(ids);
+        for (StripeWebhookEvent evento : lote) {
+            evento.setAttempts(evento.getAttempts() + 1);
+            evento.setNextAttemptAt(ahora.plusMinutes(MINUTOS_RESERVA));
+        }
+        return eventRepository.saveAll(lote);
+    }
+
+    private void despachar(StripeWebhookEvent evento) {
+        String error = null;
+        try {
+            permisos.acquire();
+            try {
+                Event event = ApiResource.GSON.fromJson(evento.getPayload(), Event.class);
+                stripeWebhookService.procesar(event);
+            } finally {
+                permisos.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = "Interrumpido";
+        } catch (Exception e) {
+            log.error("[StripeWebhookInbox] Error procesando evento {} ({}): {}",
+                    evento.getEventId(), evento.getType(), e.getMessage(), e);
+            error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        }
+
+        try {
+            String finalError = error;
+            transactionTemplate.executeWithoutResult(status -> registrarResultado(evento, finalError));
+        } catch (Exception e) {
+            // La reserva vence y el evento se reprocesa; los handlers toleran repetirse
+            log.error("[StripeWebhookInbox] Error registrando el resultado de {}: {}",
+                    evento.getEventId(), e.getMessage(), e);
+        }
+    }
+
+    private void registrarResultado(StripeWebhookEvent evento, String error) {
+        LocalDateTime ahora = LocalDateTime.now();
+        int intentos = evento.getAttempts();
+
+        if (error == null) {
+            evento.setStatus(StripeWebhookEvent.EventStatus.PROCESSED);
+            evento.setProcessedAt(ahora);
+            evento.setLastError(null);
+            log.info("[StripeWebhookInbox] Evento {} ({}) procesado (intento {})",
+                    evento.getEventId(), evento.getType(), intentos);
+        } else if (intentos >= maxIntentos) {
+            evento.setStatus(StripeWebhookEvent.EventStatus.FAILED);
+            evento.setLastError(error);
+            log.error("[StripeWebhookInbox] Evento {} ({}) descartado tras {} intentos: {}",
+                    evento.getEventId(), evento.getType(), intentos, error);
+        } else {
+            Duration retraso = retrasoReintento(intentos);
+            evento.setNextAttemptAt(ahora.plus(retraso));
+            evento.setLastError(error);
+            log.warn("[StripeWebhookInbox] Falló el intento {} del evento {}; reintento en {} s: {}",
+                    intentos, evento.getEventId(), retraso.toSeconds(), error);
+        }
+        eventRepository.save(evento);
+    }
+
+    /**
+     * Backoff exponencial: backoffInicial * 2^(intentos-1), acotado a backoffMaximo,
+     * más hasta un 20% aleatorio.
+     */
+    Duration retrasoReintento(int intentos) {
+        long base = backoffInicial.toMillis() << Math.min(Math.max(intentos - 1, 0), 20);
+        long acotado = Math.min(base, backoffMaximo.toMillis());
+        long jitter = ThreadLocalRandom.current().nextLong(acotado / 5 + 1);
+        return Duration.ofMillis(acotado + jitter);
+    }
+
+    /**
+     * Objeto por el que se ordenan los eventos: los de un mismo pago o suscripción
+     * se procesan en el orden en que Stripe los generó.
+     * - checkout.session: la suscripción o el payment intent que crea
+     * - invoice: su suscripción
+     * - charge: su payment intent
+     * - resto: el propio objeto (sub_..., pi_..., acct_...)
+     *
+     * Se lee del JSON crudo para no depender de la versión de API del evento.
+     */
+    static String objetoOrden(String payload) {
+        try {
+            JsonObject objeto = JsonParser.parseString(payload).getAsJsonObject()
+                    .getAsJsonObject("data").getAsJsonObject("object");
+            String tipo = texto(objeto.get("object"));
+            String id = texto(objeto.get("id"));
+
+            String relacionado = switch (tipo != null ? tipo : "") {
+                case "checkout.session" -> primero(texto(objeto.get("subscription")), texto(objeto.get("payment_intent")));
+                case "invoice" -> texto(objeto.get("subscription"));
+                case "charge" -> texto(objeto.get("payment_intent"));
+                default -> null;
+            };
+            return relacionado != null ? relacionado : id;
+        } catch (RuntimeException e) {
+            log.warn("[StripeWebhookInbox] No se pudo leer el objeto del evento: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Valor de un campo que puede venir como ID o como objeto expandido.
+     */
+    private static String texto(JsonElement elemento) {
+        if (elemento == null || elemento.isJsonNull()) {
+            return null;
+        }
+        if (elemento.isJsonObject()) {
+            return texto(elemento.getAsJsonObject().get("id"));
+        }
+        return elemento.getAsString();
+    }
+
+    private static String primero(String a, String b) {
+        return a != null ? a : b;
+    }
+}
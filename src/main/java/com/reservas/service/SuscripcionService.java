@@ -1,21 +1,31 @@
 package com.reservas.service;
 
+import com.reservas.batch.ChunkJob;
+import com.reservas.batch.ChunkJobRunner;
 import com.reservas.entity.Negocio;
+import com.reservas.entity.NotificationLog;
 import com.reservas.entity.RegistroIP;
 import com.reservas.entity.Usuario;
 import com.reservas.exception.IpBloqueadaException;
 import com.reservas.exception.SuscripcionVencidaException;
+import com.reservas.notifications.domain.NotificationChannel;
+import com.reservas.notifications.dto.SendNotificationRequest;
+import com.reservas.notifications.service.NotificationOutboxService;
 import com.reservas.repository.NegocioRepository;
 import com.reservas.repository.RegistroIPRepository;
 import com.reservas.repository.UsuarioRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
@@ -26,10 +36,22 @@ public class SuscripcionService {
     private final UsuarioRepository usuarioRepository;
     private final RegistroIPRepository registroIPRepository;
     private final EmailService emailService;
+    private final NotificationOutboxService notificationOutboxService;
+    private final ChunkJobRunner chunkJobRunner;
 
     @Value("${app.frontend.url:https://app.citaclick.com.mx}")
     private String frontendUrl;
 
+    /** Negocios por transacción en los barridos nocturnos */
+    @Value("${suscripciones.barrido.lote:500}")
+    private int tamanoLote;
+
+    /** Días que se conservan los registros de IP (mínimo DIAS_VALIDEZ_IP) */
+    @Value("${registros-ip.retencion-dias:90}")
+    private int diasRetencionIP;
+
+    private static final UUID ID_INICIAL = new UUID(0L, 0L);
+
     // Configuración de límites
     private static final int MAX_REGISTROS_PRUEBA_POR_IP = 3; // Máximo 3 pruebas desde la misma IP
     private static final int DIAS_VALIDEZ_IP = 90; // Verificar registros de los últimos 90 días
@@ -137,89 +159,137 @@ public class SuscripcionService {
     }
 
     /**
-     * Envía notificaciones de vencimiento
+     * Envía notificaciones de vencimiento.
+     * Los emails se encolan en el outbox junto con la bandera de "notificación enviada",
+     * así que no se pierden ni se duplican si el job falla a mitad.
+     *
+     * Los negocios a notificar se seleccionan por consulta y se procesan en lotes de
+     * suscripciones.barrido.lote con {@link ChunkJobRunner}: cada lote en su propia
+     * transacción y con el avance guardado para reanudar si la ejecución se corta.
      */
-    @Transactional
     public void enviarNotificaciones() {
         log.info("[Notificaciones] Iniciando envío de notificaciones...");
 
-        List<Negocio> negocios = negocioRepository.findAll();
-        int notificacionesEnviadas = 0;
-
-        for (Negocio negocio : negocios) {
-            try {
-                // Notificación 1 día antes de fin de prueba
-                if (negocio.necesitaNotificacionPrueba()) {
-                    enviarNotificacionFinPrueba(negocio);
-                    negocio.setNotificacionPruebaEnviada(true);
-                    negocioRepository.save(negocio);
-                    notificacionesEnviadas++;
-                }
-
-                // Notificación 5 días antes de vencimiento mensual
-                if (negocio.necesitaNotificacionVencimiento()) {
-                    enviarNotificacionVencimiento(negocio);
-                    negocio.setNotificacionVencimientoEnviada(true);
-                    negocioRepository.save(negocio);
-                    notificacionesEnviadas++;
-                }
-            } catch (Exception e) {
-                log.error("[Notificaciones] Error enviando notificación a {}", negocio.getNombre(), e);
-            }
-        }
+        long enviadas = chunkJobRunner.ejecutar(jobAvisoFinPrueba(), tamanoLote).procesados()
+                + chunkJobRunner.ejecutar(jobAvisoVencimiento(), tamanoLote).procesados();
 
-        log.info("[Notificaciones]  {} notificaciones enviadas", notificacionesEnviadas);
+        log.info("[Notificaciones]  {} notificaciones enviadas", enviadas);
     }
 
     /**
-     * Verifica suscripciones vencidas y las desactiva
+     * Verifica suscripciones vencidas y las desactiva.
+     * Cada lote se desactiva con un UPDATE por conjunto de ids; los efectos secundarios
+     * (registros de IP, email de vencimiento) van en la misma transacción del lote.
      */
-    @Transactional
     public void verificarSuscripcionesVencidas() {
         log.info("[Verificación] Verificando suscripciones vencidas...");
 
-        List<Negocio> negocios = negocioRepository.findAll();
-        int desactivados = 0;
+        long desactivados = chunkJobRunner.ejecutar(jobPruebasVencidas(), tamanoLote).procesados()
+                + chunkJobRunner.ejecutar(jobSuscripcionesVencidas(), tamanoLote).procesados();
 
-        for (Negocio negocio : negocios) {
-            try {
-                // Verificar si venció el periodo de prueba
-                if (negocio.haVencidoPrueba() && negocio.isCuentaActiva()) {
-                    log.warn("[Verificación] Periodo de prueba vencido: {}", negocio.getNombre());
+        log.info("[Verificación]  {} cuentas desactivadas", desactivados);
+    }
 
-                    negocio.setCuentaActiva(false);
-                    negocio.setEstadoPago("vencido");
-                    negocioRepository.save(negocio);
+    /**
+     * Elimina los registros de IP más antiguos que registros-ip.retencion-dias, en lotes.
+     * La retención nunca baja de la ventana que usa validarRegistroIP.
+     */
+    public void limpiarRegistrosIPAntiguos() {
+        log.info("[SuscripciónIP] Limpiando registros de IP antiguos...");
 
-                    // Actualizar registros de IP
-                    actualizarRegistrosIP(negocio, false);
+        long eliminados = chunkJobRunner.ejecutar(ChunkJob.<UUID>de("registros-ip.retencion",
+                (despuesDe, corte, limite) -> registroIPRepository.findIdsCreadosAntesDe(
+                        corte.minusDays(Math.max(diasRetencionIP, DIAS_VALIDEZ_IP)), desde(despuesDe),
+                        PageRequest.of(0, limite)),
+                UUID::toString,
+                (ids, corte) -> registroIPRepository.eliminarPorIds(ids))).procesados();
 
-                    desactivados++;
-                }
+        log.info("[SuscripciónIP]  {} registros de IP eliminados", eliminados);
+    }
 
-                // Verificar si venció la suscripción mensual
-                if (!negocio.isEnPeriodoPrueba() &&
-                    "activo".equals(negocio.getEstadoPago()) &&
-                    negocio.getFechaProximoCobro() != null &&
-                    LocalDateTime.now().isAfter(negocio.getFechaProximoCobro())) {
+    // Jobs del barrido nocturno. Leen por id con el lote bloqueado (ver NegocioRepository)
+
+    private ChunkJob<Negocio> jobPruebasVencidas() {
+        return ChunkJob.de("suscripciones.pruebas-vencidas",
+                (despuesDe, corte, limite) -> negocioRepository.bloquearPruebasVencidas(
+                        corte, desde(despuesDe), PageRequest.of(0, limite)),
+                SuscripcionService::clave,
+                (lote, corte) -> {
+                    List<UUID> ids = ids(lote);
+                    int desactivados = negocioRepository.marcarVencidos(ids, corte);
+                    // Los registros siguen contando como prueba para el límite por IP
+                    registroIPRepository.desactivarPorNegocios(ids);
+                    log.warn("[Verificación] {} periodos de prueba vencidos", desactivados);
+                    return desactivados;
+                });
+    }
 
-                    log.warn("[Verificación] Suscripción vencida: {}", negocio.getNombre());
+    private ChunkJob<Negocio> jobSuscripcionesVencidas() {
+        return ChunkJob.de("suscripciones.vencidas",
+                (despuesDe, corte, limite) -> negocioRepository.bloquearSuscripcionesVencidas(
+                        corte, desde(despuesDe), PageRequest.of(0, limite)),
+                SuscripcionService::clave,
+                (lote, corte) -> {
+                    int desactivados = negocioRepository.marcarVencidos(ids(lote), corte);
+                    notificar(lote, this::enviarEmailSuscripcionVencida);
+                    log.warn("[Verificación] {} suscripciones vencidas", desactivados);
+                    return desactivados;
+                });
+    }
 
-                    negocio.setCuentaActiva(false);
-                    negocio.setEstadoPago("vencido");
-                    negocioRepository.save(negocio);
+    /** Notificación 1 día antes de fin de prueba (entre 1 y 2 días restantes) */
+    private ChunkJob<Negocio> jobAvisoFinPrueba() {
+        return ChunkJob.de("suscripciones.aviso-fin-prueba",
+                (despuesDe, corte, limite) -> negocioRepository.bloquearPendientesAvisoPrueba(
+                        corte.plusDays(1), corte.plusDays(2), desde(despuesDe), PageRequest.of(0, limite)),
+                SuscripcionService::clave,
+                (lote, corte) -> {
+                    List<UUID> notificados = notificar(lote, this::enviarNotificacionFinPrueba);
+                    return notificados.isEmpty() ? 0 : negocioRepository.marcarAvisoPruebaEnviado(notificados, corte);
+                });
+    }
 
-                    // Enviar email de vencimiento
-                    enviarEmailSuscripcionVencida(negocio);
+    /** Notificación 5 días antes de vencimiento mensual (entre 1 y 6 días restantes) */
+    private ChunkJob<Negocio> jobAvisoVencimiento() {
+        return ChunkJob.de("suscripciones.aviso-vencimiento",
+                (despuesDe, corte, limite) -> negocioRepository.bloquearPendientesAvisoVencimiento(
+                        corte.plusDays(1), corte.plusDays(6), desde(despuesDe), PageRequest.of(0, limite)),
+                SuscripcionService::clave,
+                (lote, corte) -> {
+                    List<UUID> notificados = notificar(lote, this::enviarNotificacionVencimiento);
+                    return notificados.isEmpty() ? 0 : negocioRepository.marcarAvisoVencimientoEnviado(notificados, corte);
+                });
+    }
 
-                    desactivados++;
-                }
+    /**
+     * Encola el aviso de cada negocio del lote. Un fallo en un negocio no detiene al resto.
+     *
+     * @return Ids de los negocios notificados
+     */
+    private List<UUID> notificar(List<Negocio> lote, Consumer<Negocio> aviso) {
+        List<UUID> notificados = new ArrayList<>(lote.size());
+        for (Negocio negocio : lote) {
+            try {
+                aviso.accept(negocio);
+                notificados.add(negocio.getId());
             } catch (Exception e) {
-                log.error("[Verificación] Error procesando negocio {}", negocio.getNombre(), e);
+                log.error("[Notificaciones] Error enviando notificación a {}", negocio.getNombre(), e);
             }
         }
+        return notificados;
+    }
 
-        log.info("[Verificación]  {} cuentas desactivadas", desactivados);
+    private static String clave(Negocio negocio) {
+        return negocio.getId().toString();
+    }
+
+    private static List<UUID> ids(List<Negocio> lote) {
+        return lote.stream().map(Negocio::getId).toList();
+    }
+
+    /** Cursor del barrido como UUID; el primer lote empieza en el menor UUID posible */
+    private static UUID desde(String despuesDe) {
+        return despuesDe != null ? UUID.fromString(despuesDe) : ID_INICIAL;
     }
 
     /**
@@ -285,12 +355,15 @@ public class SuscripcionService {
         // URL de login que redirige directamente a la sección de planes
         String loginUrl = frontendUrl + "/login?redirect=/planes&from=trial-ending";
 
-        boolean enviado = emailService.enviarEmailFinPrueba(negocio.getEmail(), negocio.getNombre(), loginUrl);
-        if (enviado) {
-            log.info("[Notificación] Email HTML de fin de prueba enviado a: {}", negocio.getEmail());
-        } else {
-            log.warn("[Notificación] No se pudo enviar email de fin de prueba a: {}", negocio.getEmail());
+        EmailService.MensajeEmail mensaje = emailService.prepararEmailFinPrueba(negocio.getNombre(), loginUrl);
+        if (mensaje == null) {
+            log.warn("[Notificación] No se pudo preparar email de fin de prueba para: {}", negocio.getEmail());
+            return;
         }
+
+        encolarEmail(negocio, mensaje.asunto(), mensaje.html(), NotificationLog.NotificationType.SYSTEM_ALERT,
+                "suscripcion-fin-prueba:" + negocio.getId() + ":" + fechaClave(negocio.getFechaFinPrueba()));
+        log.info("[Notificación] Email HTML de fin de prueba encolado para: {}", negocio.getEmail());
     }
 
     private void enviarNotificacionVencimiento(Negocio negocio) {
@@ -311,8 +384,9 @@ public class SuscripcionService {
                 negocio.getFechaProximoCobro()
         );
 
-        emailService.enviarEmail(negocio.getEmail(), asunto, mensaje);
-        log.info("[Notificación] Email de vencimiento enviado a: {} ({} días)", negocio.getEmail(), diasRestantes);
+        encolarEmail(negocio, asunto, mensaje, NotificationLog.NotificationType.SYSTEM_ALERT,
+                "suscripcion-vencimiento:" + negocio.getId() + ":" + fechaClave(negocio.getFechaProximoCobro()));
+        log.info("[Notificación] Email de vencimiento encolado para: {} ({} días)", negocio.getEmail(), diasRestantes);
     }
 
     private void enviarEmailSuscripcionVencida(Negocio negocio) {
@@ -329,8 +403,33 @@ public class SuscripcionService {
                 negocio.getPlan().toUpperCase()
         );
 
-        emailService.enviarEmail(negocio.getEmail(), asunto, mensaje);
-        log.info("[Notificación] Email de suscripción vencida enviado a: {}", negocio.getEmail());
+        encolarEmail(negocio, asunto, mensaje, NotificationLog.NotificationType.SYSTEM_ALERT,
+                "suscripcion-vencida:" + negocio.getId() + ":" + fechaClave(negocio.getFechaProximoCobro()));
+        log.info("[Notificación] Email de suscripción vencida encolado para: {}", negocio.getEmail());
+    }
+
+    /**
+     * Encola un email al titular del negocio. La clave incluye el ciclo (fecha de fin
+     * de prueba o de cobro), así que el mismo aviso no se encola dos veces por ciclo.
+     */
+    private void encolarEmail(Negocio negocio, String asunto, String contenido,
+                              NotificationLog.NotificationType tipo, String idempotencyKey) {
+        notificationOutboxService.encolar(
+                SendNotificationRequest.builder()
+                        .channel(NotificationChannel.EMAIL)
+                        .recipient(negocio.getEmail())
+                        .recipientName(negocio.getNombre())
+                        .subject(asunto)
+                        .content(contenido)
+                        .relatedEntityId(negocio.getId() != null ? negocio.getId().toString() : null)
+                        .relatedEntityType("NEGOCIO")
+                        .build(),
+                tipo,
+                idempotencyKey);
+    }
+
+    private static String fechaClave(LocalDateTime fecha) {
+        return fecha != null ? fecha.toLocalDate().toString() : "sin-fecha";
     }
 
     private void actualizarRegistrosIP(Negocio negocio, boolean esPrueba) {
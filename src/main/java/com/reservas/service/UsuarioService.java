@@ -4,12 +4,16 @@ import com.reservas.dto.CambiarRolRequest;
 import com.reservas.dto.InvitarUsuarioRequest;
 import com.reservas.dto.UsuarioDTO;
 import com.reservas.entity.Negocio;
+import com.reservas.entity.NotificationLog;
 import com.reservas.entity.Usuario;
 import com.reservas.entity.enums.TipoPlan;
 import com.reservas.entity.enums.UsuarioRol;
 import com.reservas.exception.LimiteExcedidoException;
 import com.reservas.exception.PermisoInsuficienteException;
 import com.reservas.exception.ResourceNotFoundException;
+import com.reservas.notifications.domain.NotificationChannel;
+import com.reservas.notifications.dto.SendNotificationRequest;
+import com.reservas.notifications.service.NotificationOutboxService;
 import com.reservas.repository.NegocioRepository;
 import com.reservas.repository.UsuarioRepository;
 import lombok.RequiredArgsConstructor;
@@ -36,6 +40,7 @@ public class UsuarioService {
     private final PermisosService permisosService;
     private final PasswordEncoder passwordEncoder;
     private final EmailService emailService;
+    private final NotificationOutboxService notificationOutboxService;
 
     /**
      * Invita un nuevo usuario al negocio
@@ -103,22 +108,8 @@ public class UsuarioService {
         log.info("[UsuarioService] Usuario creado exitosamente: {} con rol: {}",
                 usuarioGuardado.getEmail(), usuarioGuardado.getRol());
 
-        // 9. Actualizar uso
-        planLimitesService.actualizarUso(negocioId);
-
-        // 10. Enviar email de bienvenida con credenciales temporales
-        try {
-            emailService.enviarEmailInvitacionUsuario(
-                    usuarioGuardado.getEmail(),
-                    usuarioGuardado.getNombre(),
-                    negocio.getNombre(),
-                    password
-            );
-            log.info("[UsuarioService] Email de invitación enviado a: {}", usuarioGuardado.getEmail());
-        } catch (Exception e) {
-            log.error("[UsuarioService] Error al enviar email de invitación", e);
-            // No fallar la operación por error de email
-        }
+        // 9. Encolar email de bienvenida con credenciales temporales (sale tras el commit)
+        encolarEmailInvitacion(usuarioGuardado, negocio, password);
 
         return convertirADTO(usuarioGuardado);
     }
@@ -243,13 +234,16 @@ public class UsuarioService {
         }
 
         // 7. Desactivar
+        boolean estabaActivo = usuarioObjetivo.isActivo();
         usuarioObjetivo.setActivo(false);
         usuarioRepository.save(usuarioObjetivo);
 
         log.info("[UsuarioService] Usuario desactivado exitosamente");
 
-        // 8. Actualizar uso
-        planLimitesService.actualizarUso(usuarioObjetivo.getNegocio().getId());
+        // 8. Liberar el cupo del plan
+        if (estabaActivo) {
+            planLimitesService.liberarCupoUsuario(usuarioObjetivo.getNegocio().getId());
+        }
     }
 
     /**
@@ -300,7 +294,7 @@ public class UsuarioService {
         // 4. Validar que puede gestionar ese rol
         permisosService.validarGestionRol(usuarioActual, usuarioObjetivo.getRol());
 
-        // 5. Validar límite de usuarios antes de reactivar
+        // 5. Validar y reservar cupo de usuario antes de reactivar
         if (!usuarioObjetivo.isActivo()) {
             TipoPlan plan = TipoPlan.fromCodigo(usuarioObjetivo.getNegocio().getPlan());
             planLimitesService.validarLimiteUsuarios(usuarioObjetivo.getNegocio().getId(), plan);
@@ -312,9 +306,6 @@ public class UsuarioService {
 
         log.info("[UsuarioService] Usuario reactivado exitosamente");
 
-        // 7. Actualizar uso
-        planLimitesService.actualizarUso(usuarioObjetivo.getNegocio().getId());
-
         return convertirADTO(usuarioReactivado);
     }
 
@@ -332,6 +323,33 @@ public class UsuarioService {
         return password.toString();
     }
 
+    /**
+     * Encola la invitación en el outbox de notificaciones, en la transacción de la
+     * invitación: solo sale si el usuario se creó. Lleva la contraseña temporal, así
+     * que va marcada como sensible: el outbox la borra al enviarla y NotificationLog
+     * no la guarda.
+     */
+    private void encolarEmailInvitacion(Usuario usuario, Negocio negocio, String password) {
+        EmailService.MensajeEmail mensaje = emailService.prepararEmailInvitacionUsuario(
+                usuario.getEmail(), usuario.getNombre(), negocio.getNombre(), password);
+
+        SendNotificationRequest request = SendNotificationRequest.builder()
+                .channel(NotificationChannel.EMAIL)
+                .recipient(usuario.getEmail())
+                .recipientName(usuario.getNombre())
+                .subject(mensaje.asunto())
+                .content(mensaje.html())
+                .usuarioId(usuario.getId().toString())
+                .relatedEntityType("USUARIO")
+                .relatedEntityId(usuario.getId().toString())
+                .sensitiveContent(true)
+                .build();
+
+        notificationOutboxService.encolar(request, NotificationLog.NotificationType.ONBOARDING_WELCOME,
+                "invitacion-usuario:" + usuario.getId());
+        log.info("[UsuarioService] Email de invitación encolado para: {}", usuario.getEmail());
+    }
+
     /**
      * Convierte entidad a DTO
      */
@@ -0,0 +1,152 @@
+package com.reservas.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Template HTML compilado: se parsea una sola vez en una lista de segmentos
+ * (texto literal y placeholders) y se renderiza en una sola pasada sobre un StringBuilder.
+ *
+ * Sintaxis:
+ *  - {@code {{variable}}}   valor escapado para HTML (datos del cliente o del negocio)
+ *  - {@code {{{variable}}}} valor insertado tal cual (bloques HTML armados por el servicio)
+ *
+ * Una variable sin valor se renderiza vacía. Las instancias son inmutables y se
+ * pueden compartir entre hilos.
+ */
+public final class PlantillaHtml {
+
+    private sealed interface Segmento permits Literal, Variable {}
+
+    private record Literal(String texto) implements Segmento {}
+
+    private record Variable(String nombre, boolean escapar) implements Segmento {}
+
+    private final List<Segmento> segmentos;
+    private final int longitudEstimada;
+
+    private PlantillaHtml(List<Segmento> segmentos) {
+        this.segmentos = List.copyOf(segmentos);
+        int longitud = 0;
+        for (Segmento segmento : segmentos) {
+            // Margen para el valor de cada placeholder
+            longitud += segmento instanceof Literal literal ? literal.texto().length() : 32;
+        }
+        this.longitudEstimada = longitud;
+    }
+
+    /**
+     * Parsea el HTML del template. Un {@code {{} sin cierre se conserva como texto literal.
+     */
+    public static PlantillaHtml compilar(String html) {
+        List<Segmento> segmentos = new ArrayList<>();
+        int desde = 0;
+        while (desde < html.length()) {
+            int apertura = html.indexOf("{{", desde);
+            if (apertura < 0) {
+                break;
+            }
+            boolean crudo = html.startsWith("{{{", apertura);
+            String cierre = crudo ? "}}}" : "}}";
+            int inicioNombre = apertura + (crudo ? 3 : 2);
+            int fin = html.indexOf(cierre, inicioNombre);
+            if (fin < 0) {
+                break;
+            }
+            agregarLiteral(segmentos, html.substring(desde, apertura));
+            segmentos.add(new Variable(html.substring(inicioNombre, fin).trim(), !crudo));
+            desde = fin + cierre.length();
+        }
+        agregarLiteral(segmentos, html.substring(desde));
+        return new PlantillaHtml(segmentos);
+    }
+
+    /**
+     * Renderiza el template con las variables dadas.
+     */
+    public String render(Map<String, String> variables) {
+        StringBuilder sb = new StringBuilder(longitudEstimada);
+        for (Segmento segmento : segmentos) {
+            if (segmento instanceof Literal literal) {
+                sb.append(literal.texto());
+            } else if (segmento instanceof Variable variable) {
+                String valor = variables.get(variable.nombre());
+                if (valor == null) {
+                    continue;
+                }
+                if (variable.escapar()) {
+                    escapar(sb, valor);
+                } else {
+                    sb.append(valor);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Devuelve un template nuevo con las variables dadas ya resueltas como texto literal.
+     * Las variables que no están en el mapa siguen siendo placeholders.
+     * Se usa para fijar una vez los colores y textos de un negocio.
+     */
+    public PlantillaHtml aplicar(Map<String, String> fijas) {
+        List<Segmento> resultado = new ArrayList<>();
+        for (Segmento segmento : segmentos) {
+            if (segmento instanceof Variable variable && fijas.containsKey(variable.nombre())) {
+                String valor = fijas.get(variable.nombre());
+                if (valor == null) {
+                    continue;
+                }
+                agregarLiteral(resultado, variable.escapar() ? escapar(valor) : valor);
+            } else if (segmento instanceof Literal literal) {
+                agregarLiteral(resultado, literal.texto());
+            } else {
+                resultado.add(segmento);
+            }
+        }
+        return new PlantillaHtml(resultado);
+    }
+
+    /**
+     * Número de segmentos (literales y placeholders) del template compilado.
+     */
+    public int getSegmentos() {
+        return segmentos.size();
+    }
+
+    public static String escapar(String valor) {
+        StringBuilder sb = new StringBuilder(valor.length() + 16);
+        escapar(sb, valor);
+        return sb.toString();
+    }
+
+    private static void escapar(StringBuilder sb, String valor) {
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            switch (c) {
+                case '&' -> sb.append("&amp;");
+                case '<' -> sb.append("&lt;");
+                case '>' -> sb.append("&gt;");
+                case '"' -> sb.append("&quot;");
+                case '\'' -> sb.append("&#39;");
+                default -> sb.append(c);
+            }
+        }
+    }
+
+    /**
+     * Agrega texto literal fusionándolo con el literal anterior, si lo hay.
+     */
+    private static void agregarLiteral(List<Segmento> segmentos, String texto) {
+        if (texto.isEmpty()) {
+            return;
+        }
+        int ultimo = segmentos.size() - 1;
+        if (ultimo >= 0 && segmentos.get(ultimo) instanceof Literal anterior) {
+            segmentos.set(ultimo, new Literal(anterior.texto() + texto));
+        } else {
+            segmentos.add(new Literal(texto));
+        }
+    }
+}
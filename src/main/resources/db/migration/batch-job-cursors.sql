@@ -0,0 +1,39 @@
+-- ============================================================================
+-- SCRIPT DE MIGRACIÓN: Cursores de jobs por lotes
+-- ============================================================================
+-- PROPÓSITO: Que los jobs nocturnos (suscripciones, retención de registros de IP)
+--            avancen por lotes y se reanuden donde se quedaron si se interrumpen.
+-- FECHA: 2026-10-19
+-- VERSIÓN: 1.0
+--
+-- CAMBIOS:
+-- - Nueva tabla tbl_batch_job_cursors (entidad BatchJobCursor), una fila por job.
+--   Las filas las crea la aplicación en la primera ejecución de cada job.
+-- - En prod ddl-auto=validate, por lo que la tabla debe existir antes del deploy.
+-- ============================================================================
+
+SET search_path TO ccdiad;
+
+CREATE TABLE IF NOT EXISTS ccdiad.tbl_batch_job_cursors (
+    nombre          VARCHAR(100) PRIMARY KEY,
+    estado          VARCHAR(20)  NOT NULL,
+    ultima_clave    VARCHAR(255),
+    corte           TIMESTAMP    NOT NULL,
+    procesados      BIGINT       NOT NULL DEFAULT 0,
+    lotes           INTEGER      NOT NULL DEFAULT 0,
+    iniciado_en     TIMESTAMP    NOT NULL,
+    actualizado_en  TIMESTAMP    NOT NULL,
+    ultimo_error    TEXT
+);
+
+-- ============================================================================
+-- INSTRUCCIONES DE EJECUCIÓN
+-- ============================================================================
+-- 1. Ejecutar: \i /ruta/a/batch-job-cursors.sql
+-- 2. Desplegar la versión con ChunkJobRunner.
+-- 3. Estado de los jobs:
+--    SELECT nombre, estado, procesados, lotes, iniciado_en, actualizado_en, ultimo_error
+--    FROM ccdiad.tbl_batch_job_cursors ORDER BY actualizado_en DESC;
+-- 4. Para descartar una ejecución interrumpida y empezar de cero:
+--    UPDATE ccdiad.tbl_batch_job_cursors SET estado = 'COMPLETADO' WHERE nombre = '<job>';
+-- ============================================================================
@@ -0,0 +1,37 @@
+-- ============================================================================
+-- SCRIPT DE MIGRACIÓN: Retención de las colas en base de datos
+-- ============================================================================
+-- PROPÓSITO: Purgar las filas ya resueltas de tbl_notification_outbox y
+--            tbl_stripe_webhook_events (RetencionColasScheduler) sin recorrer
+--            las tablas completas.
+-- FECHA: 2026-10-19
+-- VERSIÓN: 1.0
+--
+-- CAMBIOS:
+-- - Índice (status, created_at) en tbl_notification_outbox: la purga diaria borra
+--   por lotes las notificaciones SENT/FAILED con más de
+--   notificaciones.outbox.retencion-dias (30).
+-- - Índice (status, created_at) en tbl_stripe_webhook_events: la misma purga borra
+--   los eventos PROCESSED/FAILED con más de stripe.webhook.inbox.retencion-dias (30).
+--   Nunca menos de 3 días: es lo que Stripe sigue reenviando un evento.
+-- - En prod ddl-auto=validate, por lo que los índices deben existir antes del deploy.
+-- ============================================================================
+
+SET search_path TO ccdiad;
+
+CREATE INDEX IF NOT EXISTS idx_notification_outbox_purga
+    ON ccdiad.tbl_notification_outbox (status, created_at);
+
+CREATE INDEX IF NOT EXISTS idx_stripe_webhook_events_purga
+    ON ccdiad.tbl_stripe_webhook_events (status, created_at);
+
+-- ============================================================================
+-- INSTRUCCIONES DE EJECUCIÓN
+-- ============================================================================
+-- 1. Ejecutar: \i /ruta/a/colas-retencion.sql
+-- 2. Verificación (tras la primera purga, a las 4:00 AM):
+--    SELECT status, COUNT(*), MIN(created_at)
+--    FROM ccdiad.tbl_notification_outbox GROUP BY status;
+--    SELECT status, COUNT(*), MIN(created_at)
+--    FROM ccdiad.tbl_stripe_webhook_events GROUP BY status;
+-- ============================================================================
@@ -0,0 +1,46 @@
+-- ============================================================================
+-- SCRIPT DE MIGRACIÓN: Claves de idempotencia
+-- ============================================================================
+-- PROPÓSITO: Que los reintentos de POST /api/v1/payments y POST /api/pagos/checkout
+--            con la cabecera Idempotency-Key devuelvan la respuesta original en
+--            lugar de crear otro PaymentIntent o sesión de checkout.
+-- FECHA: 2026-10-19
+-- VERSIÓN: 1.0
+--
+-- CAMBIOS:
+-- - Nueva tabla tbl_idempotency_keys (entidad IdempotencyRecord): una fila por
+--   usuario + operación + clave, con el hash de la petición y la respuesta.
+-- - Las filas caducan a las 24 h (idempotencia.ttl); IdempotencyScheduler las
+--   elimina cada hora.
+-- - En prod ddl-auto=validate, por lo que la tabla debe existir antes del deploy.
+-- ============================================================================
+
+SET search_path TO ccdiad;
+
+CREATE TABLE IF NOT EXISTS ccdiad.tbl_idempotency_keys (
+    id               VARCHAR(255) PRIMARY KEY,
+    tenant           VARCHAR(255) NOT NULL,
+    operacion        VARCHAR(100) NOT NULL,
+    idempotency_key  VARCHAR(255) NOT NULL,
+    request_hash     VARCHAR(64)  NOT NULL,
+    estado           VARCHAR(20)  NOT NULL,
+    http_status      INTEGER,
+    respuesta        TEXT,
+    bloqueado_hasta  TIMESTAMP,
+    expira_en        TIMESTAMP    NOT NULL,
+    created_at       TIMESTAMP    NOT NULL DEFAULT NOW(),
+    CONSTRAINT uk_idempotency_keys_clave UNIQUE (tenant, operacion, idempotency_key)
+);
+
+CREATE INDEX IF NOT EXISTS idx_idempotency_keys_expira_en
+    ON ccdiad.tbl_idempotency_keys (expira_en);
+
+-- ============================================================================
+-- INSTRUCCIONES DE EJECUCIÓN
+-- ============================================================================
+-- 1. Ejecutar: \i /ruta/a/idempotency-keys.sql
+-- 2. Desplegar la versión con IdempotencyService.
+-- 3. Claves por operación y estado en la última hora:
+--    SELECT operacion, estado, COUNT(*) FROM ccdiad.tbl_idempotency_keys
+--    WHERE created_at > NOW() - INTERVAL '1 hour' GROUP BY operacion, estado;
+-- ============================================================================
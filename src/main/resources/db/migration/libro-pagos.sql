@@ -0,0 +1,85 @@
+-- ============================================================================
+-- SCRIPT DE MIGRACIÓN: Libro único de pagos
+-- ============================================================================
+-- PROPÓSITO: Registrar los pagos de planes (tbl_pagos) y de Stripe Connect
+--            (tbl_payments) como movimientos inmutables, con saldos por negocio
+--            para las estadísticas (LibroPagosService).
+-- FECHA: 2026-10-19
+-- VERSIÓN: 1.0
+--
+-- CAMBIOS:
+-- - tbl_movimientos_pago: un movimiento por hecho (COBRO, FALLO, REEMBOLSO).
+--   La restricción única (origen, referencia, tipo) hace idempotente el registro
+--   (INSERT ... ON CONFLICT DO NOTHING). Un trigger rechaza UPDATE y DELETE.
+-- - tbl_saldos_pago: totales por (negocio_id, origen, moneda), sumados en la misma
+--   transacción que cada movimiento nuevo. /pagos/estadisticas y
+--   /v1/payments/statistics leen esta fila en lugar de recorrer los pagos.
+-- - En prod ddl-auto=validate, por lo que las tablas deben existir antes del deploy.
+-- ============================================================================
+
+SET search_path TO ccdiad;
+
+CREATE TABLE IF NOT EXISTS ccdiad.tbl_movimientos_pago (
+    id                BIGSERIAL      PRIMARY KEY,
+    negocio_id        UUID           NOT NULL,
+    origen            VARCHAR(20)    NOT NULL,
+    referencia        VARCHAR(100)   NOT NULL,
+    tipo              VARCHAR(20)    NOT NULL,
+    moneda            VARCHAR(3)     NOT NULL,
+    monto             NUMERIC(12, 2) NOT NULL,
+    comision          NUMERIC(12, 2) NOT NULL,
+    neto              NUMERIC(12, 2) NOT NULL,
+    reembolsado       NUMERIC(12, 2) NOT NULL,
+    referencia_stripe VARCHAR(100),
+    fecha             TIMESTAMP      NOT NULL,
+    created_at        TIMESTAMP      NOT NULL,
+    CONSTRAINT uk_movimiento_pago_origen_referencia_tipo UNIQUE (origen, referencia, tipo)
+);
+
+-- Historial por negocio paginado por id
+CREATE INDEX IF NOT EXISTS idx_movimientos_pago_negocio_id
+    ON ccdiad.tbl_movimientos_pago (negocio_id, id);
+
+CREATE OR REPLACE FUNCTION ccdiad.fn_movimientos_pago_inmutable() RETURNS trigger AS $$
+BEGIN
+    RAISE EXCEPTION 'tbl_movimientos_pago solo admite inserciones';
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_movimientos_pago_inmutable ON ccdiad.tbl_movimientos_pago;
+CREATE TRIGGER trg_movimientos_pago_inmutable
+    BEFORE UPDATE OR DELETE ON ccdiad.tbl_movimientos_pago
+    FOR EACH ROW EXECUTE FUNCTION ccdiad.fn_movimientos_pago_inmutable();
+
+CREATE TABLE IF NOT EXISTS ccdiad.tbl_saldos_pago (
+    id          UUID           PRIMARY KEY,
+    negocio_id  UUID           NOT NULL,
+    origen      VARCHAR(20)    NOT NULL,
+    moneda      VARCHAR(3)     NOT NULL,
+    cobros      BIGINT         NOT NULL DEFAULT 0,
+    fallos      BIGINT         NOT NULL DEFAULT 0,
+    reembolsos  BIGINT         NOT NULL DEFAULT 0,
+    monto       NUMERIC(14, 2) NOT NULL DEFAULT 0,
+    comision    NUMERIC(14, 2) NOT NULL DEFAULT 0,
+    neto        NUMERIC(14, 2) NOT NULL DEFAULT 0,
+    reembolsado NUMERIC(14, 2) NOT NULL DEFAULT 0,
+    created_at  TIMESTAMP      NOT NULL,
+    updated_at  TIMESTAMP      NOT NULL,
+    CONSTRAINT uk_saldo_pago_negocio_origen_moneda UNIQUE (negocio_id, origen, moneda)
+);
+
+-- ============================================================================
+-- INSTRUCCIONES DE EJECUCIÓN
+-- ============================================================================
+-- 1. Ejecutar: \i /ruta/a/libro-pagos.sql
+-- 2. Desplegar la versión con LibroPagosService. Desde ese momento cada cambio de
+--    estado de un pago anota su movimiento.
+-- 3. Anotar los pagos anteriores (se puede relanzar sin duplicar):
+--    curl -H "X-Admin-Key: TU_CLAVE" https://<host>/api/admin/scheduler/backfill-libro-pagos
+--    Avance:
+--    SELECT nombre, estado, procesados, ultimo_error
+--    FROM ccdiad.tbl_batch_job_cursors WHERE nombre LIKE 'libro-pagos.backfill.%';
+-- 4. Verificación (debe coincidir con los pagos completados de cada negocio):
+--    SELECT negocio_id, origen, moneda, cobros - reembolsos AS vigentes, monto
+--    FROM ccdiad.tbl_saldos_pago ORDER BY negocio_id;
+-- ============================================================================
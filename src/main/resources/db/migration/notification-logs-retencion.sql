@@ -0,0 +1,51 @@
+-- ============================================================================
+-- SCRIPT DE MIGRACIÓN: Retención y archivo de tbl_notification_logs
+-- ============================================================================
+-- PROPÓSITO: Que tbl_notification_logs solo guarde los meses recientes. Las
+--            notificaciones antiguas se archivan comprimidas y caducan después.
+-- FECHA: 2026-10-19
+-- VERSIÓN: 1.0
+--
+-- CAMBIOS:
+-- - Nueva tabla tbl_notification_logs_archivo (entidad NotificationLogArchivo):
+--   un bloque por lote archivado, JSON Lines + gzip, con el rango created_at
+--   [desde, hasta] que contiene.
+-- - NotificationRetentionService (3:30 AM) mueve a bloques las notificaciones con
+--   más de notificaciones.retencion.archivar-dias (90) y elimina los bloques con
+--   más de notificaciones.retencion.archivo-dias (730).
+-- - tbl_registro_ips ya tiene retención (registros-ip.retencion-dias, ver
+--   batch-job-cursors.sql). Son datos personales y no se archivan.
+-- ============================================================================
+
+SET search_path TO ccdiad;
+
+CREATE TABLE IF NOT EXISTS ccdiad.tbl_notification_logs_archivo (
+    id          VARCHAR(255) PRIMARY KEY,
+    desde       TIMESTAMP    NOT NULL,
+    hasta       TIMESTAMP    NOT NULL,
+    filas       INTEGER      NOT NULL,
+    contenido   BYTEA        NOT NULL,
+    created_at  TIMESTAMP    NOT NULL DEFAULT now()
+);
+
+-- El contenido ya va comprimido: sin TOAST compression adicional
+ALTER TABLE ccdiad.tbl_notification_logs_archivo ALTER COLUMN contenido SET STORAGE EXTERNAL;
+
+CREATE INDEX IF NOT EXISTS idx_notification_logs_archivo_hasta
+    ON ccdiad.tbl_notification_logs_archivo (hasta);
+
+-- ============================================================================
+-- INSTRUCCIONES DE EJECUCIÓN
+-- ============================================================================
+-- 1. Ejecutar: \i /ruta/a/notification-logs-retencion.sql
+-- 2. Medir ANTES del primer archivado (y repetir después, con VACUUM):
+--    SELECT pg_size_pretty(pg_table_size('ccdiad.tbl_notification_logs'))   AS tabla,
+--           pg_size_pretty(pg_indexes_size('ccdiad.tbl_notification_logs')) AS indices,
+--           (SELECT count(*) FROM ccdiad.tbl_notification_logs)              AS filas;
+--    SELECT pg_size_pretty(pg_total_relation_size('ccdiad.tbl_notification_logs_archivo'));
+-- 3. El primer archivado de un histórico grande es largo; ChunkJobRunner lo
+--    reanuda si se corta. Tras él, ejecutar VACUUM (ANALYZE) ccdiad.tbl_notification_logs;
+--    (o pg_repack) para devolver el espacio y compactar los índices.
+-- 4. Consultar un bloque: NotificationRetentionService.leerArchivo, o exportar la
+--    columna contenido a un fichero y leerlo con zcat (una notificación por línea).
+-- ============================================================================
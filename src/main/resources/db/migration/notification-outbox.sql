@@ -0,0 +1,65 @@
+-- ============================================================================
+-- SCRIPT DE MIGRACIÓN: Outbox de notificaciones
+-- ============================================================================
+-- PROPÓSITO: Sacar las llamadas a Resend/Twilio de las transacciones de las
+--            peticiones; los emails y WhatsApp se encolan y los envía un
+--            dispatcher en segundo plano con reintentos.
+-- FECHA: 2026-10-18
+-- VERSIÓN: 1.0
+--
+-- CAMBIOS:
+-- - Nueva tabla tbl_notification_outbox (entidad NotificationOutbox).
+-- - idempotency_key única: evita encolar dos veces el mismo aviso y se envía
+--   a Resend como header Idempotency-Key.
+-- - Índice (status, next_attempt_at) para el reclamo con SKIP LOCKED.
+-- - sensitive_content: el contenido lleva un secreto (contraseña temporal de una
+--   invitación). Se sustituye por un texto fijo al enviarse o descartarse y no se
+--   copia a tbl_notification_logs.
+-- - En prod ddl-auto=validate, por lo que la tabla debe existir antes del deploy.
+-- ============================================================================
+
+SET search_path TO ccdiad;
+
+CREATE TABLE IF NOT EXISTS ccdiad.tbl_notification_outbox (
+    id                   VARCHAR(255) PRIMARY KEY,
+    idempotency_key      VARCHAR(200) NOT NULL,
+    channel              VARCHAR(20)  NOT NULL,
+    notification_type    VARCHAR(30),
+    usuario_id           UUID,
+    recipient            VARCHAR(255) NOT NULL,
+    recipient_name       VARCHAR(255),
+    subject              VARCHAR(500),
+    content              TEXT         NOT NULL,
+    related_entity_id    VARCHAR(100),
+    related_entity_type  VARCHAR(50),
+    status               VARCHAR(20)  NOT NULL,
+    attempts             INTEGER      NOT NULL DEFAULT 0,
+    next_attempt_at      TIMESTAMP    NOT NULL,
+    last_error           TEXT,
+    sensitive_content    BOOLEAN      NOT NULL DEFAULT FALSE,
+    notification_log_id  VARCHAR(36),
+    sent_at              TIMESTAMP,
+    created_at           TIMESTAMP    NOT NULL DEFAULT now(),
+    CONSTRAINT uk_notification_outbox_idempotency_key UNIQUE (idempotency_key)
+);
+
+-- Instalaciones que ya tenían la tabla
+ALTER TABLE ccdiad.tbl_notification_outbox
+    ADD COLUMN IF NOT EXISTS sensitive_content BOOLEAN NOT NULL DEFAULT FALSE;
+
+CREATE INDEX IF NOT EXISTS idx_notification_outbox_pendientes
+    ON ccdiad.tbl_notification_outbox (status, next_attempt_at);
+
+-- ============================================================================
+-- INSTRUCCIONES DE EJECUCIÓN
+-- ============================================================================
+-- 1. Ejecutar: \i /ruta/a/notification-outbox.sql
+-- 2. Desplegar la versión con NotificationOutboxService.
+-- 3. Notificaciones descartadas (agotaron reintentos):
+--    SELECT id, recipient, attempts, last_error FROM ccdiad.tbl_notification_outbox
+--    WHERE status = 'FAILED' ORDER BY created_at DESC;
+--    Para reintentarlas: UPDATE ... SET status = 'PENDING', attempts = 0,
+--    next_attempt_at = now() WHERE id = '<id>';
+--    Las que tienen sensitive_content = true ya no conservan el contenido: hay que
+--    volver a invitar al usuario.
+-- ============================================================================
@@ -0,0 +1,46 @@
+-- ============================================================================
+-- SCRIPT DE MIGRACIÓN: Cola de recordatorios por momento de envío
+-- ============================================================================
+-- PROPÓSITO: Que el scheduler lea solo recordatorios vencidos
+-- FECHA: 2026-10-18
+-- VERSIÓN: 1.0
+--
+-- CAMBIOS:
+-- - Nueva columna tbl_recordatorios.scheduled_at (momento de envío calculado
+--   al crear el recordatorio; NULL = ya no programado).
+-- - Backfill de los recordatorios no enviados a partir de la fecha de la cita.
+-- - Índice parcial sobre los pendientes, usado por
+--   SELECT ... WHERE enviado = false AND scheduled_at <= now() FOR UPDATE SKIP LOCKED
+-- ============================================================================
+
+SET search_path TO ccdiad;
+
+ALTER TABLE ccdiad.tbl_recordatorios ADD COLUMN IF NOT EXISTS scheduled_at TIMESTAMP;
+
+-- Backfill: mismas reglas que RecordatorioService.calcularMomentoEnvio.
+-- Citas canceladas o ya pasadas quedan fuera de la cola (scheduled_at NULL).
+UPDATE ccdiad.tbl_recordatorios r
+SET scheduled_at = CASE r.tipo
+        WHEN 'EMAIL'    THEN c.fecha_hora - INTERVAL '24 hours'
+        WHEN 'SMS'      THEN c.fecha_hora - INTERVAL '2 hours'
+        WHEN 'WHATSAPP' THEN c.fecha_hora - INTERVAL '4 hours'
+    END
+FROM ccdiad.tbl_citas c
+WHERE r.cita_id = c.id
+  AND r.enviado = false
+  AND r.scheduled_at IS NULL
+  AND c.estado <> 'CANCELADA'
+  AND c.fecha_hora > now();
+
+-- Índice parcial: solo los pendientes (los enviados no vuelven a leerse)
+DROP INDEX IF EXISTS idx_recordatorios_pendientes_scheduled;
+CREATE INDEX idx_recordatorios_pendientes_scheduled
+    ON ccdiad.tbl_recordatorios (scheduled_at)
+    WHERE enviado = false;
+
+-- ============================================================================
+-- INSTRUCCIONES DE EJECUCIÓN
+-- ============================================================================
+-- 1. Ejecutar: \i /ruta/a/recordatorios-scheduled-at.sql
+-- 2. Desplegar la versión que usa scheduled_at (RecordatorioScheduler)
+-- ============================================================================
@@ -0,0 +1,41 @@
+-- ============================================================================
+-- SCRIPT DE MIGRACIÓN: Refresh tokens con rotación
+-- ============================================================================
+-- PROPÓSITO: Sesiones renovables sin JWT de larga duración
+-- FECHA: 2026-10-18
+-- VERSIÓN: 1.0
+--
+-- CAMBIOS:
+-- - Nueva tabla tbl_refresh_tokens (entidad RefreshToken). Guarda solo el
+--   hash SHA-256 del token; familia identifica la sesión/dispositivo.
+-- - En prod ddl-auto=validate, por lo que la tabla debe existir antes del deploy.
+-- ============================================================================
+
+SET search_path TO ccdiad;
+
+CREATE TABLE IF NOT EXISTS ccdiad.tbl_refresh_tokens (
+    id           UUID         PRIMARY KEY,
+    usuario_id   UUID         NOT NULL,
+    token_hash   VARCHAR(64)  NOT NULL,
+    familia      UUID         NOT NULL,
+    dispositivo  VARCHAR(255),
+    ip_address   VARCHAR(45),
+    expira_en    TIMESTAMP    NOT NULL,
+    revocado_en  TIMESTAMP,
+    created_at   TIMESTAMP    NOT NULL,
+    CONSTRAINT uk_refresh_token_hash UNIQUE (token_hash),
+    CONSTRAINT fk_refresh_token_usuario FOREIGN KEY (usuario_id) REFERENCES ccdiad.tbl_usuarios (id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_refresh_token_usuario ON ccdiad.tbl_refresh_tokens (usuario_id);
+CREATE INDEX IF NOT EXISTS idx_refresh_token_familia ON ccdiad.tbl_refresh_tokens (familia);
+CREATE INDEX IF NOT EXISTS idx_refresh_token_expira_en ON ccdiad.tbl_refresh_tokens (expira_en);
+
+-- ============================================================================
+-- INSTRUCCIONES DE EJECUCIÓN
+-- ============================================================================
+-- 1. Ejecutar: \i /ruta/a/refresh-tokens.sql
+-- 2. Desplegar la versión con jwt.expiration=900000 (15 min). Las sesiones
+--    existentes (JWT de 7 días, sin refresh token) deberán iniciar sesión de
+--    nuevo cuando expire su cookie.
+-- ============================================================================
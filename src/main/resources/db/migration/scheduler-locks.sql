@@ -0,0 +1,31 @@
+-- ============================================================================
+-- SCRIPT DE MIGRACIÓN: Leases de jobs programados
+-- ============================================================================
+-- PROPÓSITO: Que cada job programado corra en una sola instancia de Cloud Run
+-- FECHA: 2026-10-18
+-- VERSIÓN: 1.0
+--
+-- CAMBIOS:
+-- - Nueva tabla tbl_scheduler_locks (entidad SchedulerLock), una fila por job.
+--   Las filas las crea la aplicación en la primera ejecución de cada job.
+-- - En prod ddl-auto=validate, por lo que la tabla debe existir antes del deploy.
+-- ============================================================================
+
+SET search_path TO ccdiad;
+
+CREATE TABLE IF NOT EXISTS ccdiad.tbl_scheduler_locks (
+    nombre           VARCHAR(100) PRIMARY KEY,
+    bloqueado_hasta  TIMESTAMP    NOT NULL,
+    bloqueado_en     TIMESTAMP    NOT NULL,
+    bloqueado_por    VARCHAR(255) NOT NULL
+);
+
+-- ============================================================================
+-- INSTRUCCIONES DE EJECUCIÓN
+-- ============================================================================
+-- 1. Ejecutar: \i /ruta/a/scheduler-locks.sql
+-- 2. Desplegar la versión con SchedulerLockService.
+-- 3. Si una instancia muere con un job en curso, su lease vence solo
+--    (scheduler.lock.lease, 2 minutos por defecto). Para liberarlo a mano:
+--    UPDATE ccdiad.tbl_scheduler_locks SET bloqueado_hasta = now() WHERE nombre = '<job>';
+-- ============================================================================
@@ -0,0 +1,34 @@
+-- ============================================================================
+-- SCRIPT DE MIGRACIÓN: Reconciliación periódica con Stripe
+-- ============================================================================
+-- PROPÓSITO: Corregir pagos y suscripciones cuyo webhook de Stripe no llegó
+--            (StripeReconciliacionService, cada hora).
+-- FECHA: 2026-10-19
+-- VERSIÓN: 1.0
+--
+-- CAMBIOS:
+-- - tbl_batch_job_cursors.completado_hasta: corte de la última ejecución completada.
+--   El job de eventos pide a Stripe solo los creados desde ahí (created[gte]).
+-- - Índice por stripe_subscription_id en tbl_negocios: cada lote de eventos busca
+--   sus negocios con un solo IN (y el webhook invoice.paid, uno a uno).
+-- - En prod ddl-auto=validate, por lo que la columna debe existir antes del deploy.
+-- ============================================================================
+
+SET search_path TO ccdiad;
+
+ALTER TABLE ccdiad.tbl_batch_job_cursors
+    ADD COLUMN IF NOT EXISTS completado_hasta TIMESTAMP;
+
+CREATE INDEX IF NOT EXISTS idx_negocio_stripe_subscription_id
+    ON ccdiad.tbl_negocios (stripe_subscription_id);
+
+-- ============================================================================
+-- INSTRUCCIONES DE EJECUCIÓN
+-- ============================================================================
+-- 1. Ejecutar: \i /ruta/a/stripe-reconciliacion.sql
+-- 2. Desplegar la versión con StripeReconciliacionService.
+--    La primera ejecución revisa los eventos de stripe.reconciliacion.ventana-inicial (3 días).
+-- 3. Avance de los jobs:
+--    SELECT nombre, estado, completado_hasta, procesados, ultimo_error
+--    FROM ccdiad.tbl_batch_job_cursors WHERE nombre LIKE 'stripe.reconciliacion.%';
+-- ============================================================================
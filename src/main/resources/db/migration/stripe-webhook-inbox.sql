@@ -0,0 +1,54 @@
+-- ============================================================================
+-- SCRIPT DE MIGRACIÓN: Inbox de webhooks de Stripe
+-- ============================================================================
+-- PROPÓSITO: Responder a Stripe en cuanto el webhook está verificado y guardado,
+--            procesar los eventos en segundo plano con reintentos y descartar
+--            los reenvíos del mismo evento.
+-- FECHA: 2026-10-18
+-- VERSIÓN: 1.0
+--
+-- CAMBIOS:
+-- - Nueva tabla tbl_stripe_webhook_events (entidad StripeWebhookEvent).
+-- - event_id único: Stripe entrega al menos una vez; un reenvío no se inserta.
+-- - Índice (status, next_attempt_at) para el reclamo con SKIP LOCKED.
+-- - Índice (object_id, status) para procesar en orden los eventos de un mismo
+--   objeto (suscripción, payment intent...).
+-- - En prod ddl-auto=validate, por lo que la tabla debe existir antes del deploy.
+-- ============================================================================
+
+SET search_path TO ccdiad;
+
+CREATE TABLE IF NOT EXISTS ccdiad.tbl_stripe_webhook_events (
+    id                 VARCHAR(255) PRIMARY KEY,
+    event_id           VARCHAR(255) NOT NULL,
+    type               VARCHAR(100) NOT NULL,
+    object_id          VARCHAR(255),
+    payload            TEXT         NOT NULL,
+    stripe_created_at  TIMESTAMP    NOT NULL,
+    status             VARCHAR(20)  NOT NULL,
+    attempts           INTEGER      NOT NULL DEFAULT 0,
+    next_attempt_at    TIMESTAMP    NOT NULL,
+    last_error         TEXT,
+    processed_at       TIMESTAMP,
+    created_at         TIMESTAMP    NOT NULL DEFAULT now(),
+    CONSTRAINT uk_stripe_webhook_events_event_id UNIQUE (event_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_stripe_webhook_events_pendientes
+    ON ccdiad.tbl_stripe_webhook_events (status, next_attempt_at);
+
+CREATE INDEX IF NOT EXISTS idx_stripe_webhook_events_objeto
+    ON ccdiad.tbl_stripe_webhook_events (object_id, status);
+
+-- ============================================================================
+-- INSTRUCCIONES DE EJECUCIÓN
+-- ============================================================================
+-- 1. Ejecutar: \i /ruta/a/stripe-webhook-inbox.sql
+-- 2. Desplegar la versión con StripeWebhookInboxService.
+-- 3. Eventos descartados (agotaron reintentos):
+--    SELECT event_id, type, object_id, attempts, last_error FROM ccdiad.tbl_stripe_webhook_events
+--    WHERE status = 'FAILED' ORDER BY created_at DESC;
+--    Para reprocesarlos: UPDATE ... SET status = 'PENDING', attempts = 0,
+--    next_attempt_at = now() WHERE event_id = '<evt_...>';
+-- 4. Un evento FAILED deja de bloquear a los siguientes del mismo objeto.
+-- ============================================================================
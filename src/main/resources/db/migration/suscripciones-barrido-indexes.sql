@@ -0,0 +1,30 @@
+-- ============================================================================
+-- SCRIPT DE MIGRACIÓN: Índices del barrido nocturno de suscripciones
+-- ============================================================================
+-- PROPÓSITO: Que SuscripcionService seleccione por consulta los negocios
+--            vencidos o por notificar en lugar de recorrer toda la tabla.
+-- FECHA: 2026-10-19
+-- VERSIÓN: 1.0
+--
+-- CAMBIOS:
+-- - idx_negocio_fin_prueba (en_periodo_prueba, fecha_fin_prueba): pruebas
+--   vencidas y aviso de fin de prueba.
+-- - idx_negocio_proximo_cobro (estado_pago, fecha_proximo_cobro): suscripciones
+--   vencidas y aviso de vencimiento.
+-- ============================================================================
+
+SET search_path TO ccdiad;
+
+CREATE INDEX IF NOT EXISTS idx_negocio_fin_prueba
+    ON ccdiad.tbl_negocios (en_periodo_prueba, fecha_fin_prueba);
+
+CREATE INDEX IF NOT EXISTS idx_negocio_proximo_cobro
+    ON ccdiad.tbl_negocios (estado_pago, fecha_proximo_cobro);
+
+-- ============================================================================
+-- INSTRUCCIONES DE EJECUCIÓN
+-- ============================================================================
+-- 1. Ejecutar: \i /ruta/a/suscripciones-barrido-indexes.sql
+--    (en tablas grandes se puede usar CREATE INDEX CONCURRENTLY fuera de transacción)
+-- 2. Tamaño de lote del barrido: suscripciones.barrido.lote (500 por defecto).
+-- ============================================================================
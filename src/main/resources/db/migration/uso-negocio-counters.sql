@@ -0,0 +1,38 @@
+-- ============================================================================
+-- SCRIPT DE MIGRACIÓN: Contadores atómicos de uso por plan
+-- ============================================================================
+-- PROPÓSITO: Soportar la verificación de cuotas con un único UPDATE indexado
+-- FECHA: 2026-10-18
+-- VERSIÓN: 1.0
+--
+-- CAMBIOS:
+-- - tbl_uso_negocio pasa a ser la fuente de verdad de los contadores
+--   (UPDATE ... SET total = total + 1 WHERE total < :max). La restricción
+--   única (negocio_id, periodo) ya cubre la búsqueda de la fila.
+-- - El recuento de citas del mes usa un rango sobre fecha_hora en lugar de
+--   YEAR()/MONTH(), por lo que necesita un índice compuesto.
+-- ============================================================================
+
+SET search_path TO ccdiad;
+
+CREATE INDEX IF NOT EXISTS idx_citas_negocio_fecha_hora ON ccdiad.tbl_citas (negocio_id, fecha_hora);
+
+-- Asegurar la restricción única usada por ON CONFLICT al crear el registro del periodo
+DO $$
+BEGIN
+    IF NOT EXISTS (
+        SELECT 1 FROM pg_indexes
+        WHERE schemaname = 'ccdiad' AND tablename = 'tbl_uso_negocio'
+          AND indexdef LIKE '%UNIQUE%(negocio_id, periodo)%'
+    ) THEN
+        CREATE UNIQUE INDEX uk_uso_negocio_negocio_periodo ON ccdiad.tbl_uso_negocio (negocio_id, periodo);
+    END IF;
+END $$;
+
+-- ============================================================================
+-- INSTRUCCIONES DE EJECUCIÓN
+-- ============================================================================
+-- 1. Ejecutar: \i /ruta/a/uso-negocio-counters.sql
+-- 2. Los contadores existentes se corrigen solos en la siguiente ejecución
+--    de UsoNegocioScheduler (4:00 AM) o en la primera alta del mes
+-- ============================================================================
@@ -0,0 +1,237 @@
+package com.reservas.batch;
+
+import com.reservas.entity.BatchJobCursor;
+import com.reservas.repository.BatchJobCursorRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ChunkJobRunner - Pruebas Unitarias")
+class ChunkJobRunnerTest {
+
+    @Mock
+    private BatchJobCursorRepository cursorRepository;
+
+    private final Map<String, BatchJobCursor> cursores = new HashMap<>();
+    private SimpleMeterRegistry meterRegistry;
+    private ChunkJobRunner runner;
+
+    @BeforeEach
+    void setUp() {
+        // Sin base de datos: el callback de la transacción se ejecuta directamente
+        lenient().when(cursorRepository.bloquear(anyString()))
+                .thenAnswer(inv -> Optional.ofNullable(cursores.get(inv.<String>getArgument(0))));
+        lenient().when(cursorRepository.save(any(BatchJobCursor.class))).thenAnswer(inv -> {
+            BatchJobCursor cursor = inv.getArgument(0);
+            cursores.put(cursor.getNombre(), cursor);
+            return cursor;
+        });
+        meterRegistry = new SimpleMeterRegistry();
+        runner = nuevoRunner(1);
+    }
+
+    @Test
+    @DisplayName("Recorre todos los elementos en lotes y deja el cursor completado")
+    void ejecutar_recorreEnLotes() {
+        Origen origen = new Origen(7);
+
+        ChunkJobRunner.Resultado resultado = runner.ejecutar(origen.job(), 3);
+
+        assertTrue(resultado.completado());
+        assertEquals(7, resultado.procesados());
+        assertEquals(3, resultado.lotes());
+        assertEquals(List.of(1, 2, 3, 4, 5, 6, 7), origen.procesados);
+        BatchJobCursor cursor = cursores.get("test.job");
+        assertEquals(BatchJobCursor.Estado.COMPLETADO, cursor.getEstado());
+        assertEquals("7", cursor.getUltimaClave());
+        assertEquals(7, meterRegistry.get("batch.job.items").tag("job", "test.job").counter().count());
+    }
+
+    @Test
+    @DisplayName("Reintenta un lote fallido antes de detenerse")
+    void ejecutar_reintentaLote() {
+        Origen origen = new Origen(4);
+        origen.fallosPendientes = 1;
+
+        ChunkJobRunner.Resultado resultado = runner.ejecutar(origen.job(), 2);
+
+        assertTrue(resultado.completado());
+        assertEquals(List.of(1, 2, 3, 4), origen.procesados);
+    }
+
+    @Test
+    @DisplayName("Una ejecución detenida se reanuda con el mismo corte sin repetir lotes")
+    void ejecutar_reanuda() {
+        Origen origen = new Origen(6);
+
+        origen.fallarEnLote = 2;
+        origen.fallosPendientes = 2;
+        ChunkJobRunner.Resultado primera = runner.ejecutar(origen.job(), 2);
+        LocalDateTime corte = cursores.get("test.job").getCorte();
+
+        assertFalse(primera.completado());
+        assertEquals(BatchJobCursor.Estado.FALLIDO, cursores.get("test.job").getEstado());
+        assertNotNull(cursores.get("test.job").getUltimoError());
+        assertEquals(1, meterRegistry.get("batch.job.errors").tag("job", "test.job").counter().count());
+
+        ChunkJobRunner.Resultado segunda = runner.ejecutar(origen.job(), 2);
+
+        assertTrue(segunda.completado());
+        assertEquals(4, segunda.procesados());
+        assertEquals(List.of(1, 2, 3, 4, 5, 6), origen.procesados);
+        assertEquals(List.of(corte), origen.cortes.stream().distinct().toList());
+    }
+
+    @Test
+    @DisplayName("Tras completar, o si la ejecución interrumpida es antigua, empieza de cero")
+    void ejecutar_empiezaDeCero() {
+        Origen origen = new Origen(2);
+        runner.ejecutar(origen.job(), 5);
+        runner.ejecutar(origen.job(), 5);
+        assertEquals(List.of(1, 2, 1, 2), origen.procesados);
+
+        cursores.put("test.job", BatchJobCursor.builder()
+                .nombre("test.job")
+                .estado(BatchJobCursor.Estado.FALLIDO)
+                .ultimaClave("1")
+                .corte(LocalDateTime.now().minusDays(2))
+                .iniciadoEn(LocalDateTime.now().minusDays(2))
+                .actualizadoEn(LocalDateTime.now().minusDays(2))
+                .build());
+        origen.procesados.clear();
+
+        runner.ejecutar(origen.job(), 5);
+
+        assertEquals(List.of(1, 2), origen.procesados);
+    }
+
+    @Test
+    @DisplayName("Un job incremental recibe el corte de la última ejecución completada")
+    void ejecutar_incremental() {
+        List<LocalDateTime> desdes = new ArrayList<>();
+        List<LocalDateTime> cortes = new ArrayList<>();
+        ChunkJob<Integer> job = ChunkJob.incremental("test.incremental",
+                (despuesDe, desde, corte, limite) -> {
+                    desdes.add(desde);
+                    cortes.add(corte);
+                    return List.of();
+                },
+                String::valueOf,
+                (lote, corte) -> lote.size());
+
+        runner.ejecutar(job, 5);
+        runner.ejecutar(job, 5);
+
+        assertNull(desdes.get(0));
+        assertEquals(cortes.get(0), desdes.get(1));
+        assertEquals(cortes.get(1), cursores.get("test.incremental").getCompletadoHasta());
+    }
+
+    @Test
+    @DisplayName("Un job sin transacción lee y procesa fuera de la transacción del cursor")
+    void ejecutar_sinTransaccion() {
+        AtomicInteger abiertas = new AtomicInteger();
+        PlatformTransactionManager manager = new PlatformTransactionManager() {
+            @Override
+            public TransactionStatus getTransaction(TransactionDefinition definicion) {
+                abiertas.incrementAndGet();
+                return new SimpleTransactionStatus();
+            }
+
+            @Override
+            public void commit(TransactionStatus status) {
+                abiertas.decrementAndGet();
+            }
+
+            @Override
+            public void rollback(TransactionStatus status) {
+                abiertas.decrementAndGet();
+            }
+        };
+        runner = new ChunkJobRunner(cursorRepository, new TransactionTemplate(manager),
+                meterRegistry, 500, 1, Duration.ZERO, Duration.ofHours(12));
+        List<Integer> abiertasAlProcesar = new ArrayList<>();
+        Origen origen = new Origen(5);
+        ChunkJob<Integer> job = ChunkJob.<Integer>de("test.job",
+                (despuesDe, corte, limite) -> origen.job().leer(despuesDe, corte, limite),
+                String::valueOf,
+                (lote, corte) -> {
+                    abiertasAlProcesar.add(abiertas.get());
+                    return origen.job().procesar(lote, corte);
+                }).sinTransaccion();
+
+        ChunkJobRunner.Resultado resultado = runner.ejecutar(job, 2);
+
+        assertTrue(resultado.completado());
+        assertEquals(List.of(1, 2, 3, 4, 5), origen.procesados);
+        assertEquals(List.of(0, 0, 0), abiertasAlProcesar);
+        assertEquals("5", cursores.get("test.job").getUltimaClave());
+        assertEquals(BatchJobCursor.Estado.COMPLETADO, cursores.get("test.job").getEstado());
+    }
+
+    private ChunkJobRunner nuevoRunner(int reintentos) {
+        return new ChunkJobRunner(cursorRepository, new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                meterRegistry, 500, reintentos, Duration.ZERO, Duration.ofHours(12));
+    }
+
+    /**
+     * Elementos 1..n con su número como clave. Puede fallar en un lote concreto.
+     */
+    private static class Origen {
+        final List<Integer> elementos;
+        final List<Integer> procesados = new ArrayList<>();
+        final List<LocalDateTime> cortes = new ArrayList<>();
+        int lotes;
+        int fallarEnLote = 1;
+        int fallosPendientes;
+
+        Origen(int n) {
+            elementos = IntStream.rangeClosed(1, n).boxed().toList();
+        }
+
+        ChunkJob<Integer> job() {
+            return ChunkJob.de("test.job",
+                    (despuesDe, corte, limite) -> elementos.stream()
+                            .filter(e -> despuesDe == null || e > Integer.parseInt(despuesDe))
+                            .limit(limite)
+                            .toList(),
+                    String::valueOf,
+                    (lote, corte) -> {
+                        lotes++;
+                        if (fallosPendientes > 0 && lotes >= fallarEnLote) {
+                            fallosPendientes--;
+                            throw new IllegalStateException("Fallo simulado");
+                        }
+                        cortes.add(corte);
+                        procesados.addAll(lote);
+                        return lote.size();
+                    });
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.reservas.config;
+
+import com.reservas.ratelimit.BucketStore;
+import com.reservas.ratelimit.RedisBucketStore;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.codec.RedisCodec;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@DisplayName("RateLimitConfig - Conexión Redis para rate limiting")
+class RateLimitConfigTest {
+
+    private final RateLimitConfig config = new RateLimitConfig();
+
+    @Test
+    @DisplayName("Con Redis en cluster usa una conexión de cluster")
+    @SuppressWarnings("unchecked")
+    void redisCluster_usaConexionDeCluster() {
+        RedisClusterClient client = mock(RedisClusterClient.class);
+        StatefulRedisClusterConnection<String, byte[]> conexion = mock(StatefulRedisClusterConnection.class, RETURNS_DEEP_STUBS);
+        when(client.connect(any(RedisCodec.class))).thenReturn(conexion);
+
+        StatefulConnection<String, byte[]> resultado = config.rateLimitRedisConnection(factoryCon(client));
+        BucketStore store = config.redisBucketStore(resultado);
+
+        assertSame(conexion, resultado);
+        assertInstanceOf(RedisBucketStore.class, store);
+    }
+
+    @Test
+    @DisplayName("Con Redis de nodo único usa una conexión simple")
+    @SuppressWarnings("unchecked")
+    void redisNodoUnico_usaConexionSimple() {
+        RedisClient client = mock(RedisClient.class);
+        StatefulRedisConnection<String, byte[]> conexion = mock(StatefulRedisConnection.class, RETURNS_DEEP_STUBS);
+        when(client.connect(any(RedisCodec.class))).thenReturn(conexion);
+
+        StatefulConnection<String, byte[]> resultado = config.rateLimitRedisConnection(factoryCon(client));
+        BucketStore store = config.redisBucketStore(resultado);
+
+        assertSame(conexion, resultado);
+        assertInstanceOf(RedisBucketStore.class, store);
+    }
+
+    private static LettuceConnectionFactory factoryCon(io.lettuce.core.AbstractRedisClient client) {
+        LettuceConnectionFactory factory = mock(LettuceConnectionFactory.class);
+        when(factory.getRequiredNativeClient()).thenReturn(client);
+        return factory;
+    }
+}
@@ -0,0 +1,185 @@
+package com.reservas.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ClienteHttpSaliente contra un stub HTTP local con latencia configurable.
+ */
+@DisplayName("ClienteHttpSaliente - Pool, límites por host y métricas")
+class ClienteHttpSalienteTest {
+
+    private HttpServer stub;
+    private String url;
+    private SimpleMeterRegistry registry;
+
+    private volatile long latenciaMs = 0;
+    private final Set<Integer> puertosCliente = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger enCurso = new AtomicInteger();
+    private final AtomicInteger maxEnCurso = new AtomicInteger();
+    private final CountDownLatch cabecerasEnviadas = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        stub.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        stub.createContext("/eco", this::responder);
+        stub.createContext("/cuerpo-lento", this::responderCuerpoLento);
+        stub.start();
+        url = "http://127.0.0.1:" + stub.getAddress().getPort() + "/eco";
+        registry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.stop(0);
+    }
+
+    @Test
+    @DisplayName("Reutiliza la conexión y registra la latencia por host y estado")
+    void reutilizaConexionYRegistraLatencia() {
+        ClienteHttpSaliente cliente = cliente(20, Duration.ofSeconds(5), Duration.ofSeconds(5));
+
+        for (int i = 0; i < 20; i++) {
+            ResponseEntity<String> response = cliente.postForEntity(url, new HttpEntity<>("hola"), String.class);
+            assertEquals("ok", response.getBody());
+        }
+
+        // Keep-alive: las 20 peticiones secuenciales salen por la misma conexión
+        assertEquals(1, puertosCliente.size());
+        assertEquals(20, registry.get("http.client.saliente")
+                .tag("host", "127.0.0.1").tag("estado", "200").timer().count());
+    }
+
+    @Test
+    @DisplayName("No supera el máximo de peticiones simultáneas por host")
+    void respetaLimitePorHost() {
+        latenciaMs = 100;
+        ClienteHttpSaliente cliente = cliente(2, Duration.ofSeconds(5), Duration.ofSeconds(5));
+
+        List<CompletableFuture<ResponseEntity<String>>> futuros = IntStream.range(0, 8)
+                .mapToObj(i -> cliente.postForEntityAsync(url, new HttpEntity<>("hola"), String.class))
+                .toList();
+        futuros.forEach(CompletableFuture::join);
+
+        assertTrue(maxEnCurso.get() <= 2, "en curso a la vez: " + maxEnCurso.get());
+        assertEquals(0.0, registry.get("http.client.saliente.en-curso").gauge().value());
+    }
+
+    @Test
+    @DisplayName("Rechaza la petición y cuenta la saturación si el límite sigue lleno")
+    void rechazaCuandoElHostEstaSaturado() {
+        latenciaMs = 500;
+        ClienteHttpSaliente cliente = cliente(1, Duration.ofSeconds(5), Duration.ofMillis(50));
+
+        CompletableFuture<ResponseEntity<String>> primera = cliente.postForEntityAsync(url, new HttpEntity<>("a"), String.class);
+        esperarEnCurso();
+        CompletableFuture<ResponseEntity<String>> segunda = cliente.postForEntityAsync(url, new HttpEntity<>("b"), String.class);
+
+        CompletionException error = assertThrows(CompletionException.class, segunda::join);
+        assertInstanceOf(ResourceAccessException.class, error.getCause());
+        assertEquals("ok", primera.join().getBody());
+        assertEquals(1.0, registry.get("http.client.saliente.saturado").counter().count());
+    }
+
+    @Test
+    @DisplayName("Mantiene ocupado el hueco hasta leer el cuerpo de la respuesta")
+    void mantieneHuecoHastaLeerElCuerpo() throws InterruptedException {
+        ClienteHttpSaliente cliente = cliente(1, Duration.ofSeconds(5), Duration.ofMillis(50));
+        String urlLenta = url.replace("/eco", "/cuerpo-lento");
+
+        CompletableFuture<ResponseEntity<String>> primera =
+                cliente.postForEntityAsync(urlLenta, new HttpEntity<>("a"), String.class);
+        assertTrue(cabecerasEnviadas.await(2, TimeUnit.SECONDS));
+
+        // Cabeceras recibidas, cuerpo pendiente: la conexión sigue ocupada
+        assertThrows(ResourceAccessException.class,
+                () -> cliente.postForEntity(url, new HttpEntity<>("b"), String.class));
+        assertEquals("ok", primera.join().getBody());
+        assertEquals(0.0, registry.get("http.client.saliente.en-curso").gauge().value());
+    }
+
+    @Test
+    @DisplayName("Corta la petición al vencer el timeout de respuesta")
+    void cortaAlVencerTimeoutDeRespuesta() {
+        latenciaMs = 1_000;
+        ClienteHttpSaliente cliente = cliente(20, Duration.ofMillis(100), Duration.ofSeconds(5));
+
+        assertThrows(ResourceAccessException.class,
+                () -> cliente.postForEntity(url, new HttpEntity<>("hola"), String.class));
+        assertEquals(1, registry.get("http.client.saliente").tag("estado", "IO_ERROR").timer().count());
+    }
+
+    private ClienteHttpSaliente cliente(int maxPorHost, Duration readTimeout, Duration esperaMax) {
+        return new ClienteHttpSaliente(registry, Duration.ofSeconds(2), readTimeout, maxPorHost, esperaMax);
+    }
+
+    private void esperarEnCurso() {
+        long limite = System.currentTimeMillis() + 2_000;
+        while (enCurso.get() == 0 && System.currentTimeMillis() < limite) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private void responderCuerpoLento(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().add("Content-Type", "text/plain");
+            exchange.sendResponseHeaders(200, 2);
+            exchange.getResponseBody().flush();
+            cabecerasEnviadas.countDown();
+            Thread.sleep(300);
+            exchange.getResponseBody().write("ok".getBytes(StandardCharsets.UTF_8));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void responder(HttpExchange exchange) throws IOException {
+        int actuales = enCurso.incrementAndGet();
+        maxEnCurso.accumulateAndGet(actuales, Math::max);
+        puertosCliente.add(exchange.getRemoteAddress().getPort());
+        try {
+            exchange.getRequestBody().readAllBytes();
+            if (latenciaMs > 0) {
+                Thread.sleep(latenciaMs);
+            }
+            byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/plain");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // El cliente cerró la conexión (timeout)
+        } finally {
+            enCurso.decrementAndGet();
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.reservas.integration;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.reservas.entity.IdempotencyRecord;
+import com.reservas.exception.IdempotencyException;
+import com.reservas.repository.IdempotencyRecordRepository;
+import com.reservas.service.IdempotencyService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Verifica las peticiones con Idempotency-Key contra la base de datos: una sola
+ * ejecución por clave aunque lleguen repeticiones simultáneas.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@ActiveProfiles("test")
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:idempotency;MODE=PostgreSQL;LOCK_TIMEOUT=10000;DB_CLOSE_DELAY=-1"
+})
+@DisplayName("Idempotency-Key - Integración")
+class IdempotencyIntegrationTest {
+
+    private static final TypeReference<Map<String, Object>> TIPO = new TypeReference<>() {};
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private IdempotencyRecordRepository repository;
+
+    @Test
+    @DisplayName("Las repeticiones simultáneas esperan a la original y reciben su respuesta")
+    void ejecutar_repeticionesSimultaneas() throws Exception {
+        String clave = UUID.randomUUID().toString();
+        Map<String, Object> peticion = Map.of("amount", 150);
+        AtomicInteger ejecuciones = new AtomicInteger();
+        List<String> clavesStripe = new ArrayList<>();
+        CountDownLatch salida = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        try {
+            List<Future<ResponseEntity<Map<String, Object>>>> respuestas = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                respuestas.add(executor.submit(() -> {
+                    salida.await(5, TimeUnit.SECONDS);
+                    return idempotencyService.ejecutar("cliente@test.com", "payments.create", clave, peticion, TIPO,
+                            claveStripe -> {
+                                ejecuciones.incrementAndGet();
+                                clavesStripe.add(claveStripe);
+                                dormir(300);
+                                return ResponseEntity.status(HttpStatus.CREATED)
+                                        .body(Map.of("paymentIntentId", "pi_123", "amount", new BigDecimal("150.00")));
+                            });
+                }));
+            }
+            salida.countDown();
+
+            for (Future<ResponseEntity<Map<String, Object>>> respuesta : respuestas) {
+                ResponseEntity<Map<String, Object>> r = respuesta.get(10, TimeUnit.SECONDS);
+                assertThat(r.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+                assertThat(r.getBody()).containsEntry("paymentIntentId", "pi_123");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(ejecuciones.get()).isEqualTo(1);
+
+        // Una repetición posterior recibe la respuesta guardada
+        ResponseEntity<Map<String, Object>> repetida = idempotencyService.ejecutar(
+                "cliente@test.com", "payments.create", clave, peticion, TIPO, claveStripe -> {
+                    throw new AssertionError("No debe ejecutarse de nuevo");
+                });
+        assertThat(repetida.getHeaders().getFirst(IdempotencyService.HEADER_REPLAYED)).isEqualTo("true");
+        assertThat(repetida.getBody()).containsEntry("amount", new BigDecimal("150.00"));
+
+        IdempotencyRecord registro = repository.findAll().stream()
+                .filter(r -> r.getIdempotencyKey().equals(clave))
+                .findFirst().orElseThrow();
+        assertThat(registro.getEstado()).isEqualTo(IdempotencyRecord.Estado.COMPLETADO);
+        assertThat(registro.getHttpStatus()).isEqualTo(201);
+        assertThat(clavesStripe.get(0)).startsWith("payments.create-").doesNotContain(clave);
+    }
+
+    @Test
+    @DisplayName("Reutilizar la clave con otra petición devuelve 422")
+    void ejecutar_claveReutilizada() {
+        String clave = UUID.randomUUID().toString();
+        idempotencyService.ejecutar("cliente@test.com", "payments.create", clave, Map.of("amount", 100), TIPO,
+                claveStripe -> ResponseEntity.ok(Map.of("ok", true)));
+
+        assertThatThrownBy(() -> idempotencyService.ejecutar("cliente@test.com", "payments.create", clave,
+                Map.of("amount", 200), TIPO, claveStripe -> ResponseEntity.ok(Map.of("ok", true))))
+                .isInstanceOf(IdempotencyException.class)
+                .satisfies(e -> assertThat(((IdempotencyException) e).getStatus())
+                        .isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY));
+
+        // La misma clave de otro usuario es independiente
+        ResponseEntity<Map<String, Object>> otro = idempotencyService.ejecutar("otro@test.com", "payments.create",
+                clave, Map.of("amount", 200), TIPO, claveStripe -> ResponseEntity.ok(Map.of("ok", true)));
+        assertThat(otro.getHeaders().containsKey(IdempotencyService.HEADER_REPLAYED)).isFalse();
+    }
+
+    @Test
+    @DisplayName("Un error no se guarda: el reintento vuelve a ejecutar la operación")
+    void ejecutar_errorPermiteReintento() {
+        String clave = UUID.randomUUID().toString();
+        AtomicInteger ejecuciones = new AtomicInteger();
+
+        assertThatThrownBy(() -> idempotencyService.ejecutar("cliente@test.com", "pagos.checkout", clave,
+                Map.of("plan", "basico"), TIPO, claveStripe -> {
+                    ejecuciones.incrementAndGet();
+                    throw new IllegalStateException("Stripe no disponible");
+                })).isInstanceOf(IllegalStateException.class);
+
+        ResponseEntity<Map<String, Object>> reintento = idempotencyService.ejecutar("cliente@test.com",
+                "pagos.checkout", clave, Map.of("plan", "basico"), TIPO, claveStripe -> {
+                    ejecuciones.incrementAndGet();
+                    return ResponseEntity.status(HttpStatus.CREATED).body(Map.of("sessionId", "cs_1"));
+                });
+
+        assertThat(reintento.getBody()).containsEntry("sessionId", "cs_1");
+        assertThat(ejecuciones.get()).isEqualTo(2);
+    }
+
+    private static void dormir(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.reservas.integration;
+
+import com.reservas.entity.NotificationLog;
+import com.reservas.entity.NotificationOutbox;
+import com.reservas.notifications.domain.NotificationChannel;
+import com.reservas.notifications.dto.SendNotificationRequest;
+import com.reservas.notifications.service.NotificationOutboxService;
+import com.reservas.repository.NotificationOutboxRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Verifica el outbox contra la base de datos: la notificación se confirma o se
+ * descarta junto con la transacción que la encola, el reclamo solo devuelve
+ * notificaciones pendientes cuyo próximo intento ya venció y la purga solo borra
+ * las resueltas.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@ActiveProfiles("test")
+@TestPropertySource(properties =
+        "spring.datasource.url=jdbc:h2:mem:notificationoutbox;MODE=PostgreSQL;LOCK_TIMEOUT=10000;DB_CLOSE_DELAY=-1")
+@DisplayName("Outbox de notificaciones - Integración")
+class NotificationOutboxIntegrationTest {
+
+    @Autowired
+    private NotificationOutboxService notificationOutboxService;
+
+    @Autowired
+    private NotificationOutboxRepository outboxRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    @DisplayName("La notificación solo existe si la transacción de negocio se confirma")
+    void encolar_siguiendoLaTransaccion() {
+        String confirmada = "test-confirmada-" + UUID.randomUUID();
+        String revertida = "test-revertida-" + UUID.randomUUID();
+
+        transactionTemplate.executeWithoutResult(status -> encolar(confirmada));
+        transactionTemplate.executeWithoutResult(status -> {
+            encolar(revertida);
+            status.setRollbackOnly();
+        });
+
+        assertThat(outboxRepository.findByIdempotencyKey(confirmada)).isPresent();
+        assertThat(outboxRepository.findByIdempotencyKey(revertida)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Encolar dos veces la misma clave deja una sola notificación")
+    void encolar_idempotente() {
+        String clave = "test-duplicada-" + UUID.randomUUID();
+
+        String primera = transactionTemplate.execute(status -> encolar(clave).getId());
+        String segunda = transactionTemplate.execute(status -> encolar(clave).getId());
+
+        assertThat(segunda).isEqualTo(primera);
+    }
+
+    @Test
+    @DisplayName("Encolar guarda usuario y marca de contenido sensible")
+    void encolar_conUsuarioYContenidoSensible() {
+        String clave = "test-sensible-" + UUID.randomUUID();
+        UUID usuarioId = UUID.randomUUID();
+
+        NotificationOutbox encolada = transactionTemplate.execute(status -> notificationOutboxService.encolar(
+                SendNotificationRequest.builder()
+                        .channel(NotificationChannel.EMAIL)
+                        .usuarioId(usuarioId.toString())
+                        .recipient("nuevo@test.com")
+                        .content("<p>Contraseña temporal</p>")
+                        .sensitiveContent(true)
+                        .build(),
+                NotificationLog.NotificationType.CUSTOM,
+                clave));
+
+        assertThat(encolada.getUsuarioId()).isEqualTo(usuarioId);
+        assertThat(encolada.isSensitiveContent()).isTrue();
+        assertThat(encolada.getStatus()).isEqualTo(NotificationOutbox.OutboxStatus.PENDING);
+        assertThat(encolada.getAttempts()).isZero();
+    }
+
+    @Test
+    @DisplayName("Solo reclama notificaciones pendientes con el próximo intento vencido")
+    void reclamarPendientes_soloVencidas() {
+        LocalDateTime ahora = LocalDateTime.now();
+        String vencida = guardar(NotificationOutbox.OutboxStatus.PENDING, ahora.minusMinutes(1));
+        String futura = guardar(NotificationOutbox.OutboxStatus.PENDING, ahora.plusMinutes(10));
+        String enviada = guardar(NotificationOutbox.OutboxStatus.SENT, ahora.minusMinutes(1));
+
+        List<String> ids = transactionTemplate.execute(status ->
+                outboxRepository.reclamarPendientes(ahora, 100));
+
+        assertThat(ids).contains(vencida);
+        assertThat(ids).doesNotContain(futura, enviada);
+    }
+
+    @Test
+    @DisplayName("La purga borra por lotes solo las notificaciones resueltas")
+    void eliminarResueltas_porLotes() {
+        LocalDateTime ahora = LocalDateTime.now();
+        String pendiente = guardar(NotificationOutbox.OutboxStatus.PENDING, ahora);
+        String enviada = guardar(NotificationOutbox.OutboxStatus.SENT, ahora);
+        String fallida = guardar(NotificationOutbox.OutboxStatus.FAILED, ahora);
+        LocalDateTime antesDe = LocalDateTime.now().plusMinutes(1);
+
+        Integer primerLote = transactionTemplate.execute(status -> outboxRepository.eliminarResueltas(antesDe, 1));
+        transactionTemplate.execute(status -> outboxRepository.eliminarResueltas(antesDe, 1000));
+
+        assertThat(primerLote).isEqualTo(1);
+        assertThat(outboxRepository.findById(pendiente)).isPresent();
+        assertThat(outboxRepository.findAllById(List.of(enviada, fallida))).isEmpty();
+        Integer anteriores = transactionTemplate.execute(status ->
+                outboxRepository.eliminarResueltas(ahora.minusDays(1), 1000));
+        assertThat(anteriores).isZero();
+    }
+
+    private NotificationOutbox encolar(String clave) {
+        return notificationOutboxService.encolar(SendNotificationRequest.builder()
+                        .channel(NotificationChannel.EMAIL)
+                        .recipient("cliente@test.com")
+                        .subject("Prueba")
+                        .content("<p>Prueba</p>")
+                        .build(),
+                NotificationLog.NotificationType.CUSTOM,
+                clave);
+    }
+
+    private String guardar(NotificationOutbox.OutboxStatus estado, LocalDateTime proximoIntento) {
+        return outboxRepository.save(NotificationOutbox.builder()
+                .idempotencyKey("test-" + UUID.randomUUID())
+                .channel(NotificationChannel.EMAIL)
+                .recipient("cliente@test.com")
+                .content("<p>Prueba</p>")
+                .status(estado)
+                .nextAttemptAt(proximoIntento)
+                .build()).getId();
+    }
+}
@@ -0,0 +1,107 @@
+package com.reservas.integration;
+
+import com.reservas.entity.NotificationLog;
+import com.reservas.entity.NotificationLogArchivo;
+import com.reservas.notifications.domain.NotificationChannel;
+import com.reservas.notifications.domain.NotificationLogArchivado;
+import com.reservas.notifications.service.NotificationRetentionService;
+import com.reservas.repository.NotificationLogArchivoRepository;
+import com.reservas.repository.NotificationLogRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Verifica la retención de notificaciones contra la base de datos: las antiguas
+ * pasan a bloques comprimidos legibles, las recientes no se tocan y los bloques
+ * caducados se eliminan.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@ActiveProfiles("test")
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:notificationretention;MODE=PostgreSQL;LOCK_TIMEOUT=10000;DB_CLOSE_DELAY=-1",
+        "notificaciones.retencion.lote=2"
+})
+@DisplayName("Retención de notificaciones - Integración")
+class NotificationRetentionIntegrationTest {
+
+    @Autowired
+    private NotificationRetentionService retentionService;
+
+    @Autowired
+    private NotificationLogRepository notificationLogRepository;
+
+    @Autowired
+    private NotificationLogArchivoRepository archivoRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    @DisplayName("Archiva en bloques las notificaciones antiguas y conserva las recientes")
+    void aplicarRetencion_archivaAntiguas() {
+        List<String> antiguas = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            antiguas.add(notificacion("<p>Recordatorio " + i + "</p>", LocalDateTime.now().minusDays(200 - i)).getId());
+        }
+        String reciente = notificacion("<p>Reciente</p>", LocalDateTime.now().minusDays(10)).getId();
+
+        long archivadas = retentionService.aplicarRetencion();
+
+        assertThat(archivadas).isEqualTo(5);
+        assertThat(notificationLogRepository.findAllById(antiguas)).isEmpty();
+        assertThat(notificationLogRepository.findById(reciente)).isPresent();
+
+        List<NotificationLogArchivo> bloques = archivoRepository.findAll();
+        assertThat(bloques).hasSize(3);
+        List<NotificationLogArchivado> leidas = bloques.stream()
+                .flatMap(bloque -> retentionService.leerArchivo(bloque).stream())
+                .toList();
+        assertThat(leidas).extracting(NotificationLogArchivado::id).containsExactlyInAnyOrderElementsOf(antiguas);
+        assertThat(leidas).extracting(NotificationLogArchivado::content).contains("<p>Recordatorio 0</p>");
+        assertThat(leidas).allSatisfy(n -> assertThat(n.status()).isEqualTo(NotificationLog.NotificationStatus.DELIVERED));
+    }
+
+    @Test
+    @DisplayName("Elimina los bloques de archivo caducados")
+    void aplicarRetencion_caducaBloques() {
+        NotificationLogArchivo caducado = archivoRepository.save(NotificationLogArchivo.builder()
+                .desde(LocalDateTime.now().minusDays(900))
+                .hasta(LocalDateTime.now().minusDays(800))
+                .filas(0)
+                .contenido(new byte[0])
+                .build());
+
+        retentionService.aplicarRetencion();
+
+        assertThat(archivoRepository.findById(caducado.getId())).isEmpty();
+    }
+
+    private NotificationLog notificacion(String contenido, LocalDateTime creada) {
+        NotificationLog notificacion = notificationLogRepository.save(NotificationLog.builder()
+                .channel(NotificationChannel.EMAIL)
+                .provider(NotificationLog.NotificationProvider.RESEND)
+                .providerMessageId("re_" + UUID.randomUUID())
+                .recipient("cliente@test.com")
+                .subject("Recordatorio")
+                .content(contenido)
+                .status(NotificationLog.NotificationStatus.DELIVERED)
+                .sentSuccessfully(true)
+                .retryCount(0)
+                .build());
+        // created_at lo fija Hibernate al insertar
+        jdbcTemplate.update("UPDATE tbl_notification_logs SET created_at = ? WHERE id = ?", creada, notificacion.getId());
+        return notificacion;
+    }
+}
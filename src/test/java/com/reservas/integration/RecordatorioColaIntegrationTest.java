@@ -0,0 +1,161 @@
+package com.reservas.integration;
+
+import com.reservas.entity.Cita;
+import com.reservas.entity.Cliente;
+import com.reservas.entity.Negocio;
+import com.reservas.entity.Recordatorio;
+import com.reservas.entity.Servicio;
+import com.reservas.repository.CitaRepository;
+import com.reservas.repository.ClienteRepository;
+import com.reservas.repository.NegocioRepository;
+import com.reservas.repository.RecordatorioRepository;
+import com.reservas.repository.ServicioRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Verifica la cola de recordatorios por scheduled_at: solo se reclaman los vencidos
+ * y dos transacciones concurrentes nunca reclaman la misma fila (SKIP LOCKED).
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@ActiveProfiles("test")
+@TestPropertySource(properties =
+        "spring.datasource.url=jdbc:h2:mem:recordatoriocola;MODE=PostgreSQL;LOCK_TIMEOUT=10000;DB_CLOSE_DELAY=-1")
+@DisplayName("Recordatorios - Cola por scheduled_at")
+class RecordatorioColaIntegrationTest {
+
+    @Autowired
+    private RecordatorioRepository recordatorioRepository;
+
+    @Autowired
+    private CitaRepository citaRepository;
+
+    @Autowired
+    private ClienteRepository clienteRepository;
+
+    @Autowired
+    private ServicioRepository servicioRepository;
+
+    @Autowired
+    private NegocioRepository negocioRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    @DisplayName("Solo reclama recordatorios vencidos, en orden de scheduled_at")
+    void reclamaSoloVencidos() {
+        LocalDateTime ahora = LocalDateTime.now();
+        String vencido = crearRecordatorio(ahora.minusMinutes(5));
+        String masAntiguo = crearRecordatorio(ahora.minusHours(1));
+        String futuro = crearRecordatorio(ahora.plusHours(3));
+        String descartado = crearRecordatorio(null);
+
+        List<String> ids = transactionTemplate.execute(status ->
+                recordatorioRepository.reclamarVencidos(ahora, 100));
+
+        assertThat(ids).containsSubsequence(masAntiguo, vencido);
+        assertThat(ids).doesNotContain(futuro, descartado);
+    }
+
+    @Test
+    @DisplayName("Dos transacciones concurrentes reclaman lotes disjuntos")
+    void reclamosConcurrentes_SonDisjuntos() throws Exception {
+        LocalDateTime ahora = LocalDateTime.now();
+        for (int i = 0; i < 10; i++) {
+            crearRecordatorio(ahora.minusMinutes(10 + i));
+        }
+
+        CountDownLatch primeroReclamo = new CountDownLatch(1);
+        CountDownLatch segundoTermino = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+
+        try {
+            // Primera instancia: reclama y mantiene la transacción abierta
+            Future<List<String>> primero = executor.submit(() -> transactionTemplate.execute(status -> {
+                List<String> ids = recordatorioRepository.reclamarVencidos(ahora, 4);
+                primeroReclamo.countDown();
+                try {
+                    segundoTermino.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return ids;
+            }));
+
+            assertThat(primeroReclamo.await(30, TimeUnit.SECONDS)).isTrue();
+
+            // Segunda instancia: debe saltarse las filas bloqueadas, no esperar por ellas
+            List<String> segundo = transactionTemplate.execute(status ->
+                    recordatorioRepository.reclamarVencidos(ahora, 100));
+            segundoTermino.countDown();
+
+            List<String> lotePrimero = primero.get(30, TimeUnit.SECONDS);
+
+            Set<String> interseccion = new HashSet<>(lotePrimero);
+            interseccion.retainAll(segundo);
+            assertThat(lotePrimero).hasSize(4);
+            assertThat(interseccion).isEmpty();
+            // Si el segundo reclamo esperara por los bloqueos, fallaría por LOCK_TIMEOUT antes
+            // de llegar aquí. H2 bloquea todas las filas que recorre antes de aplicar LIMIT, así
+            // que el segundo lote puede salir vacío; en PostgreSQL recibe las filas restantes.
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private String crearRecordatorio(LocalDateTime scheduledAt) {
+        return transactionTemplate.execute(status -> {
+            String sufijo = UUID.randomUUID().toString();
+            Negocio negocio = negocioRepository.save(Negocio.builder()
+                    .nombre("Negocio Recordatorios " + sufijo)
+                    .email("recordatorios-" + sufijo + "@test.com")
+                    .fechaRegistro(LocalDateTime.now())
+                    .build());
+            Cliente cliente = clienteRepository.save(Cliente.builder()
+                    .negocio(negocio)
+                    .nombre("Cliente")
+                    .email("cliente-" + sufijo + "@test.com")
+                    .build());
+            Servicio servicio = servicioRepository.save(Servicio.builder()
+                    .negocio(negocio)
+                    .nombre("Servicio")
+                    .precio(BigDecimal.TEN)
+                    .duracionMinutos(30)
+                    .build());
+            LocalDateTime fechaCita = LocalDateTime.now().plusDays(1);
+            Cita cita = citaRepository.save(Cita.builder()
+                    .negocio(negocio)
+                    .cliente(cliente)
+                    .servicio(servicio)
+                    .fechaHora(fechaCita)
+                    .fechaFin(fechaCita.plusMinutes(30))
+                    .build());
+            return recordatorioRepository.save(Recordatorio.builder()
+                    .cita(cita)
+                    .tipo(Recordatorio.TipoRecordatorio.EMAIL)
+                    .enviado(false)
+                    .scheduledAt(scheduledAt)
+                    .build()).getId();
+        });
+    }
+}
@@ -0,0 +1,145 @@
+package com.reservas.integration;
+
+import com.reservas.ReservasBackendApplication;
+import com.reservas.service.SchedulerLockService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Dos contextos de la aplicación (dos "instancias") contra la misma base de datos:
+ * cada job programado debe ejecutarse en una sola de ellas.
+ */
+@DisplayName("SchedulerLock - Ejecución exclusiva entre instancias")
+class SchedulerLockIntegrationTest {
+
+    private static final String URL =
+            "jdbc:h2:mem:schedulerlock;MODE=PostgreSQL;LOCK_TIMEOUT=10000;DB_CLOSE_DELAY=-1";
+
+    private static ConfigurableApplicationContext instanciaA;
+    private static ConfigurableApplicationContext instanciaB;
+
+    @BeforeAll
+    static void iniciarInstancias() {
+        // La segunda instancia no recrea el esquema que ya creó la primera
+        instanciaA = iniciar("create-drop");
+        instanciaB = iniciar("update");
+    }
+
+    @AfterAll
+    static void detenerInstancias() {
+        if (instanciaB != null) {
+            instanciaB.close();
+        }
+        if (instanciaA != null) {
+            instanciaA.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Disparos simultáneos en ambas instancias ejecutan el job una sola vez")
+    void disparoSimultaneo_unaSolaEjecucion() throws Exception {
+        SchedulerLockService lockA = instanciaA.getBean(SchedulerLockService.class);
+        SchedulerLockService lockB = instanciaB.getBean(SchedulerLockService.class);
+
+        AtomicInteger ejecuciones = new AtomicInteger();
+        CountDownLatch salida = new CountDownLatch(1);
+        Runnable tarea = () -> {
+            ejecuciones.incrementAndGet();
+            dormir(200);
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Boolean> enA = executor.submit(() -> {
+                salida.await();
+                return lockA.ejecutar("test.simultaneo", Duration.ofMinutes(1), tarea);
+            });
+            Future<Boolean> enB = executor.submit(() -> {
+                salida.await();
+                return lockB.ejecutar("test.simultaneo", Duration.ofMinutes(1), tarea);
+            });
+            salida.countDown();
+
+            assertThat(enA.get(30, TimeUnit.SECONDS) ^ enB.get(30, TimeUnit.SECONDS)).isTrue();
+            assertThat(ejecuciones.get()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Tras terminar, el lease se mantiene la duración mínima: un disparo tardío tampoco ejecuta
+        assertThat(lockB.ejecutar("test.simultaneo", Duration.ofMinutes(1), tarea)).isFalse();
+        assertThat(lockA.ejecutar("test.simultaneo", Duration.ofMinutes(1), tarea)).isFalse();
+        assertThat(ejecuciones.get()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("El heartbeat mantiene el lease de un job más largo que el lease")
+    void jobLargo_heartbeatMantieneLease() throws Exception {
+        SchedulerLockService lockA = instanciaA.getBean(SchedulerLockService.class);
+        SchedulerLockService lockB = instanciaB.getBean(SchedulerLockService.class);
+
+        CountDownLatch enCurso = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // Lease de 300 ms (ver iniciar); el job dura 1.2 s
+            Future<Boolean> largo = executor.submit(() -> lockA.ejecutar("test.largo", Duration.ZERO, () -> {
+                enCurso.countDown();
+                dormir(1200);
+            }));
+            assertThat(enCurso.await(10, TimeUnit.SECONDS)).isTrue();
+
+            // Muy pasado el lease original: sigue tomado gracias al heartbeat
+            dormir(700);
+            assertThat(lockB.ejecutar("test.largo", Duration.ZERO, () -> { })).isFalse();
+
+            assertThat(largo.get(30, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Terminado y sin duración mínima: la otra instancia ya puede ejecutarlo
+        assertThat(lockB.ejecutar("test.largo", Duration.ZERO, () -> { })).isTrue();
+
+        MeterRegistry metricasA = instanciaA.getBean(MeterRegistry.class);
+        assertThat(metricasA.get("scheduler.job.duration").tag("job", "test.largo").timer().count())
+                .isEqualTo(1);
+        MeterRegistry metricasB = instanciaB.getBean(MeterRegistry.class);
+        assertThat(metricasB.get("scheduler.lock.acquire")
+                .tag("job", "test.largo").tag("resultado", "ocupado").timer().count())
+                .isEqualTo(1);
+    }
+
+    private static ConfigurableApplicationContext iniciar(String ddlAuto) {
+        return new SpringApplicationBuilder(ReservasBackendApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles("test")
+                // Argumentos (no properties()): deben imponerse a application-test.properties
+                .run("--spring.datasource.url=" + URL,
+                        "--spring.jpa.hibernate.ddl-auto=" + ddlAuto,
+                        "--scheduler.lock.lease=PT0.3S");
+    }
+
+    private static void dormir(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.reservas.integration;
+
+import com.reservas.entity.StripeWebhookEvent;
+import com.reservas.repository.StripeWebhookEventRepository;
+import com.reservas.service.StripeWebhookInboxService;
+import com.reservas.service.StripeWebhookService;
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.model.Event;
+import com.stripe.net.ApiResource;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Verifica el inbox de webhooks de Stripe contra la base de datos: los reenvíos no
+ * se duplican, los eventos de un mismo objeto se reclaman de uno en uno y en orden,
+ * y un fallo deja el evento pendiente con backoff.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@ActiveProfiles("test")
+@TestPropertySource(properties =
+        "spring.datasource.url=jdbc:h2:mem:stripewebhookinbox;MODE=PostgreSQL;LOCK_TIMEOUT=10000;DB_CLOSE_DELAY=-1")
+@DisplayName("Inbox de webhooks de Stripe - Integración")
+class StripeWebhookInboxIntegrationTest {
+
+    @Autowired
+    private StripeWebhookInboxService inboxService;
+
+    @Autowired
+    private StripeWebhookEventRepository eventRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @MockBean
+    private StripeWebhookService stripeWebhookService;
+
+    @Test
+    @DisplayName("Un reenvío del mismo evento no se guarda de nuevo")
+    void registrar_reenvioEsNoOp() {
+        String eventId = "evt_" + UUID.randomUUID();
+        String payload = paymentIntentPayload(eventId, "payment_intent.succeeded", "pi_" + UUID.randomUUID(), 0);
+
+        boolean primero = inboxService.registrar(evento(payload), payload);
+        boolean segundo = inboxService.registrar(evento(payload), payload);
+
+        assertThat(primero).isTrue();
+        assertThat(segundo).isFalse();
+        assertThat(eventRepository.findAll()).filteredOn(e -> e.getEventId().equals(eventId)).hasSize(1);
+    }
+
+    @Test
+    @DisplayName("Solo reclama el evento más antiguo pendiente de cada objeto")
+    void reclamarPendientes_unoPorObjetoEnOrden() {
+        String pagoA = "pi_" + UUID.randomUUID();
+        String pagoB = "pi_" + UUID.randomUUID();
+        // Llegan desordenados: el posterior de A se recibe primero
+        String posteriorA = registrar(paymentIntentPayload("evt_" + UUID.randomUUID(), "payment_intent.succeeded", pagoA, 10));
+        String anteriorA = registrar(paymentIntentPayload("evt_" + UUID.randomUUID(), "payment_intent.payment_failed", pagoA, 0));
+        String unicoB = registrar(paymentIntentPayload("evt_" + UUID.randomUUID(), "payment_intent.succeeded", pagoB, 5));
+
+        List<String> ids = transactionTemplate.execute(status ->
+                eventRepository.reclamarPendientes(LocalDateTime.now().plusSeconds(1), 100));
+
+        assertThat(ids).contains(idDe(anteriorA), idDe(unicoB));
+        assertThat(ids).doesNotContain(idDe(posteriorA));
+    }
+
+    @Test
+    @DisplayName("Un fallo deja el evento pendiente con backoff y bloquea los siguientes del mismo objeto")
+    void procesarPendientes_falloReintentaYMantieneOrden() throws Exception {
+        String suscripcion = "sub_" + UUID.randomUUID();
+        String primero = registrar(subscriptionPayload("evt_" + UUID.randomUUID(), suscripcion, 0));
+        String segundo = registrar(subscriptionPayload("evt_" + UUID.randomUUID(), suscripcion, 10));
+        doThrow(new ApiConnectionException("Stripe no responde"))
+                .when(stripeWebhookService).procesar(argThat(e -> e != null && primero.equals(e.getId())));
+
+        inboxService.procesarPendientes(100);
+
+        StripeWebhookEvent fallido = eventRepository.findById(idDe(primero)).orElseThrow();
+        assertThat(fallido.getStatus()).isEqualTo(StripeWebhookEvent.EventStatus.PENDING);
+        assertThat(fallido.getAttempts()).isEqualTo(1);
+        assertThat(fallido.getLastError()).contains("Stripe no responde");
+        assertThat(fallido.getNextAttemptAt()).isAfter(LocalDateTime.now().plusSeconds(20));
+
+        // El segundo evento de la suscripción espera a que el primero se resuelva
+        StripeWebhookEvent enEspera = eventRepository.findById(idDe(segundo)).orElseThrow();
+        assertThat(enEspera.getStatus()).isEqualTo(StripeWebhookEvent.EventStatus.PENDING);
+        assertThat(enEspera.getAttempts()).isZero();
+        verify(stripeWebhookService).procesar(argThat(e -> e != null && primero.equals(e.getId())));
+        verify(stripeWebhookService, never())
+                .procesar(argThat(e -> e != null && segundo.equals(e.getId())));
+    }
+
+    @Test
+    @DisplayName("Un evento procesado queda PROCESSED")
+    void procesarPendientes_exito() throws Exception {
+        String eventId = registrar(paymentIntentPayload("evt_" + UUID.randomUUID(), "payment_intent.succeeded",
+                "pi_" + UUID.randomUUID(), 0));
+
+        inboxService.procesarPendientes(100);
+
+        StripeWebhookEvent procesado = eventRepository.findById(idDe(eventId)).orElseThrow();
+        assertThat(procesado.getStatus()).isEqualTo(StripeWebhookEvent.EventStatus.PROCESSED);
+        assertThat(procesado.getProcessedAt()).isNotNull();
+        verify(stripeWebhookService).procesar(argThat(e -> e != null && eventId.equals(e.getId())));
+    }
+
+    @Test
+    @DisplayName("La purga borra por lotes solo los eventos resueltos")
+    void eliminarResueltos_porLotes() throws Exception {
+        String procesado = registrar(paymentIntentPayload("evt_" + UUID.randomUUID(), "payment_intent.succeeded",
+                "pi_" + UUID.randomUUID(), 0));
+        inboxService.procesarPendientes(100);
+        String pendiente = registrar(paymentIntentPayload("evt_" + UUID.randomUUID(), "payment_intent.succeeded",
+                "pi_" + UUID.randomUUID(), 0));
+        String idProcesado = idDe(procesado);
+        String idPendiente = idDe(pendiente);
+        LocalDateTime antesDe = LocalDateTime.now().plusMinutes(1);
+
+        transactionTemplate.execute(status -> eventRepository.eliminarResueltos(antesDe, 1000));
+
+        assertThat(eventRepository.findById(idProcesado)).isEmpty();
+        assertThat(eventRepository.findById(idPendiente)).isPresent();
+    }
+
+    private String registrar(String payload) {
+        Event event = evento(payload);
+        inboxService.registrar(event, payload);
+        return event.getId();
+    }
+
+    private String idDe(String eventId) {
+        return eventRepository.findAll().stream()
+                .filter(e -> e.getEventId().equals(eventId))
+                .findFirst().orElseThrow().getId();
+    }
+
+    private static Event evento(String payload) {
+        return ApiResource.GSON.fromJson(payload, Event.class);
+    }
+
+    private static String paymentIntentPayload(String eventId, String tipo, String paymentIntentId, long segundos) {
+        return """
+                {"id": "%s", "object": "event", "type": "%s", "created": %d,
+                 "data": {"object": {"id": "%s", "object": "payment_intent"}}}
+                """.formatted(eventId, tipo, Instant.now().getEpochSecond() - 60 + segundos, paymentIntentId);
+    }
+
+    private static String subscriptionPayload(String eventId, String subscriptionId, long segundos) {
+        return """
+                {"id": "%s", "object": "event", "type": "customer.subscription.updated", "created": %d,
+                 "data": {"object": {"id": "%s", "object": "subscription"}}}
+                """.formatted(eventId, Instant.now().getEpochSecond() - 60 + segundos, subscriptionId);
+    }
+}
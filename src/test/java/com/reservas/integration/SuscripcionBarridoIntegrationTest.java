@@ -0,0 +1,172 @@
+package com.reservas.integration;
+
+import com.reservas.entity.BatchJobCursor;
+import com.reservas.entity.Negocio;
+import com.reservas.entity.RegistroIP;
+import com.reservas.repository.BatchJobCursorRepository;
+import com.reservas.repository.NegocioRepository;
+import com.reservas.repository.NotificationOutboxRepository;
+import com.reservas.repository.RegistroIPRepository;
+import com.reservas.service.SuscripcionService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Verifica el barrido nocturno de suscripciones contra la base de datos, con lotes
+ * pequeños para que el recorrido por id cruce varias transacciones.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@ActiveProfiles("test")
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:suscripcionbarrido;MODE=PostgreSQL;LOCK_TIMEOUT=10000;DB_CLOSE_DELAY=-1",
+        "suscripciones.barrido.lote=2"
+})
+@DisplayName("Barrido de suscripciones - Integración")
+class SuscripcionBarridoIntegrationTest {
+
+    @Autowired
+    private SuscripcionService suscripcionService;
+
+    @Autowired
+    private NegocioRepository negocioRepository;
+
+    @Autowired
+    private RegistroIPRepository registroIPRepository;
+
+    @Autowired
+    private NotificationOutboxRepository outboxRepository;
+
+    @Autowired
+    private BatchJobCursorRepository cursorRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    @DisplayName("Desactiva pruebas y suscripciones vencidas y deja intactas las vigentes")
+    void verificarSuscripcionesVencidas() {
+        List<UUID> pruebasVencidas = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            pruebasVencidas.add(prueba(LocalDateTime.now().minusDays(1)).getId());
+        }
+        UUID pruebaVigente = prueba(LocalDateTime.now().plusDays(3)).getId();
+        UUID suscripcionVencida = suscripcion(LocalDateTime.now().minusHours(2)).getId();
+        UUID suscripcionVigente = suscripcion(LocalDateTime.now().plusDays(20)).getId();
+        RegistroIP registro = registroIPRepository.save(RegistroIP.builder()
+                .negocio(negocioRepository.getReferenceById(pruebasVencidas.get(0)))
+                .email("registro@test.com")
+                .ipAddress("10.0.0.1")
+                .userAgent("JUnit")
+                .build());
+
+        suscripcionService.verificarSuscripcionesVencidas();
+
+        assertThat(negocioRepository.findAllById(pruebasVencidas))
+                .allSatisfy(n -> {
+                    assertThat(n.isCuentaActiva()).isFalse();
+                    assertThat(n.getEstadoPago()).isEqualTo("vencido");
+                });
+        assertThat(negocioRepository.findById(pruebaVigente).orElseThrow().isCuentaActiva()).isTrue();
+        assertThat(negocioRepository.findById(suscripcionVencida).orElseThrow().getEstadoPago()).isEqualTo("vencido");
+        assertThat(negocioRepository.findById(suscripcionVigente).orElseThrow().getEstadoPago()).isEqualTo("activo");
+
+        RegistroIP actualizado = registroIPRepository.findById(registro.getId()).orElseThrow();
+        assertThat(actualizado.isActivo()).isFalse();
+        // Sigue contando para el límite de pruebas por IP
+        assertThat(actualizado.isEsPrueba()).isTrue();
+
+        assertThat(outboxRepository.findAll())
+                .anyMatch(o -> o.getIdempotencyKey().startsWith("suscripcion-vencida:" + suscripcionVencida));
+
+        // El avance queda registrado por job
+        BatchJobCursor cursor = cursorRepository.findById("suscripciones.pruebas-vencidas").orElseThrow();
+        assertThat(cursor.getEstado()).isEqualTo(BatchJobCursor.Estado.COMPLETADO);
+        assertThat(cursor.getProcesados()).isGreaterThanOrEqualTo(5);
+        assertThat(cursor.getLotes()).isGreaterThanOrEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("La retención elimina en lotes solo los registros de IP antiguos")
+    void limpiarRegistrosIPAntiguos() {
+        Negocio negocio = prueba(LocalDateTime.now().plusDays(3));
+        List<UUID> antiguos = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            antiguos.add(registro(negocio, LocalDateTime.now().minusDays(120)).getId());
+        }
+        UUID reciente = registro(negocio, LocalDateTime.now().minusDays(30)).getId();
+
+        suscripcionService.limpiarRegistrosIPAntiguos();
+
+        assertThat(registroIPRepository.findAllById(antiguos)).isEmpty();
+        assertThat(registroIPRepository.findById(reciente)).isPresent();
+    }
+
+    private RegistroIP registro(Negocio negocio, LocalDateTime creado) {
+        RegistroIP registro = registroIPRepository.save(RegistroIP.builder()
+                .negocio(negocio)
+                .email(negocio.getEmail())
+                .ipAddress("10.0.0.2")
+                .userAgent("JUnit")
+                .build());
+        // created_at no es actualizable desde la entidad
+        jdbcTemplate.update("UPDATE tbl_registro_ips SET created_at = ? WHERE id = ?", creado, registro.getId());
+        return registro;
+    }
+
+    @Test
+    @DisplayName("Encola el aviso de vencimiento una sola vez por ciclo")
+    void enviarNotificaciones_unaVez() {
+        List<UUID> porVencer = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            porVencer.add(suscripcion(LocalDateTime.now().plusDays(4)).getId());
+        }
+
+        suscripcionService.enviarNotificaciones();
+        suscripcionService.enviarNotificaciones();
+
+        assertThat(negocioRepository.findAllById(porVencer))
+                .allMatch(Negocio::isNotificacionVencimientoEnviada);
+        for (UUID id : porVencer) {
+            assertThat(outboxRepository.findAll())
+                    .filteredOn(o -> o.getIdempotencyKey().startsWith("suscripcion-vencimiento:" + id))
+                    .hasSize(1);
+        }
+    }
+
+    private Negocio prueba(LocalDateTime fechaFinPrueba) {
+        // @PrePersist fija la prueba en 7 días: las fechas se ajustan después del alta
+        Negocio negocio = negocioRepository.save(nuevo("prueba"));
+        negocio.setFechaFinPrueba(fechaFinPrueba);
+        return negocioRepository.save(negocio);
+    }
+
+    private Negocio suscripcion(LocalDateTime fechaProximoCobro) {
+        Negocio negocio = negocioRepository.save(nuevo("suscripcion"));
+        negocio.setEnPeriodoPrueba(false);
+        negocio.setEstadoPago("activo");
+        negocio.setFechaProximoCobro(fechaProximoCobro);
+        return negocioRepository.save(negocio);
+    }
+
+    private static Negocio nuevo(String prefijo) {
+        String sufijo = UUID.randomUUID().toString();
+        return Negocio.builder()
+                .nombre(prefijo + " " + sufijo)
+                .email(prefijo + "-" + sufijo + "@test.com")
+                .plan("profesional")
+                .fechaRegistro(LocalDateTime.now())
+                .build();
+    }
+}
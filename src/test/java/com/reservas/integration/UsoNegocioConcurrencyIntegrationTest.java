@@ -0,0 +1,155 @@
+package com.reservas.integration;
+
+import com.reservas.entity.Negocio;
+import com.reservas.entity.UsoNegocio;
+import com.reservas.entity.enums.TipoPlan;
+import com.reservas.exception.LimiteExcedidoException;
+import com.reservas.repository.NegocioRepository;
+import com.reservas.repository.UsoNegocioRepository;
+import com.reservas.service.PlanLimitesService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Verifica que la reserva de cupos con UPDATE condicionado no permite superar
+ * el límite del plan aunque muchas altas lleguen a la vez (sin @Transactional:
+ * cada hilo confirma su propia transacción).
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@ActiveProfiles("test")
+@TestPropertySource(properties =
+        "spring.datasource.url=jdbc:h2:mem:usoconcurrency;MODE=PostgreSQL;LOCK_TIMEOUT=10000;DB_CLOSE_DELAY=-1")
+@DisplayName("UsoNegocio - Contadores atómicos concurrentes")
+class UsoNegocioConcurrencyIntegrationTest {
+
+    private static final int HILOS = 80;
+
+    @Autowired
+    private PlanLimitesService planLimitesService;
+
+    @Autowired
+    private NegocioRepository negocioRepository;
+
+    @Autowired
+    private UsoNegocioRepository usoNegocioRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    @DisplayName("Altas concurrentes nunca superan el máximo de clientes del plan")
+    void altasConcurrentes_NoSuperanElLimite() throws Exception {
+        UUID negocioId = crearNegocio();
+        int maxClientes = planLimitesService.obtenerLimites(TipoPlan.BASICO).getMaxClientes();
+
+        AtomicInteger reservados = new AtomicInteger();
+        AtomicInteger rechazados = new AtomicInteger();
+        CountDownLatch salida = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+
+        try {
+            List<Future<?>> futuros = new ArrayList<>();
+            for (int i = 0; i < HILOS; i++) {
+                futuros.add(executor.submit(() -> {
+                    salida.await();
+                    try {
+                        transactionTemplate.executeWithoutResult(status ->
+                                planLimitesService.validarLimiteClientes(negocioId, TipoPlan.BASICO));
+                        reservados.incrementAndGet();
+                    } catch (LimiteExcedidoException e) {
+                        rechazados.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+
+            salida.countDown();
+            for (Future<?> futuro : futuros) {
+                futuro.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        UsoNegocio uso = usoNegocioRepository
+                .findByNegocioIdAndPeriodo(negocioId, UsoNegocio.getPeriodoActual())
+                .orElseThrow();
+
+        assertThat(reservados.get()).isEqualTo(maxClientes);
+        assertThat(rechazados.get()).isEqualTo(HILOS - maxClientes);
+        assertThat(uso.getTotalClientes()).isEqualTo(maxClientes);
+    }
+
+    @Test
+    @DisplayName("Liberar y reservar concurrentemente deja el contador consistente")
+    void liberarYReservar_ContadorConsistente() throws Exception {
+        UUID negocioId = crearNegocio();
+
+        // 20 altas previas
+        for (int i = 0; i < 20; i++) {
+            transactionTemplate.executeWithoutResult(status ->
+                    planLimitesService.validarLimiteClientes(negocioId, TipoPlan.PREMIUM));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch salida = new CountDownLatch(1);
+        try {
+            List<Future<?>> futuros = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                boolean alta = i % 2 == 0;
+                futuros.add(executor.submit(() -> {
+                    salida.await();
+                    transactionTemplate.executeWithoutResult(status -> {
+                        if (alta) {
+                            planLimitesService.validarLimiteClientes(negocioId, TipoPlan.PREMIUM);
+                        } else {
+                            planLimitesService.liberarCupoCliente(negocioId);
+                        }
+                    });
+                    return null;
+                }));
+            }
+            salida.countDown();
+            for (Future<?> futuro : futuros) {
+                futuro.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        UsoNegocio uso = usoNegocioRepository
+                .findByNegocioIdAndPeriodo(negocioId, UsoNegocio.getPeriodoActual())
+                .orElseThrow();
+        assertThat(uso.getTotalClientes()).isEqualTo(20);
+    }
+
+    private UUID crearNegocio() {
+        return transactionTemplate.execute(status -> {
+            String sufijo = UUID.randomUUID().toString();
+            Negocio negocio = Negocio.builder()
+                    .nombre("Negocio Concurrencia " + sufijo)
+                    .email("concurrencia-" + sufijo + "@test.com")
+                    .fechaRegistro(LocalDateTime.now())
+                    .build();
+            return negocioRepository.save(negocio).getId();
+        });
+    }
+}
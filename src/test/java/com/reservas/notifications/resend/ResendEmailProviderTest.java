@@ -0,0 +1,195 @@
+package com.reservas.notifications.resend;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.reservas.http.ClienteHttpSaliente;
+import com.reservas.notifications.domain.NotificationChannel;
+import com.reservas.notifications.domain.NotificationResult;
+import com.reservas.notifications.dto.SendNotificationRequest;
+import com.reservas.notifications.resilience.ProteccionProveedores;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ResendEmailProvider contra un stub HTTP local que imita /emails y /emails/batch
+ * con una latencia fija por llamada.
+ */
+@Slf4j
+@DisplayName("ResendEmailProvider - Envío batch")
+class ResendEmailProviderTest {
+
+    /** Latencia simulada de cada llamada a la API */
+    private static final long LATENCIA_MS = 3;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private HttpServer stub;
+    private ResendEmailProvider provider;
+
+    private final AtomicInteger llamadasIndividuales = new AtomicInteger();
+    private final List<Integer> tamanosBatch = new CopyOnWriteArrayList<>();
+    private final AtomicInteger enCurso = new AtomicInteger();
+    private final AtomicInteger maxEnCurso = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        stub.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        stub.createContext("/emails/batch", this::responderBatch);
+        stub.createContext("/emails", this::responderIndividual);
+        stub.start();
+
+        provider = new ResendEmailProvider(
+                new ClienteHttpSaliente(new SimpleMeterRegistry(),
+                        Duration.ofSeconds(2), Duration.ofSeconds(5), 20, Duration.ofSeconds(5)),
+                new ProteccionProveedores(new SimpleMeterRegistry(),
+                        20, 10, 50, Duration.ofSeconds(30), 3, 10, Duration.ofSeconds(1)));
+        ReflectionTestUtils.setField(provider, "apiUrl", "http://127.0.0.1:" + stub.getAddress().getPort());
+        ReflectionTestUtils.setField(provider, "resendApiKey", "re_test");
+        ReflectionTestUtils.setField(provider, "fromEmail", "test@test.com");
+        ReflectionTestUtils.setField(provider, "fromName", "Test");
+        ReflectionTestUtils.setField(provider, "concurrenciaBatch", 4);
+        provider.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.stop(0);
+    }
+
+    @Test
+    @DisplayName("Debe dividir el lote en bloques de 100 y conservar el orden de los resultados")
+    void debeDividirEnBloquesDe100() {
+        List<SendNotificationRequest> requests = requests(250);
+
+        List<NotificationResult> results = provider.sendBatch(requests);
+
+        assertEquals(250, results.size());
+        assertEquals(List.of(50, 100, 100), tamanosBatch.stream().sorted().toList());
+        assertEquals(0, llamadasIndividuales.get());
+        for (int i = 0; i < results.size(); i++) {
+            assertTrue(results.get(i).getSuccess());
+            assertEquals(requests.get(i).getRecipient(), results.get(i).getRecipient());
+            assertEquals("re_" + requests.get(i).getRecipient(), results.get(i).getProviderId());
+        }
+    }
+
+    @Test
+    @DisplayName("Un bloque rechazado solo marca como fallidos sus propios emails")
+    void bloqueFallido_noAfectaALosDemas() {
+        List<SendNotificationRequest> requests = requests(200);
+        requests.get(150).setRecipient("rechazar@test.com");
+
+        List<NotificationResult> results = provider.sendBatch(requests);
+
+        assertTrue(results.subList(0, 100).stream().allMatch(NotificationResult::getSuccess));
+        assertTrue(results.subList(100, 200).stream().noneMatch(NotificationResult::getSuccess));
+        assertNotNull(results.get(150).getErrorMessage());
+    }
+
+    @Test
+    @DisplayName("Throughput: 1,000 destinatarios con /emails/batch frente a envíos individuales")
+    void throughput_1000Destinatarios() {
+        List<SendNotificationRequest> requests = requests(1000);
+
+        // Envío individual: se mide una muestra de 100 y se extrapola (1000 llamadas secuenciales tardan demasiado)
+        long t0 = System.nanoTime();
+        for (SendNotificationRequest request : requests.subList(0, 100)) {
+            provider.send(request);
+        }
+        long individualMs = (System.nanoTime() - t0) / 1_000_000 * 10;
+
+        long t1 = System.nanoTime();
+        List<NotificationResult> results = provider.sendBatch(requests);
+        long batchMs = Math.max(1, (System.nanoTime() - t1) / 1_000_000);
+
+        log.info("[ResendEmailProviderTest] 1000 emails - individual (extrapolado): {} ms ({} emails/s), "
+                        + "batch: {} ms ({} emails/s), bloques en paralelo: {}",
+                individualMs, 1000_000 / Math.max(1, individualMs), batchMs, 1000_000 / batchMs, maxEnCurso.get());
+
+        assertEquals(1000, results.size());
+        assertTrue(results.stream().allMatch(NotificationResult::getSuccess));
+        assertEquals(100, llamadasIndividuales.get());
+        assertEquals(10, tamanosBatch.size());
+        assertTrue(maxEnCurso.get() > 1 && maxEnCurso.get() <= 4);
+        // 10 llamadas (4 a la vez) frente a 1000 llamadas secuenciales
+        assertTrue(batchMs * 5 < individualMs,
+                "batch " + batchMs + " ms vs individual " + individualMs + " ms");
+    }
+
+    private void responderBatch(HttpExchange exchange) throws IOException {
+        int actuales = enCurso.incrementAndGet();
+        maxEnCurso.accumulateAndGet(actuales, Math::max);
+        try {
+            List<Map<String, Object>> emails = mapper.readValue(exchange.getRequestBody(), List.class);
+            tamanosBatch.add(emails.size());
+            dormir();
+
+            boolean rechazar = emails.stream().anyMatch(e -> ((List<?>) e.get("to")).contains("rechazar@test.com"));
+            if (rechazar) {
+                responder(exchange, 422, Map.of("message", "Email inválido"));
+                return;
+            }
+
+            List<Map<String, String>> data = emails.stream()
+                    .map(e -> Map.of("id", "re_" + ((List<?>) e.get("to")).get(0)))
+                    .toList();
+            responder(exchange, 200, Map.of("data", data));
+        } finally {
+            enCurso.decrementAndGet();
+        }
+    }
+
+    private void responderIndividual(HttpExchange exchange) throws IOException {
+        llamadasIndividuales.incrementAndGet();
+        exchange.getRequestBody().readAllBytes();
+        dormir();
+        responder(exchange, 200, Map.of("id", "re_" + llamadasIndividuales.get()));
+    }
+
+    private void responder(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] json = mapper.writeValueAsString(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, json.length);
+        exchange.getResponseBody().write(json);
+        exchange.close();
+    }
+
+    private static void dormir() {
+        try {
+            Thread.sleep(LATENCIA_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static List<SendNotificationRequest> requests(int cantidad) {
+        return IntStream.range(0, cantidad)
+                .mapToObj(i -> SendNotificationRequest.builder()
+                        .channel(NotificationChannel.EMAIL)
+                        .recipient("cliente" + i + "@test.com")
+                        .subject("Aviso")
+                        .content("<p>Hola</p>")
+                        .build())
+                .collect(java.util.stream.Collectors.toList());
+    }
+}
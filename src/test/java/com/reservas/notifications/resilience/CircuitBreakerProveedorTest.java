@@ -0,0 +1,166 @@
+package com.reservas.notifications.resilience;
+
+import com.reservas.exception.NotificationException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("CircuitBreakerProveedor - Pruebas Unitarias")
+class CircuitBreakerProveedorTest {
+
+    private SimpleMeterRegistry registry;
+    private CircuitBreakerProveedor circuito;
+    private final AtomicInteger llamadas = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        // Ventana de 10, abre con 5 llamadas y 50% de fallos, 100 ms abierto, 2 pruebas, 2 concurrentes
+        circuito = new CircuitBreakerProveedor("resend", 10, 5, 50, Duration.ofMillis(100), 2,
+                2, Duration.ofMillis(20), ProteccionProveedores::falloResend, registry);
+    }
+
+    @Test
+    @DisplayName("Se abre al superar el umbral y rechaza sin llamar al proveedor")
+    void abreAlSuperarUmbral() {
+        fallar(5);
+
+        assertEquals(CircuitBreakerProveedor.Estado.ABIERTO, circuito.getEstado());
+        NotificationException e = assertThrows(NotificationException.class, () -> circuito.ejecutar(this::llamar));
+        assertEquals(CircuitBreakerProveedor.PROVIDER_UNAVAILABLE, e.getErrorCode());
+        assertEquals(0, llamadas.get());
+        assertEquals(1.0, registry.get("notificaciones.proveedor.rechazadas")
+                .tag("motivo", "circuito_abierto").counter().count());
+        assertEquals(2.0, registry.get("notificaciones.proveedor.estado").gauge().value());
+    }
+
+    @Test
+    @DisplayName("No se abre con menos llamadas que el mínimo")
+    void noAbreSinMinimo() {
+        fallar(4);
+
+        assertEquals(CircuitBreakerProveedor.Estado.CERRADO, circuito.getEstado());
+    }
+
+    @Test
+    @DisplayName("No se abre por debajo del umbral de fallos")
+    void noAbrePorDebajoDelUmbral() {
+        for (int i = 0; i < 6; i++) {
+            circuito.ejecutar(this::llamar);
+        }
+        // 4 fallos de 10 llamadas: 40%
+        fallar(4);
+
+        assertEquals(CircuitBreakerProveedor.Estado.CERRADO, circuito.getEstado());
+        assertEquals(40.0, circuito.getTasaFallos());
+    }
+
+    @Test
+    @DisplayName("Un 4xx del proveedor no cuenta como fallo; un 429 sí")
+    void errores4xxNoAbren() {
+        for (int i = 0; i < 10; i++) {
+            assertThrows(HttpClientErrorException.class, () -> circuito.ejecutar(() -> {
+                throw HttpClientErrorException.create(HttpStatus.UNPROCESSABLE_ENTITY, "invalid", null, null, null);
+            }));
+        }
+        assertEquals(CircuitBreakerProveedor.Estado.CERRADO, circuito.getEstado());
+
+        // 5 de las últimas 10 llamadas con 429: 50%
+        for (int i = 0; i < 5; i++) {
+            assertThrows(HttpClientErrorException.class, () -> circuito.ejecutar(() -> {
+                throw HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "slow down", null, null, null);
+            }));
+        }
+        assertEquals(CircuitBreakerProveedor.Estado.ABIERTO, circuito.getEstado());
+    }
+
+    @Test
+    @DisplayName("Semiabierto: se cierra si las pruebas salen bien y se reabre si una falla")
+    void semiabierto_cierraOReabre() throws InterruptedException {
+        fallar(5);
+        Thread.sleep(150);
+
+        assertEquals(CircuitBreakerProveedor.Estado.SEMIABIERTO, circuito.getEstado());
+        assertThrows(ResourceAccessException.class, () -> circuito.ejecutar(this::fallo));
+        assertEquals(CircuitBreakerProveedor.Estado.ABIERTO, circuito.getEstado());
+
+        Thread.sleep(150);
+        circuito.ejecutar(this::llamar);
+        circuito.ejecutar(this::llamar);
+
+        assertEquals(CircuitBreakerProveedor.Estado.CERRADO, circuito.getEstado());
+        assertEquals(0.0, circuito.getTasaFallos());
+        assertEquals(1.0, registry.get("notificaciones.proveedor.transiciones").tag("hacia", "CERRADO").counter().count());
+    }
+
+    @Test
+    @DisplayName("El bulkhead rechaza llamadas por encima del máximo simultáneo")
+    void bulkheadRechazaExceso() {
+        CompletableFuture<String> primera = new CompletableFuture<>();
+        CompletableFuture<String> segunda = new CompletableFuture<>();
+        circuito.ejecutarAsync(() -> primera);
+        circuito.ejecutarAsync(() -> segunda);
+        assertEquals(2, circuito.getEnCurso());
+
+        CompletableFuture<String> tercera = circuito.ejecutarAsync(() -> CompletableFuture.completedFuture("ok"));
+
+        NotificationException e = assertThrows(NotificationException.class, () -> {
+            try {
+                tercera.join();
+            } catch (java.util.concurrent.CompletionException ce) {
+                throw ce.getCause();
+            }
+        });
+        assertEquals("BULKHEAD_LLENO", e.getProviderMessage());
+
+        primera.complete("ok");
+        segunda.complete("ok");
+        assertEquals(0, circuito.getEnCurso());
+        assertEquals("ok", circuito.ejecutar(this::llamar));
+    }
+
+    @Test
+    @DisplayName("El health indicator marca el proveedor con el circuito abierto sin tumbar el health")
+    void healthIndicator_reportaEstado() {
+        ProteccionProveedores proteccion = new ProteccionProveedores(new SimpleMeterRegistry(), 10, 5, 50,
+                Duration.ofMinutes(1), 2, 2, Duration.ofMillis(20));
+        for (int i = 0; i < 5; i++) {
+            assertThrows(ResourceAccessException.class, () -> proteccion.twilio().ejecutar(this::fallo));
+        }
+
+        Health health = new ProveedoresNotificacionHealthIndicator(proteccion).health();
+
+        assertEquals(Status.UP, health.getStatus());
+        assertEquals(true, health.getDetails().get("degradado"));
+        assertEquals("ABIERTO", ((Map<?, ?>) health.getDetails().get("twilio")).get("estado"));
+        assertEquals("CERRADO", ((Map<?, ?>) health.getDetails().get("resend")).get("estado"));
+    }
+
+    private void fallar(int veces) {
+        for (int i = 0; i < veces; i++) {
+            assertThrows(ResourceAccessException.class, () -> circuito.ejecutar(this::fallo));
+        }
+    }
+
+    private String llamar() {
+        llamadas.incrementAndGet();
+        return "ok";
+    }
+
+    private String fallo() {
+        throw new ResourceAccessException("timeout");
+    }
+}
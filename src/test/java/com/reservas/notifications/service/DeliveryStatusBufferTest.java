@@ -0,0 +1,161 @@
+package com.reservas.notifications.service;
+
+import com.reservas.entity.NotificationLog;
+import com.reservas.notifications.domain.DeliveryStatusUpdate;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("DeliveryStatusBuffer - Pruebas Unitarias")
+class DeliveryStatusBufferTest {
+
+    @Mock
+    private NotificationService notificationService;
+
+    private DeliveryStatusBuffer buffer;
+
+    @BeforeEach
+    void setUp() {
+        buffer = new DeliveryStatusBuffer(notificationService, new SimpleMeterRegistry(), 2, 100, Duration.ofMinutes(10));
+    }
+
+    @Test
+    @DisplayName("Varios callbacks del mismo mensaje se combinan quedándose con el más avanzado")
+    @SuppressWarnings("unchecked")
+    void registrar_combinaPorMensaje() {
+        buffer.registrar("SM1", "queued", null, null);
+        buffer.registrar("SM1", "delivered", null, null);
+        // Llega tarde y desordenado
+        buffer.registrar("SM1", "sent", null, null);
+        when(notificationService.updateNotificationStatuses(anyMap())).thenAnswer(inv -> aplicadas(inv.getArgument(0)));
+
+        assertEquals(1, buffer.vaciar());
+
+        ArgumentCaptor<Map<String, DeliveryStatusUpdate>> lote = ArgumentCaptor.forClass(Map.class);
+        verify(notificationService).updateNotificationStatuses(lote.capture());
+        assertEquals(NotificationLog.NotificationStatus.DELIVERED, lote.getValue().get("SM1").status());
+        assertEquals(0, buffer.getPendientes());
+    }
+
+    @Test
+    @DisplayName("vaciar aplica los estados en lotes del tamaño configurado")
+    void vaciar_enLotes() {
+        buffer.registrar("SM1", "sent", null, null);
+        buffer.registrar("SM2", "sent", null, null);
+        buffer.registrar("SM3", "sent", null, null);
+        when(notificationService.updateNotificationStatuses(anyMap())).thenAnswer(inv -> aplicadas(inv.getArgument(0)));
+
+        assertEquals(3, buffer.vaciar());
+        verify(notificationService, times(2)).updateNotificationStatuses(anyMap());
+    }
+
+    @Test
+    @DisplayName("Un lote que falla vuelve al buffer sin perder estados más nuevos")
+    void vaciar_falloDevuelveElLote() {
+        buffer.registrar("SM1", "sent", null, null);
+        when(notificationService.updateNotificationStatuses(anyMap())).thenThrow(new RuntimeException("BD caída"));
+
+        assertEquals(0, buffer.vaciar());
+        assertEquals(1, buffer.getPendientes());
+
+        buffer.registrar("SM1", "read", null, null);
+        reset(notificationService);
+        when(notificationService.updateNotificationStatuses(anyMap())).thenAnswer(inv -> aplicadas(inv.getArgument(0)));
+        buffer.vaciar();
+
+        verify(notificationService).updateNotificationStatuses(argThat(lote ->
+                lote.get("SM1").status() == NotificationLog.NotificationStatus.READ));
+    }
+
+    @Test
+    @DisplayName("Al llegar a max-pendientes el callback vacía el buffer antes de volver")
+    void registrar_contrapresion() {
+        buffer = new DeliveryStatusBuffer(notificationService, new SimpleMeterRegistry(), 2, 3, Duration.ofMinutes(10));
+        when(notificationService.updateNotificationStatuses(anyMap())).thenAnswer(inv -> aplicadas(inv.getArgument(0)));
+
+        buffer.registrar("SM1", "sent", null, null);
+        buffer.registrar("SM2", "sent", null, null);
+        verifyNoInteractions(notificationService);
+
+        buffer.registrar("SM3", "sent", null, null);
+
+        verify(notificationService).updateNotificationStatuses(anyMap());
+        assertEquals(1, buffer.getPendientes());
+    }
+
+    @Test
+    @DisplayName("Ignora callbacks sin MessageSid o con estados desconocidos")
+    void registrar_ignoraDesconocidos() {
+        assertFalse(buffer.registrar(null, "sent", null, null));
+        assertFalse(buffer.registrar("SM1", null, null, null));
+        assertFalse(buffer.registrar("SM1", "receiving", null, null));
+        assertEquals(0, buffer.getPendientes());
+    }
+
+    @Test
+    @DisplayName("Traduce los estados de Twilio")
+    void traducirEstadoTwilio() {
+        assertEquals(NotificationLog.NotificationStatus.QUEUED, DeliveryStatusBuffer.traducirEstadoTwilio("accepted"));
+        assertEquals(NotificationLog.NotificationStatus.SENT, DeliveryStatusBuffer.traducirEstadoTwilio("sent"));
+        assertEquals(NotificationLog.NotificationStatus.DELIVERED, DeliveryStatusBuffer.traducirEstadoTwilio("DELIVERED"));
+        assertEquals(NotificationLog.NotificationStatus.READ, DeliveryStatusBuffer.traducirEstadoTwilio("read"));
+        assertEquals(NotificationLog.NotificationStatus.FAILED, DeliveryStatusBuffer.traducirEstadoTwilio("undelivered"));
+        assertNull(DeliveryStatusBuffer.traducirEstadoTwilio("received"));
+    }
+
+    @Test
+    @DisplayName("Un estado sin notificación se reintenta en los siguientes vaciados")
+    void vaciar_reintentaSinNotificacion() {
+        buffer.registrar("SM1", "delivered", null, null);
+        when(notificationService.updateNotificationStatuses(anyMap()))
+                .thenReturn(new NotificationService.ResultadoEstados(0, Set.of("SM1")))
+                .thenAnswer(inv -> aplicadas(inv.getArgument(0)));
+
+        buffer.vaciar();
+        assertEquals(0, buffer.getPendientes());
+        assertEquals(1, buffer.getSinNotificacion());
+
+        // El outbox ya escribió la NotificationLog
+        buffer.vaciar();
+
+        verify(notificationService, times(2)).updateNotificationStatuses(argThat(lote ->
+                lote.get("SM1").status() == NotificationLog.NotificationStatus.DELIVERED));
+        assertEquals(0, buffer.getSinNotificacion());
+    }
+
+    @Test
+    @DisplayName("Los estados sin notificación se descartan y se cuentan al pasar el TTL")
+    void vaciar_descartaSinNotificacionExpirados() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        buffer = new DeliveryStatusBuffer(notificationService, meterRegistry, 2, 100, Duration.ZERO);
+        buffer.registrar("SM1", "sent", null, null);
+        when(notificationService.updateNotificationStatuses(anyMap()))
+                .thenReturn(new NotificationService.ResultadoEstados(0, Set.of("SM1")));
+
+        buffer.vaciar();
+        assertEquals(1, buffer.getSinNotificacion());
+        buffer.vaciar();
+
+        verify(notificationService, times(1)).updateNotificationStatuses(anyMap());
+        assertEquals(0, buffer.getSinNotificacion());
+        assertEquals(1.0, meterRegistry.get("notificaciones.estados.descartados").counter().count());
+    }
+
+    private static NotificationService.ResultadoEstados aplicadas(Map<String, DeliveryStatusUpdate> lote) {
+        return new NotificationService.ResultadoEstados(lote.size(), Set.of());
+    }
+}
@@ -0,0 +1,276 @@
+package com.reservas.notifications.service;
+
+import com.reservas.entity.NotificationLog;
+import com.reservas.entity.NotificationOutbox;
+import com.reservas.exception.NotificationException;
+import com.reservas.notifications.domain.NotificationChannel;
+import com.reservas.notifications.domain.NotificationResult;
+import com.reservas.notifications.dto.SendNotificationRequest;
+import com.reservas.repository.NotificationOutboxRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("NotificationOutboxService - Pruebas Unitarias")
+class NotificationOutboxServiceTest {
+
+    @Mock
+    private NotificationOutboxRepository outboxRepository;
+
+    @Mock
+    private NotificationService notificationService;
+
+    private NotificationOutboxService outboxService;
+
+    @BeforeEach
+    void setUp() {
+        // Transacciones cortas sin base de datos: el callback se ejecuta directamente
+        outboxService = new NotificationOutboxService(outboxRepository, notificationService,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)));
+        ReflectionTestUtils.setField(outboxService, "maxIntentos", 3);
+        ReflectionTestUtils.setField(outboxService, "backoffInicial", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(outboxService, "backoffMaximo", Duration.ofMinutes(10));
+        ReflectionTestUtils.setField(outboxService, "diasRetencion", 30);
+        ReflectionTestUtils.setField(outboxService, "tamanoLotePurga", 2);
+    }
+
+    @Test
+    @DisplayName("Debe encolar una notificación pendiente de envío inmediato")
+    void debeEncolarNotificacion() {
+        NotificationOutbox guardada = pendiente(0);
+        when(outboxRepository.insertarSiNoExiste(anyString(), eq("clave-1"), anyString(), any(), any(), anyString(),
+                any(), any(), anyString(), anyBoolean(), any(), any(), any())).thenReturn(1);
+        when(outboxRepository.findByIdempotencyKey("clave-1")).thenReturn(Optional.of(guardada));
+
+        NotificationOutbox encolada = outboxService.encolar(request(), NotificationLog.NotificationType.VERIFICATION_CODE, "clave-1");
+
+        assertSame(guardada, encolada);
+        verify(outboxRepository).insertarSiNoExiste(anyString(), eq("clave-1"), eq("EMAIL"), eq("VERIFICATION_CODE"),
+                isNull(), eq("cliente@test.com"), any(), any(), anyString(), eq(false), any(), any(),
+                argThat(ahora -> !ahora.isAfter(LocalDateTime.now())));
+        // Encolar no llama al proveedor
+        verifyNoInteractions(notificationService);
+    }
+
+    @Test
+    @DisplayName("No debe duplicar una notificación con la misma clave de idempotencia")
+    void noDebeDuplicar_conMismaClave() {
+        NotificationOutbox existente = pendiente(0);
+        when(outboxRepository.insertarSiNoExiste(anyString(), eq("clave-1"), anyString(), any(), any(), anyString(),
+                any(), any(), anyString(), anyBoolean(), any(), any(), any())).thenReturn(0);
+        when(outboxRepository.findByIdempotencyKey("clave-1")).thenReturn(Optional.of(existente));
+
+        NotificationOutbox resultado = outboxService.encolar(request(), NotificationLog.NotificationType.VERIFICATION_CODE, "clave-1");
+
+        assertSame(existente, resultado);
+        verify(outboxRepository, never()).save(any());
+    }
+
+    @Test
+    @DisplayName("Debe enviar con la clave de idempotencia y registrar el envío")
+    void debeEnviarYRegistrar() {
+        NotificationOutbox notificacion = pendiente(0);
+        mockLote(notificacion);
+        when(notificationService.entregar(any())).thenReturn(NotificationResult.builder()
+                .success(true).providerId("re_123").build());
+        when(notificationService.registrarEnvio(any(), any(), any(), anyInt()))
+                .thenReturn(NotificationLog.builder().id("log-1").build());
+
+        int procesadas = outboxService.procesarPendientes(10);
+
+        assertEquals(1, procesadas);
+        verify(notificationService).entregar(argThat(r -> "clave-outbox".equals(r.getIdempotencyKey())));
+        verify(notificationService).registrarEnvio(any(), any(), eq(NotificationLog.NotificationType.VERIFICATION_CODE), eq(0));
+        assertEquals(NotificationOutbox.OutboxStatus.SENT, notificacion.getStatus());
+        assertEquals(1, notificacion.getAttempts());
+        assertEquals("log-1", notificacion.getNotificationLogId());
+        assertNotNull(notificacion.getSentAt());
+    }
+
+    @Test
+    @DisplayName("Una notificación sensible borra su contenido al enviarse")
+    void contenidoSensible_seBorraAlEnviar() {
+        NotificationOutbox notificacion = pendiente(0);
+        notificacion.setContent("<p>Contraseña temporal: Xy12!</p>");
+        notificacion.setSensitiveContent(true);
+        mockLote(notificacion);
+        when(notificationService.entregar(any())).thenReturn(NotificationResult.builder()
+                .success(true).providerId("re_123").build());
+        when(notificationService.registrarEnvio(any(), any(), any(), anyInt()))
+                .thenReturn(NotificationLog.builder().id("log-1").build());
+
+        outboxService.procesarPendientes(10);
+
+        verify(notificationService).entregar(argThat(r -> r.isSensitiveContent()
+                && r.getContent().contains("Xy12!")));
+        verify(notificationService).registrarEnvio(argThat(SendNotificationRequest::isSensitiveContent),
+                any(), any(), anyInt());
+        assertEquals(NotificationService.CONTENIDO_OMITIDO, notificacion.getContent());
+    }
+
+    @Test
+    @DisplayName("Una notificación sensible conserva su contenido mientras queden reintentos")
+    void contenidoSensible_seConservaParaReintentar() {
+        NotificationOutbox notificacion = pendiente(0);
+        notificacion.setSensitiveContent(true);
+        mockLote(notificacion);
+        when(notificationService.entregar(any()))
+                .thenThrow(new NotificationException("timeout", "RESEND_HTTP_ERROR"));
+
+        outboxService.procesarPendientes(10);
+
+        assertEquals("<html/>", notificacion.getContent());
+    }
+
+    @Test
+    @DisplayName("Debe reprogramar con backoff cuando el envío falla y quedan intentos")
+    void debeReprogramar_cuandoFallaConIntentosRestantes() {
+        NotificationOutbox notificacion = pendiente(0);
+        mockLote(notificacion);
+        when(notificationService.entregar(any()))
+                .thenThrow(new NotificationException("timeout", "RESEND_HTTP_ERROR"));
+
+        outboxService.procesarPendientes(10);
+
+        assertEquals(NotificationOutbox.OutboxStatus.PENDING, notificacion.getStatus());
+        assertEquals(1, notificacion.getAttempts());
+        assertEquals("timeout", notificacion.getLastError());
+        assertTrue(notificacion.getNextAttemptAt().isAfter(LocalDateTime.now().plusSeconds(29)));
+        // Solo el resultado final va a NotificationLog
+        verify(notificationService, never()).registrarEnvio(any(), any(), any(), anyInt());
+    }
+
+    @Test
+    @DisplayName("Debe marcar FAILED y registrar al agotar los intentos")
+    void debeMarcarFallida_alAgotarIntentos() {
+        NotificationOutbox notificacion = pendiente(2);
+        mockLote(notificacion);
+        when(notificationService.entregar(any())).thenReturn(NotificationResult.builder()
+                .success(false).errorCode("500").errorMessage("Error HTTP").build());
+        when(notificationService.registrarEnvio(any(), any(), any(), anyInt()))
+                .thenReturn(NotificationLog.builder().id("log-2").build());
+
+        outboxService.procesarPendientes(10);
+
+        assertEquals(NotificationOutbox.OutboxStatus.FAILED, notificacion.getStatus());
+        assertEquals(3, notificacion.getAttempts());
+        verify(notificationService).registrarEnvio(any(), any(), any(), eq(2));
+    }
+
+    @Test
+    @DisplayName("No debe reintentar si el proveedor no está configurado")
+    void noDebeReintentar_sinProveedorConfigurado() {
+        NotificationOutbox notificacion = pendiente(0);
+        mockLote(notificacion);
+        when(notificationService.entregar(any()))
+                .thenThrow(new NotificationException("no configurado", "PROVIDER_NOT_CONFIGURED"));
+        when(notificationService.registrarEnvio(any(), any(), any(), anyInt()))
+                .thenReturn(NotificationLog.builder().id("log-3").build());
+
+        outboxService.procesarPendientes(10);
+
+        assertEquals(NotificationOutbox.OutboxStatus.FAILED, notificacion.getStatus());
+        assertEquals(1, notificacion.getAttempts());
+    }
+
+    @Test
+    @DisplayName("Debe diferir sin gastar intento si el circuito del proveedor está abierto")
+    void debeDiferir_conCircuitoAbierto() {
+        NotificationOutbox notificacion = pendiente(2);
+        mockLote(notificacion);
+        when(notificationService.entregar(any()))
+                .thenThrow(new NotificationException("Circuito abierto para resend", "PROVIDER_UNAVAILABLE"));
+
+        outboxService.procesarPendientes(10);
+
+        // Con 3 intentos como máximo, un fallo normal la habría marcado FAILED
+        assertEquals(NotificationOutbox.OutboxStatus.PENDING, notificacion.getStatus());
+        assertEquals(2, notificacion.getAttempts());
+        assertTrue(notificacion.getNextAttemptAt().isAfter(LocalDateTime.now().plusSeconds(29)));
+        verify(notificationService, never()).registrarEnvio(any(), any(), any(), anyInt());
+    }
+
+    @Test
+    @DisplayName("El retraso entre reintentos crece exponencialmente hasta el máximo")
+    void retrasoReintento_exponencialAcotado() {
+        Duration primero = outboxService.retrasoReintento(1);
+        Duration segundo = outboxService.retrasoReintento(2);
+        Duration decimo = outboxService.retrasoReintento(10);
+
+        // Base + hasta un 20% de jitter
+        assertTrue(primero.toMillis() >= 30_000 && primero.toMillis() <= 36_000);
+        assertTrue(segundo.toMillis() >= 60_000 && segundo.toMillis() <= 72_000);
+        assertTrue(decimo.toMillis() >= 600_000 && decimo.toMillis() <= 720_000);
+    }
+
+    @Test
+    @DisplayName("Sin notificaciones pendientes no debe llamar al proveedor")
+    void sinPendientes_noLlamaAlProveedor() {
+        when(outboxRepository.reclamarPendientes(any(LocalDateTime.class), anyInt())).thenReturn(List.of());
+
+        assertEquals(0, outboxService.procesarPendientes(10));
+        verifyNoInteractions(notificationService);
+    }
+
+    @Test
+    @DisplayName("La purga borra en lotes hasta que un lote sale incompleto")
+    void purgarResueltas_enLotes() {
+        when(outboxRepository.eliminarResueltas(any(LocalDateTime.class), eq(2))).thenReturn(2, 2, 1);
+
+        assertEquals(5, outboxService.purgarResueltas());
+
+        verify(outboxRepository, times(3)).eliminarResueltas(argThat(antesDe ->
+                antesDe.isBefore(LocalDateTime.now().minusDays(29))), eq(2));
+    }
+
+    private void mockLote(NotificationOutbox... notificaciones) {
+        List<String> ids = java.util.Arrays.stream(notificaciones).map(NotificationOutbox::getId).toList();
+        when(outboxRepository.reclamarPendientes(any(LocalDateTime.class), anyInt())).thenReturn(ids);
+        when(outboxRepository.findAllById(ids)).thenReturn(List.of(notificaciones));
+        when(outboxRepository.saveAll(anyList())).thenAnswer(inv -> inv.getArgument(0));
+        lenient().when(outboxRepository.save(any(NotificationOutbox.class))).thenAnswer(inv -> inv.getArgument(0));
+    }
+
+    private NotificationOutbox pendiente(int intentos) {
+        return NotificationOutbox.builder()
+                .id(UUID.randomUUID().toString())
+                .idempotencyKey("clave-outbox")
+                .channel(NotificationChannel.EMAIL)
+                .notificationType(NotificationLog.NotificationType.VERIFICATION_CODE)
+                .recipient("cliente@test.com")
+                .subject("Verifica tu cuenta")
+                .content("<html/>")
+                .attempts(intentos)
+                .nextAttemptAt(LocalDateTime.now())
+                .build();
+    }
+
+    private SendNotificationRequest request() {
+        return SendNotificationRequest.builder()
+                .channel(NotificationChannel.EMAIL)
+                .recipient("cliente@test.com")
+                .subject("Verifica tu cuenta")
+                .content("<html/>")
+                .build();
+    }
+}
@@ -0,0 +1,151 @@
+package com.reservas.notifications.service;
+
+import com.reservas.entity.NotificationLog;
+import com.reservas.entity.Usuario;
+import com.reservas.exception.NotificationException;
+import com.reservas.notifications.domain.DeliveryStatusUpdate;
+import com.reservas.notifications.domain.NotificationChannel;
+import com.reservas.notifications.domain.NotificationResult;
+import com.reservas.notifications.dto.SendNotificationRequest;
+import com.reservas.notifications.provider.NotificationProvider;
+import com.reservas.repository.NotificationLogRepository;
+import com.reservas.repository.UsuarioRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("NotificationService - Pruebas Unitarias")
+class NotificationServiceTest {
+
+    @Mock
+    private NotificationProvider whatsappProvider;
+
+    @Mock
+    private NotificationProvider emailProvider;
+
+    @Mock
+    private NotificationLogRepository notificationLogRepository;
+
+    @Mock
+    private UsuarioRepository usuarioRepository;
+
+    private NotificationService notificationService;
+
+    @BeforeEach
+    void setUp() {
+        // Transacciones cortas sin base de datos: el callback se ejecuta directamente
+        notificationService = new NotificationService(whatsappProvider, emailProvider,
+                notificationLogRepository, usuarioRepository,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)));
+    }
+
+    @Test
+    @DisplayName("sendBatch agrupa por canal, conserva el orden y guarda los logs con un solo saveAll")
+    void sendBatch_agrupaPorCanalYGuardaUnaVez() {
+        UUID usuarioId = UUID.randomUUID();
+        List<SendNotificationRequest> requests = List.of(
+                request(NotificationChannel.EMAIL, "a@test.com", usuarioId),
+                request(NotificationChannel.WHATSAPP, "+5215500000001", usuarioId),
+                request(NotificationChannel.EMAIL, "b@test.com", usuarioId));
+
+        when(emailProvider.isConfigured()).thenReturn(true);
+        when(whatsappProvider.isConfigured()).thenReturn(true);
+        when(emailProvider.sendBatch(anyList())).thenReturn(List.of(exito("re_a"), exito("re_b")));
+        when(whatsappProvider.sendBatch(anyList())).thenReturn(List.of(exito("SM1")));
+        when(usuarioRepository.getReferenceById(usuarioId)).thenReturn(Usuario.builder().id(usuarioId).build());
+        when(notificationLogRepository.saveAll(anyList())).thenAnswer(inv -> inv.getArgument(0));
+
+        List<NotificationLog> logs = notificationService.sendBatch(requests);
+
+        assertEquals(List.of("re_a", "SM1", "re_b"), logs.stream().map(NotificationLog::getProviderMessageId).toList());
+        assertEquals(NotificationLog.NotificationProvider.TWILIO, logs.get(1).getProvider());
+        verify(emailProvider).sendBatch(argThat(l -> l.size() == 2));
+        verify(notificationLogRepository, times(1)).saveAll(anyList());
+        verify(notificationLogRepository, never()).save(any());
+        // Referencia sin SELECT en lugar de findById por cada log
+        verify(usuarioRepository, never()).findById(any());
+    }
+
+    @Test
+    @DisplayName("sendBatch no envía nada si algún canal no está configurado")
+    void sendBatch_canalSinConfigurar() {
+        List<SendNotificationRequest> requests = List.of(
+                request(NotificationChannel.EMAIL, "a@test.com", null),
+                request(NotificationChannel.WHATSAPP, "+5215500000001", null));
+
+        lenient().when(emailProvider.isConfigured()).thenReturn(true);
+        lenient().when(whatsappProvider.isConfigured()).thenReturn(false);
+
+        assertThrows(NotificationException.class, () -> notificationService.sendBatch(requests));
+        verify(emailProvider, never()).sendBatch(anyList());
+        verifyNoInteractions(notificationLogRepository);
+    }
+
+    @Test
+    @DisplayName("updateNotificationStatuses no retrocede estados y una lectura implica entrega")
+    void updateNotificationStatuses_sinRetrocesos() {
+        NotificationLog entregada = NotificationLog.builder()
+                .providerMessageId("SM1").status(NotificationLog.NotificationStatus.DELIVERED).build();
+        NotificationLog enviada = NotificationLog.builder()
+                .providerMessageId("SM2").status(NotificationLog.NotificationStatus.SENT).build();
+        LocalDateTime ahora = LocalDateTime.now();
+        when(notificationLogRepository.bloquearPorProviderMessageIds(any())).thenReturn(List.of(entregada, enviada));
+
+        NotificationService.ResultadoEstados resultado = notificationService.updateNotificationStatuses(Map.of(
+                "SM1", new DeliveryStatusUpdate(NotificationLog.NotificationStatus.SENT, ahora, null, null),
+                "SM2", new DeliveryStatusUpdate(NotificationLog.NotificationStatus.READ, ahora, null, null),
+                "SM3", new DeliveryStatusUpdate(NotificationLog.NotificationStatus.SENT, ahora, null, null)));
+
+        assertEquals(1, resultado.actualizadas());
+        assertEquals(Set.of("SM3"), resultado.sinNotificacion());
+        assertEquals(NotificationLog.NotificationStatus.DELIVERED, entregada.getStatus());
+        assertEquals(NotificationLog.NotificationStatus.READ, enviada.getStatus());
+        assertEquals(ahora, enviada.getReadAt());
+        assertEquals(ahora, enviada.getDeliveredAt());
+        verify(notificationLogRepository).saveAll(List.of(enviada));
+    }
+
+    @Test
+    @DisplayName("registrarEnvio no guarda el contenido sensible en NotificationLog")
+    void registrarEnvio_omiteContenidoSensible() {
+        SendNotificationRequest request = request(NotificationChannel.EMAIL, "a@test.com", null);
+        request.setContent("<p>Contraseña temporal: Xy12!</p>");
+        request.setSensitiveContent(true);
+        when(notificationLogRepository.save(any(NotificationLog.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        NotificationLog registro = notificationService.registrarEnvio(request, exito("re_1"),
+                NotificationLog.NotificationType.ONBOARDING_WELCOME, 0);
+
+        assertEquals(NotificationService.CONTENIDO_OMITIDO, registro.getContent());
+    }
+
+    private static SendNotificationRequest request(NotificationChannel canal, String destinatario, UUID usuarioId) {
+        return SendNotificationRequest.builder()
+                .channel(canal)
+                .recipient(destinatario)
+                .content("Hola")
+                .usuarioId(usuarioId != null ? usuarioId.toString() : null)
+                .build();
+    }
+
+    private static NotificationResult exito(String providerId) {
+        return NotificationResult.builder().success(true).providerId(providerId).build();
+    }
+}
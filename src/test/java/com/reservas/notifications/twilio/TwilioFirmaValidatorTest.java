@@ -0,0 +1,70 @@
+package com.reservas.notifications.twilio;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("TwilioFirmaValidator - Firma de webhooks")
+class TwilioFirmaValidatorTest {
+
+    private static final String TOKEN = "token_de_prueba";
+    private static final Map<String, String> PARAMS = Map.of("MessageSid", "SM1", "MessageStatus", "delivered");
+
+    @Test
+    @DisplayName("Acepta la firma calculada sobre la URL pública configurada")
+    void esValida_conBaseUrl() throws Exception {
+        TwilioFirmaValidator validator = new TwilioFirmaValidator(TOKEN, "https://api.ejemplo.com/api/");
+        MockHttpServletRequest request = peticion(firmar("https://api.ejemplo.com/api/webhooks/twilio/status", PARAMS));
+
+        assertTrue(validator.esValida(request, PARAMS));
+        assertEquals("https://api.ejemplo.com/api/webhooks/twilio/status", validator.urlWebhook("/webhooks/twilio/status"));
+    }
+
+    @Test
+    @DisplayName("Sin base configurada usa la URL de la petición")
+    void esValida_sinBaseUrl() throws Exception {
+        TwilioFirmaValidator validator = new TwilioFirmaValidator(TOKEN, "");
+        MockHttpServletRequest request = peticion(firmar("http://localhost/api/webhooks/twilio/status", PARAMS));
+
+        assertTrue(validator.esValida(request, PARAMS));
+        assertNull(validator.urlWebhook("/webhooks/twilio/status"));
+    }
+
+    @Test
+    @DisplayName("Rechaza parámetros alterados, firma ausente o token sin configurar")
+    void esValida_rechaza() throws Exception {
+        TwilioFirmaValidator validator = new TwilioFirmaValidator(TOKEN, "https://api.ejemplo.com/api");
+        String firma = firmar("https://api.ejemplo.com/api/webhooks/twilio/status", PARAMS);
+
+        assertFalse(validator.esValida(peticion(firma), Map.of("MessageSid", "SM1", "MessageStatus", "read")));
+        assertFalse(validator.esValida(peticion(null), PARAMS));
+        assertFalse(new TwilioFirmaValidator("", "https://api.ejemplo.com/api").esValida(peticion(firma), PARAMS));
+    }
+
+    private static MockHttpServletRequest peticion(String firma) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/webhooks/twilio/status");
+        request.setContextPath("/api");
+        if (firma != null) {
+            request.addHeader(TwilioFirmaValidator.CABECERA_FIRMA, firma);
+        }
+        return request;
+    }
+
+    /** Algoritmo documentado por Twilio: HMAC-SHA1(url + clave1 + valor1 + ...) en Base64 */
+    private static String firmar(String url, Map<String, String> params) throws Exception {
+        StringBuilder datos = new StringBuilder(url);
+        new TreeMap<>(params).forEach((clave, valor) -> datos.append(clave).append(valor));
+        Mac mac = Mac.getInstance("HmacSHA1");
+        mac.init(new SecretKeySpec(TOKEN.getBytes(StandardCharsets.UTF_8), "HmacSHA1"));
+        return Base64.getEncoder().encodeToString(mac.doFinal(datos.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,110 @@
+package com.reservas.payments.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("SingleFlightCache - Pruebas Unitarias")
+class SingleFlightCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private SingleFlightCache<String> cache;
+    private final AtomicInteger llamadas = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new SingleFlightCache<>("test", Duration.ofMinutes(10), 100, meterRegistry);
+    }
+
+    @Test
+    @DisplayName("Las peticiones simultáneas de una clave comparten una sola llamada al origen")
+    void obtener_coalesceConcurrentes() throws Exception {
+        CountDownLatch enOrigen = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> resultados = new ArrayList<>();
+            resultados.add(executor.submit(() -> cache.obtener("acct_1", () -> {
+                llamadas.incrementAndGet();
+                enOrigen.countDown();
+                esperar(liberar);
+                return "v1";
+            })));
+            assertTrue(enOrigen.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 7; i++) {
+                resultados.add(executor.submit(() -> cache.obtener("acct_1", () -> {
+                    llamadas.incrementAndGet();
+                    return "otra";
+                })));
+            }
+            // Todas las peticiones esperan la carga en curso antes de liberarla
+            while (meterRegistry.get("cache.single-flight").tag("resultado", "espera").counter().count() < 7) {
+                Thread.sleep(5);
+            }
+            liberar.countDown();
+
+            for (Future<String> resultado : resultados) {
+                assertEquals("v1", resultado.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, llamadas.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Reutiliza el valor mientras está vigente y lo vuelve a cargar después")
+    void obtener_respetaVigencia() {
+        assertEquals("v1", cache.obtener("cs_1", v -> Duration.ofMinutes(1), () -> "v" + llamadas.incrementAndGet()));
+        assertEquals("v1", cache.obtener("cs_1", v -> Duration.ofMinutes(1), () -> "v" + llamadas.incrementAndGet()));
+        assertEquals("v2", cache.obtener("cs_1", v -> Duration.ZERO, () -> "v" + llamadas.incrementAndGet()));
+        assertEquals(2, llamadas.get());
+    }
+
+    @Test
+    @DisplayName("Un error del origen no se cachea")
+    void obtener_noCacheaErrores() {
+        assertThrows(IllegalStateException.class, () -> cache.obtener("acct_1", () -> {
+            llamadas.incrementAndGet();
+            throw new IllegalStateException("Stripe no disponible");
+        }));
+
+        assertEquals("v2", cache.obtener("acct_1", () -> "v" + llamadas.incrementAndGet()));
+    }
+
+    @Test
+    @DisplayName("Un valor recibido por webhook sustituye al cacheado sin llamar al origen")
+    void actualizar_sustituyeValor() {
+        cache.obtener("acct_1", () -> "antiguo");
+
+        cache.actualizar("acct_1", "webhook");
+
+        assertEquals("webhook", cache.obtener("acct_1", () -> "v" + llamadas.incrementAndGet()));
+        assertEquals(0, llamadas.get());
+
+        cache.invalidar("acct_1");
+        assertEquals("v1", cache.obtener("acct_1", () -> "v" + llamadas.incrementAndGet()));
+    }
+
+    private static void esperar(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
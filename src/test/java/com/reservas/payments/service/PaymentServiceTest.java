@@ -0,0 +1,64 @@
+package com.reservas.payments.service;
+
+import com.reservas.entity.MovimientoPago;
+import com.reservas.entity.Negocio;
+import com.reservas.entity.Payment;
+import com.reservas.entity.SaldoPagos;
+import com.reservas.entity.Usuario;
+import com.reservas.repository.PaymentRepository;
+import com.reservas.repository.UsuarioRepository;
+import com.reservas.service.LibroPagosService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("PaymentService - Estadísticas de pagos")
+class PaymentServiceTest {
+
+    @Mock
+    private PaymentRepository paymentRepository;
+    @Mock
+    private UsuarioRepository usuarioRepository;
+    @Mock
+    private LibroPagosService libroPagosService;
+
+    @InjectMocks
+    private PaymentService paymentService;
+
+    @Test
+    @DisplayName("totalPayments cuenta los pagos cancelados, que no tienen movimiento en el libro")
+    @SuppressWarnings("unchecked")
+    void estadisticas_cuentanCancelados() {
+        Negocio negocio = Negocio.builder().id(UUID.randomUUID()).build();
+        Usuario usuario = new Usuario();
+        usuario.setNegocio(negocio);
+        when(usuarioRepository.findByEmail("dueno@test.com")).thenReturn(Optional.of(usuario));
+        when(libroPagosService.obtenerSaldos(negocio.getId(), MovimientoPago.Origen.CONNECT)).thenReturn(List.of(
+                SaldoPagos.builder().moneda("MXN").cobros(5L).fallos(2L).reembolsos(1L).build()));
+        // 3 pendientes y 1 cancelado en MXN
+        when(paymentRepository.contarPorMoneda(eq(negocio.getId()), anyCollection()))
+                .thenReturn(List.<Object[]>of(new Object[]{"MXN", 4L}));
+
+        Map<String, Object> stats = paymentService.getPaymentStatistics("dueno@test.com");
+
+        assertEquals(11L, stats.get("totalPayments"));
+        assertEquals(4L, stats.get("successfulPayments"));
+        assertEquals(11L, ((Map<String, Map<String, Object>>) stats.get("byCurrency")).get("MXN").get("totalPayments"));
+        verify(paymentRepository).contarPorMoneda(eq(negocio.getId()),
+                argThat(estados -> estados.contains(Payment.PaymentStatus.CANCELED)
+                        && estados.contains(Payment.PaymentStatus.PENDING)));
+    }
+}
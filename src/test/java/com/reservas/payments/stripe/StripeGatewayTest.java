@@ -0,0 +1,231 @@
+package com.reservas.payments.stripe;
+
+import com.stripe.Stripe;
+import com.stripe.exception.ApiException;
+import com.stripe.exception.InvalidRequestException;
+import com.stripe.model.Customer;
+import com.stripe.net.ApiResource;
+import com.stripe.net.LiveStripeResponseGetter;
+import com.stripe.net.RequestOptions;
+import com.stripe.net.StripeRequest;
+import com.stripe.param.CustomerCreateParams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * StripeGateway contra un stub local que imita las respuestas de la API de Stripe.
+ * Las llamadas se hacen con el SDK (Customer.retrieve/create), como en producción.
+ */
+@DisplayName("StripeGateway - Timeouts, reintentos, límite de concurrencia y métricas")
+class StripeGatewayTest {
+
+    private static final String CLIENTE = "{\"id\":\"cus_1Abc\",\"object\":\"customer\"}";
+
+    private HttpServer stub;
+    private SimpleMeterRegistry registry;
+    private String apiKeyAnterior;
+
+    /** Respuestas pendientes; cuando se agotan, el stub responde 200 con un cliente */
+    private final Queue<Respuesta> respuestas = new ConcurrentLinkedQueue<>();
+    private final Queue<String> clavesIdempotencia = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger llamadas = new AtomicInteger();
+    private final AtomicInteger enCurso = new AtomicInteger();
+    private final AtomicInteger maxEnCurso = new AtomicInteger();
+    private volatile long latenciaMs = 0;
+
+    private record Respuesta(int status, String cabecera, String valor, String cuerpo) {
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        stub.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        stub.createContext("/v1/customers", this::responder);
+        stub.start();
+        registry = new SimpleMeterRegistry();
+
+        apiKeyAnterior = Stripe.apiKey;
+        Stripe.apiKey = "sk_test_stub";
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.stop(0);
+        // Deja el SDK como lo encuentran el resto de tests
+        Stripe.apiKey = apiKeyAnterior;
+        Stripe.overrideApiBase(Stripe.LIVE_API_BASE);
+        Stripe.setConnectTimeout(Stripe.DEFAULT_CONNECT_TIMEOUT);
+        Stripe.setReadTimeout(Stripe.DEFAULT_READ_TIMEOUT);
+        ApiResource.setStripeResponseGetter(new LiveStripeResponseGetter());
+    }
+
+    @Test
+    @DisplayName("429 se reintenta y la métrica agrupa la operación sin el id")
+    void rateLimit_seReintenta() throws Exception {
+        gateway(20, 3);
+        respuestas.add(new Respuesta(429, null, null, error("rate_limit_error")));
+
+        Customer customer = Customer.retrieve("cus_1Abc");
+
+        assertEquals("cus_1Abc", customer.getId());
+        assertEquals(2, llamadas.get());
+        assertEquals(1, registry.get("stripe.api")
+                .tag("operacion", "GET /v1/customers/{id}").tag("estado", "200").timer().count());
+        assertEquals(1.0, registry.get("stripe.api.reintentos")
+                .tag("operacion", "GET /v1/customers/{id}").tag("motivo", "429").counter().count());
+    }
+
+    @Test
+    @DisplayName("Stripe-Should-Retry: false impide reintentar un 5xx")
+    void shouldRetryFalse_noSeReintenta() {
+        gateway(20, 3);
+        respuestas.add(new Respuesta(500, "Stripe-Should-Retry", "false", error("api_error")));
+
+        assertThrows(ApiException.class, () -> Customer.retrieve("cus_1Abc"));
+        assertEquals(1, llamadas.get());
+        assertEquals(1, registry.get("stripe.api").tag("estado", "500").timer().count());
+    }
+
+    @Test
+    @DisplayName("Stripe-Should-Retry: true reintenta aunque el estado no lo pida")
+    void shouldRetryTrue_seReintenta() throws Exception {
+        gateway(20, 3);
+        respuestas.add(new Respuesta(409, "Stripe-Should-Retry", "true", error("invalid_request_error")));
+
+        assertEquals("cus_1Abc", Customer.retrieve("cus_1Abc").getId());
+        assertEquals(2, llamadas.get());
+    }
+
+    @Test
+    @DisplayName("Un 400 no se reintenta")
+    void errorCliente_noSeReintenta() {
+        gateway(20, 3);
+        respuestas.add(new Respuesta(400, null, null, error("invalid_request_error")));
+
+        assertThrows(InvalidRequestException.class, () -> Customer.retrieve("cus_1Abc"));
+        assertEquals(1, llamadas.get());
+    }
+
+    @Test
+    @DisplayName("Los reintentos de un POST reutilizan la misma Idempotency-Key")
+    void post_reintentaConLaMismaClave() throws Exception {
+        gateway(20, 3);
+        respuestas.add(new Respuesta(503, null, null, error("api_error")));
+        respuestas.add(new Respuesta(502, null, null, error("api_error")));
+
+        Customer.create(CustomerCreateParams.builder().setEmail("cliente@test.com").build());
+
+        assertEquals(3, llamadas.get());
+        List<String> claves = List.copyOf(clavesIdempotencia);
+        assertEquals(3, claves.size());
+        assertNotNull(claves.get(0));
+        assertTrue(claves.stream().allMatch(claves.get(0)::equals));
+    }
+
+    @Test
+    @DisplayName("Agotados los reintentos devuelve el último error")
+    void reintentosAgotados_propagaError() {
+        gateway(20, 2);
+        IntStream.range(0, 5).forEach(i -> respuestas.add(new Respuesta(503, null, null, error("api_error"))));
+
+        assertThrows(ApiException.class, () -> Customer.retrieve("cus_1Abc"));
+        assertEquals(3, llamadas.get());
+    }
+
+    @Test
+    @DisplayName("No supera el máximo de llamadas simultáneas")
+    void respetaLimiteDeConcurrencia() {
+        gateway(2, 0);
+        latenciaMs = 100;
+
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        List<CompletableFuture<Customer>> futuros = IntStream.range(0, 6)
+                .mapToObj(i -> CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return Customer.retrieve("cus_1Abc");
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }, executor))
+                .toList();
+        futuros.forEach(CompletableFuture::join);
+        executor.shutdown();
+
+        assertEquals(6, llamadas.get());
+        assertTrue(maxEnCurso.get() <= 2, "En curso a la vez: " + maxEnCurso.get());
+    }
+
+    @Test
+    @DisplayName("Normaliza los ids de Stripe en el nombre de la operación")
+    void operacion_sinIds() throws Exception {
+        StripeRequest request = new StripeRequest(ApiResource.RequestMethod.POST,
+                "https://api.stripe.com/v1/checkout/sessions/cs_test_a1B2c3/expire", null,
+                RequestOptions.builder().setApiKey("sk_test_stub").build());
+
+        assertEquals("POST /v1/checkout/sessions/{id}/expire", StripeGateway.operacion(request));
+    }
+
+    private StripeGateway gateway(int maxConcurrentes, int reintentos) {
+        StripeGateway gateway = new StripeGateway(registry, Duration.ofSeconds(2), Duration.ofSeconds(5),
+                maxConcurrentes, Duration.ofSeconds(5), reintentos,
+                Duration.ofMillis(10), Duration.ofMillis(50),
+                "http://127.0.0.1:" + stub.getAddress().getPort());
+        gateway.instalar();
+        return gateway;
+    }
+
+    private static String error(String tipo) {
+        return "{\"error\":{\"type\":\"" + tipo + "\",\"message\":\"stub\"}}";
+    }
+
+    private void responder(HttpExchange exchange) throws IOException {
+        llamadas.incrementAndGet();
+        maxEnCurso.accumulateAndGet(enCurso.incrementAndGet(), Math::max);
+        try {
+            if ("POST".equals(exchange.getRequestMethod())) {
+                clavesIdempotencia.add(exchange.getRequestHeaders().getFirst("Idempotency-Key"));
+            }
+            exchange.getRequestBody().readAllBytes();
+            if (latenciaMs > 0) {
+                Thread.sleep(latenciaMs);
+            }
+
+            Respuesta respuesta = respuestas.poll();
+            if (respuesta == null) {
+                respuesta = new Respuesta(200, null, null, CLIENTE);
+            }
+            if (respuesta.cabecera() != null) {
+                exchange.getResponseHeaders().add(respuesta.cabecera(), respuesta.valor());
+            }
+            byte[] body = respuesta.cuerpo().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(respuesta.status(), body.length);
+            exchange.getResponseBody().write(body);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            enCurso.decrementAndGet();
+            exchange.close();
+        }
+    }
+}
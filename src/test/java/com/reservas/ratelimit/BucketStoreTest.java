@@ -0,0 +1,175 @@
+package com.reservas.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.reservas.service.RateLimitService;
+import io.github.bucket4j.distributed.proxy.ClientSideConfig;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.AbstractCompareAndSwapBasedProxyManager;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.AsyncCompareAndSwapOperation;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.CompareAndSwapOperation;
+import io.github.bucket4j.distributed.remote.RemoteBucketState;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Slf4j
+@DisplayName("BucketStore - Pruebas Unitarias")
+class BucketStoreTest {
+
+    @Test
+    @DisplayName("Local: debe descartar buckets inactivos tras el idle timeout")
+    void local_debeDescartarBucketsInactivos() {
+        FakeTicker ticker = new FakeTicker();
+        LocalBucketStore store = new LocalBucketStore(1_000, Duration.ofMinutes(30), ticker);
+        RateLimitService service = new RateLimitService(store);
+
+        for (int i = 0; i < 100; i++) {
+            service.tryConsume("10.0.0." + i + ":login");
+        }
+        assertEquals(100, store.estimatedSize());
+
+        ticker.advance(Duration.ofMinutes(31));
+
+        assertEquals(0, store.estimatedSize());
+    }
+
+    @Test
+    @DisplayName("Local: debe acotar el número de claves al máximo configurado")
+    void local_debeAcotarNumeroDeClaves() {
+        LocalBucketStore store = new LocalBucketStore(500, Duration.ofMinutes(30));
+        RateLimitService service = new RateLimitService(store);
+
+        for (int i = 0; i < 10_000; i++) {
+            service.tryConsume("ip-" + i + ":register");
+        }
+
+        assertTrue(store.estimatedSize() <= 500, "Tamaño: " + store.estimatedSize());
+    }
+
+    @Test
+    @DisplayName("Redis: el límite se comparte entre instancias")
+    void redis_debeCompartirLimiteEntreInstancias() {
+        InMemoryCasProxyManager redis = new InMemoryCasProxyManager();
+        RateLimitService instanciaA = new RateLimitService(new RedisBucketStore(redis));
+        RateLimitService instanciaB = new RateLimitService(new RedisBucketStore(redis));
+        String key = "192.168.1.1:login";
+
+        assertTrue(instanciaA.tryConsume(key));
+        assertTrue(instanciaB.tryConsume(key));
+        assertTrue(instanciaA.tryConsume(key));
+
+        assertFalse(instanciaB.tryConsume(key));
+        assertFalse(instanciaA.tryConsume(key));
+        assertEquals(0, instanciaB.getAvailableTokens(key));
+        assertTrue(redis.contieneClave(RedisBucketStore.KEY_PREFIX + key));
+    }
+
+    @Test
+    @DisplayName("Overhead por verificación: local y Redis (stand-in en memoria)")
+    void overheadPorVerificacion() {
+        RateLimitService local = new RateLimitService(new LocalBucketStore(100_000, Duration.ofMinutes(30)));
+        RateLimitService redis = new RateLimitService(new RedisBucketStore(new InMemoryCasProxyManager()));
+
+        long nsLocal = medirNsPorVerificacion(local);
+        long nsRedis = medirNsPorVerificacion(redis);
+
+        log.info("[BucketStoreTest] Overhead por verificación: local={} ns/op, redis(stand-in)={} ns/op", nsLocal, nsRedis);
+
+        // Cota holgada: solo detecta regresiones groseras (ej: I/O o locks globales en el camino caliente)
+        assertTrue(nsLocal < 1_000_000, "local=" + nsLocal + " ns/op");
+        assertTrue(nsRedis < 1_000_000, "redis=" + nsRedis + " ns/op");
+    }
+
+    private long medirNsPorVerificacion(RateLimitService service) {
+        int claves = 1_000;
+        int iteraciones = 50_000;
+
+        // Calentamiento
+        for (int i = 0; i < iteraciones; i++) {
+            service.tryConsume("warmup-" + (i % claves));
+        }
+
+        long inicio = System.nanoTime();
+        for (int i = 0; i < iteraciones; i++) {
+            service.tryConsume("ip-" + (i % claves));
+        }
+        return (System.nanoTime() - inicio) / iteraciones;
+    }
+
+    private static class FakeTicker implements Ticker {
+        private final AtomicLong nanos = new AtomicLong();
+
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+
+        void advance(Duration duration) {
+            nanos.addAndGet(duration.toNanos());
+        }
+    }
+
+    /**
+     * Sustituto de Redis: mismo protocolo compare-and-swap que LettuceBasedProxyManager
+     * (GET + SET condicionado al valor anterior) sobre un mapa en memoria.
+     */
+    private static class InMemoryCasProxyManager extends AbstractCompareAndSwapBasedProxyManager<String> {
+
+        private final ConcurrentHashMap<String, byte[]> datos = new ConcurrentHashMap<>();
+
+        InMemoryCasProxyManager() {
+            super(ClientSideConfig.getDefault());
+        }
+
+        boolean contieneClave(String key) {
+            return datos.containsKey(key);
+        }
+
+        @Override
+        protected CompareAndSwapOperation beginCompareAndSwapOperation(String key) {
+            return new CompareAndSwapOperation() {
+                @Override
+                public Optional<byte[]> getStateData() {
+                    return Optional.ofNullable(datos.get(key));
+                }
+
+                @Override
+                public boolean compareAndSwap(byte[] original, byte[] newData, RemoteBucketState newState) {
+                    if (original == null) {
+                        return datos.putIfAbsent(key, newData) == null;
+                    }
+                    byte[] actual = datos.get(key);
+                    return actual != null && Arrays.equals(actual, original) && datos.replace(key, actual, newData);
+                }
+            };
+        }
+
+        @Override
+        protected AsyncCompareAndSwapOperation beginAsyncCompareAndSwapOperation(String key) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void removeProxy(String key) {
+            datos.remove(key);
+        }
+
+        @Override
+        protected CompletableFuture<Void> removeAsync(String key) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isAsyncModeSupported() {
+            return false;
+        }
+    }
+}
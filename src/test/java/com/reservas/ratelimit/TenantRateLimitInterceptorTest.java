@@ -0,0 +1,189 @@
+package com.reservas.ratelimit;
+
+import com.reservas.entity.Negocio;
+import com.reservas.entity.Usuario;
+import com.reservas.repository.UsuarioRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.method.HandlerMethod;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("TenantRateLimitInterceptor - Pruebas Unitarias")
+class TenantRateLimitInterceptorTest {
+
+    private static final String EMAIL = "owner@negocio.com";
+
+    @Mock
+    private UsuarioRepository usuarioRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private LocalBucketStore bucketStore;
+    private TenantRateLimitInterceptor interceptor;
+    private Negocio negocio;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        bucketStore = new LocalBucketStore(1_000, Duration.ofMinutes(30));
+        interceptor = nuevoInterceptor();
+
+        negocio = Negocio.builder().id(UUID.randomUUID()).plan("basico").build();
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(EMAIL, null, List.of()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    @DisplayName("Debe ignorar endpoints sin @RateLimited")
+    void debeIgnorarEndpointsSinAnotacion() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertTrue(interceptor.preHandle(new MockHttpServletRequest(), response, handler("sinLimite")));
+        verifyNoInteractions(usuarioRepository);
+    }
+
+    @Test
+    @DisplayName("Debe consumir tokens según el costo del endpoint")
+    void debeConsumirSegunCosto() throws Exception {
+        mockUsuario();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertTrue(interceptor.preHandle(new MockHttpServletRequest(), response, handler("pdf")));
+
+        assertEquals("6", response.getHeader("X-RateLimit-Remaining"));
+    }
+
+    @Test
+    @DisplayName("Debe responder 429 con Retry-After y registrar la métrica al exceder el límite")
+    void debeResponder429_conRetryAfter() throws Exception {
+        mockUsuario();
+        for (int i = 0; i < 2; i++) {
+            assertTrue(interceptor.preHandle(new MockHttpServletRequest(), new MockHttpServletResponse(), handler("pdf")));
+        }
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        boolean permitido = interceptor.preHandle(new MockHttpServletRequest(), response, handler("pdf"));
+
+        assertFalse(permitido);
+        assertEquals(429, response.getStatus());
+        long retryAfter = Long.parseLong(response.getHeader("Retry-After"));
+        assertTrue(retryAfter >= 1 && retryAfter <= 60, "Retry-After: " + retryAfter);
+        assertEquals(1.0, meterRegistry.counter(TenantRateLimitInterceptor.METRICA_THROTTLED,
+                "plan", "basico", "grupo", "reportes").count());
+        assertTrue(meterRegistry.find(TenantRateLimitInterceptor.METRICA_THROTTLED).tagKeys("negocio").meters().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Un cambio de plan usa un bucket con la capacidad del plan nuevo")
+    void cambioDePlan_usaBucketNuevo() throws Exception {
+        mockUsuario();
+        for (int i = 0; i < 2; i++) {
+            interceptor.preHandle(new MockHttpServletRequest(), new MockHttpServletResponse(), handler("pdf"));
+        }
+        assertFalse(interceptor.preHandle(new MockHttpServletRequest(), new MockHttpServletResponse(), handler("pdf")));
+
+        // Mismo almacén de buckets, caché de negocios vacía (como tras su TTL)
+        negocio.setPlan("premium");
+        interceptor = nuevoInterceptor();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertTrue(interceptor.preHandle(new MockHttpServletRequest(), response, handler("pdf")));
+        assertEquals("46", response.getHeader("X-RateLimit-Remaining"));
+    }
+
+    @Test
+    @DisplayName("Debe aplicar capacidad según el plan del negocio")
+    void debeAplicarCapacidadSegunPlan() throws Exception {
+        negocio.setPlan("premium");
+        mockUsuario();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        interceptor.preHandle(new MockHttpServletRequest(), response, handler("pdf"));
+
+        assertEquals("46", response.getHeader("X-RateLimit-Remaining"));
+    }
+
+    @Test
+    @DisplayName("Grupos distintos tienen buckets independientes")
+    void gruposDistintosTienenBucketsIndependientes() throws Exception {
+        mockUsuario();
+        for (int i = 0; i < 2; i++) {
+            interceptor.preHandle(new MockHttpServletRequest(), new MockHttpServletResponse(), handler("pdf"));
+        }
+
+        assertTrue(interceptor.preHandle(new MockHttpServletRequest(), new MockHttpServletResponse(), handler("disponibilidad")));
+    }
+
+    @Test
+    @DisplayName("Debe resolver el negocio una sola vez por email")
+    void debeResolverNegocioUnaVez() throws Exception {
+        mockUsuario();
+        for (int i = 0; i < 3; i++) {
+            interceptor.preHandle(new MockHttpServletRequest(), new MockHttpServletResponse(), handler("disponibilidad"));
+        }
+
+        verify(usuarioRepository, times(1)).findByEmailWithNegocio(EMAIL);
+    }
+
+    @Test
+    @DisplayName("No debe limitar cuando rate limiting está deshabilitado")
+    void noDebeLimitar_cuandoDeshabilitado() throws Exception {
+        ReflectionTestUtils.setField(interceptor, "rateLimitEnabled", false);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(interceptor.preHandle(new MockHttpServletRequest(), new MockHttpServletResponse(), handler("pdf")));
+        }
+        verifyNoInteractions(usuarioRepository);
+    }
+
+    private TenantRateLimitInterceptor nuevoInterceptor() {
+        TenantRateLimitInterceptor nuevo = new TenantRateLimitInterceptor(bucketStore, usuarioRepository, meterRegistry);
+        ReflectionTestUtils.setField(nuevo, "rateLimitEnabled", true);
+        ReflectionTestUtils.setField(nuevo, "basicoPorMinuto", 10L);
+        ReflectionTestUtils.setField(nuevo, "profesionalPorMinuto", 20L);
+        ReflectionTestUtils.setField(nuevo, "premiumPorMinuto", 50L);
+        return nuevo;
+    }
+
+    private void mockUsuario() {
+        Usuario usuario = Usuario.builder().email(EMAIL).negocio(negocio).build();
+        when(usuarioRepository.findByEmailWithNegocio(EMAIL)).thenReturn(Optional.of(usuario));
+    }
+
+    private HandlerMethod handler(String metodo) throws NoSuchMethodException {
+        return new HandlerMethod(new EndpointsDePrueba(), EndpointsDePrueba.class.getMethod(metodo));
+    }
+
+    static class EndpointsDePrueba {
+        public void sinLimite() {}
+
+        @RateLimited(value = "reportes", cost = 4)
+        public void pdf() {}
+
+        @RateLimited("disponibilidad")
+        public void disponibilidad() {}
+    }
+}
@@ -0,0 +1,103 @@
+package com.reservas.security;
+
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import jakarta.servlet.FilterChain;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro-benchmark del overhead de autenticación JWT por petición.
+ *
+ * - legacyDobleParseo: comportamiento anterior (clave HMAC reconstruida y dos
+ *   parseos + verificaciones por petición: validateToken + getUsernameFromToken)
+ * - parseoUnico: parser precompilado, una verificación por petición, sin caché
+ * - filtroConCache: JwtAuthenticationFilter completo con la caché de tokens verificados
+ *
+ * No se ejecuta con surefire. Para correrlo:
+ *   mvn test-compile
+ *   java -cp "target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)" \
+ *        com.reservas.security.JwtFilterBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtFilterBenchmark {
+
+    private static final String SECRET =
+            "benchmark-secret-key-minimum-64-characters-for-hs512-xxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxx";
+
+    private JwtParser parser;
+    private JwtAuthenticationFilter filtro;
+    private String token;
+    private final FilterChain chain = (request, response) -> { };
+
+    @Setup
+    public void setUp() {
+        JwtProvider conCache = crearProvider(10_000);
+        parser = Jwts.parser().verifyWith(Keys.hmacShaKeyFor(SECRET.getBytes())).build();
+        token = conCache.generateToken("benchmark@test.com");
+
+        UserDetails usuario = new User("benchmark@test.com", "", List.of());
+        filtro = new JwtAuthenticationFilter();
+        ReflectionTestUtils.setField(filtro, "jwtProvider", conCache);
+        ReflectionTestUtils.setField(filtro, "userDetailsService",
+                (org.springframework.security.core.userdetails.UserDetailsService) username -> usuario);
+    }
+
+    @Benchmark
+    public String legacyDobleParseo() {
+        // validateToken()
+        Jwts.parser().verifyWith(Keys.hmacShaKeyFor(SECRET.getBytes())).build().parseSignedClaims(token);
+        // getUsernameFromToken()
+        return Jwts.parser().verifyWith(Keys.hmacShaKeyFor(SECRET.getBytes())).build()
+                .parseSignedClaims(token).getPayload().getSubject();
+    }
+
+    @Benchmark
+    public String parseoUnico() {
+        return parser.parseSignedClaims(token).getPayload().getSubject();
+    }
+
+    @Benchmark
+    public Object filtroConCache() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/citas");
+        request.addHeader("Authorization", "Bearer " + token);
+        filtro.doFilter(request, new MockHttpServletResponse(), chain);
+        Object auth = SecurityContextHolder.getContext().getAuthentication();
+        SecurityContextHolder.clearContext();
+        return auth;
+    }
+
+    private static JwtProvider crearProvider(long cacheMaxSize) {
+        JwtProvider provider = new JwtProvider();
+        ReflectionTestUtils.setField(provider, "jwtSecret", SECRET);
+        ReflectionTestUtils.setField(provider, "jwtExpirationMs", 3_600_000L);
+        ReflectionTestUtils.setField(provider, "verificationCacheMaxSize", cacheMaxSize);
+        provider.init();
+        return provider;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(JwtFilterBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,110 @@
+package com.reservas.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("JwtProvider - Pruebas Unitarias")
+class JwtProviderTest {
+
+    private static final String SECRET =
+            "test-secret-key-for-unit-tests-only-minimum-64-characters-xxxxxxxxxxxxxxxxxxxxxxxxxx";
+
+    private JwtProvider jwtProvider;
+
+    @BeforeEach
+    void setUp() {
+        jwtProvider = crearProvider(3_600_000L, 100);
+    }
+
+    @Test
+    @DisplayName("Debe validar token generado y devolver el subject")
+    void debeValidarTokenGenerado() {
+        String token = jwtProvider.generateToken("user@test.com");
+
+        Claims claims = jwtProvider.validateAndGetClaims(token);
+
+        assertNotNull(claims);
+        assertEquals("user@test.com", claims.getSubject());
+        assertTrue(jwtProvider.validateToken(token));
+        assertEquals("user@test.com", jwtProvider.getUsernameFromToken(token));
+    }
+
+    @Test
+    @DisplayName("Debe cachear el token verificado una sola vez")
+    void debeCachearTokenVerificado() {
+        String token = jwtProvider.generateToken("user@test.com");
+
+        jwtProvider.validateAndGetClaims(token);
+        jwtProvider.validateAndGetClaims(token);
+        jwtProvider.validateAndGetClaims(token);
+
+        assertEquals(1, jwtProvider.tokensEnCache());
+    }
+
+    @Test
+    @DisplayName("Debe rechazar token con firma de otra clave y no cachearlo")
+    void debeRechazarTokenConFirmaInvalida() {
+        String otraClave = "otra-clave-secreta-de-al-menos-64-caracteres-para-hs512-yyyyyyyyyyyyyyyyyyyyyyyyy";
+        String token = Jwts.builder()
+                .subject("atacante@test.com")
+                .expiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(Keys.hmacShaKeyFor(otraClave.getBytes()), SignatureAlgorithm.HS512)
+                .compact();
+
+        assertNull(jwtProvider.validateAndGetClaims(token));
+        assertFalse(jwtProvider.validateToken(token));
+        assertEquals(0, jwtProvider.tokensEnCache());
+    }
+
+    @Test
+    @DisplayName("Debe rechazar token malformado")
+    void debeRechazarTokenMalformado() {
+        assertNull(jwtProvider.validateAndGetClaims("esto.no.es-un-jwt"));
+        assertNull(jwtProvider.validateAndGetClaims(""));
+        assertNull(jwtProvider.validateAndGetClaims(null));
+    }
+
+    @Test
+    @DisplayName("Un token cacheado deja de ser válido al llegar su exp")
+    void tokenCacheado_expira() throws InterruptedException {
+        JwtProvider providerCorto = crearProvider(1_000L, 100);
+        String token = providerCorto.generateToken("user@test.com");
+        assertNotNull(providerCorto.validateAndGetClaims(token));
+
+        Thread.sleep(1_500);
+
+        assertNull(providerCorto.validateAndGetClaims(token));
+        assertEquals(0, providerCorto.tokensEnCache());
+    }
+
+    @Test
+    @DisplayName("La caché está acotada al tamaño máximo configurado")
+    void cache_estaAcotada() {
+        JwtProvider providerPequeno = crearProvider(3_600_000L, 10);
+
+        for (int i = 0; i < 200; i++) {
+            providerPequeno.validateAndGetClaims(providerPequeno.generateToken("user" + i + "@test.com"));
+        }
+
+        assertTrue(providerPequeno.tokensEnCache() <= 10);
+    }
+
+    static JwtProvider crearProvider(long expirationMs, long cacheMaxSize) {
+        JwtProvider provider = new JwtProvider();
+        ReflectionTestUtils.setField(provider, "jwtSecret", SECRET);
+        ReflectionTestUtils.setField(provider, "jwtExpirationMs", expirationMs);
+        ReflectionTestUtils.setField(provider, "verificationCacheMaxSize", cacheMaxSize);
+        provider.init();
+        return provider;
+    }
+}
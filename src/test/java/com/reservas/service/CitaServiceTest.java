@@ -57,6 +57,9 @@ class CitaServiceTest {
     @Mock
     private PlanLimitesService planLimitesService;
 
+    @Mock
+    private RecordatorioService recordatorioService;
+
     @InjectMocks
     private CitaService citaService;
 
@@ -431,6 +434,7 @@ class CitaServiceTest {
 
         // Assert
         verify(citaRepository, times(1)).save(any(Cita.class));
+        verify(recordatorioService).reprogramarParaCita(citaMock);
     }
 
     @Test
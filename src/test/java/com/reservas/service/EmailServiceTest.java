@@ -1,12 +1,16 @@
 package com.reservas.service;
 
 import com.reservas.entity.PlantillaEmailConfig;
+import com.reservas.notifications.resilience.ProteccionProveedores;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.http.*;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -37,6 +41,10 @@ class EmailServiceTest {
         /** Último cuerpo del request capturado en doPost */
         private HttpEntity<?> lastRequest;
 
+        TestEmailService(ProteccionProveedores proteccionProveedores) {
+            super(null, proteccionProveedores);
+        }
+
         @Override
         protected ResponseEntity<Map> doPost(String url, HttpEntity<?> entity) {
             postCallCount++;
@@ -82,7 +90,9 @@ class EmailServiceTest {
 
     @BeforeEach
     void setUp() {
-        emailService = new TestEmailService();
+        // Circuito: abre con 5 fallos de 5 llamadas y queda abierto 1 minuto
+        emailService = new TestEmailService(new ProteccionProveedores(
+                new SimpleMeterRegistry(), 20, 5, 50, Duration.ofMinutes(1), 3, 10, Duration.ofMillis(500)));
         ReflectionTestUtils.setField(emailService, "resendApiKey", "re_test-api-key-12345");
         ReflectionTestUtils.setField(emailService, "fromEmail",    "noreply@test.com");
         ReflectionTestUtils.setField(emailService, "fromName",     "Test System");
@@ -143,6 +153,21 @@ class EmailServiceTest {
         assertFalse(result);
     }
 
+    @Test
+    void testEnviarEmail_CircuitoAbierto_NoLlamaAResend() {
+        emailService.willThrow(new ResourceAccessException("Read timed out"));
+        for (int i = 0; i < 5; i++) {
+            emailService.enviarEmail("user@example.com", "Test", "<p>Content</p>");
+        }
+        emailService.resetCallCount();
+        emailService.willReturn("email-id-002");
+
+        boolean result = emailService.enviarEmail("user@example.com", "Test", "<p>Content</p>");
+
+        assertFalse(result);
+        assertFalse(emailService.wasPostCalled());
+    }
+
     // ─────────────────────────────────────────────────────────────────
     // enviarEmailConTemplate
     // ─────────────────────────────────────────────────────────────────
@@ -262,6 +287,38 @@ class EmailServiceTest {
         assertFalse(html.contains("{{"), "No deben quedar placeholders sin reemplazar");
     }
 
+    @Test
+    void testPrepararRecordatorioCita_EscapaValoresYAplicaConfigNegocio() {
+        PlantillaEmailConfig config = PlantillaEmailConfig.builder()
+                .activa(true)
+                .disenoBase(PlantillaEmailConfig.TipoDiseno.MODERNO)
+                .colorPrimario("#ff0000")
+                .firma("Equipo <Spa>")
+                .infoContacto("Tel: 33 1234 5678 & WhatsApp")
+                .build();
+
+        EmailService.MensajeEmail mensaje = emailService.prepararRecordatorioCita(
+                "<script>alert(1)</script>", "Lunes 20 de Enero, 2026", "10:00 AM",
+                "Corte de Cabello", "Barbería El Clásico", config);
+
+        String html = mensaje.html();
+        assertFalse(html.contains("<script>"), "Los datos del cliente deben ir escapados");
+        assertTrue(html.contains("&lt;script&gt;alert(1)&lt;/script&gt;"));
+        assertTrue(html.contains("#ff0000"));
+        assertTrue(html.contains("Equipo &lt;Spa&gt;"));
+        // El bloque de contacto se inserta como HTML, con el texto del negocio escapado
+        assertTrue(html.contains("<p style=\"color:#6b7280;font-size:12px;margin:0 0 6px 0;\">Tel: 33 1234 5678 &amp; WhatsApp</p>"));
+        assertFalse(html.contains("{{"));
+
+        // Segundo envío del mismo negocio: reutiliza el template con su marca y solo cambia la cita
+        String otro = emailService.prepararRecordatorioCita(
+                "Ana Ruiz", "Martes 21 de Enero, 2026", "11:00 AM",
+                "Corte de Cabello", "Barbería El Clásico", config).html();
+        assertTrue(otro.contains("Ana Ruiz"));
+        assertTrue(otro.contains("#ff0000"));
+        assertFalse(otro.contains("alert(1)"));
+    }
+
     @Test
     @SuppressWarnings("deprecation")
     void testEnviarRecordatorioCita_MetodoDeprecado() {
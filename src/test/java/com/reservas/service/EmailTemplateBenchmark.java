@@ -0,0 +1,103 @@
+package com.reservas.service;
+
+import com.reservas.entity.PlantillaEmailConfig;
+import com.reservas.util.PlantillaHtml;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro-benchmark del costo de renderizar un recordatorio de cita por email.
+ *
+ * - legacyCargaYReplace: comportamiento anterior (lectura del classpath en cada envío
+ *   y un String.replace por variable sobre el HTML completo)
+ * - compilado: template compilado, todas las variables resueltas en cada envío
+ * - compiladoConMarca: EmailService.prepararRecordatorioCita completo, con los colores
+ *   y textos del negocio ya fijados en el template cacheado
+ *
+ * No se ejecuta con surefire. Para correrlo:
+ *   mvn test-compile
+ *   java -cp "target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)" \
+ *        com.reservas.service.EmailTemplateBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmailTemplateBenchmark {
+
+    private static final String TEMPLATE = "email-templates/recordatorio-clasico.html";
+
+    private PlantillaHtml plantilla;
+    private EmailService emailService;
+    private PlantillaEmailConfig config;
+    private Map<String, String> variables;
+
+    @Setup
+    public void setUp() throws IOException {
+        plantilla = PlantillaHtml.compilar(leerTemplate());
+        emailService = new EmailService(null, null);
+        emailService.init();
+        config = PlantillaEmailConfig.builder()
+                .activa(true)
+                .colorPrimario("#0f766e")
+                .firma("Equipo Barbería El Clásico")
+                .infoContacto("Tel: 33 1234 5678")
+                .build();
+
+        variables = new HashMap<>();
+        variables.put("nombreCliente", "Pedro López");
+        variables.put("nombreServicio", "Corte de Cabello");
+        variables.put("fechaCita", "Lunes 20 de Enero, 2026");
+        variables.put("horaCita", "10:00 AM");
+        variables.put("nombreNegocio", "Barbería El Clásico");
+        variables.put("colorPrimario", "#0f766e");
+        variables.put("colorSecundario", "#7c3aed");
+        variables.put("colorFondo", "#f4f4f5");
+        variables.put("mensajeBienvenida", "Te recordamos que tienes una cita próxima. ¡Te esperamos con gusto!");
+        variables.put("firma", "Equipo Barbería El Clásico");
+        variables.put("infoContactoHtml", "<p>Tel: 33 1234 5678</p>");
+    }
+
+    @Benchmark
+    public String legacyCargaYReplace() throws IOException {
+        String html = leerTemplate();
+        for (Map.Entry<String, String> entry : variables.entrySet()) {
+            html = html.replace("{{" + entry.getKey() + "}}", entry.getValue());
+        }
+        return html;
+    }
+
+    @Benchmark
+    public String compilado() {
+        return plantilla.render(variables);
+    }
+
+    @Benchmark
+    public EmailService.MensajeEmail compiladoConMarca() {
+        return emailService.prepararRecordatorioCita("Pedro López", "Lunes 20 de Enero, 2026", "10:00 AM",
+                "Corte de Cabello", "Barbería El Clásico", config);
+    }
+
+    private static String leerTemplate() throws IOException {
+        return new String(new ClassPathResource(TEMPLATE).getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(EmailTemplateBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -1,6 +1,9 @@
 package com.reservas.service;
 
+import com.reservas.entity.NotificationLog;
 import com.reservas.entity.Usuario;
+import com.reservas.notifications.domain.NotificationChannel;
+import com.reservas.notifications.service.NotificationOutboxService;
 import com.reservas.repository.UsuarioRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -30,6 +33,9 @@ class EmailVerificationServiceTest {
     @Mock
     private EmailService emailService;
 
+    @Mock
+    private NotificationOutboxService notificationOutboxService;
+
     @InjectMocks
     private EmailVerificationService emailVerificationService;
 
@@ -49,13 +55,13 @@ class EmailVerificationServiceTest {
     }
 
     @Test
-    @DisplayName("Debe enviar email de verificación correctamente")
+    @DisplayName("Debe encolar email de verificación en el outbox")
     void debeEnviarEmailVerificacion_correctamente() {
         // Arrange
         when(usuarioRepository.save(any(Usuario.class)))
                 .thenReturn(usuarioMock);
-        when(emailService.enviarEmailVerificacion(anyString(), anyString(), anyString()))
-                .thenReturn(true);
+        when(emailService.prepararEmailVerificacion(anyString(), anyString()))
+                .thenReturn(new EmailService.MensajeEmail("Verifica tu cuenta", "<html/>"));
 
         // Act
         emailVerificationService.enviarEmailVerificacion(usuarioMock);
@@ -64,13 +70,38 @@ class EmailVerificationServiceTest {
         assertNotNull(usuarioMock.getTokenVerificacion());
         assertNotNull(usuarioMock.getTokenVerificacionExpira());
         verify(usuarioRepository, times(1)).save(usuarioMock);
-        verify(emailService, times(1)).enviarEmailVerificacion(
-                eq("usuario@test.com"),
+        verify(emailService).prepararEmailVerificacion(
                 eq("Juan Pérez"),
-                anyString()
+                contains("/verify-email?token=" + usuarioMock.getTokenVerificacion())
+        );
+        // Sin llamada a Resend dentro de la transacción
+        verify(emailService, never()).enviarEmailVerificacion(anyString(), anyString(), anyString());
+        verify(notificationOutboxService).encolar(
+                argThat(r -> r.getChannel() == NotificationChannel.EMAIL
+                        && "usuario@test.com".equals(r.getRecipient())
+                        && "<html/>".equals(r.getContent())),
+                eq(NotificationLog.NotificationType.VERIFICATION_CODE),
+                startsWith("verificacion-email:")
         );
     }
 
+    @Test
+    @DisplayName("No debe encolar nada si el template no se pudo renderizar")
+    void noDebeEncolar_siTemplateNoDisponible() {
+        // Arrange
+        when(usuarioRepository.save(any(Usuario.class)))
+                .thenReturn(usuarioMock);
+        when(emailService.prepararEmailVerificacion(anyString(), anyString()))
+                .thenReturn(null);
+
+        // Act
+        assertDoesNotThrow(() -> emailVerificationService.enviarEmailVerificacion(usuarioMock));
+
+        // Assert: el token queda guardado para un reenvío
+        assertNotNull(usuarioMock.getTokenVerificacion());
+        verify(notificationOutboxService, never()).encolar(any(), any(), anyString());
+    }
+
     @Test
     @DisplayName("Debe generar token único para cada usuario")
     void debeGenerarTokenUnico_paraCadaUsuario() {
@@ -170,9 +201,8 @@ class EmailVerificationServiceTest {
         // Assert
         verify(usuarioRepository, times(1)).findByEmail("usuario@test.com");
         verify(usuarioRepository, times(1)).save(usuarioMock);
-        verify(emailService, times(1)).enviarEmailVerificacion(
-                eq("usuario@test.com"),
-                anyString(),
+        verify(emailService, times(1)).prepararEmailVerificacion(
+                eq("Juan Pérez"),
                 anyString()
         );
     }
@@ -189,7 +219,7 @@ class EmailVerificationServiceTest {
                 () -> emailVerificationService.reenviarEmailVerificacion("noexiste@test.com"));
 
         assertEquals("Usuario no encontrado", exception.getMessage());
-        verify(emailService, never()).enviarEmailVerificacion(anyString(), anyString(), anyString());
+        verify(notificationOutboxService, never()).encolar(any(), any(), anyString());
     }
 
     @Test
@@ -205,7 +235,7 @@ class EmailVerificationServiceTest {
                 () -> emailVerificationService.reenviarEmailVerificacion("usuario@test.com"));
 
         assertEquals("El email ya está verificado", exception.getMessage());
-        verify(emailService, never()).enviarEmailVerificacion(anyString(), anyString(), anyString());
+        verify(notificationOutboxService, never()).encolar(any(), any(), anyString());
     }
 
     @Test
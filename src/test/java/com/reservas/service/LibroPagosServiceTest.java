@@ -0,0 +1,251 @@
+package com.reservas.service;
+
+import com.reservas.batch.ChunkJobRunner;
+import com.reservas.entity.BatchJobCursor;
+import com.reservas.entity.MovimientoPago;
+import com.reservas.entity.Negocio;
+import com.reservas.entity.Pago;
+import com.reservas.entity.Payment;
+import com.reservas.entity.SaldoPagos;
+import com.reservas.entity.Usuario;
+import com.reservas.repository.BatchJobCursorRepository;
+import com.reservas.repository.MovimientoPagoRepository;
+import com.reservas.repository.PagoRepository;
+import com.reservas.repository.PaymentRepository;
+import com.reservas.repository.SaldoPagosRepository;
+import com.reservas.repository.UsuarioRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * LibroPagosService con un libro en memoria: el mock de insertarSiNoExiste imita la
+ * restricción única (origen, referencia, tipo) y el de sumar acumula en un mapa.
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("LibroPagosService - Libro de pagos y saldos")
+class LibroPagosServiceTest {
+
+    @Mock
+    private MovimientoPagoRepository movimientoRepository;
+    @Mock
+    private SaldoPagosRepository saldoRepository;
+    @Mock
+    private PagoRepository pagoRepository;
+    @Mock
+    private PaymentRepository paymentRepository;
+    @Mock
+    private UsuarioRepository usuarioRepository;
+    @Mock
+    private BatchJobCursorRepository cursorRepository;
+
+    /** Claves origen|referencia|tipo ya anotadas */
+    private final Set<String> anotados = new HashSet<>();
+    /** Movimientos insertados, en orden: origen|tipo|monto|comision|neto|reembolsado */
+    private final List<String> movimientos = new ArrayList<>();
+    /** Saldos por origen|moneda */
+    private final Map<String, SaldoPagos> saldos = new HashMap<>();
+
+    private final Negocio negocio = Negocio.builder().id(UUID.randomUUID()).nombre("Salon Test").build();
+    private SimpleMeterRegistry meterRegistry;
+    private LibroPagosService service;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(movimientoRepository.insertarSiNoExiste(any(), anyString(), anyString(), anyString(),
+                anyString(), any(), any(), any(), any(), any(), any(), any())).thenAnswer(inv -> {
+            String clave = inv.getArgument(1) + "|" + inv.getArgument(2) + "|" + inv.getArgument(3);
+            if (!anotados.add(clave)) {
+                return 0;
+            }
+            movimientos.add(inv.getArgument(1) + "|" + inv.getArgument(3) + "|" + inv.getArgument(5) + "|"
+                    + inv.getArgument(6) + "|" + inv.getArgument(7) + "|" + inv.getArgument(8));
+            return 1;
+        });
+        lenient().when(saldoRepository.insertarSiNoExiste(any(), any(), anyString(), anyString(), any()))
+                .thenAnswer(inv -> {
+                    saldos.putIfAbsent(inv.getArgument(2) + "|" + inv.getArgument(3), SaldoPagos.builder()
+                            .negocioId(inv.getArgument(1))
+                            .origen(MovimientoPago.Origen.valueOf(inv.getArgument(2)))
+                            .moneda(inv.getArgument(3))
+                            .updatedAt(inv.getArgument(4))
+                            .build());
+                    return 1;
+                });
+        lenient().when(saldoRepository.sumar(any(), any(), anyString(), anyLong(), anyLong(), anyLong(),
+                any(), any(), any(), any(), any())).thenAnswer(inv -> {
+            SaldoPagos saldo = saldos.get(inv.<MovimientoPago.Origen>getArgument(1).name() + "|" + inv.getArgument(2));
+            if (saldo == null) {
+                return 0;
+            }
+            saldo.setCobros(saldo.getCobros() + inv.<Long>getArgument(3));
+            saldo.setFallos(saldo.getFallos() + inv.<Long>getArgument(4));
+            saldo.setReembolsos(saldo.getReembolsos() + inv.<Long>getArgument(5));
+            saldo.setMonto(saldo.getMonto().add(inv.getArgument(6)));
+            saldo.setComision(saldo.getComision().add(inv.getArgument(7)));
+            saldo.setNeto(saldo.getNeto().add(inv.getArgument(8)));
+            saldo.setReembolsado(saldo.getReembolsado().add(inv.getArgument(9)));
+            saldo.setUpdatedAt(inv.getArgument(10));
+            return 1;
+        });
+        lenient().when(saldoRepository.findByNegocioIdAndOrigen(any(), any())).thenAnswer(inv -> saldos.values().stream()
+                .filter(s -> s.getOrigen() == inv.getArgument(1))
+                .toList());
+
+        // Sin base de datos: el callback de la transacción se ejecuta directamente
+        Map<String, BatchJobCursor> cursores = new HashMap<>();
+        lenient().when(cursorRepository.bloquear(anyString()))
+                .thenAnswer(inv -> Optional.ofNullable(cursores.get(inv.<String>getArgument(0))));
+        lenient().when(cursorRepository.save(any(BatchJobCursor.class))).thenAnswer(inv -> {
+            BatchJobCursor cursor = inv.getArgument(0);
+            cursores.put(cursor.getNombre(), cursor);
+            return cursor;
+        });
+
+        meterRegistry = new SimpleMeterRegistry();
+        ChunkJobRunner runner = new ChunkJobRunner(cursorRepository,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                meterRegistry, 500, 0, Duration.ZERO, Duration.ofHours(12));
+        service = new LibroPagosService(movimientoRepository, saldoRepository, pagoRepository, paymentRepository,
+                usuarioRepository, runner, meterRegistry);
+    }
+
+    @Test
+    @DisplayName("Un cobro se anota una sola vez aunque se registre varias")
+    void registrar_esIdempotente() {
+        Pago pago = pago("completed", "299.00");
+
+        assertEquals(1, service.registrar(pago));
+        assertEquals(0, service.registrar(pago));
+
+        assertEquals(List.of("SUSCRIPCION|COBRO|299.00|0|299.00|0"), movimientos);
+        SaldoPagos saldo = service.obtenerSaldo(negocio.getId(), MovimientoPago.Origen.SUSCRIPCION);
+        assertEquals(1, saldo.getCobrosVigentes());
+        assertEquals(new BigDecimal("299.00"), saldo.getMonto());
+        verify(saldoRepository, times(1)).insertarSiNoExiste(any(), any(), anyString(), anyString(), any());
+        assertEquals(1.0, meterRegistry.get("pagos.libro.movimientos")
+                .tag("origen", "SUSCRIPCION").tag("tipo", "COBRO").counter().count());
+    }
+
+    @Test
+    @DisplayName("Los pagos pendientes no anotan nada")
+    void registrar_pendienteSinMovimientos() {
+        assertEquals(0, service.registrar(pago("pending", "299.00")));
+        verifyNoInteractions(movimientoRepository, saldoRepository);
+    }
+
+    @Test
+    @DisplayName("Un reembolso de Connect revierte el cobro y guarda el importe devuelto")
+    void registrar_reembolsoConnect() {
+        Payment payment = payment(Payment.PaymentStatus.SUCCESS);
+        service.registrar(payment);
+
+        payment.setStatus(Payment.PaymentStatus.REFUNDED);
+        payment.setAmountRefunded(new BigDecimal("40.00"));
+        payment.setRefundId("re_1");
+        assertEquals(1, service.registrar(payment));
+
+        assertEquals(List.of(
+                "CONNECT|COBRO|100.00|5.00|95.00|0",
+                "CONNECT|REEMBOLSO|-100.00|-5.00|-95.00|40.00"), movimientos);
+        SaldoPagos saldo = service.obtenerSaldo(negocio.getId(), MovimientoPago.Origen.CONNECT);
+        assertEquals(0, saldo.getCobrosVigentes());
+        assertEquals(1, saldo.getReembolsos());
+        assertEquals(0, BigDecimal.ZERO.compareTo(saldo.getNeto()));
+        assertEquals(new BigDecimal("40.00"), saldo.getReembolsado());
+        assertEquals("MXN", saldo.getMoneda());
+    }
+
+    @Test
+    @DisplayName("El saldo no suma importes de monedas distintas")
+    void obtenerSaldo_separaMonedas() {
+        service.registrar(pago("completed", "299.00"));
+        Pago enDolares = pago("completed", "20.00");
+        enDolares.setMoneda("usd");
+        service.registrar(enDolares);
+        // El último movimiento es en MXN: es la moneda principal
+        service.registrar(pago("failed", "299.00"));
+
+        List<SaldoPagos> porMoneda = service.obtenerSaldos(negocio.getId(), MovimientoPago.Origen.SUSCRIPCION);
+        SaldoPagos saldo = service.obtenerSaldo(negocio.getId(), MovimientoPago.Origen.SUSCRIPCION);
+
+        assertEquals(List.of("MXN", "USD"), porMoneda.stream().map(SaldoPagos::getMoneda).toList());
+        assertEquals("MXN", saldo.getMoneda());
+        assertEquals(1, saldo.getCobros());
+        assertEquals(1, saldo.getFallos());
+        assertEquals(new BigDecimal("299.00"), saldo.getMonto());
+        assertEquals(new BigDecimal("20.00"), porMoneda.get(1).getMonto());
+        assertEquals(0, service.obtenerSaldo(negocio.getId(), MovimientoPago.Origen.CONNECT).getCobros());
+    }
+
+    @Test
+    @DisplayName("El backfill anota los pagos existentes y se puede relanzar")
+    void backfill_anotaPagosExistentes() {
+        Pago completado = pago("completed", "299.00");
+        Pago reembolsado = pago("refunded", "699.00");
+        when(pagoRepository.findParaLibro(anyCollection(), any(), any(UUID.class), any()))
+                .thenReturn(List.of(completado, reembolsado));
+        Payment fallido = payment(Payment.PaymentStatus.FAILED);
+        when(paymentRepository.findParaLibro(anyCollection(), any(), anyString(), any()))
+                .thenReturn(List.of(fallido));
+
+        service.backfill();
+        service.backfill();
+
+        // Cobro y reembolso del Pago reembolsado, una sola vez
+        assertEquals(4, movimientos.size());
+        verify(pagoRepository, times(2)).findParaLibro(anyCollection(), any(), any(UUID.class), any());
+        SaldoPagos suscripciones = service.obtenerSaldo(negocio.getId(), MovimientoPago.Origen.SUSCRIPCION);
+        assertEquals(1, suscripciones.getCobrosVigentes());
+        assertEquals(new BigDecimal("299.00"), suscripciones.getMonto());
+        assertEquals(1, service.obtenerSaldo(negocio.getId(), MovimientoPago.Origen.CONNECT).getFallos());
+    }
+
+    private Pago pago(String estado, String monto) {
+        return Pago.builder()
+                .id(UUID.randomUUID())
+                .negocio(negocio)
+                .plan("profesional")
+                .monto(new BigDecimal(monto))
+                .moneda("MXN")
+                .estado(estado)
+                .fechaActualizacion(LocalDateTime.now())
+                .build();
+    }
+
+    private Payment payment(Payment.PaymentStatus status) {
+        return Payment.builder()
+                .id(UUID.randomUUID().toString())
+                .usuario(Usuario.builder().id(UUID.randomUUID()).negocio(negocio).build())
+                .paymentIntentId("pi_1")
+                .amount(new BigDecimal("100.00"))
+                .platformFee(new BigDecimal("5.00"))
+                .netAmount(new BigDecimal("95.00"))
+                .currency("mxn")
+                .status(status)
+                .refunded(false)
+                .build();
+    }
+}
@@ -1,8 +1,10 @@
 package com.reservas.service;
 
 import com.reservas.dto.response.PagoResponse;
+import com.reservas.entity.MovimientoPago;
 import com.reservas.entity.Negocio;
 import com.reservas.entity.Pago;
+import com.reservas.entity.SaldoPagos;
 import com.reservas.entity.Usuario;
 import com.reservas.exception.NotFoundException;
 import com.reservas.exception.UnauthorizedException;
@@ -37,6 +39,9 @@ class PagoServiceTest {
     @Mock
     private UsuarioRepository usuarioRepository;
 
+    @Mock
+    private LibroPagosService libroPagosService;
+
     @InjectMocks
     private PagoService pagoService;
 
@@ -215,10 +220,8 @@ class PagoServiceTest {
         BigDecimal montoTotal = new BigDecimal("598.00");
         when(usuarioRepository.findByEmail("usuario@test.com"))
                 .thenReturn(Optional.of(usuarioMock));
-        when(pagoRepository.countPagosCompletadosByNegocio(negocioMock))
-                .thenReturn(2L);
-        when(pagoRepository.sumMontoByNegocioAndEstadoCompleted(negocioMock))
-                .thenReturn(montoTotal);
+        when(libroPagosService.obtenerSaldo(negocioMock.getId(), MovimientoPago.Origen.SUSCRIPCION))
+                .thenReturn(SaldoPagos.builder().cobros(3L).reembolsos(1L).monto(montoTotal).build());
 
         // Act
         PagoService.EstadisticasPagosResponse estadisticas =
@@ -236,10 +239,8 @@ class PagoServiceTest {
         // Arrange
         when(usuarioRepository.findByEmail("usuario@test.com"))
                 .thenReturn(Optional.of(usuarioMock));
-        when(pagoRepository.countPagosCompletadosByNegocio(negocioMock))
-                .thenReturn(0L);
-        when(pagoRepository.sumMontoByNegocioAndEstadoCompleted(negocioMock))
-                .thenReturn(null);
+        when(libroPagosService.obtenerSaldo(negocioMock.getId(), MovimientoPago.Origen.SUSCRIPCION))
+                .thenReturn(SaldoPagos.builder().build());
 
         // Act
         PagoService.EstadisticasPagosResponse estadisticas =
@@ -262,7 +263,7 @@ class PagoServiceTest {
         assertThrows(NotFoundException.class,
                 () -> pagoService.obtenerEstadisticas("noexiste@test.com"));
 
-        verify(pagoRepository, never()).countPagosCompletadosByNegocio(any());
+        verifyNoInteractions(libroPagosService);
     }
 
     @Test
@@ -277,6 +278,6 @@ class PagoServiceTest {
         assertThrows(NotFoundException.class,
                 () -> pagoService.obtenerEstadisticas("usuario@test.com"));
 
-        verify(pagoRepository, never()).countPagosCompletadosByNegocio(any());
+        verifyNoInteractions(libroPagosService);
     }
 }
@@ -17,6 +17,9 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -233,95 +236,116 @@ class PlanLimitesServiceTest {
     }
 
     @Test
-    void obtenerUsoActual_NoExisteUso_DeberiaCrearNuevo() {
+    void obtenerUsoActual_NoExisteUso_DeberiaCrearNuevoConTotalesReales() {
         // Given
+        usoNegocio.setTotalClientes(7);
         when(usoNegocioRepository.findByNegocioIdAndPeriodo(eq(negocioId), anyString()))
-                .thenReturn(Optional.empty());
-        when(usoNegocioRepository.save(any(UsoNegocio.class))).thenAnswer(invocation -> invocation.getArgument(0));
+                .thenReturn(Optional.empty(), Optional.empty(), Optional.of(usoNegocio));
+        when(clienteRepository.countByNegocioId(negocioId)).thenReturn(7L);
+        when(usoNegocioRepository.insertarSiNoExiste(any(UUID.class), eq(negocioId), anyString(),
+                anyInt(), anyInt(), anyInt(), anyInt(), any())).thenReturn(1);
 
         // When
         UsoNegocio uso = planLimitesService.obtenerUsoActual(negocioId);
 
         // Then
-        assertThat(uso).isNotNull();
-        assertThat(uso.getTotalUsuarios()).isZero();
-        assertThat(uso.getTotalClientes()).isZero();
-        assertThat(uso.getTotalCitasMes()).isZero();
-        assertThat(uso.getTotalServicios()).isZero();
-        verify(usoNegocioRepository).save(any(UsoNegocio.class));
+        assertThat(uso.getTotalClientes()).isEqualTo(7);
+        verify(usoNegocioRepository).insertarSiNoExiste(any(UUID.class), eq(negocioId),
+                eq(UsoNegocio.getPeriodoActual()), eq(0), eq(7), eq(0), eq(0), any());
     }
 
     @Test
-    void actualizarUso_DeberiaActualizarTodosLosContadores() {
+    void actualizarUso_DeberiaReconciliarTodosLosContadores() {
         // Given
         when(usoNegocioRepository.findByNegocioIdAndPeriodo(eq(negocioId), anyString()))
                 .thenReturn(Optional.of(usoNegocio));
         when(usuarioRepository.countActiveUsuariosByNegocioId(negocioId)).thenReturn(3L);
         when(clienteRepository.countByNegocioId(negocioId)).thenReturn(25L);
         when(servicioRepository.countByNegocioId(negocioId)).thenReturn(5L);
-        when(citaRepository.countCitasByNegocioAndMonth(eq(negocioId), anyInt(), anyInt())).thenReturn(45L);
-        when(usoNegocioRepository.save(any(UsoNegocio.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(citaRepository.countCitasByNegocioAndFechaHoraRange(eq(negocioId), any(), any())).thenReturn(45L);
 
         // When
         planLimitesService.actualizarUso(negocioId);
 
         // Then
-        verify(usoNegocioRepository).save(argThat(uso ->
-                uso.getTotalUsuarios() == 3 &&
-                        uso.getTotalClientes() == 25 &&
-                        uso.getTotalServicios() == 5 &&
-                        uso.getTotalCitasMes() == 45
-        ));
+        verify(usoNegocioRepository).reconciliar(eq(negocioId), eq(UsoNegocio.getPeriodoActual()),
+                eq(3), eq(25), eq(45), eq(5), any());
+        verify(usoNegocioRepository, never()).save(any());
+    }
+
+    @Test
+    void actualizarUso_DeberiaContarCitasConRangoDelMes() {
+        // Given
+        when(usoNegocioRepository.findByNegocioIdAndPeriodo(eq(negocioId), anyString()))
+                .thenReturn(Optional.of(usoNegocio));
+        YearMonth mes = YearMonth.now();
+
+        // When
+        planLimitesService.actualizarUso(negocioId);
+
+        // Then
+        verify(citaRepository).countCitasByNegocioAndFechaHoraRange(negocioId,
+                mes.atDay(1).atStartOfDay(), mes.plusMonths(1).atDay(1).atStartOfDay());
     }
 
     @Test
-    void validarLimiteUsuarios_PlanBasico_DentroDelLimite_DeberiaPermitir() {
+    void validarLimiteUsuarios_PlanBasico_DentroDelLimite_DeberiaReservarCupo() {
         // Given
         when(planLimitesRepository.findByTipoPlan(TipoPlan.BASICO)).thenReturn(Optional.of(limitesBasico));
-        when(usuarioRepository.countActiveUsuariosByNegocioId(negocioId)).thenReturn(0L);
+        when(usoNegocioRepository.incrementarUsuarios(eq(negocioId), anyString(), eq(1), any())).thenReturn(1);
 
         // When & Then
         assertThatCode(() -> planLimitesService.validarLimiteUsuarios(negocioId, TipoPlan.BASICO))
                 .doesNotThrowAnyException();
+        verify(usuarioRepository, never()).countActiveUsuariosByNegocioId(any());
     }
 
     @Test
     void validarLimiteUsuarios_PlanBasico_ExcedeLimite_DeberiaLanzarException() {
         // Given
+        usoNegocio.setTotalUsuarios(1); // Ya tiene 1
         when(planLimitesRepository.findByTipoPlan(TipoPlan.BASICO)).thenReturn(Optional.of(limitesBasico));
-        when(usuarioRepository.countActiveUsuariosByNegocioId(negocioId)).thenReturn(1L); // Ya tiene 1
+        when(usoNegocioRepository.incrementarUsuarios(eq(negocioId), anyString(), eq(1), any())).thenReturn(0);
+        when(usoNegocioRepository.findByNegocioIdAndPeriodo(eq(negocioId), anyString()))
+                .thenReturn(Optional.of(usoNegocio));
 
         // When & Then
         assertThatThrownBy(() -> planLimitesService.validarLimiteUsuarios(negocioId, TipoPlan.BASICO))
-                .isInstanceOf(LimiteExcedidoException.class);
+                .isInstanceOf(LimiteExcedidoException.class)
+                .hasMessageContaining("Actual: 1");
     }
 
     @Test
-    void validarLimiteUsuarios_PlanPremium_Ilimitado_DeberiaPermitir() {
+    void validarLimiteUsuarios_PlanPremium_DeberiaIncrementarConLimiteDelPlan() {
         // Given
         when(planLimitesRepository.findByTipoPlan(TipoPlan.PREMIUM)).thenReturn(Optional.of(limitesPremium));
+        when(usoNegocioRepository.incrementarUsuarios(eq(negocioId), anyString(), eq(10), any())).thenReturn(1);
 
-        // When & Then - No debería consultar el count porque es ilimitado
+        // When & Then
         assertThatCode(() -> planLimitesService.validarLimiteUsuarios(negocioId, TipoPlan.PREMIUM))
                 .doesNotThrowAnyException();
     }
 
     @Test
-    void validarLimiteClientes_PlanBasico_DentroDelLimite_DeberiaPermitir() {
+    void validarLimiteClientes_PlanBasico_DentroDelLimite_DeberiaReservarCupo() {
         // Given
         when(planLimitesRepository.findByTipoPlan(TipoPlan.BASICO)).thenReturn(Optional.of(limitesBasico));
-        when(clienteRepository.countByNegocioId(negocioId)).thenReturn(25L); // 25 de 50
+        when(usoNegocioRepository.incrementarClientes(eq(negocioId), anyString(), eq(50), any())).thenReturn(1);
 
         // When & Then
         assertThatCode(() -> planLimitesService.validarLimiteClientes(negocioId, TipoPlan.BASICO))
                 .doesNotThrowAnyException();
+        verify(clienteRepository, never()).countByNegocioId(any());
     }
 
     @Test
     void validarLimiteClientes_PlanBasico_ExcedeLimite_DeberiaLanzarException() {
         // Given
+        usoNegocio.setTotalClientes(50); // Ya tiene 50
         when(planLimitesRepository.findByTipoPlan(TipoPlan.BASICO)).thenReturn(Optional.of(limitesBasico));
-        when(clienteRepository.countByNegocioId(negocioId)).thenReturn(50L); // Ya tiene 50
+        when(usoNegocioRepository.incrementarClientes(eq(negocioId), anyString(), eq(50), any())).thenReturn(0);
+        when(usoNegocioRepository.findByNegocioIdAndPeriodo(eq(negocioId), anyString()))
+                .thenReturn(Optional.of(usoNegocio));
 
         // When & Then
         assertThatThrownBy(() -> planLimitesService.validarLimiteClientes(negocioId, TipoPlan.BASICO))
@@ -329,9 +353,10 @@ class PlanLimitesServiceTest {
     }
 
     @Test
-    void validarLimiteClientes_PlanPremium_Ilimitado_DeberiaPermitir() {
+    void validarLimiteClientes_PlanPremium_Ilimitado_DeberiaIncrementarSinTope() {
         // Given
         when(planLimitesRepository.findByTipoPlan(TipoPlan.PREMIUM)).thenReturn(Optional.of(limitesPremium));
+        when(usoNegocioRepository.incrementarClientes(eq(negocioId), anyString(), eq(-1), any())).thenReturn(1);
 
         // When & Then
         assertThatCode(() -> planLimitesService.validarLimiteClientes(negocioId, TipoPlan.PREMIUM))
@@ -339,15 +364,43 @@ class PlanLimitesServiceTest {
     }
 
     @Test
-    void validarLimiteCitasMes_PlanBasico_DentroDelLimite_DeberiaPermitir() {
+    void validarLimiteClientes_PrimerAltaDelPeriodo_DeberiaCrearRegistroYReintentar() {
         // Given
-        usoNegocio.setTotalCitasMes(75); // 75 de 100
         when(planLimitesRepository.findByTipoPlan(TipoPlan.BASICO)).thenReturn(Optional.of(limitesBasico));
-        when(usoNegocioRepository.findByNegocioIdAndPeriodo(eq(negocioId), anyString()))
-                .thenReturn(Optional.of(usoNegocio));
+        when(usoNegocioRepository.incrementarClientes(eq(negocioId), anyString(), eq(50), any())).thenReturn(0, 1);
+        when(usoNegocioRepository.findByNegocioIdAndPeriodo(eq(negocioId), anyString())).thenReturn(Optional.empty());
+        when(usoNegocioRepository.insertarSiNoExiste(any(UUID.class), eq(negocioId), anyString(),
+                anyInt(), anyInt(), anyInt(), anyInt(), any())).thenReturn(1);
+
+        // When & Then
+        assertThatCode(() -> planLimitesService.validarLimiteClientes(negocioId, TipoPlan.BASICO))
+                .doesNotThrowAnyException();
+        verify(usoNegocioRepository, times(2)).incrementarClientes(eq(negocioId), anyString(), eq(50), any());
+    }
+
+    @Test
+    void validarLimiteClientes_RegistroCreadoPorOtraPeticion_DeberiaReintentar() {
+        // Given: el registro no existía en el primer intento, pero otra petición lo insertó antes
+        when(planLimitesRepository.findByTipoPlan(TipoPlan.BASICO)).thenReturn(Optional.of(limitesBasico));
+        when(usoNegocioRepository.incrementarClientes(eq(negocioId), anyString(), eq(50), any())).thenReturn(0, 1);
+        when(usoNegocioRepository.findByNegocioIdAndPeriodo(eq(negocioId), anyString())).thenReturn(Optional.empty());
+        when(usoNegocioRepository.insertarSiNoExiste(any(UUID.class), eq(negocioId), anyString(),
+                anyInt(), anyInt(), anyInt(), anyInt(), any())).thenReturn(0);
+
+        // When & Then
+        assertThatCode(() -> planLimitesService.validarLimiteClientes(negocioId, TipoPlan.BASICO))
+                .doesNotThrowAnyException();
+        verify(usoNegocioRepository, times(2)).incrementarClientes(eq(negocioId), anyString(), eq(50), any());
+    }
+
+    @Test
+    void validarLimiteCitasMes_PlanBasico_DentroDelLimite_DeberiaReservarCupo() {
+        // Given
+        when(planLimitesRepository.findByTipoPlan(TipoPlan.BASICO)).thenReturn(Optional.of(limitesBasico));
+        when(usoNegocioRepository.incrementarCitasMes(eq(negocioId), anyString(), eq(1), eq(100), any())).thenReturn(1);
 
         // When & Then
-        assertThatCode(() -> planLimitesService.validarLimiteCitasMes(negocioId, TipoPlan.BASICO))
+        assertThatCode(() -> planLimitesService.validarLimiteCitasMes(negocioId, TipoPlan.BASICO, LocalDateTime.now()))
                 .doesNotThrowAnyException();
     }
 
@@ -356,40 +409,46 @@ class PlanLimitesServiceTest {
         // Given
         usoNegocio.setTotalCitasMes(100); // Ya tiene 100
         when(planLimitesRepository.findByTipoPlan(TipoPlan.BASICO)).thenReturn(Optional.of(limitesBasico));
+        when(usoNegocioRepository.incrementarCitasMes(eq(negocioId), anyString(), eq(1), eq(100), any())).thenReturn(0);
         when(usoNegocioRepository.findByNegocioIdAndPeriodo(eq(negocioId), anyString()))
                 .thenReturn(Optional.of(usoNegocio));
 
         // When & Then
-        assertThatThrownBy(() -> planLimitesService.validarLimiteCitasMes(negocioId, TipoPlan.BASICO))
+        assertThatThrownBy(() -> planLimitesService.validarLimiteCitasMes(negocioId, TipoPlan.BASICO, LocalDateTime.now()))
                 .isInstanceOf(LimiteExcedidoException.class);
     }
 
     @Test
-    void validarLimiteCitasMes_PlanPremium_Ilimitado_DeberiaPermitir() {
+    void validarLimiteCitasMes_PlanPremium_Ilimitado_DeberiaIncrementarSinTope() {
         // Given
         when(planLimitesRepository.findByTipoPlan(TipoPlan.PREMIUM)).thenReturn(Optional.of(limitesPremium));
+        when(usoNegocioRepository.incrementarCitasMes(eq(negocioId), anyString(), eq(1), eq(-1), any())).thenReturn(1);
 
         // When & Then
-        assertThatCode(() -> planLimitesService.validarLimiteCitasMes(negocioId, TipoPlan.PREMIUM))
+        assertThatCode(() -> planLimitesService.validarLimiteCitasMes(negocioId, TipoPlan.PREMIUM, LocalDateTime.now()))
                 .doesNotThrowAnyException();
     }
 
     @Test
-    void validarLimiteServicios_PlanBasico_DentroDelLimite_DeberiaPermitir() {
+    void validarLimiteServicios_PlanBasico_DentroDelLimite_DeberiaReservarCupo() {
         // Given
         when(planLimitesRepository.findByTipoPlan(TipoPlan.BASICO)).thenReturn(Optional.of(limitesBasico));
-        when(servicioRepository.countByNegocioId(negocioId)).thenReturn(5L); // 5 de 10
+        when(usoNegocioRepository.incrementarServicios(eq(negocioId), anyString(), eq(10), any())).thenReturn(1);
 
         // When & Then
         assertThatCode(() -> planLimitesService.validarLimiteServicios(negocioId, TipoPlan.BASICO))
                 .doesNotThrowAnyException();
+        verify(servicioRepository, never()).countByNegocioId(any());
     }
 
     @Test
     void validarLimiteServicios_PlanBasico_ExcedeLimite_DeberiaLanzarException() {
         // Given
+        usoNegocio.setTotalServicios(10); // Ya tiene 10
         when(planLimitesRepository.findByTipoPlan(TipoPlan.BASICO)).thenReturn(Optional.of(limitesBasico));
-        when(servicioRepository.countByNegocioId(negocioId)).thenReturn(10L); // Ya tiene 10
+        when(usoNegocioRepository.incrementarServicios(eq(negocioId), anyString(), eq(10), any())).thenReturn(0);
+        when(usoNegocioRepository.findByNegocioIdAndPeriodo(eq(negocioId), anyString()))
+                .thenReturn(Optional.of(usoNegocio));
 
         // When & Then
         assertThatThrownBy(() -> planLimitesService.validarLimiteServicios(negocioId, TipoPlan.BASICO))
@@ -397,13 +456,67 @@ class PlanLimitesServiceTest {
     }
 
     @Test
-    void validarLimiteServicios_PlanPremium_Ilimitado_DeberiaPermitir() {
+    void registrarCitasAdicionales_DeberiaIncrementarSinLimite() {
         // Given
-        when(planLimitesRepository.findByTipoPlan(TipoPlan.PREMIUM)).thenReturn(Optional.of(limitesPremium));
+        when(usoNegocioRepository.findByNegocioIdAndPeriodo(eq(negocioId), anyString()))
+                .thenReturn(Optional.of(usoNegocio));
 
-        // When & Then
-        assertThatCode(() -> planLimitesService.validarLimiteServicios(negocioId, TipoPlan.PREMIUM))
-                .doesNotThrowAnyException();
+        LocalDateTime hoy = LocalDateTime.now();
+
+        // When
+        planLimitesService.registrarCitasAdicionales(negocioId, List.of(hoy, hoy, hoy));
+
+        // Then
+        verify(usoNegocioRepository).incrementarCitasMes(eq(negocioId), eq(UsoNegocio.getPeriodoActual()),
+                eq(3), eq(-1), any());
+    }
+
+    @Test
+    void validarLimiteCitasMes_CitaDelMesSiguiente_DeberiaReservarEnSuPeriodo() {
+        // Given
+        LocalDateTime fechaHora = LocalDateTime.now().plusMonths(1);
+        String periodo = YearMonth.from(fechaHora).toString();
+        when(planLimitesRepository.findByTipoPlan(TipoPlan.BASICO)).thenReturn(Optional.of(limitesBasico));
+        when(usoNegocioRepository.incrementarCitasMes(eq(negocioId), eq(periodo), eq(1), eq(100), any())).thenReturn(1);
+
+        // When
+        planLimitesService.validarLimiteCitasMes(negocioId, TipoPlan.BASICO, fechaHora);
+
+        // Then
+        verify(usoNegocioRepository, never()).incrementarCitasMes(eq(negocioId), eq(UsoNegocio.getPeriodoActual()),
+                anyInt(), anyInt(), any());
+    }
+
+    @Test
+    void registrarCitasAdicionales_DeberiaAgruparPorMesDeLaCita() {
+        // Given
+        LocalDateTime hoy = LocalDateTime.now();
+        LocalDateTime mesSiguiente = hoy.plusMonths(1);
+        String periodoSiguiente = YearMonth.from(mesSiguiente).toString();
+        when(usoNegocioRepository.findByNegocioIdAndPeriodo(negocioId, UsoNegocio.getPeriodoActual()))
+                .thenReturn(Optional.of(usoNegocio));
+        when(usoNegocioRepository.findByNegocioIdAndPeriodo(negocioId, periodoSiguiente))
+                .thenReturn(Optional.empty());
+        when(usoNegocioRepository.insertarSiNoExiste(any(UUID.class), eq(negocioId), eq(periodoSiguiente),
+                anyInt(), anyInt(), anyInt(), anyInt(), any())).thenReturn(1);
+
+        // When
+        planLimitesService.registrarCitasAdicionales(negocioId, List.of(hoy, mesSiguiente, mesSiguiente));
+
+        // Then: el registro nuevo del mes siguiente ya se siembra con sus citas
+        verify(usoNegocioRepository).incrementarCitasMes(eq(negocioId), eq(UsoNegocio.getPeriodoActual()),
+                eq(1), eq(-1), any());
+        verify(usoNegocioRepository, never()).incrementarCitasMes(eq(negocioId), eq(periodoSiguiente),
+                anyInt(), anyInt(), any());
+    }
+
+    @Test
+    void liberarCupoCliente_DeberiaDecrementarContador() {
+        // When
+        planLimitesService.liberarCupoCliente(negocioId);
+
+        // Then
+        verify(usoNegocioRepository).decrementarClientes(eq(negocioId), eq(UsoNegocio.getPeriodoActual()), any());
     }
 
     @Test
@@ -492,11 +605,6 @@ class PlanLimitesServiceTest {
         when(planLimitesRepository.findByTipoPlan(TipoPlan.BASICO)).thenReturn(Optional.of(limitesBasico));
         when(usoNegocioRepository.findByNegocioIdAndPeriodo(eq(negocioId), anyString()))
                 .thenReturn(Optional.of(usoNegocio));
-        when(usuarioRepository.countActiveUsuariosByNegocioId(negocioId)).thenReturn(0L);
-        when(clienteRepository.countByNegocioId(negocioId)).thenReturn(25L);
-        when(citaRepository.countCitasByNegocioAndMonth(eq(negocioId), anyInt(), anyInt())).thenReturn(50L);
-        when(servicioRepository.countByNegocioId(negocioId)).thenReturn(5L);
-        when(usoNegocioRepository.save(any(UsoNegocio.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
         // When
         UsoNegocioDTO dto = planLimitesService.obtenerUsoPorEmail(email);
@@ -509,6 +617,8 @@ class PlanLimitesServiceTest {
         assertThat(dto.getLimiteCitasMes()).isEqualTo(100);
         assertThat(dto.getPorcentajeClientes()).isEqualTo(50.0);
         assertThat(dto.getPorcentajeCitasMes()).isEqualTo(50.0);
+        // Los contadores son la fuente de verdad: no se recuenta en lectura
+        verify(clienteRepository, never()).countByNegocioId(any());
     }
 
     @Test
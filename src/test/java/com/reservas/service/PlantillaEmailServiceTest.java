@@ -416,4 +416,66 @@ class PlantillaEmailServiceTest {
 
         verify(plantillaRepository).findByNegocio(negocio);
     }
+
+    @Test
+    void testObtenerConfiguracionPorNegocio_UsaCacheHastaGuardar() {
+        // Given
+        String email = "admin@spa.com";
+        Negocio negocio = Negocio.builder()
+                .id(UUID.randomUUID())
+                .nombre("Spa Relax")
+                .build();
+        Usuario usuario = Usuario.builder()
+                .email(email)
+                .negocio(negocio)
+                .build();
+
+        PlantillaEmailConfig config = PlantillaEmailConfig.builder()
+                .id(UUID.randomUUID().toString())
+                .negocio(negocio)
+                .colorPrimario("#1E40AF")
+                .activa(true)
+                .build();
+
+        when(plantillaRepository.findByNegocio(negocio)).thenReturn(Optional.of(config));
+        when(usuarioRepository.findByEmail(email)).thenReturn(Optional.of(usuario));
+        when(plantillaRepository.save(any(PlantillaEmailConfig.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        // When - un lote de envíos del mismo negocio
+        for (int i = 0; i < 200; i++) {
+            plantillaEmailService.obtenerConfiguracionPorNegocio(negocio);
+        }
+
+        // Then - una sola consulta, y la copia no arrastra la relación con el negocio
+        verify(plantillaRepository, times(1)).findByNegocio(negocio);
+        PlantillaEmailConfig cacheada = plantillaEmailService.obtenerConfiguracionPorNegocio(negocio);
+        assertEquals("#1E40AF", cacheada.getColorPrimario());
+        assertNull(cacheada.getNegocio());
+
+        // When - el negocio cambia su color
+        plantillaEmailService.guardarConfiguracion(email, PlantillaEmailConfigRequest.builder()
+                .colorPrimario("#DC2626")
+                .build());
+
+        // Then - el siguiente envío ve el cambio
+        assertEquals("#DC2626", plantillaEmailService.obtenerConfiguracionPorNegocio(negocio).getColorPrimario());
+    }
+
+    @Test
+    void testObtenerConfiguracionPorNegocio_CacheaAusenciaDeConfiguracion() {
+        // Given
+        Negocio negocio = Negocio.builder()
+                .id(UUID.randomUUID())
+                .nombre("Negocio Sin Config")
+                .build();
+
+        when(plantillaRepository.findByNegocio(negocio)).thenReturn(Optional.empty());
+
+        // When
+        assertNull(plantillaEmailService.obtenerConfiguracionPorNegocio(negocio));
+        assertNull(plantillaEmailService.obtenerConfiguracionPorNegocio(negocio));
+
+        // Then
+        verify(plantillaRepository, times(1)).findByNegocio(negocio);
+    }
 }
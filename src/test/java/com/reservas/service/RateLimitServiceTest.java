@@ -1,20 +1,21 @@
 package com.reservas.service;
 
+import com.reservas.ratelimit.LocalBucketStore;
 import io.github.bucket4j.Bucket;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Duration;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 @ExtendWith(MockitoExtension.class)
 @DisplayName("RateLimitService - Pruebas Unitarias")
 class RateLimitServiceTest {
 
-    @InjectMocks
     private RateLimitService rateLimitService;
 
     private static final String TEST_KEY = "192.168.1.1:/api/test";
@@ -22,7 +23,7 @@ class RateLimitServiceTest {
     @BeforeEach
     void setUp() {
         // Crear nueva instancia para cada test
-        rateLimitService = new RateLimitService();
+        rateLimitService = new RateLimitService(new LocalBucketStore(10_000, Duration.ofMinutes(30)));
     }
 
     @Test
@@ -0,0 +1,142 @@
+package com.reservas.service;
+
+import com.reservas.repository.RecordatorioRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("RecordatorioAgenda - Pruebas Unitarias")
+class RecordatorioAgendaTest {
+
+    @Mock
+    private RecordatorioRepository recordatorioRepository;
+
+    @InjectMocks
+    private RecordatorioAgenda agenda;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(agenda, "habilitada", true);
+        ReflectionTestUtils.setField(agenda, "horizonteHoras", 6L);
+        ReflectionTestUtils.setField(agenda, "maxEntradas", 100);
+    }
+
+    @Test
+    @DisplayName("Debe cargar el horizonte y entregar primero los ya vencidos, en orden")
+    void debeEntregarVencidosEnOrden() throws InterruptedException {
+        // Arrange
+        LocalDateTime ahora = LocalDateTime.now();
+        when(recordatorioRepository.findProgramadosHasta(any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(
+                        programado("rec-antiguo", ahora.minusHours(2)),
+                        programado("rec-vencido", ahora.minusMinutes(1)),
+                        programado("rec-futuro", ahora.plusHours(1))));
+
+        // Act
+        int cargados = agenda.recargar();
+        List<String> vencidos = agenda.esperarVencidos();
+
+        // Assert
+        assertEquals(3, cargados);
+        assertEquals(List.of("rec-antiguo", "rec-vencido"), vencidos);
+        assertEquals(1, agenda.tamano());
+    }
+
+    @Test
+    @DisplayName("Programar un recordatorio existente lo mueve en lugar de duplicarlo")
+    void programar_debeMoverEntradaExistente() throws InterruptedException {
+        // Arrange
+        LocalDateTime ahora = LocalDateTime.now();
+        when(recordatorioRepository.findProgramadosHasta(any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(programado("rec-1", ahora.plusHours(2))));
+        agenda.recargar();
+
+        // Act - la cita se adelantó: el recordatorio ya venció
+        agenda.programar("rec-1", ahora.minusSeconds(1));
+
+        // Assert
+        assertEquals(1, agenda.tamano());
+        assertEquals(List.of("rec-1"), agenda.esperarVencidos());
+        assertEquals(0, agenda.tamano());
+    }
+
+    @Test
+    @DisplayName("Programar con null o fuera del horizonte quita la entrada")
+    void programar_nullOFueraDeHorizonte_quitaEntrada() {
+        // Arrange
+        LocalDateTime ahora = LocalDateTime.now();
+        when(recordatorioRepository.findProgramadosHasta(any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(
+                        programado("rec-1", ahora.plusHours(1)),
+                        programado("rec-2", ahora.plusHours(2))));
+        agenda.recargar();
+
+        // Act
+        agenda.programar("rec-1", null);                  // Cita cancelada
+        agenda.programar("rec-2", ahora.plusDays(2));      // La traerá una recarga posterior
+
+        // Assert
+        assertEquals(0, agenda.tamano());
+    }
+
+    @Test
+    @DisplayName("Con el tope de entradas alcanzado, el horizonte termina en el último cargado")
+    void recargar_conTope_recortaHorizonte() {
+        // Arrange
+        ReflectionTestUtils.setField(agenda, "maxEntradas", 1);
+        LocalDateTime ahora = LocalDateTime.now();
+        when(recordatorioRepository.findProgramadosHasta(any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(programado("rec-1", ahora.plusMinutes(10))));
+        agenda.recargar();
+
+        // Act - posterior al último cargado: podría haber otros antes sin cargar
+        agenda.programar("rec-2", ahora.plusHours(1));
+
+        // Assert
+        assertEquals(1, agenda.tamano());
+    }
+
+    @Test
+    @DisplayName("Deshabilitada no consulta la base de datos ni guarda entradas")
+    void deshabilitada_noHaceNada() {
+        // Arrange
+        ReflectionTestUtils.setField(agenda, "habilitada", false);
+
+        // Act
+        int cargados = agenda.recargar();
+        agenda.programar("rec-1", LocalDateTime.now());
+
+        // Assert
+        assertEquals(0, cargados);
+        assertEquals(0, agenda.tamano());
+        verifyNoInteractions(recordatorioRepository);
+    }
+
+    private RecordatorioRepository.RecordatorioProgramado programado(String id, LocalDateTime scheduledAt) {
+        return new RecordatorioRepository.RecordatorioProgramado() {
+            @Override
+            public String getId() {
+                return id;
+            }
+
+            @Override
+            public LocalDateTime getScheduledAt() {
+                return scheduledAt;
+            }
+        };
+    }
+}
@@ -2,7 +2,6 @@ package com.reservas.service;
 
 import com.reservas.entity.*;
 import com.reservas.repository.CitaRepository;
-import com.reservas.repository.PlantillaEmailConfigRepository;
 import com.reservas.repository.RecordatorioRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -11,15 +10,23 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.Mockito.*;
@@ -35,7 +42,7 @@ class RecordatorioServiceTest {
     private CitaRepository citaRepository;
 
     @Mock
-    private PlantillaEmailConfigRepository plantillaEmailConfigRepository;
+    private PlantillaEmailService plantillaEmailService;
 
     @Mock
     private SmsService smsService;
@@ -43,6 +50,9 @@ class RecordatorioServiceTest {
     @Mock
     private EmailService emailService;
 
+    @Mock
+    private RecordatorioAgenda agenda;
+
     @InjectMocks
     private RecordatorioService recordatorioService;
 
@@ -54,6 +64,12 @@ class RecordatorioServiceTest {
 
     @BeforeEach
     void setUp() {
+        // Transacciones cortas sin base de datos: el callback se ejecuta directamente
+        ReflectionTestUtils.setField(recordatorioService, "transactionTemplate",
+                new TransactionTemplate(mock(PlatformTransactionManager.class)));
+        ReflectionTestUtils.setField(recordatorioService, "concurrenciaMaxima", 2);
+        recordatorioService.init();
+
         negocioMock = Negocio.builder()
                 .id(UUID.randomUUID())
                 .nombre("Salon Test")
@@ -156,111 +172,160 @@ class RecordatorioServiceTest {
     }
 
     @Test
-    @DisplayName("Debe procesar recordatorios pendientes correctamente")
+    @DisplayName("Debe calcular scheduledAt al crear el recordatorio")
+    void debeCalcularScheduledAt_alCrear() {
+        // Arrange
+        when(recordatorioRepository.save(any(Recordatorio.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        recordatorioService.crearRecordatoriosParaCita(citaMock);
+
+        // Assert - EMAIL: 24 horas antes de la cita
+        verify(recordatorioRepository).save(argThat(recordatorio ->
+                citaMock.getFechaHora().minusHours(24).equals(recordatorio.getScheduledAt())
+        ));
+    }
+
+    @Test
+    @DisplayName("Debe procesar recordatorios vencidos correctamente")
     void debeProcesarRecordatoriosPendientes() {
         // Arrange
-        Recordatorio recordatorioEmail = Recordatorio.builder()
-                .id("rec-1")
-                .cita(citaMock)
-                .tipo(Recordatorio.TipoRecordatorio.EMAIL)
-                .enviado(false)
-                .build();
+        Recordatorio recordatorioEmail = recordatorio("rec-1", citaMock);
 
         // Configurar cita para que sea momento de enviar (1 hora en el futuro)
         citaMock.setFechaHora(LocalDateTime.now().plusHours(1));
 
-        when(recordatorioRepository.findByEnviadoFalse())
-                .thenReturn(Arrays.asList(recordatorioEmail));
+        mockLote(recordatorioEmail);
         when(emailService.enviarRecordatorioCita(anyString(), anyString(), anyString(),
                 anyString(), anyString(), anyString(), nullable(PlantillaEmailConfig.class))).thenReturn(true);
-        when(recordatorioRepository.save(any(Recordatorio.class)))
-                .thenAnswer(invocation -> invocation.getArgument(0));
 
         // Act
-        recordatorioService.procesarRecordatoriosPendientes();
+        int reclamados = recordatorioService.procesarRecordatoriosPendientes(100);
 
         // Assert
-        verify(recordatorioRepository).findByEnviadoFalse();
+        assertEquals(1, reclamados);
+        verify(recordatorioRepository).reclamarVencidos(any(LocalDateTime.class), eq(100));
         verify(emailService).enviarRecordatorioCita(anyString(), anyString(),
                 anyString(), anyString(), anyString(), anyString(), nullable(PlantillaEmailConfig.class));
-        verify(recordatorioRepository).save(argThat(r -> r.isEnviado()));
+        verify(recordatorioRepository).marcarEnviado(eq("rec-1"), any(LocalDateTime.class));
+        verify(recordatorioRepository, never()).reprogramar(anyString(), any());
     }
 
     @Test
-    @DisplayName("No debe enviar recordatorios si aún no es el momento")
-    void noDebeEnviarRecordatorios_siAunNoEsMomento() {
+    @DisplayName("Debe reservar el recordatorio antes de enviarlo")
+    void debeReservarAntesDeEnviar() {
         // Arrange
-        Recordatorio recordatorioEmail = Recordatorio.builder()
-                .id("rec-1")
-                .cita(citaMock)
-                .tipo(Recordatorio.TipoRecordatorio.EMAIL)
-                .enviado(false)
-                .build();
+        Recordatorio recordatorioEmail = recordatorio("rec-1", citaMock);
+        citaMock.setFechaHora(LocalDateTime.now().plusHours(1));
+
+        mockLote(recordatorioEmail);
+        when(emailService.enviarRecordatorioCita(anyString(), anyString(), anyString(),
+                anyString(), anyString(), anyString(), nullable(PlantillaEmailConfig.class))).thenReturn(true);
 
-        // Cita muy en el futuro (más de 24 horas)
+        // Act
+        recordatorioService.procesarRecordatoriosPendientes(100);
+
+        // Assert - scheduled_at movido al futuro: otra instancia no lo reclama mientras se envía
+        verify(recordatorioRepository).save(recordatorioEmail);
+        assertTrue(recordatorioEmail.getScheduledAt().isAfter(LocalDateTime.now()));
+    }
+
+    @Test
+    @DisplayName("No debe cargar nada si no hay recordatorios vencidos")
+    void noDebeCargarNada_siNoHayVencidos() {
+        // Arrange
+        when(recordatorioRepository.reclamarVencidos(any(LocalDateTime.class), anyInt()))
+                .thenReturn(new ArrayList<>());
+
+        // Act
+        int reclamados = recordatorioService.procesarRecordatoriosPendientes(100);
+
+        // Assert
+        assertEquals(0, reclamados);
+        verify(recordatorioRepository, never()).findByIdInWithCita(any());
+        verify(emailService, never()).enviarRecordatorioCita(
+                anyString(), anyString(), anyString(), anyString(), anyString(), anyString(), nullable(PlantillaEmailConfig.class));
+    }
+
+    @Test
+    @DisplayName("Debe reprogramar si la cita se movió y aún no es el momento")
+    void debeReprogramar_siCitaSeMovio() {
+        // Arrange
+        Recordatorio recordatorioEmail = recordatorio("rec-1", citaMock);
+
+        // Cita reprogramada muy en el futuro (más de 24 horas)
         citaMock.setFechaHora(LocalDateTime.now().plusDays(5));
 
-        when(recordatorioRepository.findByEnviadoFalse())
-                .thenReturn(Arrays.asList(recordatorioEmail));
+        mockLote(recordatorioEmail);
 
         // Act
-        recordatorioService.procesarRecordatoriosPendientes();
+        recordatorioService.procesarRecordatoriosPendientes(100);
 
         // Assert
         verify(emailService, never()).enviarRecordatorioCita(
                 anyString(), anyString(), anyString(), anyString(), anyString(), anyString(), nullable(PlantillaEmailConfig.class));
+        assertEquals(citaMock.getFechaHora().minusHours(24), recordatorioEmail.getScheduledAt());
     }
 
     @Test
-    @DisplayName("Debe manejar errores al enviar sin lanzar excepciones")
-    void debeManejarErroresAlEnviar() {
+    @DisplayName("Debe sacar de la cola los recordatorios de citas canceladas")
+    void debeDescartar_siCitaCancelada() {
         // Arrange
-        Recordatorio recordatorioEmail = Recordatorio.builder()
-                .id("rec-1")
-                .cita(citaMock)
-                .tipo(Recordatorio.TipoRecordatorio.EMAIL)
-                .enviado(false)
-                .build();
+        Recordatorio recordatorioEmail = recordatorio("rec-1", citaMock);
+        citaMock.setFechaHora(LocalDateTime.now().plusHours(1));
+        citaMock.setEstado(Cita.EstadoCita.CANCELADA);
+
+        mockLote(recordatorioEmail);
+
+        // Act
+        recordatorioService.procesarRecordatoriosPendientes(100);
+
+        // Assert
+        verify(emailService, never()).enviarRecordatorioCita(
+                anyString(), anyString(), anyString(), anyString(), anyString(), anyString(), nullable(PlantillaEmailConfig.class));
+        assertNull(recordatorioEmail.getScheduledAt());
+        assertFalse(recordatorioEmail.isEnviado());
+    }
 
+    @Test
+    @DisplayName("Debe manejar errores al enviar sin lanzar excepciones y posponer el reintento")
+    void debeManejarErroresAlEnviar() {
+        // Arrange
+        Recordatorio recordatorioEmail = recordatorio("rec-1", citaMock);
         citaMock.setFechaHora(LocalDateTime.now().plusHours(1));
 
-        when(recordatorioRepository.findByEnviadoFalse())
-                .thenReturn(Arrays.asList(recordatorioEmail));
+        mockLote(recordatorioEmail);
         when(emailService.enviarRecordatorioCita(anyString(), anyString(),
                 anyString(), anyString(), anyString(), anyString(), nullable(PlantillaEmailConfig.class)))
                 .thenThrow(new RuntimeException("Error de red"));
 
         // Act & Assert - No debe lanzar excepción
-        assertDoesNotThrow(() -> recordatorioService.procesarRecordatoriosPendientes());
+        assertDoesNotThrow(() -> recordatorioService.procesarRecordatoriosPendientes(100));
+        verify(recordatorioRepository).reprogramar(eq("rec-1"), argThat(momento -> momento.isAfter(LocalDateTime.now())));
     }
 
     @Test
     @DisplayName("No debe marcar como enviado si el envío falla")
     void noDebMarcarComoEnviado_siFallaEnvio() {
         // Arrange
-        Recordatorio recordatorioEmail = Recordatorio.builder()
-                .id("rec-1")
-                .cita(citaMock)
-                .tipo(Recordatorio.TipoRecordatorio.EMAIL)
-                .enviado(false)
-                .build();
-
+        Recordatorio recordatorioEmail = recordatorio("rec-1", citaMock);
         citaMock.setFechaHora(LocalDateTime.now().plusHours(1));
 
-        when(recordatorioRepository.findByEnviadoFalse())
-                .thenReturn(Arrays.asList(recordatorioEmail));
+        mockLote(recordatorioEmail);
         when(emailService.enviarRecordatorioCita(anyString(), anyString(),
                 anyString(), anyString(), anyString(), anyString(), nullable(PlantillaEmailConfig.class))).thenReturn(false);
 
         // Act
-        recordatorioService.procesarRecordatoriosPendientes();
+        recordatorioService.procesarRecordatoriosPendientes(100);
 
-        // Assert - NO debe guardar si falló
-        verify(recordatorioRepository, never()).save(any(Recordatorio.class));
+        // Assert - NO debe marcarse como enviado; se reintenta más tarde
+        verify(recordatorioRepository, never()).marcarEnviado(anyString(), any());
+        verify(recordatorioRepository).reprogramar(eq("rec-1"), argThat(momento -> momento.isAfter(LocalDateTime.now())));
     }
 
     @Test
-    @DisplayName("Debe procesar múltiples recordatorios correctamente")
+    @DisplayName("Debe procesar múltiples recordatorios cargando la plantilla una vez por negocio")
     void debeProcesarMultiplesRecordatorios() {
         // Arrange
         Cita cita2 = Cita.builder()
@@ -273,49 +338,135 @@ class RecordatorioServiceTest {
                 .usuario(usuarioMock)
                 .build();
 
-        Recordatorio rec1 = Recordatorio.builder()
-                .id("rec-1")
-                .cita(citaMock)
-                .tipo(Recordatorio.TipoRecordatorio.EMAIL)
-                .enviado(false)
-                .build();
-
-        Recordatorio rec2 = Recordatorio.builder()
-                .id("rec-2")
-                .cita(cita2)
-                .tipo(Recordatorio.TipoRecordatorio.EMAIL)
-                .enviado(false)
-                .build();
+        Recordatorio rec1 = recordatorio("rec-1", citaMock);
+        Recordatorio rec2 = recordatorio("rec-2", cita2);
 
         citaMock.setFechaHora(LocalDateTime.now().plusHours(1));
-        cita2.setFechaHora(LocalDateTime.now().plusHours(2));
 
-        when(recordatorioRepository.findByEnviadoFalse())
-                .thenReturn(Arrays.asList(rec1, rec2));
+        mockLote(rec1, rec2);
         when(emailService.enviarRecordatorioCita(anyString(), anyString(),
                 anyString(), anyString(), anyString(), anyString(), nullable(PlantillaEmailConfig.class))).thenReturn(true);
-        when(recordatorioRepository.save(any(Recordatorio.class)))
-                .thenAnswer(invocation -> invocation.getArgument(0));
 
         // Act
-        recordatorioService.procesarRecordatoriosPendientes();
+        int reclamados = recordatorioService.procesarRecordatoriosPendientes(100);
 
         // Assert
+        assertEquals(2, reclamados);
         verify(emailService, times(2)).enviarRecordatorioCita(
                 anyString(), anyString(), anyString(), anyString(), anyString(), anyString(), nullable(PlantillaEmailConfig.class));
-        verify(recordatorioRepository, times(2)).save(any(Recordatorio.class));
+        verify(recordatorioRepository).marcarEnviado(eq("rec-1"), any(LocalDateTime.class));
+        verify(recordatorioRepository).marcarEnviado(eq("rec-2"), any(LocalDateTime.class));
+        verify(plantillaEmailService, times(1)).obtenerConfiguracionPorNegocio(negocioMock);
     }
 
     @Test
-    @DisplayName("Debe manejar lista vacía de recordatorios pendientes")
-    void debeManejarListaVacia() {
+    @DisplayName("Debe enviar en paralelo sin superar la concurrencia máxima")
+    void debeRespetarConcurrenciaMaxima() {
+        // Arrange - 8 recordatorios, concurrencia máxima 2 (ver setUp)
+        Recordatorio[] recordatorios = new Recordatorio[8];
+        for (int i = 0; i < recordatorios.length; i++) {
+            Cita cita = Cita.builder()
+                    .id(UUID.randomUUID().toString())
+                    .fechaHora(LocalDateTime.now().plusHours(1))
+                    .estado(Cita.EstadoCita.PENDIENTE)
+                    .cliente(clienteMock)
+                    .servicio(servicioMock)
+                    .negocio(negocioMock)
+                    .build();
+            recordatorios[i] = recordatorio("rec-" + i, cita);
+        }
+        mockLote(recordatorios);
+
+        AtomicInteger enCurso = new AtomicInteger();
+        AtomicInteger maximo = new AtomicInteger();
+        when(emailService.enviarRecordatorioCita(anyString(), anyString(),
+                anyString(), anyString(), anyString(), anyString(), nullable(PlantillaEmailConfig.class)))
+                .thenAnswer(invocation -> {
+                    maximo.accumulateAndGet(enCurso.incrementAndGet(), Math::max);
+                    Thread.sleep(50); // Latencia simulada del proveedor
+                    enCurso.decrementAndGet();
+                    return true;
+                });
+
+        // Act
+        recordatorioService.procesarRecordatoriosPendientes(100);
+
+        // Assert - todos enviados al volver, nunca más de 2 a la vez
+        verify(recordatorioRepository, times(8)).marcarEnviado(anyString(), any(LocalDateTime.class));
+        assertTrue(maximo.get() <= 2, "Concurrencia máxima superada: " + maximo.get());
+        assertTrue(maximo.get() > 1, "Los envíos deberían ejecutarse en paralelo");
+    }
+
+    @Test
+    @DisplayName("Debe reprogramar los recordatorios pendientes cuando la cita se mueve")
+    void debeReprogramarParaCita_cuandoCitaSeMueve() {
         // Arrange
-        when(recordatorioRepository.findByEnviadoFalse())
-                .thenReturn(new ArrayList<>());
+        Recordatorio recordatorioEmail = recordatorio("rec-1", citaMock);
+        citaMock.setFechaHora(LocalDateTime.now().plusDays(3));
+        when(recordatorioRepository.findByCitaIdAndEnviado(citaMock.getId(), false))
+                .thenReturn(List.of(recordatorioEmail));
 
-        // Act & Assert
-        assertDoesNotThrow(() -> recordatorioService.procesarRecordatoriosPendientes());
-        verify(emailService, never()).enviarRecordatorioCita(
-                anyString(), anyString(), anyString(), anyString(), anyString(), anyString(), nullable(PlantillaEmailConfig.class));
+        // Act
+        recordatorioService.reprogramarParaCita(citaMock);
+
+        // Assert
+        LocalDateTime esperado = citaMock.getFechaHora().minusHours(24);
+        assertEquals(esperado, recordatorioEmail.getScheduledAt());
+        verify(recordatorioRepository).save(recordatorioEmail);
+        verify(agenda).programar("rec-1", esperado);
+    }
+
+    @Test
+    @DisplayName("Debe quitar de la agenda los recordatorios de una cita cancelada")
+    void debeQuitarDeAgenda_cuandoCitaCancelada() {
+        // Arrange
+        Recordatorio recordatorioEmail = recordatorio("rec-1", citaMock);
+        citaMock.setEstado(Cita.EstadoCita.CANCELADA);
+        when(recordatorioRepository.findByCitaIdAndEnviado(citaMock.getId(), false))
+                .thenReturn(List.of(recordatorioEmail));
+
+        // Act
+        recordatorioService.reprogramarParaCita(citaMock);
+
+        // Assert
+        assertNull(recordatorioEmail.getScheduledAt());
+        verify(agenda).programar("rec-1", null);
+    }
+
+    @Test
+    @DisplayName("Dentro de una transacción la agenda se actualiza solo tras el commit")
+    void debeProgramarAgenda_trasCommit() {
+        Recordatorio recordatorioEmail = recordatorio("rec-1", citaMock);
+        citaMock.setFechaHora(LocalDateTime.now().plusDays(3));
+        when(recordatorioRepository.findByCitaIdAndEnviado(citaMock.getId(), false))
+                .thenReturn(List.of(recordatorioEmail));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            recordatorioService.reprogramarParaCita(citaMock);
+            verifyNoInteractions(agenda);
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        verify(agenda).programar("rec-1", citaMock.getFechaHora().minusHours(24));
+    }
+
+    private Recordatorio recordatorio(String id, Cita cita) {
+        return Recordatorio.builder()
+                .id(id)
+                .cita(cita)
+                .tipo(Recordatorio.TipoRecordatorio.EMAIL)
+                .enviado(false)
+                .scheduledAt(LocalDateTime.now().minusMinutes(1))
+                .build();
+    }
+
+    private void mockLote(Recordatorio... recordatorios) {
+        List<String> ids = Arrays.stream(recordatorios).map(Recordatorio::getId).toList();
+        when(recordatorioRepository.reclamarVencidos(any(LocalDateTime.class), anyInt())).thenReturn(ids);
+        when(recordatorioRepository.findByIdInWithCita(ids)).thenReturn(Arrays.asList(recordatorios));
     }
 }
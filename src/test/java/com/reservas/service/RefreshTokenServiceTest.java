@@ -0,0 +1,206 @@
+package com.reservas.service;
+
+import com.reservas.entity.RefreshToken;
+import com.reservas.entity.Usuario;
+import com.reservas.exception.UnauthorizedException;
+import com.reservas.repository.RefreshTokenRepository;
+import com.reservas.repository.UsuarioRepository;
+import com.reservas.security.JwtProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("RefreshTokenService - Pruebas Unitarias")
+class RefreshTokenServiceTest {
+
+    @Mock
+    private RefreshTokenRepository refreshTokenRepository;
+
+    @Mock
+    private UsuarioRepository usuarioRepository;
+
+    @Mock
+    private JwtProvider jwtProvider;
+
+    @InjectMocks
+    private RefreshTokenService refreshTokenService;
+
+    private Usuario usuario;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(refreshTokenService, "refreshExpirationMs", 2_592_000_000L);
+        ReflectionTestUtils.setField(refreshTokenService, "segundosGracia", 30L);
+        usuario = Usuario.builder()
+                .id(UUID.randomUUID())
+                .email("test@example.com")
+                .activo(true)
+                .build();
+    }
+
+    @Test
+    @DisplayName("Debe emitir token opaco y guardar solo su hash")
+    void debeEmitirTokenYGuardarHash() {
+        when(usuarioRepository.findByEmail("test@example.com")).thenReturn(Optional.of(usuario));
+
+        String token = refreshTokenService.emitir("test@example.com", "Mozilla/5.0", "10.0.0.1");
+
+        ArgumentCaptor<RefreshToken> captor = ArgumentCaptor.forClass(RefreshToken.class);
+        verify(refreshTokenRepository).save(captor.capture());
+        RefreshToken guardado = captor.getValue();
+        assertNotNull(token);
+        assertNotEquals(token, guardado.getTokenHash());
+        assertEquals(RefreshTokenService.hash(token), guardado.getTokenHash());
+        assertEquals(64, guardado.getTokenHash().length());
+        assertNotNull(guardado.getFamilia());
+        assertEquals("Mozilla/5.0", guardado.getDispositivo());
+        assertTrue(guardado.getExpiraEn().isAfter(LocalDateTime.now().plusDays(29)));
+    }
+
+    @Test
+    @DisplayName("Debe rotar token válido conservando la familia")
+    void debeRotarTokenValido() {
+        RefreshToken actual = tokenActivo();
+        when(refreshTokenRepository.findByTokenHashWithUsuario(RefreshTokenService.hash("token-actual")))
+                .thenReturn(Optional.of(actual));
+        when(refreshTokenRepository.revocarSiActivo(eq(actual.getId()), any())).thenReturn(1);
+        when(jwtProvider.generateToken("test@example.com")).thenReturn("nuevo-jwt");
+
+        RefreshTokenService.Rotacion rotacion = refreshTokenService.rotar("token-actual", "UA", "10.0.0.1");
+
+        assertEquals("nuevo-jwt", rotacion.accessToken());
+        assertNotEquals("token-actual", rotacion.refreshToken());
+        ArgumentCaptor<RefreshToken> captor = ArgumentCaptor.forClass(RefreshToken.class);
+        verify(refreshTokenRepository).save(captor.capture());
+        assertEquals(actual.getFamilia(), captor.getValue().getFamilia());
+        verify(refreshTokenRepository, never()).revocarFamilia(any(), any());
+    }
+
+    @Test
+    @DisplayName("Reutilizar un token rotado debe revocar toda la familia")
+    void reutilizarTokenRotado_debeRevocarFamilia() {
+        RefreshToken rotado = tokenActivo();
+        rotado.setRevocadoEn(LocalDateTime.now().minusMinutes(5));
+        when(refreshTokenRepository.findByTokenHashWithUsuario(anyString())).thenReturn(Optional.of(rotado));
+
+        assertThrows(UnauthorizedException.class,
+                () -> refreshTokenService.rotar("token-robado", "UA", "10.0.0.2"));
+
+        verify(refreshTokenRepository).revocarFamilia(eq(rotado.getFamilia()), any());
+        verify(refreshTokenRepository, never()).save(any());
+        verifyNoInteractions(jwtProvider);
+    }
+
+    @Test
+    @DisplayName("Reutilizar el token recién rotado dentro del margen devuelve el mismo sucesor")
+    void reutilizarDentroDelMargen_devuelveSucesor() {
+        RefreshToken actual = tokenActivo();
+        when(refreshTokenRepository.findByTokenHashWithUsuario(RefreshTokenService.hash("token-actual")))
+                .thenReturn(Optional.of(actual));
+        when(refreshTokenRepository.revocarSiActivo(eq(actual.getId()), any())).thenReturn(1);
+        when(jwtProvider.generateToken("test@example.com")).thenReturn("access");
+        RefreshTokenService.Rotacion primera = refreshTokenService.rotar("token-actual", "UA", "ip");
+
+        actual.setRevocadoEn(LocalDateTime.now().minusSeconds(5));
+        RefreshToken sucesor = tokenActivo();
+        when(refreshTokenRepository.findByTokenHashWithUsuario(RefreshTokenService.hash(primera.refreshToken())))
+                .thenReturn(Optional.of(sucesor));
+
+        RefreshTokenService.Rotacion segunda = refreshTokenService.rotar("token-actual", "UA", "ip");
+
+        assertEquals(primera.refreshToken(), segunda.refreshToken());
+        assertEquals("access", segunda.accessToken());
+        verify(refreshTokenRepository, times(1)).save(any());
+        verify(refreshTokenRepository, never()).revocarFamilia(any(), any());
+    }
+
+    @Test
+    @DisplayName("Dentro del margen, sin sucesor conocido responde 401 sin revocar la familia")
+    void reutilizarDentroDelMargen_sinSucesor_noRevocaFamilia() {
+        RefreshToken rotado = tokenActivo();
+        rotado.setRevocadoEn(LocalDateTime.now().minusSeconds(5));
+        when(refreshTokenRepository.findByTokenHashWithUsuario(anyString())).thenReturn(Optional.of(rotado));
+
+        assertThrows(UnauthorizedException.class, () -> refreshTokenService.rotar("token-actual", "UA", "ip"));
+
+        verify(refreshTokenRepository, never()).revocarFamilia(any(), any());
+        verifyNoInteractions(jwtProvider);
+    }
+
+    @Test
+    @DisplayName("Debe rechazar token expirado")
+    void debeRechazarTokenExpirado() {
+        RefreshToken expirado = tokenActivo();
+        expirado.setExpiraEn(LocalDateTime.now().minusSeconds(1));
+        when(refreshTokenRepository.findByTokenHashWithUsuario(anyString())).thenReturn(Optional.of(expirado));
+
+        assertThrows(UnauthorizedException.class, () -> refreshTokenService.rotar("token", "UA", "ip"));
+        verify(refreshTokenRepository, never()).save(any());
+    }
+
+    @Test
+    @DisplayName("Debe rechazar token desconocido o vacío")
+    void debeRechazarTokenDesconocido() {
+        when(refreshTokenRepository.findByTokenHashWithUsuario(anyString())).thenReturn(Optional.empty());
+
+        assertThrows(UnauthorizedException.class, () -> refreshTokenService.rotar("no-existe", "UA", "ip"));
+        assertThrows(UnauthorizedException.class, () -> refreshTokenService.rotar(null, "UA", "ip"));
+    }
+
+    @Test
+    @DisplayName("Si otra petición rotó el token primero, no debe emitir uno nuevo")
+    void rotacionConcurrente_soloUnaGana() {
+        RefreshToken actual = tokenActivo();
+        when(refreshTokenRepository.findByTokenHashWithUsuario(anyString())).thenReturn(Optional.of(actual));
+        when(refreshTokenRepository.revocarSiActivo(eq(actual.getId()), any())).thenReturn(0);
+
+        assertThrows(UnauthorizedException.class, () -> refreshTokenService.rotar("token", "UA", "ip"));
+        verify(refreshTokenRepository, never()).save(any());
+    }
+
+    @Test
+    @DisplayName("Debe revocar la familia al usar token de usuario inactivo")
+    void usuarioInactivo_debeRevocarFamilia() {
+        usuario.setActivo(false);
+        RefreshToken actual = tokenActivo();
+        when(refreshTokenRepository.findByTokenHashWithUsuario(anyString())).thenReturn(Optional.of(actual));
+
+        assertThrows(UnauthorizedException.class, () -> refreshTokenService.rotar("token", "UA", "ip"));
+        verify(refreshTokenRepository).revocarFamilia(eq(actual.getFamilia()), any());
+    }
+
+    @Test
+    @DisplayName("Logout con token desconocido no debe fallar")
+    void revocar_tokenDesconocido_noFalla() {
+        when(refreshTokenRepository.findByTokenHashWithUsuario(anyString())).thenReturn(Optional.empty());
+
+        assertDoesNotThrow(() -> refreshTokenService.revocar("desconocido"));
+        assertDoesNotThrow(() -> refreshTokenService.revocar(null));
+        verify(refreshTokenRepository, never()).revocarFamilia(any(), any());
+    }
+
+    private RefreshToken tokenActivo() {
+        return RefreshToken.builder()
+                .id(UUID.randomUUID())
+                .usuario(usuario)
+                .tokenHash(RefreshTokenService.hash("token-actual"))
+                .familia(UUID.randomUUID())
+                .expiraEn(LocalDateTime.now().plusDays(10))
+                .build();
+    }
+}
@@ -0,0 +1,348 @@
+package com.reservas.service;
+
+import com.reservas.batch.ChunkJob;
+import com.reservas.batch.ChunkJobRunner;
+import com.reservas.billing.domain.Subscription;
+import com.reservas.billing.provider.SubscriptionProvider;
+import com.reservas.entity.BatchJobCursor;
+import com.reservas.entity.Negocio;
+import com.reservas.entity.Pago;
+import com.reservas.entity.Payment;
+import com.reservas.entity.StripeConnectedAccount;
+import com.reservas.payments.service.PaymentService;
+import com.reservas.repository.BatchJobCursorRepository;
+import com.reservas.repository.NegocioRepository;
+import com.reservas.repository.PagoRepository;
+import com.reservas.repository.PaymentRepository;
+import com.reservas.repository.StripeSubscriptionRepository;
+import com.stripe.Stripe;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * StripeReconciliacionService contra un stub local de la API de Stripe
+ * (/v1/events y /v1/payment_intents) y repositorios simulados.
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("StripeReconciliacionService - Reconciliación incremental con Stripe")
+class StripeReconciliacionServiceTest {
+
+    @Mock
+    private StripeService stripeService;
+    @Mock
+    private PaymentService paymentService;
+    @Mock
+    private LibroPagosService libroPagosService;
+    @Mock
+    private SubscriptionProvider subscriptionProvider;
+    @Mock
+    private PagoRepository pagoRepository;
+    @Mock
+    private PaymentRepository paymentRepository;
+    @Mock
+    private NegocioRepository negocioRepository;
+    @Mock
+    private StripeSubscriptionRepository stripeSubscriptionRepository;
+    @Mock
+    private BatchJobCursorRepository cursorRepository;
+
+    private final Map<String, BatchJobCursor> cursores = new HashMap<>();
+    private final Map<String, String> respuestas = new ConcurrentHashMap<>();
+    private final List<String> consultas = new CopyOnWriteArrayList<>();
+    private final List<String> cuentas = new CopyOnWriteArrayList<>();
+    /** Cuentas conectadas a las que el stub responde con error */
+    private final Set<String> cuentasConError = ConcurrentHashMap.newKeySet();
+
+    private HttpServer stub;
+    private String apiKeyAnterior;
+    private SimpleMeterRegistry meterRegistry;
+    private ChunkJobRunner runner;
+    private StripeReconciliacionService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        stub.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        stub.createContext("/v1", this::responder);
+        stub.start();
+        apiKeyAnterior = Stripe.apiKey;
+        Stripe.apiKey = "sk_test_stub";
+        Stripe.overrideApiBase("http://127.0.0.1:" + stub.getAddress().getPort());
+
+        // Sin base de datos: el callback de la transacción se ejecuta directamente
+        lenient().when(cursorRepository.bloquear(anyString()))
+                .thenAnswer(inv -> Optional.ofNullable(cursores.get(inv.<String>getArgument(0))));
+        lenient().when(cursorRepository.save(any(BatchJobCursor.class))).thenAnswer(inv -> {
+            BatchJobCursor cursor = inv.getArgument(0);
+            cursores.put(cursor.getNombre(), cursor);
+            return cursor;
+        });
+        respuestas.put("/v1/events", lista("/v1/events"));
+        respuestas.put("/v1/payment_intents", lista("/v1/payment_intents"));
+
+        meterRegistry = new SimpleMeterRegistry();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+        runner = new ChunkJobRunner(cursorRepository, transactionTemplate,
+                meterRegistry, 500, 0, Duration.ZERO, Duration.ofHours(12));
+        service = new StripeReconciliacionService(runner, transactionTemplate, stripeService, paymentService, libroPagosService, subscriptionProvider,
+                pagoRepository, paymentRepository, negocioRepository, stripeSubscriptionRepository, meterRegistry);
+        ReflectionTestUtils.setField(service, "tamanoLote", 500);
+        ReflectionTestUtils.setField(service, "solape", Duration.ofHours(1));
+        ReflectionTestUtils.setField(service, "ventanaInicial", Duration.ofDays(3));
+        ReflectionTestUtils.setField(service, "esperaWebhook", Duration.ofMinutes(15));
+        ReflectionTestUtils.setField(service, "antiguedadMax", Duration.ofDays(7));
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.stop(0);
+        Stripe.apiKey = apiKeyAnterior;
+        Stripe.overrideApiBase(Stripe.LIVE_API_BASE);
+    }
+
+    @Test
+    @DisplayName("Completa solo los Pagos pendientes de sesiones ya pagadas")
+    void eventos_completaPagosPendientes() {
+        respuestas.put("/v1/events", lista("/v1/events",
+                evento("evt_2", "checkout.session.completed", sesion("cs_1", "pi_1")),
+                evento("evt_1", "checkout.session.completed", sesion("cs_2", "pi_2"))));
+        when(pagoRepository.findByStripeCheckoutSessionIdIn(anyCollection())).thenReturn(List.of(
+                Pago.builder().stripeCheckoutSessionId("cs_1").estado("pending").build(),
+                Pago.builder().stripeCheckoutSessionId("cs_2").estado("completed").build()));
+
+        ChunkJobRunner.Resultado resultado = ejecutar(service.jobEventos());
+
+        assertEquals(1, resultado.procesados());
+        verify(stripeService).procesarPagoCompletado("cs_1", "pi_1");
+        verify(stripeService, never()).procesarPagoCompletado(eq("cs_2"), anyString());
+        assertEquals(1.0, meterRegistry.get("stripe.reconciliacion.correcciones").tag("tipo", "pago").counter().count());
+    }
+
+    @Test
+    @DisplayName("Cada ejecución pide los eventos desde el corte de la anterior completada")
+    void eventos_avanzaCheckpoint() {
+        ejecutar(service.jobEventos());
+        LocalDateTime primerCorte = cursores.get(StripeReconciliacionService.JOB_EVENTOS).getCompletadoHasta();
+        ejecutar(service.jobEventos());
+
+        assertEquals(2, consultas.size());
+        assertEquals(epoch(primerCorte.minusDays(3)), parametro(consultas.get(0), "created[gte]"));
+        assertEquals(epoch(primerCorte.minusHours(1)), parametro(consultas.get(1), "created[gte]"));
+        assertTrue(consultas.get(0).contains("types[0]=checkout.session.completed"));
+    }
+
+    @Test
+    @DisplayName("Reactiva un negocio vencido si Stripe confirma la suscripción al día")
+    void eventos_reactivaNegocioVencido() {
+        long finPeriodo = LocalDateTime.now().plusDays(20).atZone(ZoneId.systemDefault()).toEpochSecond();
+        respuestas.put("/v1/events", lista("/v1/events", evento("evt_1", "customer.subscription.updated",
+                "{\"id\":\"sub_1\",\"object\":\"subscription\",\"status\":\"active\",\"current_period_end\":"
+                        + finPeriodo + ",\"cancel_at_period_end\":false}")));
+        Negocio negocio = Negocio.builder().nombre("Estética").estadoPago("vencido").cuentaActiva(false)
+                .stripeSubscriptionId("sub_1").build();
+        when(negocioRepository.findByStripeSubscriptionIdIn(anyCollection())).thenReturn(List.of(negocio));
+        LocalDateTime fin = LocalDateTime.now().plusDays(20).truncatedTo(ChronoUnit.SECONDS);
+        when(subscriptionProvider.getSubscription("sub_1")).thenReturn(Subscription.builder()
+                .id("sub_1").status(Subscription.SubscriptionStatus.ACTIVE).currentPeriodEnd(fin).build());
+
+        ejecutar(service.jobEventos());
+
+        assertEquals("activo", negocio.getEstadoPago());
+        assertTrue(negocio.isCuentaActiva());
+        assertEquals(fin, negocio.getFechaProximoCobro());
+        verify(negocioRepository).save(negocio);
+    }
+
+    @Test
+    @DisplayName("No corrige un negocio que un webhook reactivó mientras se consultaba Stripe")
+    void eventos_respetaWebhookSimultaneo() {
+        long finPeriodo = LocalDateTime.now().plusDays(20).atZone(ZoneId.systemDefault()).toEpochSecond();
+        respuestas.put("/v1/events", lista("/v1/events", evento("evt_1", "customer.subscription.updated",
+                "{\"id\":\"sub_1\",\"object\":\"subscription\",\"status\":\"active\",\"current_period_end\":"
+                        + finPeriodo + ",\"cancel_at_period_end\":false}")));
+        LocalDateTime fin = LocalDateTime.now().plusDays(20).truncatedTo(ChronoUnit.SECONDS);
+        Negocio leido = Negocio.builder().nombre("Estética").estadoPago("vencido").cuentaActiva(false)
+                .stripeSubscriptionId("sub_1").build();
+        Negocio actual = Negocio.builder().nombre("Estética").estadoPago("activo").cuentaActiva(true)
+                .fechaProximoCobro(fin).stripeSubscriptionId("sub_1").build();
+        when(negocioRepository.findByStripeSubscriptionIdIn(anyCollection()))
+                .thenReturn(List.of(leido), List.of(actual));
+        when(subscriptionProvider.getSubscription("sub_1")).thenReturn(Subscription.builder()
+                .id("sub_1").status(Subscription.SubscriptionStatus.ACTIVE).currentPeriodEnd(fin).build());
+
+        assertEquals(0, ejecutar(service.jobEventos()).procesados());
+        verify(negocioRepository, never()).save(any());
+    }
+
+    @Test
+    @DisplayName("El job de eventos no retiene la transacción del cursor mientras consulta Stripe")
+    void eventos_sinTransaccion() {
+        assertFalse(service.jobEventos().transaccional());
+    }
+
+    @Test
+    @DisplayName("No consulta la suscripción si el evento coincide con lo local")
+    void eventos_sinDiferencias() {
+        respuestas.put("/v1/events", lista("/v1/events", evento("evt_1", "customer.subscription.updated",
+                "{\"id\":\"sub_1\",\"object\":\"subscription\",\"status\":\"canceled\",\"cancel_at_period_end\":false}")));
+        Negocio negocio = Negocio.builder().nombre("Estética").estadoPago("vencido").stripeSubscriptionId("sub_1").build();
+        when(negocioRepository.findByStripeSubscriptionIdIn(anyCollection())).thenReturn(List.of(negocio));
+
+        ejecutar(service.jobEventos());
+
+        verifyNoInteractions(subscriptionProvider);
+        verify(negocioRepository, never()).save(any());
+    }
+
+    @Test
+    @DisplayName("Confirma los Payment pendientes que Stripe cobró, consultando la cuenta conectada")
+    void pagosConnect_confirmaCobrados() {
+        respuestas.put("/v1/payment_intents", lista("/v1/payment_intents",
+                "{\"id\":\"pi_9\",\"object\":\"payment_intent\",\"status\":\"succeeded\"}",
+                "{\"id\":\"pi_1\",\"object\":\"payment_intent\",\"status\":\"succeeded\",\"latest_charge\":\"ch_1\"}",
+                "{\"id\":\"pi_2\",\"object\":\"payment_intent\",\"status\":\"requires_payment_method\"}"));
+        StripeConnectedAccount cuenta = StripeConnectedAccount.builder().stripeAccountId("acct_1").build();
+        Payment cobrado = pago("p1", "pi_1", cuenta);
+        Payment sinPagar = pago("p2", "pi_2", cuenta);
+        when(paymentRepository.findSinEstadoFinal(anyCollection(), any(), any(), eq(""), any()))
+                .thenReturn(List.of(cobrado, sinPagar));
+        when(paymentRepository.bloquearPorIds(Set.of("p1"))).thenReturn(List.of(cobrado));
+
+        ChunkJobRunner.Resultado resultado = ejecutar(service.jobPagosConnect());
+
+        assertEquals(1, resultado.procesados());
+        verify(paymentService).aplicarPagoExitoso(cobrado, "ch_1");
+        assertEquals(Payment.PaymentStatus.PENDING, sinPagar.getStatus());
+        assertEquals(List.of("acct_1"), cuentas);
+        // Solo se bloquea el pago que cambia
+        verify(paymentRepository).bloquearPorIds(Set.of("p1"));
+    }
+
+    @Test
+    @DisplayName("No corrige un Payment que un webhook resolvió mientras se consultaba Stripe")
+    void pagosConnect_respetaWebhookSimultaneo() {
+        respuestas.put("/v1/payment_intents", lista("/v1/payment_intents",
+                "{\"id\":\"pi_1\",\"object\":\"payment_intent\",\"status\":\"canceled\"}"));
+        StripeConnectedAccount cuenta = StripeConnectedAccount.builder().stripeAccountId("acct_1").build();
+        Payment leido = pago("p1", "pi_1", cuenta);
+        Payment actual = pago("p1", "pi_1", cuenta);
+        actual.setStatus(Payment.PaymentStatus.SUCCESS);
+        when(paymentRepository.findSinEstadoFinal(anyCollection(), any(), any(), eq(""), any()))
+                .thenReturn(List.of(leido));
+        when(paymentRepository.bloquearPorIds(Set.of("p1"))).thenReturn(List.of(actual));
+
+        assertEquals(0, ejecutar(service.jobPagosConnect()).procesados());
+        assertEquals(Payment.PaymentStatus.SUCCESS, actual.getStatus());
+        verify(paymentRepository, never()).save(any());
+    }
+
+    @Test
+    @DisplayName("Una cuenta conectada con error se omite y el resto se reconcilia")
+    void pagosConnect_omiteCuentaConError() {
+        respuestas.put("/v1/payment_intents", lista("/v1/payment_intents",
+                "{\"id\":\"pi_2\",\"object\":\"payment_intent\",\"status\":\"succeeded\",\"latest_charge\":\"ch_2\"}"));
+        cuentasConError.add("acct_revocada");
+        Payment revocada = pago("p1", "pi_1", StripeConnectedAccount.builder().stripeAccountId("acct_revocada").build());
+        Payment cobrado = pago("p2", "pi_2", StripeConnectedAccount.builder().stripeAccountId("acct_2").build());
+        when(paymentRepository.findSinEstadoFinal(anyCollection(), any(), any(), eq(""), any()))
+                .thenReturn(List.of(revocada, cobrado));
+        when(paymentRepository.bloquearPorIds(Set.of("p2"))).thenReturn(List.of(cobrado));
+
+        ChunkJobRunner.Resultado resultado = ejecutar(service.jobPagosConnect());
+
+        assertEquals(1, resultado.procesados());
+        verify(paymentService).aplicarPagoExitoso(cobrado, "ch_2");
+        assertEquals(List.of("acct_revocada", "acct_2"), cuentas);
+        assertEquals(1.0, meterRegistry.get("stripe.reconciliacion.cuentas.omitidas").counter().count());
+    }
+
+    private ChunkJobRunner.Resultado ejecutar(ChunkJob<?> job) {
+        ChunkJobRunner.Resultado resultado = runner.ejecutar(job);
+        assertTrue(resultado.completado());
+        return resultado;
+    }
+
+    private static Payment pago(String id, String paymentIntentId, StripeConnectedAccount cuenta) {
+        return Payment.builder().id(id).paymentIntentId(paymentIntentId).stripeAccount(cuenta)
+                .status(Payment.PaymentStatus.PENDING).createdAt(LocalDateTime.now().minusHours(2)).build();
+    }
+
+    private static String sesion(String id, String paymentIntent) {
+        return "{\"id\":\"" + id + "\",\"object\":\"checkout.session\",\"mode\":\"payment\",\"status\":\"complete\","
+                + "\"payment_status\":\"paid\",\"payment_intent\":\"" + paymentIntent + "\"}";
+    }
+
+    private static String evento(String id, String tipo, String objeto) {
+        return "{\"id\":\"" + id + "\",\"object\":\"event\",\"api_version\":\"" + Stripe.API_VERSION + "\","
+                + "\"created\":1700000000,\"type\":\"" + tipo + "\",\"data\":{\"object\":" + objeto + "}}";
+    }
+
+    private static String lista(String url, String... elementos) {
+        return "{\"object\":\"list\",\"url\":\"" + url + "\",\"has_more\":false,\"data\":["
+                + String.join(",", elementos) + "]}";
+    }
+
+    private static long epoch(LocalDateTime fecha) {
+        return fecha.atZone(ZoneId.systemDefault()).toEpochSecond();
+    }
+
+    private static long parametro(String consulta, String nombre) {
+        for (String par : consulta.split("&")) {
+            if (par.startsWith(nombre + "=")) {
+                return Long.parseLong(par.substring(nombre.length() + 1));
+            }
+        }
+        throw new AssertionError("Sin parámetro " + nombre + " en " + consulta);
+    }
+
+    private void responder(HttpExchange exchange) throws IOException {
+        String ruta = exchange.getRequestURI().getPath();
+        String consulta = URLDecoder.decode(exchange.getRequestURI().getRawQuery(), StandardCharsets.UTF_8);
+        if (ruta.equals("/v1/events")) {
+            consultas.add(consulta);
+        } else {
+            cuentas.add(exchange.getRequestHeaders().getFirst("Stripe-Account"));
+        }
+        String cuenta = exchange.getRequestHeaders().getFirst("Stripe-Account");
+        boolean error = cuenta != null && cuentasConError.contains(cuenta);
+        byte[] body = (error
+                ? "{\"error\":{\"type\":\"invalid_request_error\",\"message\":\"Cuenta sin acceso\"}}"
+                : respuestas.get(ruta)).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(error ? 403 : 200, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+}
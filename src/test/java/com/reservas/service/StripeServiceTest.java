@@ -3,10 +3,13 @@ package com.reservas.service;
 import com.reservas.dto.request.CheckoutRequest;
 import com.reservas.dto.response.CheckoutResponse;
 import com.reservas.dto.response.PagoResponse;
+import com.reservas.entity.MovimientoPago;
 import com.reservas.entity.Negocio;
 import com.reservas.entity.Pago;
+import com.reservas.entity.SaldoPagos;
 import com.reservas.entity.Usuario;
 import com.reservas.exception.NotFoundException;
+import com.reservas.payments.cache.StripeStateCache;
 import com.reservas.repository.NegocioRepository;
 import com.reservas.repository.PagoRepository;
 import com.reservas.repository.UsuarioRepository;
@@ -17,16 +20,19 @@ import com.stripe.model.PaymentMethod;
 import com.stripe.model.checkout.Session;
 import com.stripe.param.checkout.SessionCreateParams;
 import com.stripe.param.checkout.SessionRetrieveParams;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockedStatic;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
 
@@ -52,6 +58,13 @@ class StripeServiceTest {
     @Mock
     private SuscripcionService suscripcionService;
 
+    @Mock
+    private LibroPagosService libroPagosService;
+
+    @Spy
+    private StripeStateCache stripeStateCache = new StripeStateCache(
+            new SimpleMeterRegistry(), Duration.ofMinutes(10), Duration.ofSeconds(10), 100);
+
     @InjectMocks
     private StripeService stripeService;
 
@@ -290,6 +303,29 @@ class StripeServiceTest {
         }
     }
 
+    @Test
+    void obtenerEstadoSesion_SesionCerrada_DeberiaConsultarStripeUnaVez() throws StripeException {
+        // Given
+        String sessionId = "cs_test_cache";
+
+        Session mockSession = mock(Session.class);
+        when(mockSession.getStatus()).thenReturn("complete");
+        when(mockSession.getPaymentStatus()).thenReturn("paid");
+        when(mockSession.getMode()).thenReturn("payment");
+
+        try (MockedStatic<Session> sessionMock = mockStatic(Session.class)) {
+            sessionMock.when(() -> Session.retrieve(anyString(), any(SessionRetrieveParams.class), any())).thenReturn(mockSession);
+
+            // When
+            stripeService.obtenerEstadoSesion(sessionId);
+            Map<String, Object> estado = stripeService.obtenerEstadoSesion(sessionId);
+
+            // Then
+            assertThat(estado).containsEntry("status", "complete");
+            sessionMock.verify(() -> Session.retrieve(eq(sessionId), any(SessionRetrieveParams.class), any()), times(1));
+        }
+    }
+
     @Test
     void procesarPagoCompletado_Exitoso_DeberiaActualizarPago() throws StripeException {
         // Given
@@ -443,9 +479,8 @@ class StripeServiceTest {
         String email = "usuario@test.com";
 
         when(usuarioRepository.findByEmailWithNegocio(email)).thenReturn(Optional.of(usuarioTest));
-        when(pagoRepository.countPagosCompletadosByNegocio(negocioTest)).thenReturn(5L);
-        when(pagoRepository.sumMontoByNegocioAndEstadoCompleted(negocioTest))
-                .thenReturn(new BigDecimal("1495.00"));
+        when(libroPagosService.obtenerSaldo(negocioTest.getId(), MovimientoPago.Origen.SUSCRIPCION))
+                .thenReturn(SaldoPagos.builder().cobros(6L).reembolsos(1L).monto(new BigDecimal("1495.00")).build());
 
         // When
         Map<String, Object> estadisticas = stripeService.obtenerEstadisticas(email);
@@ -461,8 +496,8 @@ class StripeServiceTest {
         String email = "usuario@test.com";
 
         when(usuarioRepository.findByEmailWithNegocio(email)).thenReturn(Optional.of(usuarioTest));
-        when(pagoRepository.countPagosCompletadosByNegocio(negocioTest)).thenReturn(0L);
-        when(pagoRepository.sumMontoByNegocioAndEstadoCompleted(negocioTest)).thenReturn(null);
+        when(libroPagosService.obtenerSaldo(negocioTest.getId(), MovimientoPago.Origen.SUSCRIPCION))
+                .thenReturn(SaldoPagos.builder().build());
 
         // When
         Map<String, Object> estadisticas = stripeService.obtenerEstadisticas(email);
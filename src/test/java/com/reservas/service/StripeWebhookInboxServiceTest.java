@@ -0,0 +1,47 @@
+package com.reservas.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("StripeWebhookInboxService - Pruebas Unitarias")
+class StripeWebhookInboxServiceTest {
+
+    @Test
+    @DisplayName("Los eventos de checkout e invoice se ordenan por su suscripción")
+    void objetoOrden_suscripcion() {
+        assertEquals("sub_1", StripeWebhookInboxService.objetoOrden(payload(
+                "{\"id\": \"cs_1\", \"object\": \"checkout.session\", \"subscription\": \"sub_1\", \"payment_intent\": null}")));
+        assertEquals("sub_1", StripeWebhookInboxService.objetoOrden(payload(
+                "{\"id\": \"in_1\", \"object\": \"invoice\", \"subscription\": \"sub_1\"}")));
+        assertEquals("sub_1", StripeWebhookInboxService.objetoOrden(payload(
+                "{\"id\": \"sub_1\", \"object\": \"subscription\"}")));
+    }
+
+    @Test
+    @DisplayName("Los eventos de checkout y charge se ordenan por su payment intent")
+    void objetoOrden_paymentIntent() {
+        assertEquals("pi_1", StripeWebhookInboxService.objetoOrden(payload(
+                "{\"id\": \"cs_1\", \"object\": \"checkout.session\", \"payment_intent\": \"pi_1\"}")));
+        // Campo expandido como objeto
+        assertEquals("pi_1", StripeWebhookInboxService.objetoOrden(payload(
+                "{\"id\": \"ch_1\", \"object\": \"charge\", \"payment_intent\": {\"id\": \"pi_1\"}}")));
+        assertEquals("pi_1", StripeWebhookInboxService.objetoOrden(payload(
+                "{\"id\": \"pi_1\", \"object\": \"payment_intent\"}")));
+    }
+
+    @Test
+    @DisplayName("Sin objeto relacionado se usa el propio objeto; un payload ilegible no tiene orden")
+    void objetoOrden_porDefecto() {
+        assertEquals("cs_1", StripeWebhookInboxService.objetoOrden(payload(
+                "{\"id\": \"cs_1\", \"object\": \"checkout.session\"}")));
+        assertEquals("acct_1", StripeWebhookInboxService.objetoOrden(payload(
+                "{\"id\": \"acct_1\", \"object\": \"account\"}")));
+        assertNull(StripeWebhookInboxService.objetoOrden("{\"id\": \"evt_1\"}"));
+    }
+
+    private static String payload(String objeto) {
+        return "{\"id\": \"evt_1\", \"object\": \"event\", \"data\": {\"object\": " + objeto + "}}";
+    }
+}
@@ -1,24 +1,34 @@
 package com.reservas.service;
 
+import com.reservas.batch.ChunkJobRunner;
+import com.reservas.entity.BatchJobCursor;
 import com.reservas.entity.Negocio;
 import com.reservas.entity.RegistroIP;
 import com.reservas.entity.Usuario;
 import com.reservas.exception.IpBloqueadaException;
 import com.reservas.exception.SuscripcionVencidaException;
+import com.reservas.notifications.service.NotificationOutboxService;
+import com.reservas.repository.BatchJobCursorRepository;
 import com.reservas.repository.NegocioRepository;
 import com.reservas.repository.RegistroIPRepository;
 import com.reservas.repository.UsuarioRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -42,7 +52,12 @@ class SuscripcionServiceTest {
     @Mock
     private EmailService emailService;
 
-    @InjectMocks
+    @Mock
+    private NotificationOutboxService notificationOutboxService;
+
+    @Mock
+    private BatchJobCursorRepository cursorRepository;
+
     private SuscripcionService suscripcionService;
 
     private Negocio negocioMock;
@@ -53,6 +68,22 @@ class SuscripcionServiceTest {
 
     @BeforeEach
     void setUp() {
+        // Lotes sin base de datos: el callback de la transacción se ejecuta directamente
+        // y los cursores de los jobs viven en un mapa
+        Map<String, BatchJobCursor> cursores = new HashMap<>();
+        lenient().when(cursorRepository.bloquear(anyString()))
+                .thenAnswer(inv -> Optional.ofNullable(cursores.get(inv.<String>getArgument(0))));
+        lenient().when(cursorRepository.save(any(BatchJobCursor.class))).thenAnswer(inv -> {
+            BatchJobCursor cursor = inv.getArgument(0);
+            cursores.put(cursor.getNombre(), cursor);
+            return cursor;
+        });
+        ChunkJobRunner chunkJobRunner = new ChunkJobRunner(cursorRepository,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), new SimpleMeterRegistry(),
+                500, 0, Duration.ZERO, Duration.ofHours(12));
+        suscripcionService = new SuscripcionService(negocioRepository, usuarioRepository, registroIPRepository,
+                emailService, notificationOutboxService, chunkJobRunner);
+        ReflectionTestUtils.setField(suscripcionService, "tamanoLote", 500);
         negocioId = UUID.randomUUID();
         ipAddress = "192.168.1.100";
         userAgent = "Mozilla/5.0";
@@ -280,23 +311,40 @@ class SuscripcionServiceTest {
         negocioMock.setFechaFinPrueba(LocalDateTime.now().plusHours(25));
         negocioMock.setNotificacionPruebaEnviada(false);
 
-        when(negocioRepository.findAll()).thenReturn(Arrays.asList(negocioMock));
-        when(negocioRepository.save(any(Negocio.class)))
-                .thenAnswer(invocation -> invocation.getArgument(0));
-        when(emailService.enviarEmail(anyString(), anyString(), anyString())).thenReturn(true);
+        when(negocioRepository.bloquearPendientesAvisoPrueba(any(), any(), any(), any()))
+                .thenReturn(List.of(negocioMock));
+        when(emailService.prepararEmailFinPrueba(anyString(), anyString())).thenReturn(
+                new EmailService.MensajeEmail("Tu periodo de prueba termina mañana", "<html/>"));
 
         // Act
         suscripcionService.enviarNotificaciones();
 
-        // Assert
-        verify(emailService).enviarEmail(
-                eq(negocioMock.getEmail()),
-                contains("periodo de prueba termina"),
-                anyString()
+        // Assert: se encola en el outbox, no se envía dentro de la transacción
+        verify(notificationOutboxService).encolar(
+                argThat(r -> negocioMock.getEmail().equals(r.getRecipient())
+                        && r.getSubject().contains("periodo de prueba termina")),
+                any(),
+                startsWith("suscripcion-fin-prueba:" + negocioId)
         );
-        verify(negocioRepository).save(argThat(negocio ->
-                negocio.isNotificacionPruebaEnviada()
-        ));
+        verify(emailService, never()).enviarEmailFinPrueba(anyString(), anyString(), anyString());
+        // La bandera se marca con un UPDATE por lote, sin cargar todos los negocios
+        verify(negocioRepository).marcarAvisoPruebaEnviado(eq(List.of(negocioId)), any());
+        verify(negocioRepository, never()).findAll();
+        verify(negocioRepository, never()).save(any(Negocio.class));
+    }
+
+    @Test
+    @DisplayName("La ventana del aviso de fin de prueba es de 1 a 2 días antes")
+    void avisoFinPrueba_ventana() {
+        LocalDateTime antes = LocalDateTime.now();
+
+        suscripcionService.enviarNotificaciones();
+
+        verify(negocioRepository).bloquearPendientesAvisoPrueba(
+                argThat(desde -> !desde.isBefore(antes.plusDays(1)) && desde.isBefore(antes.plusDays(1).plusMinutes(1))),
+                argThat(hasta -> !hasta.isBefore(antes.plusDays(2)) && hasta.isBefore(antes.plusDays(2).plusMinutes(1))),
+                eq(new UUID(0L, 0L)),
+                argThat(pagina -> pagina.getPageSize() == 500));
     }
 
     @Test
@@ -308,23 +356,66 @@ class SuscripcionServiceTest {
         negocioMock.setFechaProximoCobro(LocalDateTime.now().plusDays(5));
         negocioMock.setNotificacionVencimientoEnviada(false);
 
-        when(negocioRepository.findAll()).thenReturn(Arrays.asList(negocioMock));
-        when(negocioRepository.save(any(Negocio.class)))
-                .thenAnswer(invocation -> invocation.getArgument(0));
-        when(emailService.enviarEmail(anyString(), anyString(), anyString())).thenReturn(true);
+        when(negocioRepository.bloquearPendientesAvisoVencimiento(any(), any(), any(), any()))
+                .thenReturn(List.of(negocioMock));
 
         // Act
         suscripcionService.enviarNotificaciones();
 
         // Assert
-        verify(emailService).enviarEmail(
-                eq(negocioMock.getEmail()),
-                contains("vence en"),
-                anyString()
+        verify(notificationOutboxService).encolar(
+                argThat(r -> negocioMock.getEmail().equals(r.getRecipient())
+                        && r.getSubject().contains("vence en")),
+                any(),
+                startsWith("suscripcion-vencimiento:" + negocioId)
         );
-        verify(negocioRepository).save(argThat(negocio ->
-                negocio.isNotificacionVencimientoEnviada()
-        ));
+        verify(negocioRepository).marcarAvisoVencimientoEnviado(eq(List.of(negocioId)), any());
+    }
+
+    @Test
+    @DisplayName("Recorre los negocios en lotes paginando por id")
+    void enviarNotificaciones_recorreEnLotes() {
+        ReflectionTestUtils.setField(suscripcionService, "tamanoLote", 2);
+        negocioMock.setEnPeriodoPrueba(false);
+        negocioMock.setPlan("profesional");
+        negocioMock.setFechaProximoCobro(LocalDateTime.now().plusDays(5));
+        Negocio segundo = Negocio.builder().id(UUID.randomUUID()).nombre("Salon 2").email("salon2@test.com")
+                .plan("profesional").enPeriodoPrueba(false).fechaProximoCobro(LocalDateTime.now().plusDays(5)).build();
+        Negocio tercero = Negocio.builder().id(UUID.randomUUID()).nombre("Salon 3").email("salon3@test.com")
+                .plan("profesional").enPeriodoPrueba(false).fechaProximoCobro(LocalDateTime.now().plusDays(5)).build();
+
+        when(negocioRepository.bloquearPendientesAvisoVencimiento(any(), any(), eq(new UUID(0L, 0L)), any()))
+                .thenReturn(List.of(negocioMock, segundo));
+        when(negocioRepository.bloquearPendientesAvisoVencimiento(any(), any(), eq(segundo.getId()), any()))
+                .thenReturn(List.of(tercero));
+
+        suscripcionService.enviarNotificaciones();
+
+        verify(negocioRepository, times(2)).bloquearPendientesAvisoVencimiento(any(), any(), any(), any());
+        verify(negocioRepository).marcarAvisoVencimientoEnviado(eq(List.of(negocioId, segundo.getId())), any());
+        verify(negocioRepository).marcarAvisoVencimientoEnviado(eq(List.of(tercero.getId())), any());
+    }
+
+    @Test
+    @DisplayName("Un barrido interrumpido se reanuda después del último lote confirmado")
+    void verificarSuscripcionesVencidas_reanudaTrasFallo() {
+        ReflectionTestUtils.setField(suscripcionService, "tamanoLote", 1);
+        Negocio segundo = Negocio.builder().id(UUID.randomUUID()).nombre("Salon 2").email("salon2@test.com").build();
+        when(negocioRepository.bloquearPruebasVencidas(any(), eq(new UUID(0L, 0L)), any()))
+                .thenReturn(List.of(negocioMock));
+        when(negocioRepository.bloquearPruebasVencidas(any(), eq(negocioId), any()))
+                .thenReturn(List.of(segundo));
+        when(negocioRepository.marcarVencidos(eq(List.of(negocioId)), any())).thenReturn(1);
+        when(negocioRepository.marcarVencidos(eq(List.of(segundo.getId())), any()))
+                .thenThrow(new RuntimeException("Conexión perdida"))
+                .thenReturn(1);
+
+        suscripcionService.verificarSuscripcionesVencidas();
+        suscripcionService.verificarSuscripcionesVencidas();
+
+        // El primer lote no se repite; el segundo se aplica en la segunda ejecución
+        verify(negocioRepository, times(1)).marcarVencidos(eq(List.of(negocioId)), any());
+        verify(negocioRepository, times(2)).marcarVencidos(eq(List.of(segundo.getId())), any());
     }
 
     @Test
@@ -335,20 +426,17 @@ class SuscripcionServiceTest {
         negocioMock.setCuentaActiva(true);
         negocioMock.setEnPeriodoPrueba(true);
 
-        when(negocioRepository.findAll()).thenReturn(Arrays.asList(negocioMock));
-        when(negocioRepository.save(any(Negocio.class)))
-                .thenAnswer(invocation -> invocation.getArgument(0));
-        when(registroIPRepository.findByIpAddress(negocioMock.getEmail()))
-                .thenReturn(Arrays.asList());
+        when(negocioRepository.bloquearPruebasVencidas(any(), any(), any()))
+                .thenReturn(List.of(negocioMock));
+        when(negocioRepository.marcarVencidos(eq(List.of(negocioId)), any())).thenReturn(1);
 
         // Act
         suscripcionService.verificarSuscripcionesVencidas();
 
         // Assert
-        verify(negocioRepository).save(argThat(negocio ->
-                !negocio.isCuentaActiva() &&
-                negocio.getEstadoPago().equals("vencido")
-        ));
+        verify(negocioRepository).marcarVencidos(eq(List.of(negocioId)), any());
+        verify(registroIPRepository).desactivarPorNegocios(List.of(negocioId));
+        verify(notificationOutboxService, never()).encolar(any(), any(), anyString());
     }
 
     @Test
@@ -361,42 +449,32 @@ class SuscripcionServiceTest {
         negocioMock.setCuentaActiva(true);
         negocioMock.setFechaProximoCobro(LocalDateTime.now().minusDays(1));
 
-        when(negocioRepository.findAll()).thenReturn(Arrays.asList(negocioMock));
-        when(negocioRepository.save(any(Negocio.class)))
-                .thenAnswer(invocation -> invocation.getArgument(0));
-        when(emailService.enviarEmail(anyString(), anyString(), anyString())).thenReturn(true);
+        when(negocioRepository.bloquearSuscripcionesVencidas(any(), any(), any()))
+                .thenReturn(List.of(negocioMock));
 
         // Act
         suscripcionService.verificarSuscripcionesVencidas();
 
         // Assert
-        verify(negocioRepository).save(argThat(negocio ->
-                !negocio.isCuentaActiva() &&
-                negocio.getEstadoPago().equals("vencido")
-        ));
-        verify(emailService).enviarEmail(
-                eq(negocioMock.getEmail()),
-                contains("vencido"),
-                anyString()
+        verify(negocioRepository).marcarVencidos(eq(List.of(negocioId)), any());
+        verify(notificationOutboxService).encolar(
+                argThat(r -> negocioMock.getEmail().equals(r.getRecipient())
+                        && r.getSubject().contains("vencido")),
+                any(),
+                startsWith("suscripcion-vencida:" + negocioId)
         );
     }
 
     @Test
     @DisplayName("No debe desactivar cuenta cuando suscripción está vigente")
     void noDebeDesactivarCuenta_cuandoSuscripcionVigente() {
-        // Arrange
-        negocioMock.setEnPeriodoPrueba(false);
-        negocioMock.setEstadoPago("activo");
-        negocioMock.setPlan("profesional");
-        negocioMock.setCuentaActiva(true);
-        negocioMock.setFechaProximoCobro(LocalDateTime.now().plusDays(15));
-
-        when(negocioRepository.findAll()).thenReturn(Arrays.asList(negocioMock));
+        // Arrange: las consultas no devuelven negocios vigentes
 
         // Act
         suscripcionService.verificarSuscripcionesVencidas();
 
         // Assert
+        verify(negocioRepository, never()).marcarVencidos(any(), any());
         verify(negocioRepository, never()).save(any(Negocio.class));
     }
 
@@ -406,13 +484,20 @@ class SuscripcionServiceTest {
         // Arrange
         negocioMock.setFechaFinPrueba(LocalDateTime.now().plusHours(25));
         negocioMock.setNotificacionPruebaEnviada(false);
-
-        when(negocioRepository.findAll()).thenReturn(Arrays.asList(negocioMock));
-        lenient().doThrow(new RuntimeException("Error de red"))
-                .when(emailService).enviarEmail(anyString(), anyString(), anyString());
-
-        // Act & Assert
+        Negocio otro = Negocio.builder().id(UUID.randomUUID()).nombre("Salon 2").email("salon2@test.com")
+                .fechaFinPrueba(LocalDateTime.now().plusHours(25)).build();
+
+        when(negocioRepository.bloquearPendientesAvisoPrueba(any(), any(), any(), any()))
+                .thenReturn(List.of(negocioMock, otro));
+        when(emailService.prepararEmailFinPrueba(anyString(), anyString())).thenReturn(
+                new EmailService.MensajeEmail("Tu periodo de prueba termina mañana", "<html/>"));
+        doThrow(new RuntimeException("Error de base de datos"))
+                .when(notificationOutboxService).encolar(argThat(r -> negocioMock.getEmail().equals(r.getRecipient())),
+                        any(), anyString());
+
+        // Act & Assert: solo se marca el negocio notificado
         assertDoesNotThrow(() -> suscripcionService.enviarNotificaciones());
+        verify(negocioRepository).marcarAvisoPruebaEnviado(eq(List.of(otro.getId())), any());
     }
 
     @Test
@@ -422,8 +507,9 @@ class SuscripcionServiceTest {
         negocioMock.setFechaFinPrueba(LocalDateTime.now().minusDays(1));
         negocioMock.setCuentaActiva(true);
 
-        when(negocioRepository.findAll()).thenReturn(Arrays.asList(negocioMock));
-        when(negocioRepository.save(any(Negocio.class)))
+        when(negocioRepository.bloquearPruebasVencidas(any(), any(), any()))
+                .thenReturn(List.of(negocioMock));
+        when(negocioRepository.marcarVencidos(any(), any()))
                 .thenThrow(new RuntimeException("Error de base de datos"));
 
         // Act & Assert
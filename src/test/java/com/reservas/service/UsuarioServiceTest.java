@@ -4,12 +4,15 @@ import com.reservas.dto.CambiarRolRequest;
 import com.reservas.dto.InvitarUsuarioRequest;
 import com.reservas.dto.UsuarioDTO;
 import com.reservas.entity.Negocio;
+import com.reservas.entity.NotificationLog;
 import com.reservas.entity.Usuario;
 import com.reservas.entity.enums.TipoPlan;
 import com.reservas.entity.enums.UsuarioRol;
 import com.reservas.exception.LimiteExcedidoException;
 import com.reservas.exception.PermisoInsuficienteException;
 import com.reservas.exception.ResourceNotFoundException;
+import com.reservas.notifications.dto.SendNotificationRequest;
+import com.reservas.notifications.service.NotificationOutboxService;
 import com.reservas.repository.NegocioRepository;
 import com.reservas.repository.UsuarioRepository;
 import org.junit.jupiter.api.BeforeEach;
@@ -52,6 +55,9 @@ class UsuarioServiceTest {
     @Mock
     private EmailService emailService;
 
+    @Mock
+    private NotificationOutboxService notificationOutboxService;
+
     @InjectMocks
     private UsuarioService usuarioService;
 
@@ -115,13 +121,19 @@ class UsuarioServiceTest {
         when(usuarioRepository.findByNegocioAndEmailAndActivo(negocioMock, invitarRequest.getEmail(), true))
                 .thenReturn(Optional.empty());
         when(passwordEncoder.encode(anyString())).thenReturn("encoded_password");
+        UUID nuevoId = UUID.randomUUID();
         when(usuarioRepository.save(any(Usuario.class)))
-                .thenAnswer(invocation -> invocation.getArgument(0));
+                .thenAnswer(invocation -> {
+                    Usuario usuario = invocation.getArgument(0);
+                    usuario.setId(nuevoId);
+                    return usuario;
+                });
+        when(emailService.prepararEmailInvitacionUsuario(anyString(), anyString(), anyString(), anyString()))
+                .thenReturn(new EmailService.MensajeEmail("Invitación", "<p>Hola</p>"));
 
         doNothing().when(permisosService).validarPermiso(usuarioOwnerMock, "INVITAR_USUARIOS");
         doNothing().when(permisosService).validarGestionRol(usuarioOwnerMock, invitarRequest.getRol());
         doNothing().when(planLimitesService).validarLimiteUsuarios(negocioId, TipoPlan.PROFESIONAL);
-        doNothing().when(planLimitesService).actualizarUso(negocioId);
 
         // Act
         UsuarioDTO resultado = usuarioService.invitarUsuario(invitarRequest, usuarioOwnerMock.getEmail());
@@ -134,13 +146,21 @@ class UsuarioServiceTest {
         assertTrue(resultado.isActivo());
 
         verify(usuarioRepository).save(any(Usuario.class));
-        verify(planLimitesService).actualizarUso(negocioId);
-        verify(emailService).enviarEmailInvitacionUsuario(
+        verify(planLimitesService).validarLimiteUsuarios(negocioId, TipoPlan.PROFESIONAL);
+        verify(planLimitesService, never()).actualizarUso(any());
+        verify(emailService).prepararEmailInvitacionUsuario(
                 eq(invitarRequest.getEmail()),
                 eq(invitarRequest.getNombre()),
                 eq(negocioMock.getNombre()),
                 anyString()
         );
+        verify(emailService, never()).enviarEmailInvitacionUsuario(anyString(), anyString(), anyString(), anyString());
+        verify(notificationOutboxService).encolar(
+                argThat((SendNotificationRequest request) -> invitarRequest.getEmail().equals(request.getRecipient())
+                        && "<p>Hola</p>".equals(request.getContent())
+                        && request.isSensitiveContent()),
+                eq(NotificationLog.NotificationType.ONBOARDING_WELCOME),
+                eq("invitacion-usuario:" + nuevoId));
     }
 
     @Test
@@ -350,7 +370,6 @@ class UsuarioServiceTest {
 
         doNothing().when(permisosService).validarPermiso(usuarioOwnerMock, "DESACTIVAR_USUARIOS");
         doNothing().when(permisosService).validarGestionRol(usuarioOwnerMock, usuarioEmpleado.getRol());
-        doNothing().when(planLimitesService).actualizarUso(negocioId);
 
         // Act
         usuarioService.desactivarUsuario(usuarioEmpleado.getId(), usuarioOwnerMock.getEmail());
@@ -359,7 +378,7 @@ class UsuarioServiceTest {
         verify(usuarioRepository).save(argThat(usuario ->
                 !usuario.isActivo() && usuario.getId().equals(usuarioEmpleado.getId())
         ));
-        verify(planLimitesService).actualizarUso(negocioId);
+        verify(planLimitesService).liberarCupoUsuario(negocioId);
     }
 
     @Test
@@ -499,7 +518,6 @@ class UsuarioServiceTest {
         doNothing().when(permisosService).validarPermiso(usuarioOwnerMock, "INVITAR_USUARIOS");
         doNothing().when(permisosService).validarGestionRol(usuarioOwnerMock, usuarioInactivo.getRol());
         doNothing().when(planLimitesService).validarLimiteUsuarios(negocioId, TipoPlan.PROFESIONAL);
-        doNothing().when(planLimitesService).actualizarUso(negocioId);
 
         // Act
         UsuarioDTO resultado = usuarioService.activarUsuario(
@@ -511,7 +529,7 @@ class UsuarioServiceTest {
         assertNotNull(resultado);
         assertTrue(resultado.isActivo());
         verify(usuarioRepository).save(argThat(usuario -> usuario.isActivo()));
-        verify(planLimitesService).actualizarUso(negocioId);
+        verify(planLimitesService).validarLimiteUsuarios(negocioId, TipoPlan.PROFESIONAL);
     }
 
     @Test
@@ -0,0 +1,69 @@
+package com.reservas.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("PlantillaHtml - Pruebas Unitarias")
+class PlantillaHtmlTest {
+
+    @Test
+    @DisplayName("Compila en segmentos literales y placeholders y renderiza en una pasada")
+    void compilaYRenderiza() {
+        PlantillaHtml plantilla = PlantillaHtml.compilar("<p>Hola {{nombre}}, tu cita es el {{ fecha }}.</p>");
+
+        assertEquals(5, plantilla.getSegmentos());
+        assertEquals("<p>Hola Ana, tu cita es el lunes.</p>",
+                plantilla.render(Map.of("nombre", "Ana", "fecha", "lunes")));
+    }
+
+    @Test
+    @DisplayName("Escapa los valores de {{variable}} y no los de {{{variable}}}")
+    void escapaSoloPlaceholdersNormales() {
+        PlantillaHtml plantilla = PlantillaHtml.compilar("<b>{{nombre}}</b>{{{bloque}}}");
+
+        String html = plantilla.render(Map.of(
+                "nombre", "<Tom & \"Jerry\" O'Neil>",
+                "bloque", "<p>contacto</p>"));
+
+        assertEquals("<b>&lt;Tom &amp; &quot;Jerry&quot; O&#39;Neil&gt;</b><p>contacto</p>", html);
+    }
+
+    @Test
+    @DisplayName("Una variable sin valor se renderiza vacía")
+    void variableSinValor_seRenderizaVacia() {
+        PlantillaHtml plantilla = PlantillaHtml.compilar("a{{x}}b{{y}}c");
+        Map<String, String> variables = new HashMap<>();
+        variables.put("x", null);
+
+        assertEquals("abc", plantilla.render(variables));
+    }
+
+    @Test
+    @DisplayName("Un placeholder sin cerrar se conserva como texto")
+    void placeholderSinCerrar_esLiteral() {
+        PlantillaHtml plantilla = PlantillaHtml.compilar("{{a}} y {{b");
+
+        assertEquals("1 y {{b", plantilla.render(Map.of("a", "1")));
+    }
+
+    @Test
+    @DisplayName("aplicar() fija variables como literales y deja las demás pendientes")
+    void aplicar_fijaVariables() {
+        PlantillaHtml plantilla = PlantillaHtml.compilar(
+                "<div style=\"color:{{color}}\">{{nombre}} - {{firma}}</div>");
+
+        PlantillaHtml negocio = plantilla.aplicar(Map.of("color", "#fff", "firma", "Spa & Co"));
+
+        // Literal inicial + nombre + literal fusionado con la firma ya escapada
+        assertEquals(3, negocio.getSegmentos());
+        assertEquals("<div style=\"color:#fff\">Luis - Spa &amp; Co</div>",
+                negocio.render(Map.of("nombre", "Luis", "color", "#000")));
+        assertEquals(plantilla.render(Map.of("color", "#fff", "firma", "Spa & Co", "nombre", "Luis")),
+                negocio.render(Map.of("nombre", "Luis")));
+    }
+}